@@ -166,6 +166,10 @@ Iterator<String> iter = pageBean.getCategoryPages().iterator();
 </tr>
 </table>
 </div>
+<% } %>
+
+<% if (!pageBean.getCategoryNextPage().isEmpty()) { %>
+<p>(<a href="wiki?title=<%= safePageTitle %>&amp;from=<%= StringEscapeUtils.escapeHtml(URLEncoder.encode(pageBean.getCategoryNextPage(), "UTF-8")) %><%= andServiceUser %>" title="<%= StringEscapeUtils.escapeHtml(pageBean.getTitle()) %>">next page</a>)</p>
 <% } %>
 
                 <!-- /bodytext -->
@@ -102,7 +102,45 @@
 Legend: <b>(cur)</b> = difference with latest revision, <b>(prev)</b> = difference with preceding revision, <b>m</b> = minor edit.
 </p>
 </div>
-(Latest | Earliest) View (newer 50  |  older 50) (20 | 50 | 100 | 250 | 500)
+<%
+final int revOffset = pageBean.getRevisionOffset();
+final int revLimit = pageBean.getRevisionLimit();
+final int revCount = pageBean.getRevisionCount();
+final String historyUrl = "wiki?title=" + safePageTitle + "&amp;action=history" + andServiceUser;
+final StringBuilder historyNav = new StringBuilder();
+if (revOffset > 0) {
+    historyNav.append("(<a href=\"" + historyUrl + "&amp;limit=" + revLimit + "\">Latest</a> | ");
+} else {
+    historyNav.append("(Latest | ");
+}
+if (revOffset + revLimit < revCount) {
+    historyNav.append("<a href=\"" + historyUrl + "&amp;limit=" + revLimit + "&amp;offset=" + (revCount - revLimit) + "\">Earliest</a>) ");
+} else {
+    historyNav.append("Earliest) ");
+}
+historyNav.append("View (");
+if (revOffset > 0) {
+    historyNav.append("<a href=\"" + historyUrl + "&amp;limit=" + revLimit + "&amp;offset=" + Math.max(0, revOffset - revLimit) + "\">newer " + revLimit + "</a>");
+} else {
+    historyNav.append("newer " + revLimit);
+}
+historyNav.append("  |  ");
+if (revOffset + revLimit < revCount) {
+    historyNav.append("<a href=\"" + historyUrl + "&amp;limit=" + revLimit + "&amp;offset=" + (revOffset + revLimit) + "\">older " + revLimit + "</a>");
+} else {
+    historyNav.append("older " + revLimit);
+}
+historyNav.append(") (");
+final int[] historyLimits = {20, 50, 100, 250, 500};
+for (int i = 0; i < historyLimits.length; ++i) {
+    if (i > 0) {
+        historyNav.append(" | ");
+    }
+    historyNav.append("<a href=\"" + historyUrl + "&amp;limit=" + historyLimits[i] + "&amp;offset=" + revOffset + "\">" + historyLimits[i] + "</a>");
+}
+historyNav.append(")");
+%>
+<%= historyNav %>
 <form action="/wiktionary/simple/w/index.php" id="mw-history-compare">
 <input type="hidden" value="relief" name="title" />
 <input type="hidden" value="historysubmit" name="action" />
@@ -168,7 +206,7 @@ ${ pageBean.page }
 </ul>
 <div><input disabled="disabled" type="submit" value="Compare selected revisions" class="historysubmit" title="See the differences between the two selected revisions of this page [v]" accesskey="v" />
 </div></form>
-(Latest | Earliest) View (newer 50  |  older 50) (20 | 50 | 100 | 250 | 500)
+<%= historyNav %>
             <% } else { %>
             <p>There is no edit history for this page.</p> 
             <% } %>
@@ -151,6 +151,15 @@ ${ pageBean.page }
     <b>Create the page "<a href="wiki?title=<%= safeSearchTitle %>&amp;action=edit<%= andServiceUser %>" class="new" title="<%= safeSearchTitle %>"><%= pageBean.getSearch() %></a>" on this wiki!</b>
   <% } %>
   </p>
+  <% if (!pageBean.getTextMatches().isEmpty()) { %>
+  <h2>Page text matches</h2>
+  <ul class="mw-search-results">
+  <% for (String value : pageBean.getTextMatches()) { %>
+    <li><a href="wiki?title=<%= value %><%= andServiceUser %>"><%= value %></a></li>
+  <% } %>
+  </ul>
+  <h2>Page title matches</h2>
+  <% } %>
 <% } %>
                 <table class="mw-allpages-table-chunk">
 <% if (!pageBean.getPages().isEmpty()) {
@@ -191,6 +200,9 @@ ${ pageBean.page }
   }
 %>
                 </table>
+<% if (!pageBean.getNextPage().isEmpty()) { %>
+                <p class="mw-allpages-nav"><a href="wiki?title=<%= StringEscapeUtils.escapeHtml(pageBean.nextPageWithParameters()) %><%= andServiceUser %>">Next page (<%= StringEscapeUtils.escapeHtml(pageBean.getNextPage()) %>)</a></p>
+<% } %>
                 <hr />
 <% /*           <p class="mw-allpages-nav"><a href="wiki?title=Special:AllPages<%= andServiceUser >" title="Special:AllPages">All pages</a></p> */ %>
                 <div class="printfooter">
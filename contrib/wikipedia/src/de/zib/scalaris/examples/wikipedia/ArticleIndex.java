@@ -0,0 +1,188 @@
+package de.zib.scalaris.examples.wikipedia;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Helpers for the dense index of all articles in Scalaris.
+ *
+ * The index is an array of (normalised) article titles without gaps which is
+ * split into chunks of {@link #CHUNK_SIZE} titles, each stored at its own key.
+ * A separate key stores the number of indexed articles. Selecting a random
+ * article thus only needs to read the count and a single chunk.
+ *
+ * In order to remove articles without leaving gaps, the last article is moved
+ * to the position of the removed one. Therefore, the position of each article
+ * is stored at {@link #getPositionKey(String)}.
+ */
+public class ArticleIndex {
+    /**
+     * Number of article titles per chunk.
+     */
+    public final static int CHUNK_SIZE = 1000;
+
+    /**
+     * Gets the key to store the number of indexed articles at.
+     *
+     * @return Scalaris key
+     */
+    public final static String getCountKey() {
+        return "articles:idx:count";
+    }
+
+    /**
+     * Gets the key to store the given chunk of the article index at.
+     *
+     * @param chunk  the chunk number
+     *
+     * @return Scalaris key
+     */
+    public final static String getChunkKey(int chunk) {
+        return "articles:idx:" + chunk;
+    }
+
+    /**
+     * Gets the key to store the position of an article inside the index at.
+     *
+     * @param title  the (normalised) title of the article
+     *
+     * @return Scalaris key
+     */
+    public final static String getPositionKey(String title) {
+        return title + ":artidx";
+    }
+
+    /**
+     * Gets the chunk an article position belongs to.
+     *
+     * @param pos  the position inside the index
+     *
+     * @return the chunk number
+     */
+    public final static int getChunk(int pos) {
+        return pos / CHUNK_SIZE;
+    }
+
+    /**
+     * Gets the chunks which need to be read (and written) in order to add and
+     * remove articles.
+     *
+     * @param count
+     *            the current number of indexed articles
+     * @param removePositions
+     *            the positions of the (indexed) articles to remove
+     * @param adds
+     *            the number of (not yet indexed) articles to add
+     *
+     * @return the chunk numbers
+     */
+    public final static TreeSet<Integer> getTouchedChunks(int count,
+            Collection<Integer> removePositions, int adds) {
+        final TreeSet<Integer> result = new TreeSet<Integer>();
+        for (Integer pos : removePositions) {
+            result.add(getChunk(pos));
+        }
+        // removed articles are replaced by the last ones, new articles are
+        // appended after the remaining ones
+        final int lo = Math.max(0, count - removePositions.size());
+        final int hi = Math.max(count, lo + adds) - 1;
+        if (hi >= lo) {
+            for (int chunk = getChunk(lo); chunk <= getChunk(hi); ++chunk) {
+                result.add(chunk);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds and removes articles to/from the given chunks of the index.
+     *
+     * @param count
+     *            the current number of indexed articles
+     * @param chunks
+     *            the chunks from {@link #getTouchedChunks(int, Collection, int)}
+     *            (will be changed)
+     * @param positions
+     *            the positions of the already indexed articles to add or
+     *            remove (will be changed)
+     * @param toAdd
+     *            the articles to add
+     * @param toRemove
+     *            the articles to remove
+     * @param changedPositions
+     *            will be filled with all articles whose positions changed,
+     *            removed articles get the position <tt>-1</tt>
+     *
+     * @return the new number of indexed articles
+     */
+    public final static int changeIndex(int count,
+            Map<Integer, List<String>> chunks, Map<String, Integer> positions,
+            Collection<String> toAdd, Collection<String> toRemove,
+            Map<String, Integer> changedPositions) {
+        for (String title : toRemove) {
+            final Integer pos = positions.get(title);
+            if (pos == null || pos < 0 || pos >= count) {
+                continue;
+            }
+            final int last = count - 1;
+            if (pos != last) {
+                final String moved = getEntry(chunks, last);
+                setEntry(chunks, pos, moved);
+                if (!moved.isEmpty()) {
+                    positions.put(moved, pos);
+                    changedPositions.put(moved, pos);
+                }
+            }
+            positions.put(title, -1);
+            changedPositions.put(title, -1);
+            --count;
+        }
+        for (String title : toAdd) {
+            final Integer pos = positions.get(title);
+            if (pos != null && pos >= 0) {
+                continue;
+            }
+            setEntry(chunks, count, title);
+            positions.put(title, count);
+            changedPositions.put(title, count);
+            ++count;
+        }
+        // cut off entries behind the last article
+        for (Map.Entry<Integer, List<String>> chunk : chunks.entrySet()) {
+            final List<String> entries = chunk.getValue();
+            final int size = Math.max(0, Math.min(entries.size(),
+                    count - chunk.getKey() * CHUNK_SIZE));
+            if (size < entries.size()) {
+                entries.subList(size, entries.size()).clear();
+            }
+        }
+        return count;
+    }
+
+    private static String getEntry(Map<Integer, List<String>> chunks, int pos) {
+        final List<String> entries = chunks.get(getChunk(pos));
+        final int index = pos % CHUNK_SIZE;
+        if (entries == null || index >= entries.size()) {
+            // inconsistent index - readers skip empty titles
+            return "";
+        }
+        return entries.get(index);
+    }
+
+    private static void setEntry(Map<Integer, List<String>> chunks, int pos, String title) {
+        List<String> entries = chunks.get(getChunk(pos));
+        if (entries == null) {
+            entries = new ArrayList<String>(CHUNK_SIZE);
+            chunks.put(getChunk(pos), entries);
+        }
+        final int index = pos % CHUNK_SIZE;
+        while (entries.size() <= index) {
+            // inconsistent index - readers skip empty titles
+            entries.add("");
+        }
+        entries.set(index, title);
+    }
+}
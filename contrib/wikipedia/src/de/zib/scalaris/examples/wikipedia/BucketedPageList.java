@@ -0,0 +1,131 @@
+package de.zib.scalaris.examples.wikipedia;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
+
+/**
+ * Helpers for page lists which are stored as sorted buckets so that they can
+ * be read page by page.
+ *
+ * Each (normalised) page title of such a list is stored in the bucket
+ * formed by its namespace and the page title index bucket of its title (see
+ * {@link ScalarisDataHandler#getPageIndexBucket(String)}). The buckets are
+ * stored at {@link #getBucketKey(String, String)} and contain their titles in
+ * {@link ScalarisDataHandler#PAGE_INDEX_ORDER}. The sorted list of all
+ * buckets is stored at {@link #getIndexKey(String)}. A page of the list can
+ * thus be continued after its last title by only reading the buckets behind
+ * it.
+ *
+ * Lists still stored as a single value (at the list key itself) are moved
+ * into buckets on their first change.
+ *
+ * @see ScalarisBucketedPageListChangeOp
+ */
+public class BucketedPageList {
+    /**
+     * Number of buckets to read with a single request.
+     */
+    public final static int READ_BATCH = 8;
+
+    /**
+     * Checks whether the page lists of the given operation type are stored
+     * as bucketed page lists.
+     *
+     * @param opType  the operation type of the page list
+     *
+     * @return <tt>true</tt> for category and back-link page lists
+     */
+    public final static boolean isBucketed(ScalarisOpType opType) {
+        return opType == ScalarisOpType.CATEGORY_PAGE_LIST
+                || opType == ScalarisOpType.BACKLINK_PAGE_LIST;
+    }
+
+    /**
+     * Gets the key to store the (sorted) list of buckets of a page list at.
+     *
+     * @param listKey  the key of the page list
+     *
+     * @return Scalaris key
+     */
+    public final static String getIndexKey(String listKey) {
+        return listKey + ":idx";
+    }
+
+    /**
+     * Gets the key to store the (sorted) titles of a bucket of a page list
+     * at.
+     *
+     * @param listKey  the key of the page list
+     * @param bucket   the bucket name
+     *
+     * @return Scalaris key
+     */
+    public final static String getBucketKey(String listKey, String bucket) {
+        return getIndexKey(listKey) + ":" + bucket;
+    }
+
+    /**
+     * Gets the bucket of the given (normalised) page title.
+     *
+     * @param normTitle  the normalised page title of the form
+     *                   <tt>namespace:title</tt>
+     *
+     * @return the bucket name
+     */
+    public final static String getBucket(String normTitle) {
+        final NormalisedTitle title = NormalisedTitle.fromNormalised(normTitle);
+        return title.namespace + ":" + ScalarisDataHandler.getPageIndexBucket(title.title);
+    }
+
+    /**
+     * Groups the given titles by their buckets.
+     *
+     * @param normTitles  the normalised page titles
+     *
+     * @return a map of bucket names (in page list order) to the titles in
+     *         them (in the given order)
+     */
+    public final static TreeMap<String, List<String>> groupByBucket(
+            Collection<String> normTitles) {
+        final TreeMap<String, List<String>> result = new TreeMap<String, List<String>>(
+                ScalarisDataHandler.PAGE_INDEX_ORDER);
+        for (String normTitle : normTitles) {
+            final String bucket = getBucket(normTitle);
+            List<String> bucketTitles = result.get(bucket);
+            if (bucketTitles == null) {
+                bucketTitles = new ArrayList<String>();
+                result.put(bucket, bucketTitles);
+            }
+            bucketTitles.add(normTitle);
+        }
+        return result;
+    }
+
+    /**
+     * Selects the buckets which may contain titles after the given one.
+     *
+     * @param buckets  all buckets of the page list (sorted)
+     * @param from     the normalised title to continue after (<tt>null</tt>
+     *                 to start with the first title)
+     *
+     * @return the bucket names to read (in page list order)
+     */
+    public final static List<String> getBucketsFrom(List<String> buckets,
+            String from) {
+        if (from == null) {
+            return buckets;
+        }
+        final String fromBucket = getBucket(from);
+        final List<String> result = new ArrayList<String>(buckets.size());
+        for (String bucket : buckets) {
+            if (ScalarisDataHandler.PAGE_INDEX_ORDER.compare(bucket, fromBucket) >= 0) {
+                result.add(bucket);
+            }
+        }
+        return result;
+    }
+}
@@ -2,6 +2,7 @@ package de.zib.scalaris.examples.wikipedia;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
@@ -102,6 +103,49 @@ public class MyScalarisOpExecWrapper {
         }
     }
 
+    /**
+     * Creates a new append+remove operation on a sorted list of strings.
+     * 
+     * Sorted lists cannot be maintained by the list append operation of
+     * Scalaris and are thus always updated with a read and a write.
+     * 
+     * @param key       the key to append/remove the values to/from
+     * @param toAdd     the values to add
+     * @param toRemove  the values to remove
+     * @param order     the order of the elements in the list
+     * @param countKey  the key for the counter of the entries in the list
+     *                  (may be <tt>null</tt>)
+     */
+    public void addSortedAppendRemove(final String key,
+            final List<String> toAdd, final List<String> toRemove,
+            final Comparator<String> order, final String countKey) {
+        executor.addOp(new ScalarisSortedListAppendRemoveOp1(key, toAdd,
+                toRemove, order, countKey));
+    }
+
+    /**
+     * Creates a new append+remove operation on a bucketed page list.
+     *
+     * The counter of the entries in the list (if used) is changed by the
+     * number of titles actually added and removed (see
+     * {@link ScalarisBucketedPageListChangeOp}).
+     *
+     * @param opType    operation type indicating what is being updated
+     * @param key       the key of the page list
+     * @param toAdd     the (normalised) titles to add
+     * @param toRemove  the (normalised) titles to remove
+     * @param countKey  the key for the counter of the entries in the list
+     *                  (may be <tt>null</tt>)
+     *
+     * @see BucketedPageList
+     */
+    public void addBucketedAppendRemove(final ScalarisOpType opType,
+            final String key, final List<String> toAdd,
+            final List<String> toRemove, final String countKey) {
+        executor.addOp(new ScalarisBucketedPageListChangeOp(key, toAdd,
+                toRemove, countKey, Options.getInstance().OPTIMISATIONS.get(opType)));
+    }
+
     /**
      * @return the executor
      */
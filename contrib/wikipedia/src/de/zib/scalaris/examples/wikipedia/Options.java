@@ -44,6 +44,13 @@ public class Options {
      */
     public boolean WIKI_USE_BACKLINKS = true;
     
+    /**
+     * Whether to maintain and use the full-text search index or not.
+     * 
+     * @see SearchIndex
+     */
+    public boolean WIKI_USE_SEARCH_INDEX = true;
+    
     /**
      * How often to re-try a "sage page" operation in case of failures, e.g.
      * concurrent edits.
@@ -61,12 +68,43 @@ public class Options {
     public int WIKI_SAVEPAGE_RETRY_DELAY = 10;
     
     /**
-     * How often to re-create the bloom filter with the existing pages (in
-     * seconds). The bloom filter will be disabled if a value less than or equal
+     * How often to store the bloom filter with the existing pages in the DB
+     * (in seconds). The filter is updated incrementally and only re-created
+     * from the list of all pages if it is full or if no valid stored filter
+     * exists. The bloom filter will be disabled if a value less than or equal
      * to 0 is provided.
      */
     public int WIKI_REBUILD_PAGES_CACHE = 10 * 60;
     
+    /**
+     * Size of the JVM-wide cache of rendered pages (in MiB). The cache will be
+     * disabled if a value less than or equal to 0 is provided.
+     * 
+     * @see de.zib.scalaris.examples.wikipedia.bliki.RenderedPageCache
+     * @see #WIKI_TEMPLATE_CACHE_MAX_AGE
+     */
+    public int WIKI_RENDERED_PAGES_CACHE_SIZE = 32;
+    
+    /**
+     * Maximum number of pages, e.g. templates, in the JVM-wide template cache.
+     * The cache will be disabled if a value less than or equal to 0 is
+     * provided.
+     * 
+     * @see de.zib.scalaris.examples.wikipedia.bliki.TemplateCache
+     * @see #WIKI_TEMPLATE_CACHE_MAX_AGE
+     */
+    public int WIKI_TEMPLATE_CACHE_SIZE = 10000;
+    
+    /**
+     * How long pages may stay in the template cache and the cache of rendered
+     * pages (in seconds). This limits the time edits through other servlets
+     * may go unnoticed.
+     * 
+     * @see #WIKI_TEMPLATE_CACHE_SIZE
+     * @see #WIKI_RENDERED_PAGES_CACHE_SIZE
+     */
+    public int WIKI_TEMPLATE_CACHE_MAX_AGE = 5 * 60;
+    
     /**
      * How often to re-create the bloom filter with the existing pages (in
      * seconds). The bloom filter will be disabled if a value less than or equal
@@ -313,12 +351,20 @@ public class Options {
      *            {@link Options#SERVERPATH}
      * @param WIKI_USE_BACKLINKS
      *            {@link Options#WIKI_USE_BACKLINKS}
+     * @param WIKI_USE_SEARCH_INDEX
+     *            {@link Options#WIKI_USE_SEARCH_INDEX}
      * @param WIKI_SAVEPAGE_RETRIES
      *            {@link Options#WIKI_SAVEPAGE_RETRIES}
      * @param WIKI_SAVEPAGE_RETRY_DELAY
      *            {@link Options#WIKI_SAVEPAGE_RETRY_DELAY}
      * @param WIKI_REBUILD_PAGES_CACHE
      *            {@link Options#WIKI_REBUILD_PAGES_CACHE}
+     * @param WIKI_RENDERED_PAGES_CACHE_SIZE
+     *            {@link Options#WIKI_RENDERED_PAGES_CACHE_SIZE}
+     * @param WIKI_TEMPLATE_CACHE_SIZE
+     *            {@link Options#WIKI_TEMPLATE_CACHE_SIZE}
+     * @param WIKI_TEMPLATE_CACHE_MAX_AGE
+     *            {@link Options#WIKI_TEMPLATE_CACHE_MAX_AGE}
      * @param WIKI_STORE_CONTRIBUTIONS
      *            {@link Options#WIKI_STORE_CONTRIBUTIONS}
      * @param OPTIMISATIONS
@@ -330,9 +376,13 @@ public class Options {
      */
     public static void parseOptions(Options options, final String SERVERNAME, final String SERVERPATH,
             final String WIKI_USE_BACKLINKS,
+            final String WIKI_USE_SEARCH_INDEX,
             final String WIKI_SAVEPAGE_RETRIES,
             final String WIKI_SAVEPAGE_RETRY_DELAY,
             final String WIKI_REBUILD_PAGES_CACHE,
+            final String WIKI_RENDERED_PAGES_CACHE_SIZE,
+            final String WIKI_TEMPLATE_CACHE_SIZE,
+            final String WIKI_TEMPLATE_CACHE_MAX_AGE,
             final String WIKI_STORE_CONTRIBUTIONS, final String OPTIMISATIONS,
             final String LOG_USER_REQS, final String SCALARIS_NODE_DISCOVERY) {
         if (SERVERNAME != null) {
@@ -344,6 +394,9 @@ public class Options {
         if (WIKI_USE_BACKLINKS != null) {
             options.WIKI_USE_BACKLINKS = Boolean.parseBoolean(WIKI_USE_BACKLINKS);
         }
+        if (WIKI_USE_SEARCH_INDEX != null) {
+            options.WIKI_USE_SEARCH_INDEX = Boolean.parseBoolean(WIKI_USE_SEARCH_INDEX);
+        }
         if (WIKI_SAVEPAGE_RETRIES != null) {
             options.WIKI_SAVEPAGE_RETRIES = Integer.parseInt(WIKI_SAVEPAGE_RETRIES);
         }
@@ -353,6 +406,15 @@ public class Options {
         if (WIKI_REBUILD_PAGES_CACHE != null) {
             options.WIKI_REBUILD_PAGES_CACHE = Integer.parseInt(WIKI_REBUILD_PAGES_CACHE);
         }
+        if (WIKI_RENDERED_PAGES_CACHE_SIZE != null) {
+            options.WIKI_RENDERED_PAGES_CACHE_SIZE = Integer.parseInt(WIKI_RENDERED_PAGES_CACHE_SIZE);
+        }
+        if (WIKI_TEMPLATE_CACHE_SIZE != null) {
+            options.WIKI_TEMPLATE_CACHE_SIZE = Integer.parseInt(WIKI_TEMPLATE_CACHE_SIZE);
+        }
+        if (WIKI_TEMPLATE_CACHE_MAX_AGE != null) {
+            options.WIKI_TEMPLATE_CACHE_MAX_AGE = Integer.parseInt(WIKI_TEMPLATE_CACHE_MAX_AGE);
+        }
         if (WIKI_STORE_CONTRIBUTIONS != null) {
             options.WIKI_STORE_CONTRIBUTIONS = STORE_CONTRIB_TYPE.fromString(WIKI_STORE_CONTRIBUTIONS);
         }
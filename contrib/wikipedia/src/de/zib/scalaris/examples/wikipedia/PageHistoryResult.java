@@ -19,6 +19,11 @@ public class PageHistoryResult extends Result {
      * The retrieved (short) revisions on success (or <tt>null</tt>).
      */
     public List<ShortRevision> revisions = null;
+    /**
+     * The number of all revisions of the page on success (the retrieved
+     * revisions may only be a part of them).
+     */
+    public int revisionCount = 0;
     /**
      * Whether the page exists or not.
      */
@@ -64,6 +69,32 @@ public class PageHistoryResult extends Result {
         addStat(name, time);
     }
 
+    /**
+     * Creates a successful result with an empty message and the given
+     * (part of the) revisions.
+     * 
+     * @param involvedKeys
+     *            all keys that have been read or written during the operation
+     * @param page
+     *            the retrieved page
+     * @param revisions
+     *            the retrieved (short) revisions
+     * @param revisionCount
+     *            the number of all revisions of the page
+     * @param name
+     *            the name of the operation (for the stats - see {@link #stats})
+     * @param time
+     *            time in milliseconds for this operation
+     */
+    public PageHistoryResult(List<InvolvedKey> involvedKeys, Page page, List<ShortRevision> revisions,
+            int revisionCount, String name, long time) {
+        super(involvedKeys);
+        this.page = page;
+        this.revisions = revisions;
+        this.revisionCount = revisionCount;
+        addStat(name, time);
+    }
+
     /**
      * Creates a new custom result.
      * 
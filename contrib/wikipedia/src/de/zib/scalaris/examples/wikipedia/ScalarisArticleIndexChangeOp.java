@@ -0,0 +1,192 @@
+package de.zib.scalaris.examples.wikipedia;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+
+import de.zib.scalaris.NotFoundException;
+import de.zib.scalaris.RequestList;
+import de.zib.scalaris.ResultList;
+import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.executor.ScalarisOp;
+import de.zib.scalaris.operations.ReadOp;
+import de.zib.scalaris.operations.WriteOp;
+
+/**
+ * Adds articles to and removes articles from the dense article index using
+ * the read and write operations of Scalaris.
+ *
+ * First the article count and the positions of the given articles are read,
+ * then the chunks touched by the change. Only these chunks, the changed
+ * positions and the count are written back.
+ *
+ * @see ArticleIndex
+ */
+public class ScalarisArticleIndexChangeOp implements ScalarisOp {
+    final protected List<String> toAdd;
+    final protected List<String> toRemove;
+    final protected List<String> titles;
+    protected TreeSet<Integer> chunks = new TreeSet<Integer>();
+    protected int count = 0;
+    final protected Map<String, Integer> positions = new HashMap<String, Integer>();
+    protected int writes = 0;
+
+    /**
+     * Creates a new article index change operation.
+     *
+     * @param toAdd     the (normalised) titles of the articles to add
+     * @param toRemove  the (normalised) titles of the articles to remove
+     */
+    public ScalarisArticleIndexChangeOp(final List<String> toAdd,
+            final List<String> toRemove) {
+        this.toAdd = toAdd;
+        this.toRemove = toRemove;
+        final LinkedHashSet<String> titles0 = new LinkedHashSet<String>(toAdd);
+        titles0.addAll(toRemove);
+        this.titles = new ArrayList<String>(titles0);
+    }
+
+    public int workPhases() {
+        return 3;
+    }
+
+    public final int doPhase(final int phase, final int firstOp,
+            final ResultList results, final RequestList requests)
+            throws OtpErlangException, UnknownException,
+            IllegalArgumentException {
+        switch (phase) {
+            case 0: return prepareRead(requests);
+            case 1: return prepareReadChunks(firstOp, results, requests);
+            case 2: return prepareWrite(firstOp, results, requests);
+            case 3: return checkWrite(firstOp, results);
+            default:
+                throw new IllegalArgumentException("No phase " + phase);
+        }
+    }
+
+    /**
+     * Adds read operations for the article count and the positions of the
+     * articles to the request list.
+     *
+     * @param requests the request list
+     *
+     * @return <tt>0</tt> (no operation processed since no results are used)
+     */
+    protected int prepareRead(final RequestList requests) {
+        requests.addOp(new ReadOp(ArticleIndex.getCountKey()));
+        for (String title : titles) {
+            requests.addOp(new ReadOp(ArticleIndex.getPositionKey(title)));
+        }
+        return 0;
+    }
+
+    /**
+     * Verifies the read operations and adds read operations for the touched
+     * chunks to the request list.
+     *
+     * @param firstOp   the first operation to process inside the result list
+     * @param results   the result list
+     * @param requests  the request list
+     *
+     * @return number of processed operations (the reads)
+     */
+    protected int prepareReadChunks(int firstOp, final ResultList results,
+            final RequestList requests) throws OtpErlangException,
+            UnknownException {
+        try {
+            count = results.processReadAt(firstOp++).intValue();
+        } catch (final NotFoundException e) {
+            // this is ok
+            count = 0;
+        }
+        for (String title : titles) {
+            try {
+                positions.put(title, results.processReadAt(firstOp++).intValue());
+            } catch (final NotFoundException e) {
+                // this is ok
+            }
+        }
+        final List<Integer> removePositions = new ArrayList<Integer>(toRemove.size());
+        for (String title : toRemove) {
+            final Integer pos = positions.get(title);
+            if (pos != null && pos >= 0) {
+                removePositions.add(pos);
+            }
+        }
+        chunks = ArticleIndex.getTouchedChunks(count, removePositions, toAdd.size());
+        for (Integer chunk : chunks) {
+            requests.addOp(new ReadOp(ArticleIndex.getChunkKey(chunk)));
+        }
+        return 1 + titles.size();
+    }
+
+    /**
+     * Verifies the read operations, changes the index and adds write
+     * operations to the request list.
+     *
+     * @param firstOp   the first operation to process inside the result list
+     * @param results   the result list
+     * @param requests  the request list
+     *
+     * @return number of processed operations (the chunk reads)
+     */
+    protected int prepareWrite(int firstOp, final ResultList results,
+            final RequestList requests) throws OtpErlangException,
+            UnknownException {
+        final Map<Integer, List<String>> chunkEntries =
+                new HashMap<Integer, List<String>>(chunks.size());
+        for (Integer chunk : chunks) {
+            List<String> entries;
+            try {
+                entries = results.processReadAt(firstOp++).stringListValue();
+            } catch (final NotFoundException e) {
+                // this is ok
+                entries = new ArrayList<String>(ArticleIndex.CHUNK_SIZE);
+            }
+            chunkEntries.put(chunk, entries);
+        }
+        final Map<String, Integer> changedPositions = new HashMap<String, Integer>();
+        final int newCount = ArticleIndex.changeIndex(count, chunkEntries,
+                positions, toAdd, toRemove, changedPositions);
+        if (!changedPositions.isEmpty()) {
+            for (Integer chunk : chunks) {
+                requests.addOp(new WriteOp(ArticleIndex.getChunkKey(chunk),
+                        chunkEntries.get(chunk)));
+            }
+            for (Map.Entry<String, Integer> pos : changedPositions.entrySet()) {
+                requests.addOp(new WriteOp(ArticleIndex.getPositionKey(pos.getKey()),
+                        pos.getValue()));
+            }
+            requests.addOp(new WriteOp(ArticleIndex.getCountKey(), newCount));
+            writes = chunks.size() + changedPositions.size() + 1;
+        }
+        return chunks.size();
+    }
+
+    /**
+     * Verifies the write operations.
+     *
+     * @param firstOp   the first operation to process inside the result list
+     * @param results   the result list
+     *
+     * @return number of processed operations (the writes)
+     */
+    protected int checkWrite(final int firstOp, final ResultList results)
+            throws OtpErlangException, UnknownException {
+        for (int i = 0; i < writes; ++i) {
+            results.processWriteAt(firstOp + i);
+        }
+        return writes;
+    }
+
+    @Override
+    public String toString() {
+        return "Scalaris.article_index_change(" + toAdd.toString() + ", "
+                + toRemove.toString() + ")";
+    }
+}
@@ -0,0 +1,298 @@
+package de.zib.scalaris.examples.wikipedia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+
+import de.zib.scalaris.NotFoundException;
+import de.zib.scalaris.RequestList;
+import de.zib.scalaris.ResultList;
+import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS;
+import de.zib.scalaris.examples.wikipedia.Options.Optimisation;
+import de.zib.scalaris.executor.ScalarisOp;
+import de.zib.scalaris.operations.AddOnNrOp;
+import de.zib.scalaris.operations.ReadOp;
+import de.zib.scalaris.operations.WriteOp;
+
+/**
+ * Adds titles to and removes titles from a bucketed page list using the read
+ * and write operations of Scalaris.
+ *
+ * First the list of buckets and the buckets touched by the change are read.
+ * If there is no list of buckets yet, the (unbucketed) page list is read as
+ * well and moved into buckets. Only the changed buckets and, if new buckets
+ * were created, the list of buckets are written back.
+ *
+ * If a counter key is given, the counter is incremented by the number of
+ * titles actually added minus the number of titles actually removed (titles
+ * already in the list are not added again, titles not in the list cannot be
+ * removed).
+ *
+ * Note: buckets are never removed from the list of buckets - readers simply
+ * skip empty buckets.
+ *
+ * @see BucketedPageList
+ */
+public class ScalarisBucketedPageListChangeOp implements ScalarisOp {
+    final protected String key;
+    final protected List<String> toAdd;
+    final protected List<String> toRemove;
+    final protected String countKey;
+    final protected Optimisation optimisation;
+    final protected int oldBuckets;
+    final protected TreeSet<String> buckets = new TreeSet<String>(
+            ScalarisDataHandler.PAGE_INDEX_ORDER);
+    protected List<String> index = null;
+    final protected Map<String, List<String>> bucketTitles = new TreeMap<String, List<String>>(
+            ScalarisDataHandler.PAGE_INDEX_ORDER);
+    protected int writes = 0;
+    protected boolean countChanged = false;
+
+    /**
+     * Creates a new bucketed page list change operation.
+     *
+     * @param key
+     *            the key of the page list
+     * @param toAdd
+     *            the (normalised) titles to add
+     * @param toRemove
+     *            the (normalised) titles to remove
+     * @param countKey
+     *            the key for the counter of the entries in the list (may be
+     *            <tt>null</tt>)
+     * @param optimisation
+     *            the optimisation the (unbucketed) page list and the counter
+     *            may have been stored with
+     */
+    public ScalarisBucketedPageListChangeOp(final String key,
+            final List<String> toAdd, final List<String> toRemove,
+            final String countKey, final Optimisation optimisation) {
+        this.key = key;
+        this.toAdd = toAdd;
+        this.toRemove = toRemove;
+        this.countKey = countKey;
+        this.optimisation = optimisation;
+        if (optimisation instanceof APPEND_INCREMENT_BUCKETS) {
+            this.oldBuckets = ((APPEND_INCREMENT_BUCKETS) optimisation).getBuckets();
+        } else {
+            this.oldBuckets = 1;
+        }
+        for (String title : toAdd) {
+            buckets.add(BucketedPageList.getBucket(title));
+        }
+        for (String title : toRemove) {
+            buckets.add(BucketedPageList.getBucket(title));
+        }
+    }
+
+    public int workPhases() {
+        return 3;
+    }
+
+    public final int doPhase(final int phase, final int firstOp,
+            final ResultList results, final RequestList requests)
+            throws OtpErlangException, UnknownException,
+            IllegalArgumentException {
+        switch (phase) {
+            case 0: return prepareRead(requests);
+            case 1: return prepareReadOldList(firstOp, results, requests);
+            case 2: return prepareWrite(firstOp, results, requests);
+            case 3: return checkWrite(firstOp, results);
+            default:
+                throw new IllegalArgumentException("No phase " + phase);
+        }
+    }
+
+    /**
+     * Adds read operations for the list of buckets and the touched buckets to
+     * the request list.
+     *
+     * @param requests the request list
+     *
+     * @return <tt>0</tt> (no operation processed since no results are used)
+     */
+    protected int prepareRead(final RequestList requests) {
+        requests.addOp(new ReadOp(BucketedPageList.getIndexKey(key)));
+        for (String bucket : buckets) {
+            requests.addOp(new ReadOp(BucketedPageList.getBucketKey(key, bucket)));
+        }
+        return 0;
+    }
+
+    /**
+     * Verifies the read operations and, if there is no list of buckets yet,
+     * adds read operations for the (unbucketed) page list to the request
+     * list.
+     *
+     * @param firstOp   the first operation to process inside the result list
+     * @param results   the result list
+     * @param requests  the request list
+     *
+     * @return number of processed operations (the reads)
+     */
+    protected int prepareReadOldList(int firstOp, final ResultList results,
+            final RequestList requests) throws OtpErlangException,
+            UnknownException {
+        try {
+            index = results.processReadAt(firstOp++).stringListValue();
+        } catch (final NotFoundException e) {
+            // this is ok
+            index = null;
+        }
+        for (String bucket : buckets) {
+            List<String> titles;
+            try {
+                titles = results.processReadAt(firstOp++).stringListValue();
+            } catch (final NotFoundException e) {
+                // this is ok
+                titles = new ArrayList<String>();
+            }
+            bucketTitles.put(bucket, titles);
+        }
+        if (index == null) {
+            if (oldBuckets > 1) {
+                for (int i = 0; i < oldBuckets; ++i) {
+                    requests.addOp(new ReadOp(key + ":" + i));
+                }
+            } else {
+                requests.addOp(new ReadOp(key));
+            }
+        }
+        return 1 + buckets.size();
+    }
+
+    /**
+     * Verifies the read operations, changes the buckets and adds write
+     * operations to the request list.
+     *
+     * @param firstOp   the first operation to process inside the result list
+     * @param results   the result list
+     * @param requests  the request list
+     *
+     * @return number of processed operations (the reads of the old page list)
+     */
+    protected int prepareWrite(int firstOp, final ResultList results,
+            final RequestList requests) throws OtpErlangException,
+            UnknownException {
+        final TreeSet<String> changedBuckets = new TreeSet<String>(
+                ScalarisDataHandler.PAGE_INDEX_ORDER);
+        int processed = 0;
+        if (index == null) {
+            for (int i = 0; i < oldBuckets; ++i) {
+                try {
+                    for (String title : results.processReadAt(firstOp++).stringListValue()) {
+                        add(title, changedBuckets);
+                    }
+                } catch (final NotFoundException e) {
+                    // this is ok
+                }
+            }
+            processed = oldBuckets;
+        }
+        int countChange = 0;
+        for (String title : toAdd) {
+            if (add(title, changedBuckets)) {
+                ++countChange;
+            }
+        }
+        for (String title : toRemove) {
+            final List<String> titles = bucketTitles.get(BucketedPageList.getBucket(title));
+            final int pos = Collections.binarySearch(titles, title,
+                    ScalarisDataHandler.PAGE_INDEX_ORDER);
+            if (pos >= 0) {
+                titles.remove(pos);
+                changedBuckets.add(BucketedPageList.getBucket(title));
+                --countChange;
+            }
+        }
+        for (String bucket : changedBuckets) {
+            requests.addOp(new WriteOp(BucketedPageList.getBucketKey(key, bucket),
+                    bucketTitles.get(bucket)));
+            ++writes;
+        }
+        final TreeSet<String> newIndex = new TreeSet<String>(ScalarisDataHandler.PAGE_INDEX_ORDER);
+        if (index != null) {
+            newIndex.addAll(index);
+        }
+        for (Map.Entry<String, List<String>> bucket : bucketTitles.entrySet()) {
+            if (!bucket.getValue().isEmpty()) {
+                newIndex.add(bucket.getKey());
+            }
+        }
+        if (index == null || newIndex.size() != index.size()) {
+            requests.addOp(new WriteOp(BucketedPageList.getIndexKey(key),
+                    new ArrayList<String>(newIndex)));
+            ++writes;
+        }
+        if (countKey != null && countChange != 0) {
+            // increments work with all optimisations the counter may use
+            String countKey2 = countKey;
+            if (optimisation instanceof APPEND_INCREMENT_BUCKETS) {
+                countKey2 += ((APPEND_INCREMENT_BUCKETS) optimisation).getBucketString(countChange);
+            }
+            requests.addOp(new AddOnNrOp(countKey2, countChange));
+            countChanged = true;
+        }
+        return processed;
+    }
+
+    /**
+     * Inserts the given title into its (sorted) bucket.
+     *
+     * @param title           the normalised title
+     * @param changedBuckets  the changed buckets (will be updated)
+     *
+     * @return whether the title was added (<tt>false</tt> if it already
+     *         existed)
+     */
+    private boolean add(String title, TreeSet<String> changedBuckets) {
+        final String bucket = BucketedPageList.getBucket(title);
+        List<String> titles = bucketTitles.get(bucket);
+        if (titles == null) {
+            titles = new ArrayList<String>();
+            bucketTitles.put(bucket, titles);
+        }
+        final int pos = Collections.binarySearch(titles, title,
+                ScalarisDataHandler.PAGE_INDEX_ORDER);
+        if (pos < 0) {
+            titles.add(-pos - 1, title);
+            changedBuckets.add(bucket);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Verifies the write operations.
+     *
+     * @param firstOp   the first operation to process inside the result list
+     * @param results   the result list
+     *
+     * @return number of processed operations (the writes and the counter
+     *         increment)
+     */
+    protected int checkWrite(final int firstOp, final ResultList results)
+            throws OtpErlangException, UnknownException {
+        for (int i = 0; i < writes; ++i) {
+            results.processWriteAt(firstOp + i);
+        }
+        if (countChanged) {
+            results.processAddOnNrAt(firstOp + writes);
+            return writes + 1;
+        }
+        return writes;
+    }
+
+    @Override
+    public String toString() {
+        return "Scalaris.bucketed_page_list_change(" + key + ", "
+                + toAdd.toString() + ", " + toRemove.toString() + ", "
+                + countKey + ")";
+    }
+}
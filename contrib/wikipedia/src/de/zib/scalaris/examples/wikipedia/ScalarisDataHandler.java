@@ -18,9 +18,18 @@ package de.zib.scalaris.examples.wikipedia;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
 
 import com.ericsson.otp.erlang.OtpErlangString;
 
@@ -28,16 +37,20 @@ import de.zib.scalaris.Connection;
 import de.zib.scalaris.ConnectionException;
 import de.zib.scalaris.ErlangValue;
 import de.zib.scalaris.ErlangValue.ListElementConverter;
+import de.zib.scalaris.NotFoundException;
 import de.zib.scalaris.ScalarisVM;
 import de.zib.scalaris.TransactionSingleOp;
 import de.zib.scalaris.UnknownException;
 import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS;
 import de.zib.scalaris.examples.wikipedia.Options.Optimisation;
 import de.zib.scalaris.examples.wikipedia.Options.STORE_CONTRIB_TYPE;
+import de.zib.scalaris.examples.wikipedia.bliki.ExistingPagesFilter;
 import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Contribution;
+import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
+import de.zib.scalaris.executor.ScalarisReadOp;
 import de.zib.scalaris.operations.Operation;
 import de.zib.scalaris.operations.ReadOp;
 
@@ -48,6 +61,88 @@ import de.zib.scalaris.operations.ReadOp;
  */
 public class ScalarisDataHandler {
     
+    /**
+     * Number of (case-folded) characters of a page title forming the bucket
+     * of the page title index it is stored in.
+     */
+    public final static int PAGE_INDEX_BUCKET_LENGTH = 2;
+    
+    /**
+     * Number of page title index buckets to read with a single request.
+     */
+    protected final static int PAGE_INDEX_READ_BATCH = 8;
+    
+    /**
+     * Number of (short) revisions in each segment of a page's revision list.
+     */
+    public final static int REV_LIST_SEGMENT_SIZE = 50;
+    
+    /**
+     * Number of contributions in each segment of a user's contribution list.
+     */
+    public final static int CONTRIBUTION_LIST_SEGMENT_SIZE = 50;
+    
+    /**
+     * Orders contributions by their time stamps, i.e. from the oldest to the
+     * newest contribution of a user.
+     */
+    public final static Comparator<Contribution> CONTRIBUTION_LIST_ORDER = new Comparator<Contribution>() {
+        @Override
+        public int compare(Contribution o1, Contribution o2) {
+            return o1.getTimestamp().compareTo(o2.getTimestamp());
+        }
+    };
+    
+    /**
+     * Orders (short) revisions by their IDs, i.e. from the oldest to the
+     * newest revision of a page.
+     */
+    public final static Comparator<ShortRevision> REV_LIST_ORDER = new Comparator<ShortRevision>() {
+        @Override
+        public int compare(ShortRevision o1, ShortRevision o2) {
+            return (o1.getId() < o2.getId()) ? -1 : ((o1.getId() == o2.getId()) ? 0 : 1);
+        }
+    };
+    
+    /**
+     * Page ID of the first page created in the wiki (IDs below are left for
+     * the pages of imported dumps).
+     * 
+     * @see #getNextPageIdKey()
+     */
+    public final static int FIRST_CREATED_PAGE_ID = 1 << 30;
+    
+    /**
+     * Page ID which all pages created in the wiki got before page IDs were
+     * allocated. Such pages get a new ID when they are edited the next time.
+     * 
+     * @see #FIRST_CREATED_PAGE_ID
+     */
+    public final static int LEGACY_PAGE_ID = 1;
+    
+    /**
+     * Number of page IDs reserved at once by each wiki server.
+     * 
+     * @see #getNextPageIdKey()
+     */
+    public final static int PAGE_ID_BLOCK_SIZE = 100;
+    
+    /**
+     * Order of the entries in the page title index: case-insensitive (like
+     * the page lists shown to the user) with a case-sensitive tie-breaker so
+     * that titles only differing in case are still distinct.
+     */
+    public final static Comparator<String> PAGE_INDEX_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String o1, String o2) {
+            final int result = String.CASE_INSENSITIVE_ORDER.compare(o1, o2);
+            if (result != 0) {
+                return result;
+            }
+            return o1.compareTo(o2);
+        }
+    };
+    
     /**
      * Gets the key to store {@link SiteInfo} objects at.
      * 
@@ -79,6 +174,150 @@ public class ScalarisDataHandler {
         return getPageListKey(namespace) + ":count";
     }
     
+    /**
+     * Gets the key to store the start of the next free block of page IDs at.
+     * 
+     * @return Scalaris key
+     */
+    public final static String getNextPageIdKey() {
+        return "pages:nextid";
+    }
+    
+    /**
+     * Gets the key to store the (serialised) filter of existing pages at.
+     * 
+     * @return Scalaris key
+     * 
+     * @see ExistingPagesFilter
+     */
+    public final static String getExistingPagesFilterKey() {
+        return "pages:filter";
+    }
+    
+    /**
+     * Gets the pub/sub topic new pages are published to.
+     * 
+     * @return pub/sub topic
+     */
+    public final static String getNewPagesTopic() {
+        return "pages:new";
+    }
+    
+    /**
+     * Gets the key to store the (sorted) list of page title index buckets of
+     * the given namespace at.
+     * 
+     * @param namespace  the namespace ID
+     * 
+     * @return Scalaris key
+     */
+    public final static String getPageIndexKey(int namespace) {
+        return getPageListKey(namespace) + ":idx";
+    }
+    
+    /**
+     * Gets the key to store the (sorted) list of pages in the given page title
+     * index bucket at.
+     * 
+     * @param namespace  the namespace ID
+     * @param bucket     the bucket of the page title index
+     * 
+     * @return Scalaris key
+     * 
+     * @see #getPageIndexBucket(String)
+     */
+    public final static String getPageIndexBucketKey(int namespace, String bucket) {
+        return getPageIndexKey(namespace) + ":" + bucket;
+    }
+    
+    /**
+     * Gets the page title index bucket of the given title, i.e. its first
+     * {@link #PAGE_INDEX_BUCKET_LENGTH} characters folded to lower case the
+     * same way {@link String#CASE_INSENSITIVE_ORDER} does. This way, the
+     * natural order of the buckets is consistent with the case-insensitive
+     * order of the titles they contain.
+     * 
+     * @param title  the page title (without the namespace)
+     * 
+     * @return the bucket name
+     */
+    public final static String getPageIndexBucket(String title) {
+        final int end = title.offsetByCodePoints(0,
+                Math.min(PAGE_INDEX_BUCKET_LENGTH, title.codePointCount(0, title.length())));
+        final char[] bucket = title.substring(0, end).toCharArray();
+        for (int i = 0; i < bucket.length; ++i) {
+            bucket[i] = Character.toLowerCase(Character.toUpperCase(bucket[i]));
+        }
+        return new String(bucket);
+    }
+    
+    /**
+     * Groups the given titles by their page title index buckets.
+     * 
+     * @param titles  the (normalised) titles to group
+     * 
+     * @return a map of bucket names to the normalised title strings in them
+     * 
+     * @see #getPageIndexBucket(String)
+     */
+    public final static Map<String, List<String>> groupByPageIndexBucket(
+            Collection<? extends NormalisedTitle> titles) {
+        final Map<String, List<String>> result = new TreeMap<String, List<String>>();
+        for (NormalisedTitle title : titles) {
+            final String bucket = getPageIndexBucket(title.title);
+            List<String> bucketTitles = result.get(bucket);
+            if (bucketTitles == null) {
+                bucketTitles = new ArrayList<String>();
+                result.put(bucket, bucketTitles);
+            }
+            bucketTitles.add(title.toString());
+        }
+        return result;
+    }
+    
+    /**
+     * Adds the operations updating the page title index of the given
+     * namespace to the executor.
+     * 
+     * Note: buckets are never removed from the bucket list since other pages
+     * may still be in them - readers simply skip empty buckets.
+     * 
+     * @param executor
+     *            the executor to add the operations to
+     * @param namespace
+     *            the namespace ID
+     * @param toAdd
+     *            the pages to add to the index
+     * @param toRemove
+     *            the pages to remove from the index
+     */
+    public final static void addPageIndexOps(MyScalarisOpExecWrapper executor,
+            int namespace, Collection<? extends NormalisedTitle> toAdd,
+            Collection<? extends NormalisedTitle> toRemove) {
+        final Map<String, List<String>> bucketsToAdd = groupByPageIndexBucket(toAdd);
+        final Map<String, List<String>> bucketsToRemove = groupByPageIndexBucket(toRemove);
+        for (Map.Entry<String, List<String>> bucket : bucketsToAdd.entrySet()) {
+            List<String> bucketToRemove = bucketsToRemove.remove(bucket.getKey());
+            if (bucketToRemove == null) {
+                bucketToRemove = new ArrayList<String>(0);
+            }
+            executor.addSortedAppendRemove(
+                    getPageIndexBucketKey(namespace, bucket.getKey()),
+                    bucket.getValue(), bucketToRemove, PAGE_INDEX_ORDER, null);
+        }
+        for (Map.Entry<String, List<String>> bucket : bucketsToRemove.entrySet()) {
+            executor.addSortedAppendRemove(
+                    getPageIndexBucketKey(namespace, bucket.getKey()),
+                    new ArrayList<String>(0), bucket.getValue(),
+                    PAGE_INDEX_ORDER, null);
+        }
+        if (!bucketsToAdd.isEmpty()) {
+            executor.addSortedAppendRemove(getPageIndexKey(namespace),
+                    new ArrayList<String>(bucketsToAdd.keySet()),
+                    new ArrayList<String>(0), PAGE_INDEX_ORDER, null);
+        }
+    }
+    
     /**
      * Gets the key to store the number of articles, i.e. pages in the main
      * namespace, at.
@@ -109,6 +348,59 @@ public class ScalarisDataHandler {
     public final static String getContributionListKey(String contributor) {
         return contributor + ":user:contrib";
     }
+    
+    /**
+     * Gets the key to store the number of contributions of a user at (the
+     * head of the segmented contribution list).
+     * 
+     * @param contributor  the user name or IP address of the user who created
+     *                     the revision
+     * 
+     * @return Scalaris key
+     */
+    public final static String getContributionListHeadKey(String contributor) {
+        return getContributionListKey(contributor) + ":head";
+    }
+    
+    /**
+     * Gets the key to store a segment of the contribution list of a user at.
+     * 
+     * @param contributor  the user name or IP address of the user who created
+     *                     the revision
+     * @param segment      the number of the segment (<tt>0</tt> contains the
+     *                     oldest contributions)
+     * 
+     * @return Scalaris key
+     */
+    public final static String getContributionListSegmentKey(String contributor, int segment) {
+        return getContributionListKey(contributor) + ":" + segment;
+    }
+    
+    /**
+     * Groups the given values by the segments they belong to when appended to
+     * a segmented list.
+     * 
+     * @param segmentSize  the number of values in each segment
+     * @param count        the number of values already in the list
+     * @param values       the values to append (in list order)
+     * 
+     * @return a map of segment numbers to the values to append to them
+     */
+    public final static <T> SortedMap<Integer, List<T>> groupBySegment(
+            int segmentSize, int count, List<T> values) {
+        final SortedMap<Integer, List<T>> result = new TreeMap<Integer, List<T>>();
+        for (T value : values) {
+            final int segment = count / segmentSize;
+            List<T> segmentValues = result.get(segment);
+            if (segmentValues == null) {
+                segmentValues = new ArrayList<T>(segmentSize);
+                result.put(segment, segmentValues);
+            }
+            segmentValues.add(value);
+            ++count;
+        }
+        return result;
+    }
 
     /**
      * Retrieves the Scalaris version string.
@@ -183,7 +475,412 @@ public class ScalarisDataHandler {
     }
 
     /**
-     * Retrieves a list of pages linking to the given page from Scalaris.
+     * Retrieves a sorted range of pages in the given namespace from Scalaris
+     * using the page title index, i.e. only reading the buckets covering the
+     * requested range and stopping as soon as enough pages have been found.
+     * 
+     * Titles are compared case-insensitively except for <tt>from</tt> which
+     * uses the order of the index ({@link #PAGE_INDEX_ORDER}) so that
+     * continuing after the last title of a page of results neither skips nor
+     * repeats titles only differing in case. If the index does not exist
+     * (yet), the full page list is read and filtered instead.
+     * 
+     * @param namespace
+     *            the namespace ID
+     * @param prefix
+     *            only return pages starting with this prefix (empty for all
+     *            pages)
+     * @param from
+     *            only return pages after this title (exclusive, empty to
+     *            start with the first page)
+     * @param to
+     *            only return pages up to this title (inclusive, empty to stop
+     *            at the last page)
+     * @param search
+     *            only return pages containing this string (empty for all
+     *            pages)
+     * @param limit
+     *            maximum number of pages to return
+     * @param connection
+     *            the connection to Scalaris
+     * 
+     * @return a result object with the (sorted) page list on success
+     */
+    public final static ValueResult<List<NormalisedTitle>> getPageListRange(
+            int namespace, String prefix, String from, String to,
+            String search, int limit, Connection connection) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "page list range:" + namespace;
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        
+        if (connection == null) {
+            return new ValueResult<List<NormalisedTitle>>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        final String searchLower = search.toLowerCase();
+        
+        final TransactionSingleOp scalaris_single = new TransactionSingleOp(connection);
+        final List<String> buckets;
+        involvedKeys.add(new InvolvedKey(InvolvedKey.OP.READ, getPageIndexKey(namespace)));
+        try {
+            buckets = scalaris_single.read(getPageIndexKey(namespace)).stringListValue();
+        } catch (NotFoundException e) {
+            // no page title index (yet), e.g. old import -> use the page list
+            final ValueResult<List<NormalisedTitle>> result = getPageList2(
+                    connection, ScalarisOpType.PAGE_LIST,
+                    Arrays.asList(getPageListKey(namespace)), false,
+                    timeAtStart, statName);
+            result.involvedKeys.addAll(0, involvedKeys);
+            if (result.success) {
+                final List<NormalisedTitle> pages = new ArrayList<NormalisedTitle>();
+                for (NormalisedTitle page : result.value) {
+                    if (inPageListRange(page.title, prefix, from, to, searchLower)) {
+                        pages.add(page);
+                    }
+                }
+                Collections.sort(pages, new Comparator<NormalisedTitle>() {
+                    @Override
+                    public int compare(NormalisedTitle o1, NormalisedTitle o2) {
+                        return PAGE_INDEX_ORDER.compare(o1.title, o2.title);
+                    }
+                });
+                result.value = pages.subList(0, Math.min(limit, pages.size()));
+            }
+            return result;
+        } catch (Exception e) {
+            return new ValueResult<List<NormalisedTitle>>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading page index at \""
+                            + getPageIndexKey(namespace) + "\" from Scalaris: "
+                            + e.getMessage(), e instanceof ConnectionException,
+                    statName, System.currentTimeMillis() - timeAtStart);
+        }
+
+        // select the buckets covering the requested range:
+        final String prefixBucket = getPageIndexBucket(prefix);
+        final boolean fullPrefixBucket = prefix.codePointCount(0, prefix.length()) >= PAGE_INDEX_BUCKET_LENGTH;
+        final String fromBucket = getPageIndexBucket(from);
+        final String toBucket = getPageIndexBucket(to);
+        final List<String> bucketKeys = new ArrayList<String>();
+        for (String bucket : buckets) {
+            if (fullPrefixBucket ? !bucket.equals(prefixBucket) : !bucket.startsWith(prefixBucket)) {
+                continue;
+            }
+            if (!from.isEmpty() && bucket.compareTo(fromBucket) < 0) {
+                continue;
+            }
+            if (!to.isEmpty() && bucket.compareTo(toBucket) > 0) {
+                break;
+            }
+            bucketKeys.add(getPageIndexBucketKey(namespace, bucket));
+        }
+
+        // read the buckets in order until enough pages have been found:
+        final List<NormalisedTitle> pages = new ArrayList<NormalisedTitle>(Math.min(limit, 1000));
+        final ErlangConverter<List<String>> conv = new ErlangConverter<List<String>>() {
+            @Override
+            public List<String> convert(ErlangValue v) throws ClassCastException {
+                return v.stringListValue();
+            }
+        };
+        for (int i = 0; i < bucketKeys.size() && pages.size() < limit; i += PAGE_INDEX_READ_BATCH) {
+            final MyScalarisSingleOpExecutor executor = new MyScalarisSingleOpExecutor(
+                    scalaris_single, involvedKeys);
+            final ScalarisReadListOp1<String> readOp = new ScalarisReadListOp1<String>(
+                    bucketKeys.subList(i, Math.min(i + PAGE_INDEX_READ_BATCH, bucketKeys.size())),
+                    null, conv, false);
+            executor.addOp(readOp);
+            try {
+                executor.run();
+            } catch (Exception e) {
+                return new ValueResult<List<NormalisedTitle>>(false, involvedKeys,
+                        e.getClass().getCanonicalName() + " reading page index at \""
+                                + involvedKeys.toString() + "\" from Scalaris: "
+                                + e.getMessage(), e instanceof ConnectionException,
+                        statName, System.currentTimeMillis() - timeAtStart);
+            }
+            for (String normTitleStr : readOp.getValue()) {
+                final NormalisedTitle page = NormalisedTitle.fromNormalised(normTitleStr);
+                if (inPageListRange(page.title, prefix, from, to, searchLower)) {
+                    pages.add(page);
+                    if (pages.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+        }
+        return new ValueResult<List<NormalisedTitle>>(involvedKeys, pages,
+                statName, System.currentTimeMillis() - timeAtStart);
+    }
+
+    /**
+     * Searches the full-text index for pages in the given namespace matching
+     * the given query and returns the best <tt>limit</tt> pages.
+     * 
+     * Reads the tiers of the query terms in the order of their impact and
+     * stops as soon as no page outside the best <tt>limit</tt> pages can get
+     * a better score by the tiers not read yet (or after reading
+     * {@link SearchIndex#MAX_POSTINGS_PER_QUERY} postings).
+     * 
+     * @param namespace
+     *            the namespace ID
+     * @param query
+     *            the search query
+     * @param limit
+     *            maximum number of pages to return
+     * @param connection
+     *            the connection to Scalaris
+     * 
+     * @return a result object with the pages (best match first) on success
+     */
+    public final static ValueResult<List<NormalisedTitle>> searchPages(
+            int namespace, String query, int limit, Connection connection) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "search:" + namespace;
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        
+        if (!Options.getInstance().WIKI_USE_SEARCH_INDEX) {
+            return new ValueResult<List<NormalisedTitle>>(involvedKeys,
+                    new ArrayList<NormalisedTitle>(0));
+        }
+        if (connection == null) {
+            return new ValueResult<List<NormalisedTitle>>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        final List<String> terms = SearchIndex.getQueryTerms(query);
+        final TransactionSingleOp scalaris_single = new TransactionSingleOp(connection);
+        
+        try {
+            // get the number of pages and the tier sizes of all shards of all terms:
+            MyScalarisSingleOpExecutor executor = new MyScalarisSingleOpExecutor(
+                    scalaris_single, involvedKeys);
+            final ScalarisReadNumberOp1 pageCountOp = new ScalarisReadNumberOp1(
+                    Arrays.asList(getPageCountKey(namespace)),
+                    Options.getInstance().OPTIMISATIONS.get(ScalarisOpType.PAGE_LIST), false);
+            executor.addOp(pageCountOp);
+            final List<ScalarisReadOp> termOps = new ArrayList<ScalarisReadOp>(
+                    terms.size() * SearchIndex.SHARDS);
+            for (String term : terms) {
+                for (int shard = 0; shard < SearchIndex.SHARDS; ++shard) {
+                    final ScalarisReadOp termOp = new ScalarisReadOp(
+                            SearchIndex.getTermKey(namespace, term, shard));
+                    executor.addOp(termOp);
+                    termOps.add(termOp);
+                }
+            }
+            executor.run();
+            
+            final double pageCount = Math.max(1, pageCountOp.getValue().doubleValue());
+            final List<String> foundTerms = new ArrayList<String>(terms.size());
+            // the shards with postings of each term and tier:
+            final List<List<List<Integer>>> tierShards = new ArrayList<List<List<Integer>>>(terms.size());
+            final List<Double> idfs = new ArrayList<Double>(terms.size());
+            for (int i = 0; i < terms.size(); ++i) {
+                final List<List<Integer>> curTierShards = new ArrayList<List<Integer>>(SearchIndex.TIERS);
+                for (int tier = 0; tier < SearchIndex.TIERS; ++tier) {
+                    curTierShards.add(new ArrayList<Integer>(SearchIndex.SHARDS));
+                }
+                int df = 0;
+                for (int shard = 0; shard < SearchIndex.SHARDS; ++shard) {
+                    final ErlangValue value = termOps.get(i * SearchIndex.SHARDS + shard).getValue();
+                    if (value != null) {
+                        final List<Integer> tierSizes = SearchIndex.toTierSizes(value.longListValue());
+                        for (int tier = 0; tier < SearchIndex.TIERS; ++tier) {
+                            if (tierSizes.get(tier) > 0) {
+                                df += tierSizes.get(tier);
+                                curTierShards.get(tier).add(shard);
+                            }
+                        }
+                    }
+                }
+                if (df > 0) {
+                    foundTerms.add(terms.get(i));
+                    tierShards.add(curTierShards);
+                    idfs.add(Math.log(1.0 + pageCount / df));
+                }
+            }
+            
+            // read the tiers of all terms (best first) until the best pages are known:
+            final int[] nextTier = new int[foundTerms.size()];
+            final double[] maxRemaining = new double[foundTerms.size()];
+            final HashMap<Integer, Double> scores = new HashMap<Integer, Double>();
+            final HashMap<Integer, BitSet> seenTerms = new HashMap<Integer, BitSet>();
+            int readPostings = 0;
+            while (true) {
+                executor = new MyScalarisSingleOpExecutor(scalaris_single, involvedKeys);
+                final List<ScalarisReadOp> tierOps = new ArrayList<ScalarisReadOp>();
+                final List<Integer> tierOpTerms = new ArrayList<Integer>();
+                final List<Integer> tierOpTiers = new ArrayList<Integer>();
+                for (int t = 0; t < foundTerms.size(); ++t) {
+                    while (nextTier[t] < SearchIndex.TIERS && tierShards.get(t).get(nextTier[t]).isEmpty()) {
+                        ++nextTier[t];
+                    }
+                    if (nextTier[t] < SearchIndex.TIERS) {
+                        for (Integer shard : tierShards.get(t).get(nextTier[t])) {
+                            final ScalarisReadOp tierOp = new ScalarisReadOp(
+                                    SearchIndex.getPostingsKey(namespace, foundTerms.get(t), shard, nextTier[t]));
+                            executor.addOp(tierOp);
+                            tierOps.add(tierOp);
+                            tierOpTerms.add(t);
+                            tierOpTiers.add(nextTier[t]);
+                        }
+                        ++nextTier[t];
+                    }
+                }
+                if (tierOps.isEmpty()) {
+                    break;
+                }
+                executor.run();
+                for (int i = 0; i < tierOps.size(); ++i) {
+                    final int t = tierOpTerms.get(i);
+                    final ErlangValue value = tierOps.get(i).getValue();
+                    final SortedSet<Integer> postings = SearchIndex
+                            .decodePostings(value == null ? null : value.binaryValue());
+                    readPostings += postings.size();
+                    final double addScore = SearchIndex.getScore(
+                            SearchIndex.getMinTf(tierOpTiers.get(i)), idfs.get(t));
+                    for (Integer pageId : postings) {
+                        final Double score = scores.get(pageId);
+                        scores.put(pageId, score == null ? addScore : score + addScore);
+                        BitSet seen = seenTerms.get(pageId);
+                        if (seen == null) {
+                            seen = new BitSet(foundTerms.size());
+                            seenTerms.put(pageId, seen);
+                        }
+                        seen.set(t);
+                    }
+                }
+                
+                // maximum score a page can still get from the unread tiers of each term:
+                double maxUnseen = 0.0;
+                for (int t = 0; t < foundTerms.size(); ++t) {
+                    int tier = nextTier[t];
+                    while (tier < SearchIndex.TIERS && tierShards.get(t).get(tier).isEmpty()) {
+                        ++tier;
+                    }
+                    maxRemaining[t] = (tier < SearchIndex.TIERS) ? SearchIndex
+                            .getScore(SearchIndex.getMinTf(tier), idfs.get(t)) : 0.0;
+                    maxUnseen += maxRemaining[t];
+                }
+                if (maxUnseen == 0.0 || readPostings >= SearchIndex.MAX_POSTINGS_PER_QUERY) {
+                    break;
+                }
+                if (scores.size() >= limit) {
+                    final List<Map.Entry<Integer, Double>> best = getBestScores(scores, limit);
+                    final double minBest = best.get(best.size() - 1).getValue();
+                    boolean done = maxUnseen <= minBest;
+                    if (done) {
+                        final HashSet<Integer> bestIds = new HashSet<Integer>(limit);
+                        for (Map.Entry<Integer, Double> entry : best) {
+                            bestIds.add(entry.getKey());
+                        }
+                        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                            if (bestIds.contains(entry.getKey())) {
+                                continue;
+                            }
+                            double maxScore = entry.getValue();
+                            final BitSet seen = seenTerms.get(entry.getKey());
+                            for (int t = 0; t < foundTerms.size(); ++t) {
+                                if (!seen.get(t)) {
+                                    maxScore += maxRemaining[t];
+                                }
+                            }
+                            if (maxScore > minBest) {
+                                done = false;
+                                break;
+                            }
+                        }
+                    }
+                    if (done) {
+                        break;
+                    }
+                }
+            }
+            
+            // get the titles of the best pages:
+            final List<Map.Entry<Integer, Double>> best = getBestScores(scores, limit);
+            executor = new MyScalarisSingleOpExecutor(scalaris_single, involvedKeys);
+            final List<ScalarisReadOp> docOps = new ArrayList<ScalarisReadOp>(best.size());
+            for (Map.Entry<Integer, Double> entry : best) {
+                final ScalarisReadOp docOp = new ScalarisReadOp(SearchIndex.getDocKey(entry.getKey()));
+                executor.addOp(docOp);
+                docOps.add(docOp);
+            }
+            executor.run();
+            final List<NormalisedTitle> pages = new ArrayList<NormalisedTitle>(best.size());
+            for (ScalarisReadOp docOp : docOps) {
+                if (docOp.getValue() != null) {
+                    pages.add(NormalisedTitle.fromNormalised(docOp.getValue().stringValue()));
+                }
+            }
+            return new ValueResult<List<NormalisedTitle>>(involvedKeys, pages,
+                    statName, System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new ValueResult<List<NormalisedTitle>>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " searching \"" + query
+                            + "\" in Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+    }
+
+    /**
+     * Gets the pages with the best scores.
+     * 
+     * @param scores
+     *            page IDs mapped to their scores
+     * @param limit
+     *            maximum number of pages to return
+     * 
+     * @return the best pages and their scores (best first, ties broken by
+     *         page ID)
+     */
+    private static List<Map.Entry<Integer, Double>> getBestScores(
+            Map<Integer, Double> scores, int limit) {
+        final List<Map.Entry<Integer, Double>> entries =
+                new ArrayList<Map.Entry<Integer, Double>>(scores.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Integer, Double>>() {
+            @Override
+            public int compare(Map.Entry<Integer, Double> o1, Map.Entry<Integer, Double> o2) {
+                final int result = o2.getValue().compareTo(o1.getValue());
+                if (result != 0) {
+                    return result;
+                }
+                return o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    /**
+     * Checks whether the given title is in the range requested by
+     * {@link #getPageListRange(int, String, String, String, String, int, Connection)}.
+     * 
+     * @param title
+     *            the page title (without the namespace)
+     * @param prefix
+     *            prefix the title needs to start with
+     * @param from
+     *            title to start after (exclusive, in
+     *            {@link #PAGE_INDEX_ORDER})
+     * @param to
+     *            title to stop at (inclusive, case-insensitive)
+     * @param searchLower
+     *            lower-case string the title needs to contain
+     * 
+     * @return whether the title is in the range or not
+     */
+    private static boolean inPageListRange(String title, String prefix,
+            String from, String to, String searchLower) {
+        return title.regionMatches(true, 0, prefix, 0, prefix.length())
+                && (from.isEmpty() || PAGE_INDEX_ORDER.compare(title, from) > 0)
+                && (to.isEmpty() || title.compareToIgnoreCase(to) <= 0)
+                && (searchLower.isEmpty() || title.toLowerCase().contains(searchLower));
+    }
+
+    /**
+     * Retrieves the list of contributions of the given user from Scalaris.
      * 
      * @param connection
      *            the connection to Scalaris
@@ -191,31 +888,128 @@ public class ScalarisDataHandler {
      *            the user name or IP address of the user who created the
      *            revision
      * 
-     * @return a result object with the page list on success
+     * @return a result object with the contributions (newest first) on
+     *         success
      */
     public final static ValueResult<List<Contribution>> getContributions(
             Connection connection, String contributor) {
+        return getContributions(connection, contributor, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves a part of the list of contributions of the given user from
+     * Scalaris, i.e. only reads the segments of the contribution list
+     * covering the requested contributions.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param contributor
+     *            the user name or IP address of the user who created the
+     *            revision
+     * @param offset
+     *            continuation token, i.e. the number of (newer) contributions
+     *            to skip
+     * @param limit
+     *            maximum number of contributions to return
+     * 
+     * @return a result object with the contributions (newest first) on
+     *         success
+     */
+    public final static ValueResult<List<Contribution>> getContributions(
+            Connection connection, String contributor, int offset, int limit) {
         final long timeAtStart = System.currentTimeMillis();
         final String statName = "contributions of " + contributor;
-        if (Options.getInstance().WIKI_STORE_CONTRIBUTIONS != STORE_CONTRIB_TYPE.NONE) {
-            ValueResult<List<Contribution>> result = getPageList3(connection,
+        if (Options.getInstance().WIKI_STORE_CONTRIBUTIONS == STORE_CONTRIB_TYPE.NONE) {
+            return new ValueResult<List<Contribution>>(
+                    new ArrayList<InvolvedKey>(0), new ArrayList<Contribution>(0));
+        }
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        if (connection == null) {
+            return new ValueResult<List<Contribution>>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        final ErlangConverter<List<Contribution>> conv = new ErlangConverter<List<Contribution>>() {
+            @Override
+            public List<Contribution> convert(ErlangValue v)
+                    throws ClassCastException {
+                return v.jsonListValue(Contribution.class);
+            }
+        };
+        
+        final TransactionSingleOp scalaris_single = new TransactionSingleOp(connection);
+        final String headKey = getContributionListHeadKey(contributor);
+        int count;
+        involvedKeys.add(new InvolvedKey(InvolvedKey.OP.READ, headKey));
+        try {
+            count = scalaris_single.read(headKey).intValue();
+        } catch (NotFoundException e) {
+            // no segmented contribution list (yet) -> use the full list
+            final ValueResult<List<Contribution>> result = getPageList3(connection,
                     ScalarisOpType.CONTRIBUTION,
                     Arrays.asList(getContributionListKey(contributor)), false,
-                    timeAtStart, statName, new ErlangConverter<List<Contribution>>() {
-                        @Override
-                        public List<Contribution> convert(ErlangValue v)
-                                throws ClassCastException {
-                            return v.jsonListValue(Contribution.class);
-                        }
-                    });
-            if (result.success && result.value == null) {
-                result.value = new ArrayList<Contribution>(0);
+                    timeAtStart, statName, conv);
+            result.involvedKeys.addAll(0, involvedKeys);
+            if (result.success) {
+                List<Contribution> contributions = result.value;
+                if (contributions == null) {
+                    contributions = new ArrayList<Contribution>(0);
+                }
+                Collections.sort(contributions, CONTRIBUTION_LIST_ORDER);
+                count = contributions.size();
+                final int end = (int) Math.max(0L, Math.min(count, (long) count - offset));
+                final int first = (int) Math.max(0L, (long) end - limit);
+                result.value = new ArrayList<Contribution>(contributions.subList(first, end));
+                Collections.reverse(result.value);
             }
             return result;
-        } else {
-            return new ValueResult<List<Contribution>>(
-                    new ArrayList<InvolvedKey>(0), new ArrayList<Contribution>(0));
+        } catch (Exception e) {
+            return new ValueResult<List<Contribution>>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading \"" + headKey
+                            + "\" from Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
+        // window of contribution positions [first, end) (oldest first)
+        final int end = (int) Math.max(0L, Math.min(count, (long) count - offset));
+        final int first = (int) Math.max(0L, (long) end - limit);
+        if (end == 0) {
+            return new ValueResult<List<Contribution>>(involvedKeys,
+                    new ArrayList<Contribution>(0), statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        final int firstSegment = first / CONTRIBUTION_LIST_SEGMENT_SIZE;
+        final int lastSegment = (end - 1) / CONTRIBUTION_LIST_SEGMENT_SIZE;
+        final List<String> segmentKeys = new ArrayList<String>(lastSegment - firstSegment + 1);
+        for (int i = firstSegment; i <= lastSegment; ++i) {
+            segmentKeys.add(getContributionListSegmentKey(contributor, i));
+        }
+        final MyScalarisSingleOpExecutor executor = new MyScalarisSingleOpExecutor(
+                scalaris_single, involvedKeys);
+        final ScalarisReadListOp1<Contribution> readOp = new ScalarisReadListOp1<Contribution>(
+                segmentKeys, Options.getInstance().OPTIMISATIONS.get(ScalarisOpType.CONTRIBUTION),
+                conv, false);
+        executor.addOp(readOp);
+        try {
+            executor.run();
+        } catch (Exception e) {
+            return new ValueResult<List<Contribution>>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading the contributions of \""
+                            + contributor + "\" from Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
         }
+        // segments may be split into buckets -> (re-)order by time stamp
+        final List<Contribution> contributions = readOp.getValue();
+        Collections.sort(contributions, CONTRIBUTION_LIST_ORDER);
+        final int segmentStart = firstSegment * CONTRIBUTION_LIST_SEGMENT_SIZE;
+        final List<Contribution> result = new ArrayList<Contribution>(contributions.subList(
+                Math.min(contributions.size(), first - segmentStart),
+                Math.min(contributions.size(), end - segmentStart)));
+        Collections.reverse(result);
+        return new ValueResult<List<Contribution>>(involvedKeys, result,
+                statName, System.currentTimeMillis() - timeAtStart);
     }
 
     /**
@@ -260,6 +1054,126 @@ public class ScalarisDataHandler {
         return result;
     }
 
+    /**
+     * Retrieves a part of a bucketed page list from Scalaris, i.e. only
+     * reads the buckets behind the given title and stops as soon as enough
+     * pages have been found.
+     *
+     * If the page list is not bucketed (yet), the full page list is read and
+     * cut instead.
+     *
+     * @param connection
+     *            the connection to Scalaris
+     * @param opType
+     *            operation type indicating what is being read
+     * @param scalaris_key
+     *            the key of the page list
+     * @param from
+     *            continuation token, i.e. the last page of the previous part
+     *            (exclusive, <tt>null</tt> to start with the first page)
+     * @param limit
+     *            maximum number of pages to return
+     * @param timeAtStart
+     *            the start time of the method using this method
+     * @param statName
+     *            name for the time measurement statistics
+     *
+     * @return a result object with the (sorted) page list on success
+     *
+     * @see BucketedPageList
+     */
+    protected final static ValueResult<List<NormalisedTitle>> getBucketedPageList(
+            Connection connection, ScalarisOpType opType, String scalaris_key,
+            NormalisedTitle from, int limit, final long timeAtStart,
+            String statName) {
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        if (connection == null) {
+            return new ValueResult<List<NormalisedTitle>>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        final String fromStr = (from == null) ? null : from.toString();
+
+        final TransactionSingleOp scalaris_single = new TransactionSingleOp(connection);
+        final String indexKey = BucketedPageList.getIndexKey(scalaris_key);
+        final List<String> buckets;
+        involvedKeys.add(new InvolvedKey(InvolvedKey.OP.READ, indexKey));
+        try {
+            buckets = scalaris_single.read(indexKey).stringListValue();
+        } catch (NotFoundException e) {
+            // not bucketed (yet) -> use the full page list
+            final ValueResult<List<NormalisedTitle>> result = getPageList2(
+                    connection, opType, Arrays.asList(scalaris_key), false,
+                    timeAtStart, statName);
+            result.involvedKeys.addAll(0, involvedKeys);
+            if (result.success) {
+                final List<String> pages = new ArrayList<String>(result.value.size());
+                for (NormalisedTitle page : result.value) {
+                    pages.add(page.toString());
+                }
+                Collections.sort(pages, PAGE_INDEX_ORDER);
+                final List<NormalisedTitle> pages2 = new ArrayList<NormalisedTitle>(Math.min(limit, pages.size()));
+                for (String page : pages) {
+                    if (fromStr == null || PAGE_INDEX_ORDER.compare(page, fromStr) > 0) {
+                        pages2.add(NormalisedTitle.fromNormalised(page));
+                        if (pages2.size() >= limit) {
+                            break;
+                        }
+                    }
+                }
+                result.value = pages2;
+            }
+            return result;
+        } catch (Exception e) {
+            return new ValueResult<List<NormalisedTitle>>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading page list index at \""
+                            + indexKey + "\" from Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+
+        // read the buckets behind the continuation token in order until
+        // enough pages have been found:
+        final List<String> bucketKeys = new ArrayList<String>();
+        for (String bucket : BucketedPageList.getBucketsFrom(buckets, fromStr)) {
+            bucketKeys.add(BucketedPageList.getBucketKey(scalaris_key, bucket));
+        }
+        final List<NormalisedTitle> pages = new ArrayList<NormalisedTitle>(Math.min(limit, 1000));
+        final ErlangConverter<List<String>> conv = new ErlangConverter<List<String>>() {
+            @Override
+            public List<String> convert(ErlangValue v) throws ClassCastException {
+                return v.stringListValue();
+            }
+        };
+        for (int i = 0; i < bucketKeys.size() && pages.size() < limit; i += BucketedPageList.READ_BATCH) {
+            final MyScalarisSingleOpExecutor executor = new MyScalarisSingleOpExecutor(
+                    scalaris_single, involvedKeys);
+            final ScalarisReadListOp1<String> readOp = new ScalarisReadListOp1<String>(
+                    bucketKeys.subList(i, Math.min(i + BucketedPageList.READ_BATCH, bucketKeys.size())),
+                    null, conv, false);
+            executor.addOp(readOp);
+            try {
+                executor.run();
+            } catch (Exception e) {
+                return new ValueResult<List<NormalisedTitle>>(false, involvedKeys,
+                        e.getClass().getCanonicalName() + " reading page list buckets of \""
+                                + scalaris_key + "\" from Scalaris: "
+                                + e.getMessage(), e instanceof ConnectionException,
+                        statName, System.currentTimeMillis() - timeAtStart);
+            }
+            for (String page : readOp.getValue()) {
+                if (fromStr == null || PAGE_INDEX_ORDER.compare(page, fromStr) > 0) {
+                    pages.add(NormalisedTitle.fromNormalised(page));
+                    if (pages.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+        }
+        return new ValueResult<List<NormalisedTitle>>(involvedKeys, pages,
+                statName, System.currentTimeMillis() - timeAtStart);
+    }
+
     /**
      * Retrieves a list of pages from Scalaris.
      * @param <T>
@@ -330,6 +1244,87 @@ public class ScalarisDataHandler {
                 false, timeAtStart, "page count");
     }
 
+    /**
+     * Retrieves the (last stored) filter of existing pages from Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * 
+     * @return a result object with the filter on success (<tt>null</tt> if
+     *         there is no (valid) stored filter)
+     */
+    public final static ValueResult<ExistingPagesFilter> getExistingPagesFilter(
+            Connection connection) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "existing pages filter";
+        final String scalaris_key = getExistingPagesFilterKey();
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        if (connection == null) {
+            return new ValueResult<ExistingPagesFilter>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
+        TransactionSingleOp scalaris_single = new TransactionSingleOp(connection);
+        try {
+            involvedKeys.add(new InvolvedKey(InvolvedKey.OP.READ, scalaris_key));
+            ExistingPagesFilter filter;
+            try {
+                filter = ExistingPagesFilter.fromBytes(scalaris_single.read(scalaris_key).binaryValue());
+            } catch (NotFoundException e) {
+                filter = null;
+            } catch (IllegalArgumentException e) {
+                // stored with an incompatible version
+                filter = null;
+            }
+            return new ValueResult<ExistingPagesFilter>(involvedKeys, filter,
+                    statName, System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new ValueResult<ExistingPagesFilter>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading \"" + scalaris_key
+                            + "\" from Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+    }
+
+    /**
+     * Stores the filter of existing pages in Scalaris.
+     * 
+     * @param filter
+     *            the filter to store
+     * @param connection
+     *            the connection to Scalaris
+     * 
+     * @return the result of the operation
+     */
+    public final static ValueResult<Integer> storeExistingPagesFilter(
+            ExistingPagesFilter filter, Connection connection) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "existing pages filter";
+        final String scalaris_key = getExistingPagesFilterKey();
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        if (connection == null) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
+        TransactionSingleOp scalaris_single = new TransactionSingleOp(connection);
+        try {
+            involvedKeys.add(new InvolvedKey(InvolvedKey.OP.WRITE, scalaris_key));
+            scalaris_single.write(scalaris_key, filter.toBytes());
+            return new ValueResult<Integer>(involvedKeys, null, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " writing \"" + scalaris_key
+                            + "\" to Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+    }
+
     /**
      * Retrieves the number of available pages in the given namespace from
      * Scalaris.
@@ -381,17 +1376,28 @@ public class ScalarisDataHandler {
     /**
      * Retrieves a random page title from Scalaris.
      * 
+     * Uses the dense article index if it is complete, i.e. its count matches
+     * the article count, otherwise falls back to the list of pages.
+     * 
      * @param connection
      *            the connection to Scalaris
      * @param random
      *            the random number generator to use
      * 
      * @return a result object with the page list on success
+     * 
+     * @see ArticleIndex
      */
     public final static ValueResult<NormalisedTitle> getRandomArticle(Connection connection, Random random) {
         final long timeAtStart = System.currentTimeMillis();
         final String statName = "random article";
         
+        final ValueResult<NormalisedTitle> indexResult = getRandomArticleFromIndex(
+                connection, random, timeAtStart, statName);
+        if (!indexResult.success || indexResult.value != null) {
+            return indexResult;
+        }
+        
         final Optimisation optimisation = Options.getInstance().OPTIMISATIONS.get(ScalarisOpType.PAGE_LIST);
         final ErlangConverter<List<ErlangValue>> conv = new ErlangConverter<List<ErlangValue>>() {
             @Override
@@ -455,6 +1461,100 @@ public class ScalarisDataHandler {
         return vResult;
     }
 
+    /**
+     * Retrieves a random article title from the dense article index.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param random
+     *            the random number generator to use
+     * @param timeAtStart
+     *            the start time of the method using this method
+     * @param statName
+     *            name for the time measurement statistics
+     * 
+     * @return a result object with the page title on success, a successful
+     *         result with a <tt>null</tt> value if the index is not usable
+     */
+    private final static ValueResult<NormalisedTitle> getRandomArticleFromIndex(
+            Connection connection, Random random, final long timeAtStart,
+            final String statName) {
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        
+        if (connection == null) {
+            return new ValueResult<NormalisedTitle>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
+        final TransactionSingleOp scalaris_single = new TransactionSingleOp(connection);
+        
+        // 1) read the number of articles and the number of indexed articles
+        MyScalarisSingleOpExecutor executor = new MyScalarisSingleOpExecutor(
+                scalaris_single, involvedKeys);
+        final ScalarisReadNumberOp1 articleCountOp = new ScalarisReadNumberOp1(
+                Arrays.asList(getArticleCountKey()),
+                Options.getInstance().OPTIMISATIONS.get(ScalarisOpType.ARTICLE_COUNT),
+                false);
+        executor.addOp(articleCountOp);
+        final ScalarisReadOp indexCountOp = new ScalarisReadOp(ArticleIndex.getCountKey());
+        executor.addOp(indexCountOp);
+        try {
+            executor.run();
+        } catch (Exception e) {
+            return new ValueResult<NormalisedTitle>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading \""
+                            + ArticleIndex.getCountKey() + "\" from Scalaris: "
+                            + e.getMessage(), e instanceof ConnectionException,
+                    statName, System.currentTimeMillis() - timeAtStart);
+        }
+        final int count;
+        try {
+            count = indexCountOp.getValue() == null ? 0 : indexCountOp.getValue().intValue();
+        } catch (ClassCastException e) {
+            return new ValueResult<NormalisedTitle>(involvedKeys, null);
+        }
+        if (count <= 0 || !articleCountOp.getValue().equals(BigInteger.valueOf(count))) {
+            // index not (completely) built
+            return new ValueResult<NormalisedTitle>(involvedKeys, null);
+        }
+        
+        // 2) read the chunk with a random article
+        final int pos = random.nextInt(count);
+        executor = new MyScalarisSingleOpExecutor(scalaris_single, involvedKeys);
+        final ScalarisReadOp chunkOp = new ScalarisReadOp(
+                ArticleIndex.getChunkKey(ArticleIndex.getChunk(pos)));
+        executor.addOp(chunkOp);
+        try {
+            executor.run();
+        } catch (Exception e) {
+            return new ValueResult<NormalisedTitle>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading \""
+                            + ArticleIndex.getChunkKey(ArticleIndex.getChunk(pos))
+                            + "\" from Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        String title = null;
+        try {
+            if (chunkOp.getValue() != null) {
+                final List<String> chunk = chunkOp.getValue().stringListValue();
+                final int index = pos % ArticleIndex.CHUNK_SIZE;
+                if (index < chunk.size() && !chunk.get(index).isEmpty()) {
+                    title = chunk.get(index);
+                }
+            }
+        } catch (ClassCastException e) {
+            title = null;
+        }
+        if (title == null) {
+            return new ValueResult<NormalisedTitle>(involvedKeys, null);
+        }
+        return new ValueResult<NormalisedTitle>(involvedKeys,
+                NormalisedTitle.fromNormalised(title), statName,
+                System.currentTimeMillis() - timeAtStart);
+    }
+
     /**
      * Retrieves an integral number from Scalaris.
      * 
@@ -19,17 +19,23 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 
+import de.zib.scalaris.AbortException;
 import de.zib.scalaris.Connection;
 import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.ErlangValue;
 import de.zib.scalaris.NotFoundException;
 import de.zib.scalaris.Transaction;
 import de.zib.scalaris.TransactionSingleOp;
 import de.zib.scalaris.examples.wikipedia.InvolvedKey.OP;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.PageMetadata;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
 import de.zib.scalaris.executor.ScalarisOp;
@@ -65,16 +71,72 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
     }
     
     /**
-     * Gets the key to store the list of revisions of a page at.
+     * Gets the key to store the {@link PageMetadata} of a page at.
      * 
      * @param title     the title of the page
      * 
      * @return Scalaris key
      */
+    public final static String getPageMetadataKey(NormalisedTitle title) {
+        return title + ":meta";
+    }
+    
+    /**
+     * Gets the key to store the (unsegmented) list of revisions of a page at.
+     * 
+     * Note: this list is only read for pages which do not have a segmented
+     * revision list yet.
+     * 
+     * @param title     the title of the page
+     * 
+     * @return Scalaris key
+     * 
+     * @see #getRevListHeadKey(NormalisedTitle)
+     */
     public final static String getRevListKey(NormalisedTitle title) {
         return title + ":revs";
     }
     
+    /**
+     * Gets the key to store the head of the segmented revision list of a page
+     * at, i.e. the number of its revisions. The newest revisions are in
+     * segment <tt>(head - 1) / </tt>{@link #REV_LIST_SEGMENT_SIZE}.
+     * 
+     * @param title     the title of the page
+     * 
+     * @return Scalaris key
+     */
+    public final static String getRevListHeadKey(NormalisedTitle title) {
+        return getRevListKey(title) + ":head";
+    }
+    
+    /**
+     * Gets the key to store a segment of the revision list of a page at.
+     * 
+     * @param title     the title of the page
+     * @param segment   the number of the segment (<tt>0</tt> contains the
+     *                  oldest revisions)
+     * 
+     * @return Scalaris key
+     */
+    public final static String getRevListSegmentKey(NormalisedTitle title, int segment) {
+        return getRevListKey(title) + ":" + segment;
+    }
+    
+    /**
+     * Groups the given (short) revisions by the revision list segments they
+     * belong to when appended to a revision list.
+     * 
+     * @param count      the number of revisions already in the list
+     * @param revisions  the revisions to append (oldest first)
+     * 
+     * @return a map of segment numbers to the revisions to append to them
+     */
+    public final static SortedMap<Integer, List<ShortRevision>> groupByRevListSegment(
+            int count, List<ShortRevision> revisions) {
+        return groupBySegment(REV_LIST_SEGMENT_SIZE, count, revisions);
+    }
+    
     /**
      * Gets the key to store the list of pages belonging to a category at.
      * 
@@ -120,7 +182,7 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
     }
     
     /**
-     * Retrieves a page's history from Scalaris.
+     * Retrieves a page's (complete) history from Scalaris.
      * 
      * @param connection
      *            the connection to Scalaris
@@ -131,6 +193,27 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
      */
     public static PageHistoryResult getPageHistory(Connection connection,
             NormalisedTitle title) {
+        return getPageHistory(connection, title, 0, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Retrieves a window of a page's history from Scalaris. Only the segments
+     * of the revision list covering the window are read.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the page
+     * @param offset
+     *            number of (newest) revisions to skip
+     * @param limit
+     *            maximum number of revisions to retrieve
+     * 
+     * @return a result object with the page history (newest revision first)
+     *         on success
+     */
+    public static PageHistoryResult getPageHistory(Connection connection,
+            NormalisedTitle title, int offset, int limit) {
         final long timeAtStart = System.currentTimeMillis();
         final String statName = "history of " + title;
         List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
@@ -142,7 +225,7 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
         TransactionSingleOp scalaris_single = new TransactionSingleOp(connection);
         TransactionSingleOp.RequestList requests = new TransactionSingleOp.RequestList();
         requests.addOp(new ReadOp(getPageKey(title)));
-        requests.addOp(new ReadOp(getRevListKey(title)));
+        requests.addOp(new ReadOp(getRevListHeadKey(title)));
         
         TransactionSingleOp.ResultList results;
         try {
@@ -151,7 +234,7 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
         } catch (Exception e) {
             return new PageHistoryResult(false, involvedKeys,
                     e.getClass().getCanonicalName() + " reading \"" + getPageKey(title)
-                            + "\" or \"" + getRevListKey(title)
+                            + "\" or \"" + getRevListHeadKey(title)
                             + "\" from Scalaris: " + e.getMessage(),
                     e instanceof ConnectionException, statName,
                     System.currentTimeMillis() - timeAtStart);
@@ -175,9 +258,69 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
                     System.currentTimeMillis() - timeAtStart);
         }
 
+        int count;
+        try {
+            count = results.processReadAt(1).intValue();
+        } catch (NotFoundException e) {
+            // no segmented revision list yet
+            count = -1;
+        } catch (Exception e) {
+            return new PageHistoryResult(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading \"" + getRevListHeadKey(title)
+                            + "\" from Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
         List<ShortRevision> revisions;
         try {
-            revisions = results.processReadAt(1).jsonListValue(ShortRevision.class);
+            if (count >= 0) {
+                // window of revision positions [first, end) (oldest first)
+                final int end = (int) Math.max(0L, Math.min(count, (long) count - offset));
+                final int first = (int) Math.max(0L, (long) end - limit);
+                if (end == 0) {
+                    return new PageHistoryResult(involvedKeys, page,
+                            new ArrayList<ShortRevision>(0), count, statName,
+                            System.currentTimeMillis() - timeAtStart);
+                }
+                final int firstSegment = first / REV_LIST_SEGMENT_SIZE;
+                final int lastSegment = (end - 1) / REV_LIST_SEGMENT_SIZE;
+                final List<String> segmentKeys = new ArrayList<String>(lastSegment - firstSegment + 1);
+                for (int i = firstSegment; i <= lastSegment; ++i) {
+                    segmentKeys.add(getRevListSegmentKey(title, i));
+                }
+                final MyScalarisSingleOpExecutor executor = new MyScalarisSingleOpExecutor(
+                        scalaris_single, involvedKeys);
+                final ScalarisReadListOp1<ShortRevision> readOp = new ScalarisReadListOp1<ShortRevision>(
+                        segmentKeys, Options.getInstance().OPTIMISATIONS.get(ScalarisOpType.SHORTREV_LIST),
+                        new ErlangConverter<List<ShortRevision>>() {
+                            @Override
+                            public List<ShortRevision> convert(ErlangValue v)
+                                    throws ClassCastException {
+                                return v.jsonListValue(ShortRevision.class);
+                            }
+                        }, false);
+                executor.addOp(readOp);
+                executor.run();
+                // segments may be split into buckets -> (re-)order by ID
+                revisions = readOp.getValue();
+                Collections.sort(revisions, REV_LIST_ORDER);
+                final int segmentStart = firstSegment * REV_LIST_SEGMENT_SIZE;
+                revisions = new ArrayList<ShortRevision>(revisions.subList(
+                        Math.min(revisions.size(), first - segmentStart),
+                        Math.min(revisions.size(), end - segmentStart)));
+            } else {
+                requests = new TransactionSingleOp.RequestList();
+                requests.addOp(new ReadOp(getRevListKey(title)));
+                addInvolvedKeys(involvedKeys, requests.getRequests());
+                results = scalaris_single.req_list(requests);
+                revisions = results.processReadAt(0).jsonListValue(ShortRevision.class);
+                count = revisions.size();
+                Collections.sort(revisions, REV_LIST_ORDER);
+                final int end = (int) Math.max(0L, Math.min(count, (long) count - offset));
+                final int first = (int) Math.max(0L, (long) end - limit);
+                revisions = new ArrayList<ShortRevision>(revisions.subList(first, end));
+            }
         } catch (NotFoundException e) {
             PageHistoryResult result = new PageHistoryResult(false,
                     involvedKeys, "revision list \"" + getRevListKey(title)
@@ -187,12 +330,13 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
             return result;
         } catch (Exception e) {
             return new PageHistoryResult(false, involvedKeys,
-                    e.getClass().getCanonicalName() + " reading \"" + getRevListKey(title)
+                    e.getClass().getCanonicalName() + " reading the revision list of \"" + title
                             + "\" from Scalaris: " + e.getMessage(),
                     e instanceof ConnectionException, statName,
                     System.currentTimeMillis() - timeAtStart);
         }
-        return new PageHistoryResult(involvedKeys, page, revisions, statName,
+        Collections.reverse(revisions);
+        return new PageHistoryResult(involvedKeys, page, revisions, count, statName,
                 System.currentTimeMillis() - timeAtStart);
     }
 
@@ -359,10 +503,31 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
      */
     public static ValueResult<List<NormalisedTitle>> getPagesInCategory(Connection connection,
             NormalisedTitle title) {
+        return getPagesInCategory(connection, title, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves a part of the list of pages in the given category from
+     * Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the category
+     * @param from
+     *            continuation token, i.e. the last page of the previous part
+     *            (exclusive, <tt>null</tt> to start with the first page)
+     * @param limit
+     *            maximum number of pages to return
+     * 
+     * @return a result object with the (sorted) page list on success
+     */
+    public static ValueResult<List<NormalisedTitle>> getPagesInCategory(Connection connection,
+            NormalisedTitle title, NormalisedTitle from, int limit) {
         final long timeAtStart = System.currentTimeMillis();
-        return getPageList2(connection, ScalarisOpType.CATEGORY_PAGE_LIST,
-                Arrays.asList(getCatPageListKey(title)), false,
-                timeAtStart, "pages in " + title);
+        return getBucketedPageList(connection, ScalarisOpType.CATEGORY_PAGE_LIST,
+                getCatPageListKey(title), from, limit, timeAtStart,
+                "pages in " + title);
     }
 
     /**
@@ -395,12 +560,33 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
      */
     public static ValueResult<List<NormalisedTitle>> getPagesLinkingTo(Connection connection,
             NormalisedTitle title) {
+        return getPagesLinkingTo(connection, title, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves a part of the list of pages linking to the given page from
+     * Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the page
+     * @param from
+     *            continuation token, i.e. the last page of the previous part
+     *            (exclusive, <tt>null</tt> to start with the first page)
+     * @param limit
+     *            maximum number of pages to return
+     * 
+     * @return a result object with the (sorted) page list on success
+     */
+    public static ValueResult<List<NormalisedTitle>> getPagesLinkingTo(Connection connection,
+            NormalisedTitle title, NormalisedTitle from, int limit) {
         final long timeAtStart = System.currentTimeMillis();
         final String statName = "links to " + title;
         if (Options.getInstance().WIKI_USE_BACKLINKS) {
-            return getPageList2(connection, ScalarisOpType.BACKLINK_PAGE_LIST,
-                    Arrays.asList(getBackLinksPageListKey(title)),
-                    false, timeAtStart, statName);
+            return getBucketedPageList(connection, ScalarisOpType.BACKLINK_PAGE_LIST,
+                    getBackLinksPageListKey(title), from, limit, timeAtStart,
+                    statName);
         } else {
             return new ValueResult<List<NormalisedTitle>>(new ArrayList<InvolvedKey>(0),
                     new ArrayList<NormalisedTitle>(0));
@@ -460,9 +646,15 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
             MyScalarisOpExecWrapper executor = new MyScalarisOpExecWrapper(
                     executor0);
 
-            executor.addAppendRemove(opType, pageList_key,
-                    normList2normStringList(entriesToAdd),
-                    normList2normStringList(entriesToRemove), pageCount_key);
+            if (BucketedPageList.isBucketed(opType)) {
+                executor.addBucketedAppendRemove(opType, pageList_key,
+                        normList2normStringList(entriesToAdd),
+                        normList2normStringList(entriesToRemove), pageCount_key);
+            } else {
+                executor.addAppendRemove(opType, pageList_key,
+                        normList2normStringList(entriesToAdd),
+                        normList2normStringList(entriesToRemove), pageCount_key);
+            }
             
             executor.getExecutor().run();
             return new ValueResult<Integer>(involvedKeys, null, statName,
@@ -476,6 +668,152 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
         }
     }
 
+    /**
+     * Updates the page title index of the given namespace by adding and
+     * removing the given pages.
+     * 
+     * @param scalaris_tx
+     *            transaction object to use
+     * @param namespace
+     *            the namespace ID
+     * @param entriesToAdd
+     *            pages to add to the index
+     * @param entriesToRemove
+     *            pages to remove from the index
+     * @param statName
+     *            name for the time measurement statistics
+     * 
+     * @return the result of the operation
+     */
+    public static ValueResult<Integer> updatePageIndex(Transaction scalaris_tx,
+            int namespace, List<NormalisedTitle> entriesToAdd,
+            List<NormalisedTitle> entriesToRemove, final String statName) {
+        final long timeAtStart = System.currentTimeMillis();
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+
+        try {
+            final MyScalarisTxOpExecutor executor0 = new MyScalarisTxOpExecutor(
+                    scalaris_tx, involvedKeys);
+            executor0.setCommitLast(true);
+            MyScalarisOpExecWrapper executor = new MyScalarisOpExecWrapper(
+                    executor0);
+
+            addPageIndexOps(executor, namespace, entriesToAdd, entriesToRemove);
+            
+            executor.getExecutor().run();
+            return new ValueResult<Integer>(involvedKeys, null, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " updating \""
+                            + getPageIndexKey(namespace) + "\" in Scalaris: "
+                            + e.getMessage(), e instanceof ConnectionException,
+                    statName, System.currentTimeMillis() - timeAtStart);
+        }
+    }
+
+    /**
+     * Updates the dense article index by adding and removing the given
+     * articles.
+     * 
+     * @param scalaris_tx
+     *            transaction object to use
+     * @param entriesToAdd
+     *            articles to add to the index
+     * @param entriesToRemove
+     *            articles to remove from the index
+     * @param statName
+     *            name for the time measurement statistics
+     * 
+     * @return the result of the operation
+     */
+    public static ValueResult<Integer> updateArticleIndex(Transaction scalaris_tx,
+            List<NormalisedTitle> entriesToAdd,
+            List<NormalisedTitle> entriesToRemove, final String statName) {
+        final long timeAtStart = System.currentTimeMillis();
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+
+        try {
+            final MyScalarisTxOpExecutor executor = new MyScalarisTxOpExecutor(
+                    scalaris_tx, involvedKeys);
+            executor.setCommitLast(true);
+
+            executor.addOp(new ScalarisArticleIndexChangeOp(
+                    normList2normStringList(entriesToAdd),
+                    normList2normStringList(entriesToRemove)));
+            
+            executor.run();
+            return new ValueResult<Integer>(involvedKeys, null, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " updating \""
+                            + ArticleIndex.getCountKey() + "\" in Scalaris: "
+                            + e.getMessage(), e instanceof ConnectionException,
+                    statName, System.currentTimeMillis() - timeAtStart);
+        }
+    }
+
+    /**
+     * Adds the given postings to the full-text search index of the given
+     * namespace (retrying up to {@link SearchIndex#UPDATE_RETRIES} times if
+     * concurrent updates of the same terms conflict).
+     * 
+     * @param scalaris_tx
+     *            transaction object to use
+     * @param namespace
+     *            the namespace ID
+     * @param postings
+     *            terms mapped to the page IDs (and their tiers) to add
+     * @param statName
+     *            name for the time measurement statistics
+     * 
+     * @return the result of the operation
+     */
+    public static ValueResult<Integer> updateSearchIndex(Transaction scalaris_tx,
+            int namespace, Map<String, ? extends Map<Integer, Integer>> postings,
+            final String statName) {
+        final long timeAtStart = System.currentTimeMillis();
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+
+        final Map<Integer, Integer> noPostings = new HashMap<Integer, Integer>(0);
+        for (int attempt = 0; ; ++attempt) {
+            try {
+                final MyScalarisTxOpExecutor executor = new MyScalarisTxOpExecutor(
+                        scalaris_tx, involvedKeys);
+                executor.setCommitLast(true);
+                for (Map.Entry<String, ? extends Map<Integer, Integer>> term : postings.entrySet()) {
+                    for (Map.Entry<Integer, Map<Integer, Integer>> shard : SearchIndex
+                            .splitByShard(term.getValue()).entrySet()) {
+                        executor.addOp(new ScalarisSearchIndexChangeOp(namespace,
+                                term.getKey(), shard.getKey(), shard.getValue(),
+                                noPostings));
+                    }
+                }
+
+                executor.run();
+                return new ValueResult<Integer>(involvedKeys, null, statName,
+                        System.currentTimeMillis() - timeAtStart);
+            } catch (AbortException e) {
+                // concurrent update of the same terms -> try again
+                scalaris_tx.abort();
+                if (attempt >= SearchIndex.UPDATE_RETRIES) {
+                    return new ValueResult<Integer>(false, involvedKeys,
+                            e.getClass().getCanonicalName() + " updating the search index of namespace "
+                                    + namespace + " in Scalaris: "
+                                    + e.getMessage(), false,
+                            statName, System.currentTimeMillis() - timeAtStart);
+                }
+            } catch (Exception e) {
+                return new ValueResult<Integer>(false, involvedKeys,
+                        e.getClass().getCanonicalName() + " updating the search index of namespace "
+                                + namespace + " in Scalaris: "
+                                + e.getMessage(), e instanceof ConnectionException,
+                        statName, System.currentTimeMillis() - timeAtStart);
+            }
+        }
+    }
+
     /**
      * Converts a list of {@link NormalisedTitle} objects to a list of
      * normalised page title strings.
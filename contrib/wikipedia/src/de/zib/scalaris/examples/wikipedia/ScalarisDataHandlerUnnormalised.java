@@ -19,14 +19,18 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import de.zib.scalaris.AbortException;
 import de.zib.scalaris.Connection;
 import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.ErlangValue;
 import de.zib.scalaris.NotFoundException;
 import de.zib.scalaris.Transaction;
 import de.zib.scalaris.examples.wikipedia.Options.STORE_CONTRIB_TYPE;
@@ -35,10 +39,15 @@ import de.zib.scalaris.examples.wikipedia.bliki.MyWikiModel;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Contribution;
 import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.PageMetadata;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
+import de.zib.scalaris.executor.ScalarisOp;
+import de.zib.scalaris.executor.ScalarisReadOp;
+import de.zib.scalaris.executor.ScalarisWriteOp;
 import de.zib.scalaris.operations.ReadOp;
+import de.zib.scalaris.operations.WriteOp;
 
 /**
  * @author Nico Kruber, kruber@zib.de
@@ -46,6 +55,25 @@ import de.zib.scalaris.operations.ReadOp;
  */
 public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
     
+    /**
+     * Number of attempts to reserve a new block of page IDs.
+     */
+    private final static int PAGE_ID_BLOCK_ATTEMPTS = 3;
+    
+    /**
+     * Next page ID of the currently reserved block.
+     * 
+     * @see #allocatePageId(Connection, List)
+     */
+    private static int nextPageId = 0;
+    
+    /**
+     * End (exclusive) of the currently reserved block of page IDs.
+     * 
+     * @see #allocatePageId(Connection, List)
+     */
+    private static int nextPageIdLimit = 0;
+    
     /**
      * Gets the key to store {@link Revision} objects at.
      * 
@@ -71,6 +99,18 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         return ScalarisDataHandlerNormalised.getPageKey(NormalisedTitle.fromUnnormalised(title, nsObject));
     }
     
+    /**
+     * Gets the key to store the {@link PageMetadata} of a page at.
+     * 
+     * @param title     the title of the page
+     * @param nsObject  the namespace for page title normalisation
+     * 
+     * @return Scalaris key
+     */
+    public final static String getPageMetadataKey(String title, final MyNamespace nsObject) {
+        return ScalarisDataHandlerNormalised.getPageMetadataKey(NormalisedTitle.fromUnnormalised(title, nsObject));
+    }
+    
     /**
      * Gets the key to store the list of revisions of a page at.
      * 
@@ -83,6 +123,32 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         return ScalarisDataHandlerNormalised.getRevListKey(NormalisedTitle.fromUnnormalised(title, nsObject));
     }
     
+    /**
+     * Gets the key to store the head of the segmented revision list of a page
+     * at.
+     * 
+     * @param title     the title of the page
+     * @param nsObject  the namespace for page title normalisation
+     * 
+     * @return Scalaris key
+     */
+    public final static String getRevListHeadKey(String title, final MyNamespace nsObject) {
+        return ScalarisDataHandlerNormalised.getRevListHeadKey(NormalisedTitle.fromUnnormalised(title, nsObject));
+    }
+    
+    /**
+     * Gets the key to store a segment of the revision list of a page at.
+     * 
+     * @param title     the title of the page
+     * @param segment   the number of the segment
+     * @param nsObject  the namespace for page title normalisation
+     * 
+     * @return Scalaris key
+     */
+    public final static String getRevListSegmentKey(String title, int segment, final MyNamespace nsObject) {
+        return ScalarisDataHandlerNormalised.getRevListSegmentKey(NormalisedTitle.fromUnnormalised(title, nsObject), segment);
+    }
+    
     /**
      * Gets the key to store the list of pages belonging to a category at.
      * 
@@ -148,6 +214,28 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         return ScalarisDataHandlerNormalised.getPageHistory(connection, NormalisedTitle.fromUnnormalised(title, nsObject));
     }
 
+    /**
+     * Retrieves a window of a page's history from Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the page
+     * @param nsObject
+     *            the namespace for page title normalisation
+     * @param offset
+     *            number of (newest) revisions to skip
+     * @param limit
+     *            maximum number of revisions to retrieve
+     * 
+     * @return a result object with the page history on success
+     */
+    public static PageHistoryResult getPageHistory(Connection connection,
+            String title, final MyNamespace nsObject, int offset, int limit) {
+        return ScalarisDataHandlerNormalised.getPageHistory(connection,
+                NormalisedTitle.fromUnnormalised(title, nsObject), offset, limit);
+    }
+
     /**
      * Retrieves the current, i.e. most up-to-date, version of a page from
      * Scalaris.
@@ -257,6 +345,30 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         return ScalarisDataHandlerNormalised.getPagesLinkingTo(connection, NormalisedTitle.fromUnnormalised(title, nsObject));
     }
 
+    /**
+     * Retrieves a part of the list of pages linking to the given page from
+     * Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the page
+     * @param nsObject
+     *            the namespace for page title normalisation
+     * @param from
+     *            continuation token, i.e. the last page of the previous part
+     *            (exclusive, <tt>null</tt> to start with the first page)
+     * @param limit
+     *            maximum number of pages to return
+     * 
+     * @return a result object with the (sorted) page list on success
+     */
+    public static ValueResult<List<NormalisedTitle>> getPagesLinkingTo(Connection connection,
+            String title, final MyNamespace nsObject, NormalisedTitle from, int limit) {
+        return ScalarisDataHandlerNormalised.getPagesLinkingTo(connection,
+                NormalisedTitle.fromUnnormalised(title, nsObject), from, limit);
+    }
+
     /**
      * Retrieves the number of pages in the given category from Scalaris.
      * 
@@ -323,9 +435,13 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         // check that the current version is still up-to-date:
         // read old version first, then write
         String pageInfoKey = getPageKey(title0, nsObject);
+        final String revListHeadKey = getRevListHeadKey(title0, nsObject);
+        final String pageMetadataKey = getPageMetadataKey(title0, nsObject);
         
         Transaction.RequestList requests = new Transaction.RequestList();
         requests.addOp(new ReadOp(pageInfoKey));
+        requests.addOp(new ReadOp(revListHeadKey));
+        requests.addOp(new ReadOp(pageMetadataKey));
         
         Transaction.ResultList results;
         try {
@@ -349,7 +465,7 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
             oldRevId = oldPage.getCurRev().getId();
         } catch (NotFoundException e) {
             // this is ok and means that the page did not exist yet
-            newPage = new Page(title0, 1, false,
+            newPage = new Page(title0, LEGACY_PAGE_ID, false,
                     new LinkedHashMap<String, String>(), newRev);
             oldRevId = 0;
         } catch (Exception e) {
@@ -362,6 +478,97 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         }
         newRev.setId(oldRevId + 1);
         
+        // parsed categories, templates and links of the old revision
+        PageMetadata oldMetadata;
+        try {
+            oldMetadata = results.processReadAt(2).jsonValue(PageMetadata.class);
+        } catch (Exception e) {
+            // not stored (yet) or unreadable -> render the old revision instead
+            oldMetadata = null;
+        }
+        
+        // revision list: only the newest segment will be changed
+        int revCount;
+        final List<ShortRevision> revsToAppend = new ArrayList<ShortRevision>();
+        try {
+            revCount = results.processReadAt(1).intValue();
+        } catch (NotFoundException e) {
+            // no segmented revision list yet
+            revCount = -1;
+        } catch (Exception e) {
+            return new SavePageResult(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading \"" + revListHeadKey
+                            + "\" from Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, oldPage, newPage,
+                    newShortRevs, pageEdits, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        if (revCount < 0) {
+            revCount = 0;
+            if (oldPage != null) {
+                // move the old (unsegmented) revision list into segments
+                final String revListKey = getRevListKey(title0, nsObject);
+                requests = new Transaction.RequestList();
+                requests.addOp(new ReadOp(revListKey));
+                try {
+                    addInvolvedKeys(involvedKeys, requests.getRequests());
+                    results = scalaris_tx.req_list(requests);
+                    try {
+                        revsToAppend.addAll(results.processReadAt(0).jsonListValue(ShortRevision.class));
+                        Collections.sort(revsToAppend, REV_LIST_ORDER);
+                    } catch (NotFoundException e) {
+                        // this is ok and means that there is no old revision list
+                    }
+                } catch (Exception e) {
+                    return new SavePageResult(false, involvedKeys,
+                            e.getClass().getCanonicalName() + " reading \"" + revListKey
+                                    + "\" from Scalaris: " + e.getMessage(),
+                            e instanceof ConnectionException, oldPage, newPage,
+                            newShortRevs, pageEdits, statName,
+                            System.currentTimeMillis() - timeAtStart);
+                }
+            }
+        }
+        revsToAppend.add(new ShortRevision(newRev));
+        
+        // new page or page created with the legacy ID? -> allocate a page ID
+        // (from a block reserved for this JVM)
+        boolean allocateId = oldPage == null;
+        if (!allocateId && oldPage.getId() == LEGACY_PAGE_ID) {
+            // an imported page may have ID 1, too - it is known to the search index
+            final String docKey = SearchIndex.getDocKey(LEGACY_PAGE_ID);
+            requests = new Transaction.RequestList();
+            requests.addOp(new ReadOp(docKey));
+            try {
+                addInvolvedKeys(involvedKeys, requests.getRequests());
+                results = scalaris_tx.req_list(requests);
+                try {
+                    allocateId = !normTitleStr.equals(results.processReadAt(0).stringValue());
+                } catch (NotFoundException e) {
+                    allocateId = true;
+                }
+            } catch (Exception e) {
+                return new SavePageResult(false, involvedKeys,
+                        e.getClass().getCanonicalName() + " reading \"" + docKey
+                                + "\" from Scalaris: " + e.getMessage(),
+                        e instanceof ConnectionException, oldPage, newPage,
+                        newShortRevs, pageEdits, statName,
+                        System.currentTimeMillis() - timeAtStart);
+            }
+        }
+        if (allocateId) {
+            try {
+                newPage.setId(allocatePageId(connection, involvedKeys));
+            } catch (Exception e) {
+                return new SavePageResult(false, involvedKeys,
+                        e.getClass().getCanonicalName() + " reserving page IDs at \""
+                                + getNextPageIdKey() + "\" in Scalaris: " + e.getMessage(),
+                        e instanceof ConnectionException, oldPage, newPage,
+                        newShortRevs, pageEdits, statName,
+                        System.currentTimeMillis() - timeAtStart);
+            }
+        }
+        
         if (!newPage.checkEditAllowed(username)) {
             return new SavePageResult(false, involvedKeys,
                     "operation not allowed: edit is restricted", false,
@@ -388,7 +595,18 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         Set<String> oldCats;
         Set<String> oldTpls;
         Set<String> oldLnks;
-        if (oldPage != null && oldPage.getCurRev() != null) {
+        if (oldPage != null && oldPage.getCurRev() != null && oldMetadata != null) {
+            // previous categories, templates and links have been stored for
+            // the page -> no need to render the old revision
+            oldCats = new HashSet<String>(oldMetadata.getCategories());
+            oldTpls = new HashSet<String>(oldMetadata.getTemplates());
+            if (Options.getInstance().WIKI_USE_BACKLINKS) {
+                oldLnks = new HashSet<String>(oldMetadata.getLinks());
+            } else {
+                // use empty link lists to turn back-links off
+                oldLnks = new HashSet<String>();
+            }
+        } else if (oldPage != null && oldPage.getCurRev() != null) {
             // get a list of previous categories and templates:
             wikiModel.setUp();
             final long timeAtRenderStart = System.currentTimeMillis();
@@ -422,6 +640,10 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         if (restrictions != null) {
             newPage.setRestrictions(restrictions);
         }
+        // store the parsed categories, templates and links for the next edit
+        final PageMetadata newMetadata = new PageMetadata(
+                wikiModel.getCategories().keySet(), wikiModel.getTemplates(),
+                wikiModel.getLinks());
         
         // note: do not tear down the wiki model - the following statements
         // still need it and it will be removed at the end of the method anyway
@@ -486,9 +708,20 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
             }
 
             //  PAGE LISTS UPDATE, step 1: append to / remove from old lists
-            executor.addAppend(ScalarisOpType.SHORTREV_LIST, getRevListKey(title0, nsObject), new ShortRevision(newRev), null);
+            for (Map.Entry<Integer, List<ShortRevision>> segment : ScalarisDataHandlerNormalised
+                    .groupByRevListSegment(revCount, revsToAppend).entrySet()) {
+                executor.addAppendRemove(ScalarisOpType.SHORTREV_LIST,
+                        getRevListSegmentKey(title0, segment.getKey(), nsObject),
+                        segment.getValue(), new ArrayList<ShortRevision>(0), null);
+            }
+            executor.addWrite(ScalarisOpType.SHORTREV_LIST, revListHeadKey, revCount + revsToAppend.size());
             if (articleCountChange != 0) {
                 executor.addIncrement(ScalarisOpType.ARTICLE_COUNT, getArticleCountKey(), articleCountChange);
+                final List<String> articles = Arrays.asList(normTitleStr);
+                final List<String> noArticles = new ArrayList<String>(0);
+                executor0.addOp(new ScalarisArticleIndexChangeOp(
+                        articleCountChange > 0 ? articles : noArticles,
+                        articleCountChange < 0 ? articles : noArticles));
             }
 
             // write differences (categories, templates, backlinks)
@@ -501,9 +734,12 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
                 final String pageListKey = getPageListKey(normTitle.namespace);
                 final String pageCountKey = getPageCountKey(normTitle.namespace);
                 executor.addAppend(ScalarisOpType.PAGE_LIST, pageListKey, normTitleStr, pageCountKey);
+                addPageIndexOps(executor, normTitle.namespace,
+                        Arrays.asList(normTitle), new ArrayList<NormalisedTitle>(0));
             }
 
             executor.addWrite(ScalarisOpType.PAGE, getPageKey(title0, nsObject), newPage);
+            executor.addWrite(ScalarisOpType.PAGE, pageMetadataKey, newMetadata);
             if (oldPage != null) {
                 executor.addWrite(ScalarisOpType.REVISION, getRevKey(title0, oldPage.getCurRev().getId(), nsObject), oldPage.getCurRev());
             }
@@ -525,6 +761,10 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
             addContribution(scalaris_tx, oldPage, newPage, involvedKeys);
         }
         
+        if (Options.getInstance().WIKI_USE_SEARCH_INDEX) {
+            updateSearchIndex(scalaris_tx, normTitle, oldPage, newPage, involvedKeys);
+        }
+        
         increasePageEditStat(scalaris_tx, involvedKeys);
         
         return new SavePageResult(involvedKeys, oldPage, newPage, newShortRevs,
@@ -557,6 +797,139 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         }
     }
 
+    /**
+     * Allocates a new page ID.
+     * 
+     * Page IDs are reserved in blocks of {@link #PAGE_ID_BLOCK_SIZE} IDs (in
+     * a separate transaction) so that concurrent page creations do not all
+     * conflict on the {@link #getNextPageIdKey()} key. IDs of a block which
+     * are not used until the JVM terminates are lost.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param involvedKeys
+     *            all keys that have been read or written during the operation
+     * 
+     * @return a page ID not used by any other page
+     * 
+     * @throws Exception
+     *             if reserving a new block of page IDs failed
+     */
+    private static synchronized int allocatePageId(Connection connection,
+            List<InvolvedKey> involvedKeys) throws Exception {
+        if (nextPageId >= nextPageIdLimit) {
+            final String nextPageIdKey = getNextPageIdKey();
+            final Transaction scalaris_tx = new Transaction(connection);
+            for (int attempt = 0; ; ++attempt) {
+                try {
+                    int blockStart;
+                    Transaction.RequestList requests = new Transaction.RequestList();
+                    requests.addOp(new ReadOp(nextPageIdKey));
+                    addInvolvedKeys(involvedKeys, requests.getRequests());
+                    try {
+                        blockStart = scalaris_tx.req_list(requests).processReadAt(0).intValue();
+                    } catch (NotFoundException e) {
+                        // this is ok and means that no page has been created yet
+                        blockStart = FIRST_CREATED_PAGE_ID;
+                    }
+                    requests = new Transaction.RequestList();
+                    requests.addOp(new WriteOp(nextPageIdKey, blockStart + PAGE_ID_BLOCK_SIZE)).addCommit();
+                    addInvolvedKeys(involvedKeys, requests.getRequests());
+                    scalaris_tx.req_list(requests).processWriteAt(0);
+                    nextPageId = blockStart;
+                    nextPageIdLimit = blockStart + PAGE_ID_BLOCK_SIZE;
+                    break;
+                } catch (AbortException e) {
+                    // another server reserved a block concurrently -> try again
+                    scalaris_tx.abort();
+                    if (attempt + 1 >= PAGE_ID_BLOCK_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+        }
+        return nextPageId++;
+    }
+
+    /**
+     * Updates the full-text search index with the changed terms of a page.
+     * 
+     * The terms are updated in chunks of
+     * {@link SearchIndex#UPDATE_TERMS_PER_TX} terms per transaction and each
+     * chunk is retried up to {@link SearchIndex#UPDATE_RETRIES} times if it
+     * conflicts with a concurrent update. Chunks which still fail are
+     * reported on {@link System#err} (the page itself has already been
+     * saved).
+     * 
+     * @param scalaris_tx
+     *            the transaction object to use
+     * @param normTitle
+     *            the (normalised) title of the page
+     * @param oldPage
+     *            the old page object or <tt>null</tt> if there was no old page
+     * @param newPage
+     *            the newly created page object (with a different ID than the
+     *            old page if the old page had the {@link #LEGACY_PAGE_ID})
+     * @param involvedKeys
+     *            all keys that have been read or written during the operation
+     */
+    private static void updateSearchIndex(Transaction scalaris_tx,
+            NormalisedTitle normTitle, Page oldPage, Page newPage,
+            List<InvolvedKey> involvedKeys) {
+        // as the index is only used for searching, use separate transactions
+        // and do not fail if updating the index fails
+        final List<ScalarisOp> ops = new ArrayList<ScalarisOp>();
+        final Map<String, Integer> oldTiers;
+        // pages which got a new ID have not been indexed under it yet (their
+        // old postings under the legacy ID are shared with other pages)
+        if (oldPage != null && oldPage.getId() == newPage.getId()
+                && oldPage.getCurRev() != null) {
+            oldTiers = SearchIndex.getTermTiers(normTitle.title,
+                    oldPage.getCurRev().unpackedText());
+        } else {
+            oldTiers = new HashMap<String, Integer>(0);
+            ops.add(new ScalarisWriteOp<String>(
+                    SearchIndex.getDocKey(newPage.getId()), normTitle.toString()));
+        }
+        final Map<String, Integer> newTiers = SearchIndex.getTermTiers(
+                normTitle.title, newPage.getCurRev().unpackedText());
+        ops.addAll(SearchIndex.getPageUpdateOps(normTitle.namespace,
+                newPage.getId(), oldTiers, newTiers));
+        
+        for (int i = 0; i < ops.size(); i += SearchIndex.UPDATE_TERMS_PER_TX) {
+            final List<ScalarisOp> chunk = ops.subList(i,
+                    Math.min(i + SearchIndex.UPDATE_TERMS_PER_TX, ops.size()));
+            Exception error = null;
+            for (int attempt = 0; attempt <= SearchIndex.UPDATE_RETRIES; ++attempt) {
+                final MyScalarisTxOpExecutor executor = new MyScalarisTxOpExecutor(
+                        scalaris_tx, involvedKeys);
+                executor.setCommitLast(true);
+                for (ScalarisOp op : chunk) {
+                    executor.addOp(op);
+                }
+                try {
+                    executor.run();
+                    error = null;
+                    break;
+                } catch (AbortException e) {
+                    // concurrent update of the same terms -> try again
+                    scalaris_tx.abort();
+                    error = e;
+                } catch (Exception e) {
+                    scalaris_tx.abort();
+                    error = e;
+                    break;
+                }
+            }
+            if (error != null) {
+                System.err.println("failed to update the search index of \""
+                        + normTitle + "\" (" + chunk.size() + " terms): "
+                        + error.getClass().getCanonicalName() + ": "
+                        + error.getMessage());
+            }
+        }
+    }
+
     /**
      * Adds a contribution to the list of contributions of the user.
      * 
@@ -573,16 +946,51 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
             Transaction scalaris_tx, Page oldPage, Page newPage, List<InvolvedKey> involvedKeys) {
         // as this is not that important, use a separate transaction and do not
         // fail if updating the value fails
-        final MyScalarisTxOpExecutor executor0 = new MyScalarisTxOpExecutor(
-                scalaris_tx, involvedKeys);
-        executor0.setCommitLast(true);
-        MyScalarisOpExecWrapper executor = new MyScalarisOpExecWrapper(
-                executor0);
-
-        String scalaris_key = getContributionListKey(newPage.getCurRev().getContributor().toString());
-        executor.addAppend(ScalarisOpType.CONTRIBUTION, scalaris_key,
-                Arrays.asList(new Contribution(oldPage, newPage)), null);
+        final String contributor = newPage.getCurRev().getContributor().toString();
+        final String headKey = getContributionListHeadKey(contributor);
         try {
+            // only the newest segment of the contribution list will be changed
+            MyScalarisTxOpExecutor executor0 = new MyScalarisTxOpExecutor(
+                    scalaris_tx, involvedKeys);
+            final ScalarisReadOp headOp = new ScalarisReadOp(headKey);
+            executor0.addOp(headOp);
+            executor0.run();
+            int count;
+            final List<Contribution> toAppend = new ArrayList<Contribution>();
+            if (headOp.getValue() != null) {
+                count = headOp.getValue().intValue();
+            } else {
+                // move the old (unsegmented) contribution list into segments
+                count = 0;
+                executor0 = new MyScalarisTxOpExecutor(scalaris_tx, involvedKeys);
+                final ScalarisReadListOp1<Contribution> listOp = new ScalarisReadListOp1<Contribution>(
+                        Arrays.asList(getContributionListKey(contributor)),
+                        Options.getInstance().OPTIMISATIONS.get(ScalarisOpType.CONTRIBUTION),
+                        new ErlangConverter<List<Contribution>>() {
+                            @Override
+                            public List<Contribution> convert(ErlangValue v)
+                                    throws ClassCastException {
+                                return v.jsonListValue(Contribution.class);
+                            }
+                        }, false);
+                executor0.addOp(listOp);
+                executor0.run();
+                toAppend.addAll(listOp.getValue());
+                Collections.sort(toAppend, CONTRIBUTION_LIST_ORDER);
+            }
+            toAppend.add(new Contribution(oldPage, newPage));
+
+            executor0 = new MyScalarisTxOpExecutor(scalaris_tx, involvedKeys);
+            executor0.setCommitLast(true);
+            MyScalarisOpExecWrapper executor = new MyScalarisOpExecWrapper(
+                    executor0);
+            for (Map.Entry<Integer, List<Contribution>> segment : groupBySegment(
+                    CONTRIBUTION_LIST_SEGMENT_SIZE, count, toAppend).entrySet()) {
+                executor.addAppendRemove(ScalarisOpType.CONTRIBUTION,
+                        getContributionListSegmentKey(contributor, segment.getKey()),
+                        segment.getValue(), new ArrayList<Contribution>(0), null);
+            }
+            executor.addWrite(ScalarisOpType.CONTRIBUTION, headKey, count + toAppend.size());
             executor.getExecutor().run();
         } catch (Exception e) {
         }
@@ -661,6 +1069,21 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
             if (keyGen instanceof GetPageListAndCountKey) {
                 keyCountGen = (GetPageListAndCountKey) keyGen;
             }
+            if (BucketedPageList.isBucketed(opType)) {
+                final List<String> titles = Arrays.asList(title);
+                final List<String> noTitles = new ArrayList<String>(0);
+                for (String name: onlyOld) {
+                    scalaris_key = keyGen.getPageListKey(name);
+                    String scalaris_countKey = keyCountGen == null ? null : keyCountGen.getPageCountKey(name);
+                    executor.addBucketedAppendRemove(opType, scalaris_key, noTitles, titles, scalaris_countKey);
+                }
+                for (String name: onlyNew) {
+                    scalaris_key = keyGen.getPageListKey(name);
+                    String scalaris_countKey = keyCountGen == null ? null : keyCountGen.getPageCountKey(name);
+                    executor.addBucketedAppendRemove(opType, scalaris_key, titles, noTitles, scalaris_countKey);
+                }
+                return;
+            }
             // remove from old page list
             for (String name: onlyOld) {
                 scalaris_key = keyGen.getPageListKey(name);
@@ -0,0 +1,154 @@
+package de.zib.scalaris.examples.wikipedia;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+
+import de.zib.scalaris.NotFoundException;
+import de.zib.scalaris.RequestList;
+import de.zib.scalaris.ResultList;
+import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.executor.ScalarisOp;
+import de.zib.scalaris.operations.ReadOp;
+import de.zib.scalaris.operations.WriteOp;
+
+/**
+ * Changes the postings of a single term and shard of the full-text search
+ * index using the read and write operations of Scalaris.
+ *
+ * Only the tiers touched by the change are read and written, together with
+ * the tier sizes of the term's shard.
+ *
+ * @see SearchIndex
+ */
+public class ScalarisSearchIndexChangeOp implements ScalarisOp {
+    final protected int namespace;
+    final protected String term;
+    final protected int shard;
+    final protected Map<Integer, Integer> toAdd;
+    final protected Map<Integer, Integer> toRemove;
+    final protected TreeSet<Integer> tiers;
+
+    /**
+     * Creates a new search index change operation.
+     *
+     * @param namespace  the namespace ID
+     * @param term       the term to change the postings of
+     * @param shard      the shard of all given pages
+     *                   (see {@link SearchIndex#getShard(int)})
+     * @param toAdd      page IDs mapped to their new tiers
+     * @param toRemove   page IDs mapped to their old tiers
+     */
+    public ScalarisSearchIndexChangeOp(final int namespace, final String term,
+            final int shard, final Map<Integer, Integer> toAdd,
+            final Map<Integer, Integer> toRemove) {
+        this.namespace = namespace;
+        this.term = term;
+        this.shard = shard;
+        this.toAdd = toAdd;
+        this.toRemove = toRemove;
+        this.tiers = SearchIndex.getTouchedTiers(toAdd, toRemove);
+    }
+
+    public int workPhases() {
+        return 2;
+    }
+
+    public final int doPhase(final int phase, final int firstOp,
+            final ResultList results, final RequestList requests)
+            throws OtpErlangException, UnknownException,
+            IllegalArgumentException {
+        switch (phase) {
+            case 0: return prepareRead(requests);
+            case 1: return prepareWrite(firstOp, results, requests);
+            case 2: return checkWrite(firstOp, results);
+            default:
+                throw new IllegalArgumentException("No phase " + phase);
+        }
+    }
+
+    /**
+     * Adds read operations for the tier sizes and the touched tiers to the
+     * request list.
+     *
+     * @param requests the request list
+     *
+     * @return <tt>0</tt> (no operation processed since no results are used)
+     */
+    protected int prepareRead(final RequestList requests) {
+        requests.addOp(new ReadOp(SearchIndex.getTermKey(namespace, term, shard)));
+        for (Integer tier : tiers) {
+            requests.addOp(new ReadOp(SearchIndex.getPostingsKey(namespace, term, shard, tier)));
+        }
+        return 0;
+    }
+
+    /**
+     * Verifies the read operations, changes the postings and adds write
+     * operations to the request list.
+     *
+     * @param firstOp   the first operation to process inside the result list
+     * @param results   the result list
+     * @param requests  the request list
+     *
+     * @return number of processed operations (the reads)
+     */
+    protected int prepareWrite(int firstOp, final ResultList results,
+            final RequestList requests) throws OtpErlangException,
+            UnknownException {
+        List<Integer> tierSizes;
+        try {
+            tierSizes = SearchIndex.toTierSizes(results.processReadAt(firstOp++).longListValue());
+        } catch (final NotFoundException e) {
+            // this is ok
+            tierSizes = SearchIndex.toTierSizes(null);
+        }
+        final Map<Integer, SortedSet<Integer>> postings =
+                new HashMap<Integer, SortedSet<Integer>>(tiers.size());
+        for (Integer tier : tiers) {
+            byte[] data;
+            try {
+                data = results.processReadAt(firstOp++).binaryValue();
+            } catch (final NotFoundException e) {
+                // this is ok
+                data = null;
+            }
+            postings.put(tier, SearchIndex.decodePostings(data));
+        }
+        SearchIndex.changePostings(postings, toAdd, toRemove);
+        for (Integer tier : tiers) {
+            final SortedSet<Integer> tierPostings = postings.get(tier);
+            tierSizes.set(tier, tierPostings.size());
+            requests.addOp(new WriteOp(SearchIndex.getPostingsKey(namespace, term, shard, tier),
+                    SearchIndex.encodePostings(tierPostings)));
+        }
+        requests.addOp(new WriteOp(SearchIndex.getTermKey(namespace, term, shard), tierSizes));
+        return 1 + tiers.size();
+    }
+
+    /**
+     * Verifies the write operations.
+     *
+     * @param firstOp   the first operation to process inside the result list
+     * @param results   the result list
+     *
+     * @return number of processed operations (the writes)
+     */
+    protected int checkWrite(final int firstOp, final ResultList results)
+            throws OtpErlangException, UnknownException {
+        for (int i = 0; i <= tiers.size(); ++i) {
+            results.processWriteAt(firstOp + i);
+        }
+        return 1 + tiers.size();
+    }
+
+    @Override
+    public String toString() {
+        return "Scalaris.search_index_change(" + namespace + ", " + term
+                + ", " + shard + ", " + toAdd.toString() + ", " + toRemove.toString() + ")";
+    }
+}
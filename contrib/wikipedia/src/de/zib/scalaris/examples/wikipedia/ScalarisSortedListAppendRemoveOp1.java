@@ -0,0 +1,82 @@
+package de.zib.scalaris.examples.wikipedia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import de.zib.scalaris.ErlangValue;
+
+/**
+ * Implements a list append and remove operation on a sorted list of strings
+ * using the read and write operations of Scalaris.
+ *
+ * Each new element is inserted at its position in the given order (if not
+ * already present), then the elements to remove are deleted. The list thus
+ * stays sorted and free of duplicates.
+ */
+public class ScalarisSortedListAppendRemoveOp1 extends ScalarisChangeListOp1 {
+    final protected List<String> toAdd;
+    final protected List<String> toRemove;
+    final protected Comparator<String> order;
+
+    /**
+     * Creates a new sorted append+remove operation.
+     *
+     * @param key       the key to append/remove the values to/from
+     * @param toAdd     the values to add
+     * @param toRemove  the values to remove
+     * @param order     the order of the elements in the list
+     * @param countKey  the key for the counter of the entries in the list
+     *                  (may be <tt>null</tt>)
+     */
+    public ScalarisSortedListAppendRemoveOp1(final String key,
+            final List<String> toAdd, final List<String> toRemove,
+            final Comparator<String> order, final String countKey) {
+        super(key, countKey);
+        this.toAdd = toAdd;
+        this.toRemove = toRemove;
+        this.order = order;
+    }
+
+    /**
+     * Inserts {@link #toAdd} into and removes {@link #toRemove} from the
+     * given (sorted) list.
+     *
+     * @param pageList
+     *            the original page list
+     */
+    @Override
+    protected void changeList(List<ErlangValue> pageList) {
+        final List<String> sortedList = new ArrayList<String>(pageList.size() + toAdd.size());
+        for (ErlangValue value : pageList) {
+            sortedList.add(value.stringValue());
+        }
+        for (String value : toAdd) {
+            final int index = Collections.binarySearch(sortedList, value, order);
+            if (index < 0) {
+                sortedList.add(-index - 1, value);
+                listChanged = true;
+            }
+        }
+        for (String value : toRemove) {
+            final int index = Collections.binarySearch(sortedList, value, order);
+            if (index >= 0) {
+                sortedList.remove(index);
+                listChanged = true;
+            }
+        }
+        if (listChanged) {
+            listCountChanged = true;
+            pageList.clear();
+            pageList.addAll(toErlangValueList(sortedList));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Scalaris.sorted_append_remove(" + key + ", "
+                + toAdd.toString() + ", " + toRemove.toString() + ", "
+                + countKey + ")";
+    }
+}
@@ -0,0 +1,456 @@
+package de.zib.scalaris.examples.wikipedia;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Helpers for the inverted full-text index of the wiki pages in Scalaris.
+ *
+ * The index is sharded by namespace, term and page ID: the pages of a term
+ * are split into {@link #SHARDS} shards by the lowest bits of their page IDs
+ * so that pages created one after another (with consecutive IDs) are stored
+ * in different shards and can be indexed concurrently. For each term and
+ * shard it contains {@link #TIERS} posting lists ordered by impact, i.e. the
+ * first tier holds the pages the term occurs most often in. Each posting
+ * list stores the sorted page IDs as variable-length encoded deltas. Term
+ * frequencies are not stored - all pages of a tier are scored with the same
+ * (minimum) term frequency of the tier - so that an edit only changes the
+ * index for terms which move to a different tier. A separate key per term
+ * and shard holds the sizes of its tiers so that queries only read
+ * non-empty tiers and may stop before reading the long lists of pages with
+ * low term frequencies.
+ *
+ * Pages are identified by their {@link de.zib.scalaris.examples.wikipedia.data.Page#getId()
+ * page IDs}, the title of each page ID is stored at {@link #getDocKey(int)}.
+ */
+public class SearchIndex {
+    /**
+     * Number of impact tiers per term.
+     */
+    public final static int TIERS = 5;
+
+    /**
+     * Number of shards per term (a power of two).
+     */
+    public final static int SHARDS = 16;
+
+    /**
+     * Maximum number of terms updated in one transaction when indexing a
+     * saved page.
+     */
+    public final static int UPDATE_TERMS_PER_TX = 50;
+
+    /**
+     * Number of times an index update of a saved page is retried if the
+     * transaction is aborted due to a concurrent update.
+     */
+    public final static int UPDATE_RETRIES = 3;
+
+    /**
+     * Minimum length of a term to be indexed.
+     */
+    public final static int MIN_TERM_LENGTH = 2;
+
+    /**
+     * Maximum length of a term to be indexed.
+     */
+    public final static int MAX_TERM_LENGTH = 32;
+
+    /**
+     * Maximum number of (most frequent) terms indexed per page.
+     */
+    public final static int MAX_TERMS_PER_PAGE = 1000;
+
+    /**
+     * Term frequency added for each term in the page's title (puts title
+     * terms into the first tier).
+     */
+    public final static int TITLE_BOOST = 1 << (TIERS - 1);
+
+    /**
+     * Maximum number of terms of a query to look up.
+     */
+    public final static int MAX_QUERY_TERMS = 8;
+
+    /**
+     * Maximum number of postings a query reads before returning the best
+     * results found so far.
+     */
+    public final static int MAX_POSTINGS_PER_QUERY = 200000;
+
+    private SearchIndex() {
+    }
+
+    /**
+     * Gets the shard a page is stored in.
+     *
+     * @param pageId  the page ID
+     *
+     * @return the shard (<tt>0</tt> to <tt>SHARDS - 1</tt>)
+     */
+    public final static int getShard(int pageId) {
+        return pageId & (SHARDS - 1);
+    }
+
+    /**
+     * Gets the key to store the sizes of the tiers of the given term and
+     * shard at.
+     *
+     * @param namespace  the namespace ID
+     * @param term       the term
+     * @param shard      the shard
+     *
+     * @return Scalaris key
+     */
+    public final static String getTermKey(int namespace, String term, int shard) {
+        return "fts:" + namespace + ":" + term + ":" + shard;
+    }
+
+    /**
+     * Gets the key to store the posting list of the given term, shard and
+     * tier at.
+     *
+     * @param namespace  the namespace ID
+     * @param term       the term
+     * @param shard      the shard
+     * @param tier       the tier
+     *
+     * @return Scalaris key
+     */
+    public final static String getPostingsKey(int namespace, String term, int shard, int tier) {
+        return getTermKey(namespace, term, shard) + ":" + tier;
+    }
+
+    /**
+     * Gets the key to store the (normalised) title of the page with the given
+     * ID at.
+     *
+     * @param pageId  the page ID
+     *
+     * @return Scalaris key
+     */
+    public final static String getDocKey(int pageId) {
+        return "fts:doc:" + pageId;
+    }
+
+    /**
+     * Gets the tier a page with the given term frequency is stored in.
+     *
+     * @param tf  term frequency (at least 1)
+     *
+     * @return the tier (<tt>0</tt> to <tt>TIERS - 1</tt>)
+     */
+    public final static int getTier(int tf) {
+        final int log2 = 31 - Integer.numberOfLeadingZeros(tf);
+        return Math.max(0, TIERS - 1 - log2);
+    }
+
+    /**
+     * Gets the (minimum) term frequency of pages in the given tier which is
+     * used to score all pages of the tier.
+     *
+     * @param tier  the tier
+     *
+     * @return the term frequency
+     */
+    public final static int getMinTf(int tier) {
+        return 1 << (TIERS - 1 - tier);
+    }
+
+    /**
+     * Gets the score of a term in a page.
+     *
+     * @param tf   the term frequency in the page
+     * @param idf  the inverse document frequency of the term
+     *
+     * @return the score
+     */
+    public final static double getScore(int tf, double idf) {
+        return idf * (1.0 + Math.log(tf));
+    }
+
+    /**
+     * Splits the given text into (lower-case) terms.
+     *
+     * @param text  the text to split
+     *
+     * @return all terms in the order they appear in (including duplicates)
+     */
+    public final static List<String> getTerms(String text) {
+        final List<String> result = new ArrayList<String>();
+        final String lowerText = text.toLowerCase();
+        int start = -1;
+        for (int i = 0; i <= lowerText.length(); ++i) {
+            if (i < lowerText.length() && Character.isLetterOrDigit(lowerText.charAt(i))) {
+                if (start == -1) {
+                    start = i;
+                }
+            } else if (start != -1) {
+                final int length = i - start;
+                if (length >= MIN_TERM_LENGTH && length <= MAX_TERM_LENGTH) {
+                    result.add(lowerText.substring(start, i));
+                }
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the (distinct) terms of a search query.
+     *
+     * @param query  the query string
+     *
+     * @return at most {@link #MAX_QUERY_TERMS} terms
+     */
+    public final static List<String> getQueryTerms(String query) {
+        final List<String> terms = new ArrayList<String>(new LinkedHashSet<String>(getTerms(query)));
+        return terms.subList(0, Math.min(MAX_QUERY_TERMS, terms.size()));
+    }
+
+    /**
+     * Gets the frequencies of the terms of a page to index.
+     *
+     * @param title     the page's title (without namespace)
+     * @param wikiText  the page's wiki text
+     *
+     * @return a map of terms to their frequencies (at most
+     *         {@link #MAX_TERMS_PER_PAGE} entries)
+     */
+    public final static Map<String, Integer> getTermFrequencies(String title, String wikiText) {
+        final HashMap<String, Integer> tfs = new HashMap<String, Integer>();
+        for (String term : getTerms(wikiText)) {
+            final Integer tf = tfs.get(term);
+            tfs.put(term, tf == null ? 1 : tf + 1);
+        }
+        for (String term : new LinkedHashSet<String>(getTerms(title))) {
+            final Integer tf = tfs.get(term);
+            tfs.put(term, tf == null ? TITLE_BOOST : tf + TITLE_BOOST);
+        }
+        if (tfs.size() <= MAX_TERMS_PER_PAGE) {
+            return tfs;
+        }
+        final List<Entry<String, Integer>> entries = new ArrayList<Entry<String, Integer>>(tfs.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String, Integer>>() {
+            @Override
+            public int compare(Entry<String, Integer> o1, Entry<String, Integer> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        final HashMap<String, Integer> result = new HashMap<String, Integer>(MAX_TERMS_PER_PAGE);
+        for (Entry<String, Integer> entry : entries.subList(0, MAX_TERMS_PER_PAGE)) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the tiers of the terms of a page to index.
+     *
+     * @param title     the page's title (without namespace)
+     * @param wikiText  the page's wiki text
+     *
+     * @return a map of terms to their tiers (at most
+     *         {@link #MAX_TERMS_PER_PAGE} entries)
+     *
+     * @see #getTermFrequencies(String, String)
+     */
+    public final static Map<String, Integer> getTermTiers(String title, String wikiText) {
+        final Map<String, Integer> tiers = getTermFrequencies(title, wikiText);
+        for (Entry<String, Integer> term : tiers.entrySet()) {
+            term.setValue(getTier(term.getValue()));
+        }
+        return tiers;
+    }
+
+    /**
+     * Splits the postings of a term by shard.
+     *
+     * @param postings  page IDs mapped to tiers
+     *
+     * @return shards mapped to the postings of the pages in the shard
+     */
+    public final static Map<Integer, Map<Integer, Integer>> splitByShard(
+            Map<Integer, Integer> postings) {
+        final Map<Integer, Map<Integer, Integer>> shards = new TreeMap<Integer, Map<Integer, Integer>>();
+        for (Entry<Integer, Integer> posting : postings.entrySet()) {
+            final int shard = getShard(posting.getKey());
+            Map<Integer, Integer> shardPostings = shards.get(shard);
+            if (shardPostings == null) {
+                shardPostings = new HashMap<Integer, Integer>();
+                shards.put(shard, shardPostings);
+            }
+            shardPostings.put(posting.getKey(), posting.getValue());
+        }
+        return shards;
+    }
+
+    /**
+     * Encodes a posting list.
+     *
+     * @param postings  page IDs
+     *
+     * @return the page ID deltas as variable-length integers
+     */
+    public final static byte[] encodePostings(SortedSet<Integer> postings) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(postings.size() * 2);
+        int lastId = 0;
+        for (Integer pageId : postings) {
+            writeVarInt(out, pageId - lastId);
+            lastId = pageId;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a posting list.
+     *
+     * @param data  the encoded posting list (may be <tt>null</tt>)
+     *
+     * @return page IDs
+     *
+     * @see #encodePostings(SortedSet)
+     */
+    public final static SortedSet<Integer> decodePostings(byte[] data) {
+        final SortedSet<Integer> postings = new TreeSet<Integer>();
+        if (data == null) {
+            return postings;
+        }
+        final int[] pos = {0};
+        int lastId = 0;
+        while (pos[0] < data.length) {
+            lastId += readVarInt(data, pos);
+            postings.add(lastId);
+        }
+        return postings;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Converts the tier sizes of a term's shard read from the DB.
+     *
+     * @param stored  the stored tier sizes (may be <tt>null</tt> if the
+     *                shard of the term is not in the index yet)
+     *
+     * @return tier sizes (exactly {@link #TIERS} entries)
+     */
+    public final static List<Integer> toTierSizes(List<Long> stored) {
+        final List<Integer> tierSizes = new ArrayList<Integer>(TIERS);
+        if (stored != null) {
+            for (Long size : stored) {
+                tierSizes.add(size.intValue());
+            }
+        }
+        while (tierSizes.size() < TIERS) {
+            tierSizes.add(0);
+        }
+        return tierSizes;
+    }
+
+    /**
+     * Gets the tiers touched by the given changes of a term's postings.
+     *
+     * @param toAdd     page IDs mapped to their new tiers
+     * @param toRemove  page IDs mapped to their old tiers
+     *
+     * @return sorted set of tiers
+     */
+    public final static TreeSet<Integer> getTouchedTiers(
+            Map<Integer, Integer> toAdd, Map<Integer, Integer> toRemove) {
+        final TreeSet<Integer> tiers = new TreeSet<Integer>(toRemove.values());
+        tiers.addAll(toAdd.values());
+        return tiers;
+    }
+
+    /**
+     * Changes the (decoded) postings of a term: first removes all pages in
+     * <tt>toRemove</tt>, then adds all pages in <tt>toAdd</tt>.
+     *
+     * @param tiers     the decoded postings of all
+     *                  {@link #getTouchedTiers(Map, Map) touched tiers}
+     * @param toAdd     page IDs mapped to their new tiers
+     * @param toRemove  page IDs mapped to their old tiers
+     */
+    public final static void changePostings(
+            Map<Integer, SortedSet<Integer>> tiers,
+            Map<Integer, Integer> toAdd, Map<Integer, Integer> toRemove) {
+        for (Entry<Integer, Integer> posting : toRemove.entrySet()) {
+            tiers.get(posting.getValue()).remove(posting.getKey());
+        }
+        for (Entry<Integer, Integer> posting : toAdd.entrySet()) {
+            tiers.get(posting.getValue()).add(posting.getKey());
+        }
+    }
+
+    /**
+     * Creates the operations changing the index for a page. Only terms which
+     * moved to a different tier (or were added or removed) are updated.
+     *
+     * @param namespace
+     *            the namespace ID of the page
+     * @param pageId
+     *            the page ID
+     * @param oldTiers
+     *            the page's previous term tiers
+     * @param newTiers
+     *            the page's new term tiers
+     *
+     * @return the operations (one per changed term)
+     *
+     * @see #getTermTiers(String, String)
+     */
+    public final static List<ScalarisSearchIndexChangeOp> getPageUpdateOps(
+            int namespace, int pageId, Map<String, Integer> oldTiers,
+            Map<String, Integer> newTiers) {
+        final int shard = getShard(pageId);
+        final Map<Integer, Integer> noPostings = Collections.emptyMap();
+        final List<ScalarisSearchIndexChangeOp> ops = new ArrayList<ScalarisSearchIndexChangeOp>();
+        for (Entry<String, Integer> term : oldTiers.entrySet()) {
+            final Integer newTier = newTiers.get(term.getKey());
+            if (newTier == null) {
+                ops.add(new ScalarisSearchIndexChangeOp(namespace, term.getKey(), shard,
+                        noPostings, Collections.singletonMap(pageId, term.getValue())));
+            } else if (!newTier.equals(term.getValue())) {
+                ops.add(new ScalarisSearchIndexChangeOp(namespace, term.getKey(), shard,
+                        Collections.singletonMap(pageId, newTier),
+                        Collections.singletonMap(pageId, term.getValue())));
+            }
+        }
+        for (Entry<String, Integer> term : newTiers.entrySet()) {
+            if (!oldTiers.containsKey(term.getKey())) {
+                ops.add(new ScalarisSearchIndexChangeOp(namespace, term.getKey(), shard,
+                        Collections.singletonMap(pageId, term.getValue()), noPostings));
+            }
+        }
+        return ops;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.bliki;
+
+import javax.servlet.http.HttpServletRequest;
+
+import de.zib.scalaris.examples.wikipedia.SavePageResult;
+import de.zib.scalaris.examples.wikipedia.ValueResult;
+import de.zib.scalaris.examples.wikipedia.plugin.WikiEventHandler;
+
+/**
+ * Event handler invalidating the JVM-wide caches, i.e. the
+ * {@link RenderedPageCache} and the {@link TemplateCache}, after successful
+ * page edits.
+ */
+public class CacheInvalidator implements WikiEventHandler {
+    private final WikiServlet<?> servlet;
+
+    /**
+     * Creates a new invalidator.
+     * 
+     * @param servlet
+     *            the servlet whose namespace is used to normalise titles
+     */
+    public CacheInvalidator(WikiServlet<?> servlet) {
+        this.servlet = servlet;
+    }
+
+    @Override
+    public <Connection> void onPageSaved(WikiPageEditBean page,
+            SavePageResult result, Connection connection) {
+        if (result.success) {
+            final String title = (result.newPage != null) ? result.newPage.getTitle() : page.getTitle();
+            final NormalisedTitle titleN = NormalisedTitle.fromUnnormalised(title, servlet.namespace);
+            TemplateCache.getInstance().invalidate(titleN);
+            RenderedPageCache.getInstance().invalidate(titleN);
+        }
+    }
+
+    @Override
+    public <Connection> void onPageView(WikiPageBeanBase page,
+            Connection connection) {
+    }
+
+    @Override
+    public void onImageRedirect(String image, String realImageUrl) {
+    }
+
+    @Override
+    public <Connection> void onViewRandomPage(WikiPageBean page,
+            ValueResult<NormalisedTitle> result, Connection connection) {
+    }
+
+    @Override
+    public <Connection> boolean checkAccess(String serviceUser,
+            HttpServletRequest request, Connection connection) {
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "Cache invalidation";
+    }
+
+    @Override
+    public String getURL() {
+        return "https://code.google.com/p/scalaris/";
+    }
+
+    @Override
+    public String getVersion() {
+        return "0.1";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Removes changed pages from the template cache and the cache of rendered pages.";
+    }
+
+    @Override
+    public String getAuthor() {
+        return "Zuse Institute Berlin";
+    }
+}
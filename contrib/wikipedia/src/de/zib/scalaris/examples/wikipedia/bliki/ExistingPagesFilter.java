@@ -0,0 +1,325 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.bliki;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Counting bloom filter of the existing pages used to colour links to
+ * non-existing pages.
+ *
+ * Each of the filter's cells is a 4-bit counter so that pages can be added
+ * and removed incrementally. Counters reaching their maximum value stick to
+ * it (they are never decremented again). Special pages are kept in a
+ * separate (exact) set which is not part of the serialised filter.
+ *
+ * The filter is thread-safe.
+ */
+public class ExistingPagesFilter {
+    private static final int VERSION = 1;
+    private static final int MAX_COUNTER = 0x0F;
+
+    private final int cells;
+    private final int hashes;
+    private final int capacity;
+    private final byte[] counters;
+    private int count = 0;
+    private Set<NormalisedTitle> specialPages = new HashSet<NormalisedTitle>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param capacity
+     *            number of pages the filter is sized for
+     * @param fpr
+     *            false positive rate at the given capacity
+     */
+    public ExistingPagesFilter(int capacity, double fpr) {
+        this.capacity = Math.max(1, capacity);
+        final double ln2 = Math.log(2);
+        this.cells = (int) Math.min(Integer.MAX_VALUE - 1,
+                Math.ceil(-this.capacity * Math.log(fpr) / (ln2 * ln2)));
+        this.hashes = Math.max(1, (int) Math.round(((double) cells / this.capacity) * ln2));
+        this.counters = new byte[(cells + 1) / 2];
+    }
+
+    private ExistingPagesFilter(int cells, int hashes, int capacity,
+            int count, byte[] counters) {
+        this.cells = cells;
+        this.hashes = hashes;
+        this.capacity = capacity;
+        this.count = count;
+        this.counters = counters;
+    }
+
+    /**
+     * Creates a filter containing all given pages with room for some more.
+     *
+     * @param pages
+     *            the pages to put into the filter
+     * @param fpr
+     *            false positive rate when full
+     *
+     * @return the filter
+     */
+    public static ExistingPagesFilter create(
+            Collection<? extends NormalisedTitle> pages, double fpr) {
+        final ExistingPagesFilter result = new ExistingPagesFilter(
+                Math.max(1000, pages.size() + pages.size() / 2), fpr);
+        for (NormalisedTitle page : pages) {
+            result.add(page);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the 64-bit FNV-1a hash of the normalised title (stable across
+     * JVMs in contrast to {@link Object#hashCode()}).
+     *
+     * @param page
+     *            the page title
+     *
+     * @return the hash value
+     */
+    private static long hash(NormalisedTitle page) {
+        final String str = page.toString();
+        long result = 0xcbf29ce484222325L;
+        for (int i = 0; i < str.length(); ++i) {
+            final char c = str.charAt(i);
+            result ^= (c & 0xFF);
+            result *= 0x100000001b3L;
+            result ^= (c >>> 8);
+            result *= 0x100000001b3L;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the counter cells of the given page using double hashing.
+     *
+     * @param page
+     *            the page title
+     *
+     * @return the cell indices
+     */
+    private int[] getCells(NormalisedTitle page) {
+        final long h = hash(page);
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32) | 1;
+        final int[] result = new int[hashes];
+        for (int i = 0; i < hashes; ++i) {
+            result[i] = (int) (((h1 + (long) i * h2) & 0x7FFFFFFFFFFFFFFFL) % cells);
+        }
+        return result;
+    }
+
+    private int getCounter(int cell) {
+        final int value = counters[cell >>> 1];
+        return ((cell & 1) == 0) ? (value & 0x0F) : ((value >>> 4) & 0x0F);
+    }
+
+    private void setCounter(int cell, int value) {
+        final int old = counters[cell >>> 1];
+        if ((cell & 1) == 0) {
+            counters[cell >>> 1] = (byte) ((old & 0xF0) | value);
+        } else {
+            counters[cell >>> 1] = (byte) ((old & 0x0F) | (value << 4));
+        }
+    }
+
+    /**
+     * Adds a page to the filter.
+     *
+     * Note: adding the same page twice requires removing it twice.
+     *
+     * @param page
+     *            the page to add
+     */
+    public void add(NormalisedTitle page) {
+        lock.writeLock().lock();
+        try {
+            for (int cell : getCells(page)) {
+                final int value = getCounter(cell);
+                if (value < MAX_COUNTER) {
+                    setCounter(cell, value + 1);
+                }
+            }
+            ++count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a (previously added) page from the filter.
+     *
+     * @param page
+     *            the page to remove
+     */
+    public void remove(NormalisedTitle page) {
+        lock.writeLock().lock();
+        try {
+            final int[] pageCells = getCells(page);
+            for (int cell : pageCells) {
+                if (getCounter(cell) == 0) {
+                    // not in the filter
+                    return;
+                }
+            }
+            for (int cell : pageCells) {
+                final int value = getCounter(cell);
+                if (value < MAX_COUNTER) {
+                    setCounter(cell, value - 1);
+                }
+            }
+            --count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether the given page may exist.
+     *
+     * @param page
+     *            the page to check
+     *
+     * @return <tt>false</tt> if the page definitely does not exist
+     */
+    public boolean contains(NormalisedTitle page) {
+        lock.readLock().lock();
+        try {
+            if (specialPages.contains(page)) {
+                return true;
+            }
+            for (int cell : getCells(page)) {
+                if (getCounter(cell) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the special pages which always exist (not serialised).
+     *
+     * @param specialPages
+     *            the special pages
+     */
+    public void setSpecialPages(Collection<? extends NormalisedTitle> specialPages) {
+        lock.writeLock().lock();
+        try {
+            this.specialPages = new HashSet<NormalisedTitle>(specialPages);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of pages in the filter (not including special pages).
+     *
+     * @return the number of added minus the number of removed pages
+     */
+    public int getCount() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether the filter holds more pages than it is sized for, i.e.
+     * should be re-created with a bigger size.
+     *
+     * @return whether the number of pages exceeds the capacity
+     */
+    public boolean isFull() {
+        return getCount() > capacity;
+    }
+
+    /**
+     * Serialises the filter (without the special pages).
+     *
+     * @return the serialised filter
+     */
+    public byte[] toBytes() {
+        lock.readLock().lock();
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(counters.length + 20);
+            final DataOutputStream dos = new DataOutputStream(bos);
+            dos.writeInt(VERSION);
+            dos.writeInt(cells);
+            dos.writeInt(hashes);
+            dos.writeInt(capacity);
+            dos.writeInt(count);
+            dos.write(counters);
+            dos.close();
+            return bos.toByteArray();
+        } catch (IOException e) {
+            // should not occur with a byte array stream
+            throw new RuntimeException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * De-serialises a filter created by {@link #toBytes()}.
+     *
+     * @param data
+     *            the serialised filter
+     *
+     * @return the filter (without special pages)
+     *
+     * @throws IllegalArgumentException
+     *             if the data is no valid filter
+     */
+    public static ExistingPagesFilter fromBytes(byte[] data)
+            throws IllegalArgumentException {
+        try {
+            final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+            if (dis.readInt() != VERSION) {
+                throw new IllegalArgumentException("unsupported filter version");
+            }
+            final int cells = dis.readInt();
+            final int hashes = dis.readInt();
+            final int capacity = dis.readInt();
+            final int count = dis.readInt();
+            if (cells <= 0 || hashes <= 0 || data.length != 20 + (cells + 1) / 2) {
+                throw new IllegalArgumentException("invalid filter size");
+            }
+            final byte[] counters = new byte[(cells + 1) / 2];
+            dis.readFully(counters);
+            return new ExistingPagesFilter(cells, hashes, capacity, count, counters);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
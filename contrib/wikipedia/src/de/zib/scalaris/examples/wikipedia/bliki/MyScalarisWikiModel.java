@@ -15,9 +15,13 @@
  */
 package de.zib.scalaris.examples.wikipedia.bliki;
 
+import java.util.Collection;
+import java.util.List;
+
 import de.zib.scalaris.Connection;
 import de.zib.scalaris.examples.wikipedia.RevisionResult;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerNormalised;
+import de.zib.scalaris.examples.wikipedia.ValueResult;
 
 /**
  * Wiki model using Scalaris to fetch (new) data, e.g. templates.
@@ -93,4 +97,11 @@ public class MyScalarisWikiModel extends MyWikiModel {
         return ScalarisDataHandlerNormalised.getRevision(connection, pageName);
     }
 
+    @Override
+    protected ValueResult<List<RevisionResult>> getRevsFromDB(
+            Collection<NormalisedTitle> titles) {
+        return ScalarisDataHandlerNormalised.getRevisions(connection, titles,
+                "prefetch " + titles.size() + " pages");
+    }
+
 }
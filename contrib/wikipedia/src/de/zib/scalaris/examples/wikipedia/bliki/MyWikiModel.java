@@ -43,11 +43,11 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringEscapeUtils;
 
-import com.skjegstad.utils.BloomFilter;
 
 import de.zib.scalaris.examples.wikipedia.InvolvedKey;
 import de.zib.scalaris.examples.wikipedia.LinkedMultiHashMap;
 import de.zib.scalaris.examples.wikipedia.RevisionResult;
+import de.zib.scalaris.examples.wikipedia.ValueResult;
 
 /**
  * Wiki model fixing some bugs of {@link WikiModel} and adding some
@@ -164,9 +164,31 @@ public class MyWikiModel extends WikiModel {
      * False positive rate of the bloom filter for the existing pages checks.
      */
     public static final double existingPagesFPR = 0.1;
-    protected BloomFilter<NormalisedTitle> existingPages = null;
+    protected ExistingPagesFilter existingPages = null;
 
     protected Map<NormalisedTitle, String> pageCache = new HashMap<NormalisedTitle, String>();
+    /**
+     * Targets of links rendered as links to non-existing pages.
+     */
+    protected Set<NormalisedTitle> missingLinks = new HashSet<NormalisedTitle>();
+
+    /**
+     * Cache for pages retrieved from the DB shared among requests (may be
+     * <tt>null</tt>).
+     */
+    protected TemplateCache templateCache = null;
+
+    /**
+     * Pages read by {@link #prefetchPages(String)} for the page currently
+     * being rendered (not reset by {@link #setUp()}).
+     */
+    protected Map<NormalisedTitle, TemplateCache.CachedTemplate> prefetchedPages = new HashMap<NormalisedTitle, TemplateCache.CachedTemplate>();
+
+    /**
+     * Maximum nesting depth of transclusions followed by
+     * {@link #prefetchPages(String)}.
+     */
+    protected static final int MAX_PREFETCH_DEPTH = 8;
 
     /**
      * Text of the page to render, i.e. given to
@@ -178,6 +200,13 @@ public class MyWikiModel extends WikiModel {
     protected static final Pattern MATCH_WIKI_FORBIDDEN_TITLE_CHARS =
             Pattern.compile("^.*?([\\p{Cc}\\p{Cn}\\p{Co}#<>\\[\\]|{}\\n\\r]).*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 
+    /**
+     * Matches transclusions, i.e. <tt>{{name}}</tt> or <tt>{{name|...}}</tt>
+     * but not template parameters like <tt>{{{1}}}</tt>.
+     */
+    protected static final Pattern MATCH_WIKI_TRANSCLUSION = Pattern.compile("(?<!\\{)\\{\\{(?!\\{)\\s*([^{}|<>\\[\\]\\n]+?)\\s*(?:\\||\\}\\})");
+    protected static final Pattern MATCH_WIKI_TRANSCLUSION_MODIFIER = Pattern.compile("^(?:subst|safesubst|msgnw|msg|raw):", Pattern.CASE_INSENSITIVE);
+
     protected static final Pattern MATCH_WIKI_REDIRECT = Pattern.compile("^\\s*#REDIRECT[ ]?\\[\\[:?([^\\]]*)\\]\\].*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 
     static {
@@ -461,7 +490,8 @@ public class MyWikiModel extends WikiModel {
      * <tt>followRedirect</tt> is set, resolves redirects by including the
      * redirected content instead.
      * 
-     * Caches retrieved pages in {@link #pageCache}.
+     * Caches retrieved pages in {@link #pageCache} and, if set, looks them up
+     * in the {@link #templateCache} before accessing the DB.
      * 
      * @param namespace
      *            the namespace of the page
@@ -489,42 +519,56 @@ public class MyWikiModel extends WikiModel {
             return pageCache.get(pageName);
         } else if (hasDBConnection()) {
             String text = null;
-            // System.out.println("retrievePage(" + namespace + ", " + articleName + ")");
-            RevisionResult getRevResult = getRevFromDB(pageName);
-            addStats(getRevResult.stats);
-            addInvolvedKeys(getRevResult.involvedKeys);
-            if (getRevResult.success) {
-                text = getRevResult.revision.unpackedText();
-                if (getRevResult.page.isRedirect()) {
-                    final Matcher matcher = MATCH_WIKI_REDIRECT.matcher(text);
-                    if (matcher.matches()) {
-                        String[] redirFullName = splitNsTitle(matcher.group(1));
-                        if (followRedirect) {
-                            // see https://secure.wikimedia.org/wikipedia/en/wiki/Help:Redirect#Transclusion
-                            String redirText = retrievePage(redirFullName[0], redirFullName[1], templateParameters, false);
-                            if (redirText != null && !redirText.isEmpty()) {
-                                text = redirText;
-                            } else {
-                                text = "<ol><li>REDIRECT [["
-                                        + createFullPageName(redirFullName[0],
-                                                redirFullName[1]) + "]]</li></ol>";
-                            }
+            boolean isRedirect = false;
+            TemplateCache.CachedTemplate cached = prefetchedPages.get(pageName);
+            if (cached == null && templateCache != null) {
+                cached = templateCache.get(pageName);
+            }
+            if (cached != null) {
+                text = cached.text;
+                isRedirect = cached.redirect;
+            } else {
+                // System.out.println("retrievePage(" + namespace + ", " + articleName + ")");
+                RevisionResult getRevResult = getRevFromDB(pageName);
+                addStats(getRevResult.stats);
+                addInvolvedKeys(getRevResult.involvedKeys);
+                if (getRevResult.success) {
+                    text = getRevResult.revision.unpackedText();
+                    isRedirect = getRevResult.page.isRedirect();
+                } else {
+                    // NOTE: must return null for non-existing pages in order for #ifexist to work correctly!
+                    // System.err.println(getRevResult.message);
+                    // text = "<b>ERROR: template " + pageName + " not available: " + getRevResult.message + "</b>";
+                }
+                if (templateCache != null) {
+                    templateCache.put(pageName, getRevResult);
+                }
+            }
+            if (text != null && isRedirect) {
+                final Matcher matcher = MATCH_WIKI_REDIRECT.matcher(text);
+                if (matcher.matches()) {
+                    String[] redirFullName = splitNsTitle(matcher.group(1));
+                    if (followRedirect) {
+                        // see https://secure.wikimedia.org/wikipedia/en/wiki/Help:Redirect#Transclusion
+                        String redirText = retrievePage(redirFullName[0], redirFullName[1], templateParameters, false);
+                        if (redirText != null && !redirText.isEmpty()) {
+                            text = redirText;
                         } else {
-                            // we must disarm the redirect here!
                             text = "<ol><li>REDIRECT [["
                                     + createFullPageName(redirFullName[0],
                                             redirFullName[1]) + "]]</li></ol>";
                         }
                     } else {
                         // we must disarm the redirect here!
-                        System.err.println("Couldn't parse the redirect title from: " + text);
-                        text = null;
+                        text = "<ol><li>REDIRECT [["
+                                + createFullPageName(redirFullName[0],
+                                        redirFullName[1]) + "]]</li></ol>";
                     }
+                } else {
+                    // we must disarm the redirect here!
+                    System.err.println("Couldn't parse the redirect title from: " + text);
+                    text = null;
                 }
-            } else {
-                // NOTE: must return null for non-existing pages in order for #ifexist to work correctly!
-                // System.err.println(getRevResult.message);
-                // text = "<b>ERROR: template " + pageName + " not available: " + getRevResult.message + "</b>";
             }
             pageCache.put(pageName, text);
             return text;
@@ -541,6 +585,138 @@ public class MyWikiModel extends WikiModel {
                 "no DB connection", true, title, null, null, false,
                 false, title.toString(), 0l);
     }
+    
+    /**
+     * Retrieves the current revisions of multiple pages at once.
+     * 
+     * @param titles
+     *            the pages to retrieve
+     * 
+     * @return the results or <tt>null</tt> if batch retrieval is not
+     *         supported (pages will then be retrieved one at a time during
+     *         rendering)
+     */
+    protected ValueResult<List<RevisionResult>> getRevsFromDB(Collection<NormalisedTitle> titles) {
+        return null;
+    }
+
+    /**
+     * Reads all pages transcluded by the given wiki text, and recursively by
+     * the transcluded pages, before rendering. Each nesting level is read
+     * with a single {@link #getRevsFromDB(Collection)} call so that rendering
+     * does not need a DB round trip per template. The results are put into
+     * {@link #prefetchedPages} and the {@link #templateCache} (if set).
+     * 
+     * Transclusions are found syntactically, so pages only used in branches
+     * not taken, e.g. by <tt>#if</tt>, will be read, too, and pages with
+     * computed names will be read during rendering.
+     * 
+     * @param rawWikiText
+     *            the wiki text to be rendered
+     */
+    protected void prefetchPages(String rawWikiText) {
+        prefetchedPages = new HashMap<NormalisedTitle, TemplateCache.CachedTemplate>();
+        if (!hasDBConnection()) {
+            return;
+        }
+        Set<NormalisedTitle> level = new HashSet<NormalisedTitle>();
+        addTransclusions(rawWikiText, level);
+        for (int depth = 0; depth < MAX_PREFETCH_DEPTH && !level.isEmpty(); ++depth) {
+            List<NormalisedTitle> toRead = new ArrayList<NormalisedTitle>(level.size());
+            Set<NormalisedTitle> nextLevel = new HashSet<NormalisedTitle>();
+            for (NormalisedTitle title : level) {
+                final TemplateCache.CachedTemplate cached = (templateCache == null) ? null : templateCache.get(title);
+                if (cached != null) {
+                    prefetchedPages.put(title, cached);
+                    addTransclusions(cached, nextLevel);
+                } else {
+                    toRead.add(title);
+                }
+            }
+            if (!toRead.isEmpty()) {
+                ValueResult<List<RevisionResult>> result = getRevsFromDB(toRead);
+                if (result == null) {
+                    return;
+                }
+                addStats(result.stats);
+                addInvolvedKeys(result.involvedKeys);
+                if (!result.success) {
+                    // leave the rest to the (lazy) retrievePage()
+                    return;
+                }
+                for (RevisionResult revResult : result.value) {
+                    final TemplateCache.CachedTemplate page;
+                    if (revResult.success) {
+                        page = new TemplateCache.CachedTemplate(
+                                revResult.revision.getId(),
+                                revResult.revision.unpackedText(),
+                                revResult.page.isRedirect());
+                    } else if (revResult.page_not_existing) {
+                        page = new TemplateCache.CachedTemplate(-1, null, false);
+                    } else {
+                        continue;
+                    }
+                    prefetchedPages.put(revResult.normalisedTitle, page);
+                    if (templateCache != null) {
+                        templateCache.put(revResult.normalisedTitle, revResult);
+                    }
+                    addTransclusions(page, nextLevel);
+                }
+            }
+            nextLevel.removeAll(prefetchedPages.keySet());
+            nextLevel.removeAll(pageCache.keySet());
+            level = nextLevel;
+        }
+    }
+
+    /**
+     * Adds the pages transcluded by the given (prefetched) page or the page
+     * it redirects to.
+     */
+    private void addTransclusions(TemplateCache.CachedTemplate page, Set<NormalisedTitle> titles) {
+        if (page.text == null) {
+            return;
+        }
+        if (page.redirect) {
+            final Matcher matcher = MATCH_WIKI_REDIRECT.matcher(page.text);
+            if (matcher.matches()) {
+                String[] redirFullName = splitNsTitle(matcher.group(1));
+                titles.add(normalisePageTitle(redirFullName[0], redirFullName[1]));
+            }
+        } else {
+            addTransclusions(page.text, titles);
+        }
+    }
+
+    /**
+     * Adds the (normalised) titles of all pages transcluded by the given wiki
+     * text, ignoring magic words and parser functions.
+     */
+    private void addTransclusions(String wikiText, Set<NormalisedTitle> titles) {
+        final Matcher matcher = MATCH_WIKI_TRANSCLUSION.matcher(wikiText);
+        while (matcher.find()) {
+            String name = MATCH_WIKI_TRANSCLUSION_MODIFIER.matcher(matcher.group(1)).replaceFirst("");
+            if (name.isEmpty() || name.charAt(0) == '#') {
+                continue;
+            }
+            final int colon = name.indexOf(':');
+            if (isMagicWord(colon > 0 ? name.substring(0, colon) : name)) {
+                continue;
+            }
+            String[] nsTitle;
+            if (name.charAt(0) == ':') {
+                nsTitle = splitNsTitle(name.substring(1));
+            } else {
+                nsTitle = splitNsTitle(name);
+                if (nsTitle[0].isEmpty()) {
+                    nsTitle[0] = getTemplateNamespace();
+                }
+            }
+            if (!nsTitle[1].isEmpty() && isValidTitle(createFullPageName(nsTitle[0], nsTitle[1]))) {
+                titles.add(normalisePageTitle(nsTitle[0], nsTitle[1]));
+            }
+        }
+    }
 
     /* (non-Javadoc)
      * @see info.bliki.wiki.model.AbstractWikiModel#encodeTitleToUrl(java.lang.String, boolean)
@@ -794,6 +970,7 @@ public class MyWikiModel extends WikiModel {
             NormalisedTitle topic = normalisePageTitle(topic0);
             if (cssClass == null && existingPages!= null && !existingPages.contains(topic)) {
                 cssClass = "new";
+                missingLinks.add(topic);
             }
             super.appendInternalLink(topic0, hashSection, topicDescription, cssClass, parseRecursive);
         }
@@ -924,6 +1101,7 @@ public class MyWikiModel extends WikiModel {
         super.setUp();
         magicWordCache = new HashMap<String, String>();
         pageCache = new HashMap<NormalisedTitle, String>();
+        missingLinks = new HashSet<NormalisedTitle>();
         if (renderWikiText != null) {
             pageCache.put(normalisePageTitle(getPageName()), renderWikiText );
         }
@@ -958,6 +1136,26 @@ public class MyWikiModel extends WikiModel {
         return includes;
     }
 
+    /**
+     * Gets the pages retrieved while rendering the current page, e.g.
+     * templates, including pages which did not exist.
+     * 
+     * @return the (normalised) titles of the retrieved pages
+     */
+    public Set<NormalisedTitle> getRetrievedPages() {
+        return pageCache.keySet();
+    }
+
+    /**
+     * Gets the targets of the links to non-existing pages in the current
+     * page, i.e. pages whose creation changes the rendered page.
+     * 
+     * @return the (normalised) titles of the link targets
+     */
+    public Set<NormalisedTitle> getMissingLinks() {
+        return missingLinks;
+    }
+
     /**
      * Gets information about the time needed to look up pages.
      * 
@@ -1042,26 +1240,38 @@ public class MyWikiModel extends WikiModel {
      * 
      * @return the bloom filter
      */
-    public static BloomFilter<NormalisedTitle> createBloomFilter(
+    public static ExistingPagesFilter createBloomFilter(
             Collection<? extends NormalisedTitle> elements) {
-        BloomFilter<NormalisedTitle> result = new BloomFilter<NormalisedTitle>(
-                existingPagesFPR,
-                Math.max(100, elements.size() + Math.max(10, elements.size() / 10)));
-        result.addAll(elements);
-        return result;
+        return ExistingPagesFilter.create(elements, existingPagesFPR);
     }
 
     /**
      * @return the existingPages
      */
-    public BloomFilter<NormalisedTitle> getExistingPages() {
+    public ExistingPagesFilter getExistingPages() {
         return existingPages;
     }
 
+    /**
+     * @return the template cache shared among requests (may be <tt>null</tt>)
+     */
+    public TemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * @param templateCache
+     *            the template cache shared among requests (<tt>null</tt> to
+     *            always retrieve pages from the DB)
+     */
+    public void setTemplateCache(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
     /**
      * @param existingPages the existingPages to set
      */
-    public void setExistingPages(BloomFilter<NormalisedTitle> existingPages) {
+    public void setExistingPages(ExistingPagesFilter existingPages) {
         this.existingPages = existingPages;
     }
 
@@ -1200,6 +1410,7 @@ public class MyWikiModel extends WikiModel {
      */
     public String renderPageWithCache(ITextConverter converter, String rawWikiText) {
         renderWikiText = rawWikiText;
+        prefetchPages(rawWikiText);
         return super.render(converter, rawWikiText, true);
     }
 
@@ -1217,6 +1428,7 @@ public class MyWikiModel extends WikiModel {
      */
     public String renderPageWithCache(String rawWikiText) {
         renderWikiText = rawWikiText;
+        prefetchPages(rawWikiText);
         return super.render(new HTMLConverter(), rawWikiText, true);
     }
 }
@@ -0,0 +1,698 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.bliki;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * JVM-wide cache of rendered pages, i.e. the HTML created by
+ * {@link MyWikiModel#renderPageWithCache(String)} together with the redirect
+ * link and categories extracted during rendering.
+ * 
+ * Entries are identified by the normalised page title, the revision id, the
+ * renderer and the wiki's language. Since a revision is immutable, entries
+ * only become stale if a page they transclude (e.g. a template) changes or a
+ * page they link to is created (links to non-existing pages are rendered
+ * differently). Each entry therefore records the pages retrieved during
+ * rendering and the targets of its links to non-existing pages.
+ * {@link #invalidate(NormalisedTitle)} drops all entries of a page and all
+ * entries depending on it using a reverse index of these dependencies. Edits
+ * made through other JVMs are only noticed if they create a page (servlets
+ * notify each other of new pages), otherwise the maximum age of the entries
+ * bounds how long they go unnoticed.
+ * 
+ * The cache is bounded by an (estimated) number of bytes and evicts in a
+ * W-TinyLFU fashion: new entries are put into a small LRU admission window.
+ * Entries leaving the window compete against the LRU victim of the main
+ * (segmented LRU) area and are only admitted if they have been accessed more
+ * often according to a count-min frequency sketch. This keeps one-hit
+ * wonders, e.g. from crawlers, from flushing popular pages.
+ * 
+ * @see CacheInvalidator
+ */
+public class RenderedPageCache {
+    private final static RenderedPageCache instance = new RenderedPageCache(0, 0);
+
+    /**
+     * Share of the byte budget used for the admission window (in percent).
+     */
+    protected static final int WINDOW_PERCENT = 1;
+    /**
+     * Share of the main area's byte budget used for its protected segment (in
+     * percent).
+     */
+    protected static final int PROTECTED_PERCENT = 80;
+    /**
+     * Estimated average size of an entry, used to dimension the frequency
+     * sketch.
+     */
+    protected static final int AVG_ENTRY_SIZE = 16 * 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, CachedPage> window = new LinkedHashMap<Key, CachedPage>(16, 0.75f, true);
+    private final LinkedHashMap<Key, CachedPage> probation = new LinkedHashMap<Key, CachedPage>(16, 0.75f, true);
+    private final LinkedHashMap<Key, CachedPage> protectedSegment = new LinkedHashMap<Key, CachedPage>(16, 0.75f, true);
+    private long windowBytes = 0;
+    private long probationBytes = 0;
+    private long protectedBytes = 0;
+    /**
+     * Maps page titles to the keys of the entries of these pages and of the
+     * entries depending on them.
+     */
+    private final HashMap<NormalisedTitle, Set<Key>> dependents = new HashMap<NormalisedTitle, Set<Key>>();
+    private long maxBytes;
+    private volatile long maxAge;
+    private long maxWindowBytes;
+    private long maxProtectedBytes;
+    private FrequencySketch sketch;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong invalidations = new AtomicLong(0);
+
+    /**
+     * Creates a new cache.
+     * 
+     * @param maxBytes
+     *            the (estimated) number of bytes the cache may use
+     *            (<tt>0</tt> disables the cache)
+     * @param maxAge
+     *            maximum age of an entry in milliseconds
+     */
+    public RenderedPageCache(long maxBytes, long maxAge) {
+        setMaxBytes(maxBytes);
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Gets the static instance shared by all wiki servlets of this JVM.
+     * 
+     * @return the instance
+     */
+    public static RenderedPageCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the byte budget of the cache and evicts entries if necessary.
+     * 
+     * @param maxBytes
+     *            the (estimated) number of bytes the cache may use
+     *            (<tt>0</tt> disables the cache)
+     */
+    public void setMaxBytes(long maxBytes) {
+        lock.lock();
+        try {
+            this.maxBytes = Math.max(0, maxBytes);
+            this.maxWindowBytes = this.maxBytes * WINDOW_PERCENT / 100;
+            this.maxProtectedBytes = (this.maxBytes - maxWindowBytes) * PROTECTED_PERCENT / 100;
+            this.sketch = new FrequencySketch(this.maxBytes / AVG_ENTRY_SIZE);
+            while (windowBytes > maxWindowBytes) {
+                evictEldest(window);
+            }
+            while (protectedBytes > maxProtectedBytes) {
+                demoteEldestProtected();
+            }
+            while (probationBytes + protectedBytes > this.maxBytes - maxWindowBytes) {
+                evictEldest(probation.isEmpty() ? protectedSegment : probation);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the byte budget of the cache.
+     * 
+     * @return the maximum (estimated) number of bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the maximum age of an entry.
+     * 
+     * @return the maximum age in milliseconds
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Sets the maximum age of an entry.
+     * 
+     * @param maxAge
+     *            the maximum age in milliseconds
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Whether the cache is enabled, i.e. has a positive byte budget.
+     * 
+     * @return <tt>true</tt> if entries may be cached
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Looks up a rendered page.
+     * 
+     * @param key
+     *            the page's key
+     * 
+     * @return the cached page or <tt>null</tt> if not cached
+     */
+    public CachedPage get(Key key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        CachedPage page;
+        lock.lock();
+        try {
+            sketch.increment(key);
+            page = window.get(key);
+            if (page == null) {
+                page = protectedSegment.get(key);
+            }
+            if (page == null) {
+                page = probation.remove(key);
+                if (page != null) {
+                    probationBytes -= page.weight;
+                    protectedSegment.put(key, page);
+                    protectedBytes += page.weight;
+                    while (protectedBytes > maxProtectedBytes) {
+                        demoteEldestProtected();
+                    }
+                }
+            }
+            if (page != null
+                    && System.currentTimeMillis() - page.timestamp > maxAge) {
+                remove(key);
+                page = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (page == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return page;
+    }
+
+    /**
+     * Adds a rendered page to the cache. The page may not be retained if it
+     * does not pass the admission policy.
+     * 
+     * @param key
+     *            the page's key
+     * @param page
+     *            the rendered page
+     */
+    public void put(Key key, CachedPage page) {
+        if (!isEnabled() || page.weight > maxBytes - maxWindowBytes) {
+            return;
+        }
+        lock.lock();
+        try {
+            remove(key);
+            window.put(key, page);
+            windowBytes += page.weight;
+            index(key, page);
+            while (windowBytes > maxWindowBytes) {
+                Iterator<Map.Entry<Key, CachedPage>> it = window.entrySet().iterator();
+                Map.Entry<Key, CachedPage> candidate = it.next();
+                it.remove();
+                windowBytes -= candidate.getValue().weight;
+                admit(candidate.getKey(), candidate.getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries of the given page and all entries of pages which
+     * depend on it, e.g. because they include the page as a template.
+     * 
+     * @param title
+     *            the (normalised) title of the changed page
+     */
+    public void invalidate(NormalisedTitle title) {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            final Set<Key> keys = dependents.remove(title);
+            if (keys != null) {
+                for (Key key : keys) {
+                    if (remove(key) != null) {
+                        invalidations.incrementAndGet();
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            dependents.clear();
+            windowBytes = 0;
+            probationBytes = 0;
+            protectedBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lets the candidate evicted from the admission window compete with the
+     * victims of the main area.
+     * 
+     * Note: the caller must hold {@link #lock}.
+     */
+    private void admit(Key candidateKey, CachedPage candidate) {
+        probation.put(candidateKey, candidate);
+        probationBytes += candidate.weight;
+        final int candidateFreq = sketch.frequency(candidateKey);
+        while (probationBytes + protectedBytes > maxBytes - maxWindowBytes) {
+            LinkedHashMap<Key, CachedPage> victimSegment = probation;
+            Map.Entry<Key, CachedPage> victim = probation.entrySet().iterator().next();
+            if (victim.getKey().equals(candidateKey)) {
+                if (protectedSegment.isEmpty()) {
+                    // cannot happen since the candidate fits into the main area
+                    break;
+                }
+                victimSegment = protectedSegment;
+                victim = protectedSegment.entrySet().iterator().next();
+            }
+            if (candidateFreq > sketch.frequency(victim.getKey())) {
+                evictEldest(victimSegment);
+            } else {
+                probation.remove(candidateKey);
+                probationBytes -= candidate.weight;
+                unindex(candidateKey, candidate);
+                evictions.incrementAndGet();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Note: the caller must hold {@link #lock}.
+     * 
+     * @return the removed entry or <tt>null</tt> if not cached
+     */
+    private CachedPage remove(Key key) {
+        CachedPage old;
+        if ((old = window.remove(key)) != null) {
+            windowBytes -= old.weight;
+        } else if ((old = probation.remove(key)) != null) {
+            probationBytes -= old.weight;
+        } else if ((old = protectedSegment.remove(key)) != null) {
+            protectedBytes -= old.weight;
+        }
+        if (old != null) {
+            unindex(key, old);
+        }
+        return old;
+    }
+
+    /**
+     * Note: the caller must hold {@link #lock}.
+     */
+    private void evictEldest(LinkedHashMap<Key, CachedPage> segment) {
+        Iterator<Map.Entry<Key, CachedPage>> it = segment.entrySet().iterator();
+        Map.Entry<Key, CachedPage> eldest = it.next();
+        it.remove();
+        final CachedPage page = eldest.getValue();
+        unindex(eldest.getKey(), page);
+        if (segment == window) {
+            windowBytes -= page.weight;
+        } else if (segment == probation) {
+            probationBytes -= page.weight;
+        } else {
+            protectedBytes -= page.weight;
+        }
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * Note: the caller must hold {@link #lock}.
+     */
+    private void demoteEldestProtected() {
+        Iterator<Map.Entry<Key, CachedPage>> it = protectedSegment.entrySet().iterator();
+        Map.Entry<Key, CachedPage> eldest = it.next();
+        it.remove();
+        protectedBytes -= eldest.getValue().weight;
+        probation.put(eldest.getKey(), eldest.getValue());
+        probationBytes += eldest.getValue().weight;
+    }
+
+    /**
+     * Adds an entry to {@link #dependents}.
+     * 
+     * Note: the caller must hold {@link #lock}.
+     */
+    private void index(Key key, CachedPage page) {
+        addDependent(key.title, key);
+        for (NormalisedTitle dependency : page.dependencies) {
+            addDependent(dependency, key);
+        }
+    }
+
+    /**
+     * Removes an entry from {@link #dependents}.
+     * 
+     * Note: the caller must hold {@link #lock}.
+     */
+    private void unindex(Key key, CachedPage page) {
+        removeDependent(key.title, key);
+        for (NormalisedTitle dependency : page.dependencies) {
+            removeDependent(dependency, key);
+        }
+    }
+
+    private void addDependent(NormalisedTitle title, Key key) {
+        Set<Key> keys = dependents.get(title);
+        if (keys == null) {
+            keys = new HashSet<Key>();
+            dependents.put(title, keys);
+        }
+        keys.add(key);
+    }
+
+    private void removeDependent(NormalisedTitle title, Key key) {
+        final Set<Key> keys = dependents.get(title);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                dependents.remove(title);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of lookups which found a cached page.
+     * 
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups which did not find a cached page.
+     * 
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the ratio of hits to all lookups.
+     * 
+     * @return the hit rate (between <tt>0.0</tt> and <tt>1.0</tt>)
+     */
+    public double getHitRate() {
+        final long hits = this.hits.get();
+        final long total = hits + misses.get();
+        return total == 0 ? 0.0 : ((double) hits) / total;
+    }
+
+    /**
+     * Gets the number of entries evicted or rejected due to the byte budget.
+     * 
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the number of entries removed by {@link #invalidate(NormalisedTitle)}.
+     * 
+     * @return the number of invalidations
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Gets the number of cached pages.
+     * 
+     * @return the number of entries
+     */
+    public int getSize() {
+        lock.lock();
+        try {
+            return window.size() + probation.size() + protectedSegment.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the (estimated) number of bytes used by the cached pages.
+     * 
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        lock.lock();
+        try {
+            return windowBytes + probationBytes + protectedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Identifies a rendered page.
+     */
+    public static class Key {
+        /**
+         * The (normalised) title of the page.
+         */
+        public final NormalisedTitle title;
+        /**
+         * The id of the rendered revision.
+         */
+        public final int revision;
+        /**
+         * The renderer used.
+         */
+        public final int renderer;
+        /**
+         * The language of the wiki.
+         */
+        public final String language;
+
+        /**
+         * Creates a new key.
+         * 
+         * @param title
+         *            the (normalised) title of the page
+         * @param revision
+         *            the id of the rendered revision
+         * @param renderer
+         *            the renderer used
+         * @param language
+         *            the language of the wiki
+         */
+        public Key(NormalisedTitle title, int revision, int renderer,
+                String language) {
+            this.title = title;
+            this.revision = revision;
+            this.renderer = renderer;
+            this.language = language;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return revision == other.revision && renderer == other.renderer
+                    && title.equals(other.title)
+                    && language.equals(other.language);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = title.hashCode();
+            result = 31 * result + revision;
+            result = 31 * result + renderer;
+            result = 31 * result + language.hashCode();
+            return result;
+        }
+    }
+
+    /**
+     * A rendered page.
+     */
+    public static class CachedPage {
+        /**
+         * The rendered HTML (may be <tt>null</tt> if rendering failed).
+         */
+        public final String html;
+        /**
+         * The redirect link found during rendering (may be <tt>null</tt>).
+         */
+        public final String redirectLink;
+        /**
+         * The categories found during rendering.
+         */
+        public final Set<String> categories;
+        /**
+         * The pages retrieved during rendering, e.g. templates, and the
+         * targets of links to non-existing pages.
+         */
+        public final Set<NormalisedTitle> dependencies;
+        /**
+         * The estimated size of this entry in bytes.
+         */
+        public final long weight;
+        /**
+         * The time this entry was created at.
+         */
+        public final long timestamp;
+
+        /**
+         * Creates a new cache entry.
+         * 
+         * @param html
+         *            the rendered HTML
+         * @param redirectLink
+         *            the redirect link (may be <tt>null</tt>)
+         * @param categories
+         *            the categories of the page
+         * @param dependencies
+         *            the pages retrieved during rendering and the targets of
+         *            links to non-existing pages
+         */
+        public CachedPage(String html, String redirectLink,
+                Set<String> categories, Set<NormalisedTitle> dependencies) {
+            this.html = html;
+            this.redirectLink = redirectLink;
+            this.categories = Collections.unmodifiableSet(new HashSet<String>(categories));
+            this.dependencies = Collections.unmodifiableSet(new HashSet<NormalisedTitle>(dependencies));
+            long weight = 128;
+            if (html != null) {
+                weight += 2 * html.length();
+            }
+            if (redirectLink != null) {
+                weight += 2 * redirectLink.length();
+            }
+            for (String category : categories) {
+                weight += 64 + 2 * category.length();
+            }
+            for (NormalisedTitle dependency : dependencies) {
+                weight += 64 + 2 * dependency.title.length();
+            }
+            this.weight = weight;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Count-min sketch with 4-bit counters estimating the access frequency of
+     * keys. All counters are halved periodically so that the frequencies age.
+     */
+    private static class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int[] SEEDS = {0x97cb3127, 0x8f1bbcdc, 0x5a827999, 0x6ed9eba1};
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        /**
+         * @param expectedEntries
+         *            expected number of cached entries
+         */
+        public FrequencySketch(long expectedEntries) {
+            int width = 256;
+            while (width < expectedEntries && width < (1 << 24)) {
+                width <<= 1;
+            }
+            table = new byte[DEPTH][width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        private int index(Object key, int row) {
+            int h = key.hashCode() * SEEDS[row];
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        public void increment(Object key) {
+            boolean added = false;
+            for (int row = 0; row < DEPTH; ++row) {
+                final int i = index(key, row);
+                if (table[row][i] < 15) {
+                    ++table[row][i];
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (byte[] counters : table) {
+                    for (int i = 0; i < counters.length; ++i) {
+                        counters[i] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        public int frequency(Object key) {
+            int min = 15;
+            for (int row = 0; row < DEPTH; ++row) {
+                min = Math.min(min, table[row][index(key, row)]);
+            }
+            return min;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.bliki;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.zib.scalaris.examples.wikipedia.RevisionResult;
+
+/**
+ * JVM-wide cache of the raw contents of pages retrieved during rendering,
+ * e.g. templates, shared by all {@link MyWikiModel} instances which have it
+ * set (see {@link MyWikiModel#setTemplateCache(TemplateCache)}).
+ * 
+ * Entries remember the revision id they were read with and are removed
+ * <ul>
+ * <li>by {@link #invalidate(NormalisedTitle)} after an edit of the page,</li>
+ * <li>by {@link #validate(NormalisedTitle, int)} whenever a different current
+ * revision of the page is seen, e.g. when the page itself is viewed, and</li>
+ * <li>after {@link #getMaxAge()} milliseconds to limit the staleness due to
+ * edits through other servlets.</li>
+ * </ul>
+ * Non-existing pages are cached, too, since <tt>#ifexist</tt> and red links
+ * would otherwise look them up over and over again. If the cache is full, the
+ * least recently used entry is removed so that frequently included templates
+ * stay cached.
+ * 
+ * @see CacheInvalidator
+ */
+public class TemplateCache {
+    private final static TemplateCache instance = new TemplateCache(0, 0);
+
+    /**
+     * Cached entries in access order (least recently used first).
+     */
+    private final LinkedHashMap<NormalisedTitle, CachedTemplate> entries =
+            new LinkedHashMap<NormalisedTitle, CachedTemplate>(16, 0.75f, true);
+    private volatile int maxEntries;
+    private volatile long maxAge;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * Creates a new cache.
+     * 
+     * @param maxEntries
+     *            maximum number of cached pages (<tt>0</tt> disables the
+     *            cache)
+     * @param maxAge
+     *            maximum age of an entry in milliseconds
+     */
+    public TemplateCache(int maxEntries, long maxAge) {
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Gets the static instance shared by all wiki servlets of this JVM.
+     * 
+     * @return the instance
+     */
+    public static TemplateCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the maximum number of cached pages.
+     * 
+     * @return the maximum number of entries
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of cached pages.
+     * 
+     * @param maxEntries
+     *            the maximum number of entries (<tt>0</tt> disables the
+     *            cache)
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        shrink();
+    }
+
+    /**
+     * Gets the maximum age of an entry.
+     * 
+     * @return the maximum age in milliseconds
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Sets the maximum age of an entry.
+     * 
+     * @param maxAge
+     *            the maximum age in milliseconds
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Whether the cache is enabled, i.e. may hold any entries.
+     * 
+     * @return <tt>true</tt> if pages may be cached
+     */
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Looks up a page.
+     * 
+     * @param title
+     *            the (normalised) title of the page
+     * 
+     * @return the cached page or <tt>null</tt> if not cached
+     */
+    public CachedTemplate get(NormalisedTitle title) {
+        CachedTemplate entry;
+        synchronized (this) {
+            entry = entries.get(title);
+            if (entry != null
+                    && System.currentTimeMillis() - entry.timestamp > maxAge) {
+                entries.remove(title);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Adds the result of a page lookup to the cache. Failed lookups are only
+     * cached if the page does not exist.
+     * 
+     * @param title
+     *            the (normalised) title of the page
+     * @param result
+     *            the result of reading the page's current revision
+     */
+    public void put(NormalisedTitle title, RevisionResult result) {
+        if (!isEnabled()) {
+            return;
+        }
+        final CachedTemplate entry;
+        if (result.success) {
+            entry = new CachedTemplate(result.revision.getId(),
+                    result.revision.unpackedText(), result.page.isRedirect());
+        } else if (result.page_not_existing) {
+            entry = new CachedTemplate(-1, null, false);
+        } else {
+            return;
+        }
+        synchronized (this) {
+            entries.put(title, entry);
+            shrink();
+        }
+    }
+
+    /**
+     * Removes the given page from the cache if the cached revision differs
+     * from the given (current) one.
+     * 
+     * @param title
+     *            the (normalised) title of the page
+     * @param currentRevision
+     *            the id of the page's current revision
+     */
+    public synchronized void validate(NormalisedTitle title, int currentRevision) {
+        final CachedTemplate entry = entries.get(title);
+        if (entry != null && entry.revision != currentRevision) {
+            entries.remove(title);
+        }
+    }
+
+    /**
+     * Removes the given page from the cache.
+     * 
+     * @param title
+     *            the (normalised) title of the page
+     */
+    public synchronized void invalidate(NormalisedTitle title) {
+        entries.remove(title);
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Removes the least recently used entries until the cache has at most
+     * {@link #getMaxEntries()} entries (call with the lock held).
+     */
+    private void shrink() {
+        if (entries.size() > maxEntries) {
+            for (Iterator<NormalisedTitle> it = entries.keySet().iterator(); it
+                    .hasNext() && entries.size() > maxEntries;) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of lookups which found a cached page.
+     * 
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups which did not find a cached page.
+     * 
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the ratio of hits to all lookups.
+     * 
+     * @return the hit rate (between <tt>0.0</tt> and <tt>1.0</tt>)
+     */
+    public double getHitRate() {
+        final long hits = this.hits.get();
+        final long total = hits + misses.get();
+        return total == 0 ? 0.0 : ((double) hits) / total;
+    }
+
+    /**
+     * Gets the number of cached pages.
+     * 
+     * @return the number of entries
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * The raw contents of a page's revision.
+     */
+    public static class CachedTemplate {
+        /**
+         * The id of the revision (<tt>-1</tt> if the page does not exist).
+         */
+        public final int revision;
+        /**
+         * The wiki text of the revision (<tt>null</tt> if the page does not
+         * exist).
+         */
+        public final String text;
+        /**
+         * Whether the page is a redirect.
+         */
+        public final boolean redirect;
+        /**
+         * The time this entry was created at.
+         */
+        public final long timestamp;
+
+        /**
+         * Creates a new cache entry.
+         * 
+         * @param revision
+         *            the id of the revision
+         * @param text
+         *            the wiki text of the revision
+         * @param redirect
+         *            whether the page is a redirect
+         */
+        public CachedTemplate(int revision, String text, boolean redirect) {
+            this.revision = revision;
+            this.text = text;
+            this.redirect = redirect;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+}
@@ -45,9 +45,22 @@ public class WikiPageBean extends WikiPageBeanBase {
     private Calendar date = new GregorianCalendar();
     
     private List<ShortRevision> revisions = new LinkedList<ShortRevision>();
+    /**
+     * number of all revisions of the page (not only the shown ones)
+     */
+    private int revisionCount = 0;
+    /**
+     * number of (newest) revisions not shown in the history
+     */
+    private int revisionOffset = 0;
+    /**
+     * maximum number of revisions shown in the history
+     */
+    private int revisionLimit = 0;
     
     private Collection<String> subCategories = new LinkedList<String>();
     private Collection<String> categoryPages = new LinkedList<String>();
+    private String categoryNextPage = "";
     
     private String contentSub = "";
 
@@ -171,6 +184,21 @@ public class WikiPageBean extends WikiPageBeanBase {
     public void setCategoryPages(Collection<String> categoryPages) {
         this.categoryPages = categoryPages;
     }
+
+    /**
+     * @return the title to continue the category page list after (empty if
+     *         there are no more pages)
+     */
+    public String getCategoryNextPage() {
+        return categoryNextPage;
+    }
+
+    /**
+     * @param categoryNextPage the categoryNextPage to set
+     */
+    public void setCategoryNextPage(String categoryNextPage) {
+        this.categoryNextPage = categoryNextPage;
+    }
     
     /**
      * @return the contentSub
@@ -185,4 +213,46 @@ public class WikiPageBean extends WikiPageBeanBase {
     public void setContentSub(String contentSub) {
         this.contentSub = contentSub;
     }
+
+    /**
+     * @return the revisionCount
+     */
+    public int getRevisionCount() {
+        return revisionCount;
+    }
+
+    /**
+     * @param revisionCount the revisionCount to set
+     */
+    public void setRevisionCount(int revisionCount) {
+        this.revisionCount = revisionCount;
+    }
+
+    /**
+     * @return the revisionOffset
+     */
+    public int getRevisionOffset() {
+        return revisionOffset;
+    }
+
+    /**
+     * @param revisionOffset the revisionOffset to set
+     */
+    public void setRevisionOffset(int revisionOffset) {
+        this.revisionOffset = revisionOffset;
+    }
+
+    /**
+     * @return the revisionLimit
+     */
+    public int getRevisionLimit() {
+        return revisionLimit;
+    }
+
+    /**
+     * @param revisionLimit the revisionLimit to set
+     */
+    public void setRevisionLimit(int revisionLimit) {
+        this.revisionLimit = revisionLimit;
+    }
 }
@@ -17,8 +17,10 @@ package de.zib.scalaris.examples.wikipedia.bliki;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Generic bean for lists of pages, i.e. page titles.
@@ -57,6 +59,10 @@ public class WikiPageListBean extends WikiPageBeanBase {
 
     private String fromPage = "";
     private String toPage = "";
+    /**
+     * Start of the next page of the list (empty if there is none).
+     */
+    private String nextPage = "";
     private String formTitle = "Pages";
     private FormType formType = FormType.NoForm;
     /**
@@ -68,6 +74,10 @@ public class WikiPageListBean extends WikiPageBeanBase {
     private String prefix = "";
     private String search = "";
     private boolean foundFullMatch = false;
+    /**
+     * Pages whose text matches the search (best match first).
+     */
+    private List<String> textMatches = new ArrayList<String>();
     private int namespaceId = 0;
     private boolean showAllPages = false;
 
@@ -142,6 +152,20 @@ public class WikiPageListBean extends WikiPageBeanBase {
         this.toPage = toPage;
     }
 
+    /**
+     * @return the nextPage
+     */
+    public String getNextPage() {
+        return nextPage;
+    }
+
+    /**
+     * @param nextPage the nextPage to set
+     */
+    public void setNextPage(String nextPage) {
+        this.nextPage = nextPage;
+    }
+
     /**
      * @return the formTitle
      */
@@ -263,6 +287,33 @@ public class WikiPageListBean extends WikiPageBeanBase {
      * @return a title string with all parameters to be used in a URL
      */
     public String titleWithParameters() {
+        return titleWithParameters(fromPage);
+    }
+    
+    /**
+     * Gets a version of the title string with all parameters needed to
+     * show the next page of the list.
+     * 
+     * Note: Form parameters are URL-encoded, the "&" connecting them are not!
+     * 
+     * @return a title string with all parameters to be used in a URL
+     * 
+     * @see #getNextPage()
+     */
+    public String nextPageWithParameters() {
+        return titleWithParameters(nextPage);
+    }
+    
+    /**
+     * Gets a version of the title string with all parameters needed to
+     * re-create the form starting at the given page.
+     * 
+     * @param fromPage
+     *            the page to start the list after
+     * 
+     * @return a title string with all parameters to be used in a URL
+     */
+    private String titleWithParameters(String fromPage) {
         try {
         String title = URLEncoder.encode(getTitle(), "UTF-8");
             switch (formType) {
@@ -272,6 +323,7 @@ public class WikiPageListBean extends WikiPageBeanBase {
                     } else {
                         return title 
                                 + "&search=" + URLEncoder.encode(search, "UTF-8")
+                                + fromParameter(fromPage)
                                 + "&namespace=" + namespaceId;
                     }
                 case FromToForm:
@@ -289,6 +341,7 @@ public class WikiPageListBean extends WikiPageBeanBase {
                     } else {
                         return title
                                 + "&prefix=" + URLEncoder.encode(prefix, "UTF-8")
+                                + fromParameter(fromPage)
                                 + "&namespace=" + namespaceId;
                     }
                 case TargetPageForm:
@@ -296,7 +349,8 @@ public class WikiPageListBean extends WikiPageBeanBase {
                         return title;
                     } else {
                         return title
-                                + "&target=" + URLEncoder.encode(target, "UTF-8");
+                                + "&target=" + URLEncoder.encode(target, "UTF-8")
+                                + fromParameter(fromPage);
                     }
                 default:
             }
@@ -306,6 +360,25 @@ public class WikiPageListBean extends WikiPageBeanBase {
         }
     }
 
+    /**
+     * Creates the (optional) <tt>from</tt> URL parameter.
+     * 
+     * @param fromPage
+     *            the page to start the list after
+     * 
+     * @return <tt>&from=...</tt> or an empty string
+     * 
+     * @throws UnsupportedEncodingException
+     *             if UTF-8 is not supported
+     */
+    private static String fromParameter(String fromPage)
+            throws UnsupportedEncodingException {
+        if (fromPage.isEmpty()) {
+            return "";
+        }
+        return "&from=" + URLEncoder.encode(fromPage, "UTF-8");
+    }
+
     /**
      * @return the searchFoundMatch
      */
@@ -319,4 +392,18 @@ public class WikiPageListBean extends WikiPageBeanBase {
     public void setFoundFullMatch(boolean foundFullMatch) {
         this.foundFullMatch = foundFullMatch;
     }
+
+    /**
+     * @return the textMatches
+     */
+    public List<String> getTextMatches() {
+        return textMatches;
+    }
+
+    /**
+     * @param textMatches the textMatches to set
+     */
+    public void setTextMatches(List<String> textMatches) {
+        this.textMatches = textMatches;
+    }
 }
@@ -29,6 +29,7 @@ import java.util.Calendar;
 import java.util.EnumMap;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -36,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.TreeSet;
 import java.util.concurrent.Executors;
@@ -55,7 +57,6 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 
-import com.skjegstad.utils.BloomFilter;
 
 import de.zib.scalaris.examples.wikipedia.CircularByteArrayOutputStream;
 import de.zib.scalaris.examples.wikipedia.InvolvedKey;
@@ -88,6 +89,11 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         Servlet, WikiServletContext, WikiServletDataHandler<Connection> {
     protected static final String MAIN_PAGE = "Main Page";
     protected static final int IMPORT_REDIRECT_EVERY = 5; // seconds
+    protected static final int PAGE_LIST_DEFAULT_LIMIT = 345;
+    protected static final int PAGE_LIST_MAX_LIMIT = 5000;
+    protected static final int PAGE_SEARCH_TEXT_MATCHES = 20;
+    protected static final int HISTORY_DEFAULT_LIMIT = 50;
+    protected static final int CATEGORY_DEFAULT_LIMIT = 200;
 
     private static final long serialVersionUID = 1L;
     
@@ -119,10 +125,25 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
     
     protected List<WikiEventHandler> eventHandlers = new LinkedList<WikiEventHandler>();
     
-    protected BloomFilter<NormalisedTitle> existingPages = new BloomFilter<NormalisedTitle>(MyWikiModel.existingPagesFPR, 100);
+    protected volatile ExistingPagesFilter existingPages = new ExistingPagesFilter(100, MyWikiModel.existingPagesFPR);
+    /**
+     * Whether {@link #existingPages} has been loaded or created from the
+     * pages in the DB.
+     */
+    protected volatile boolean existingPagesLoaded = false;
+    /**
+     * Pages added while {@link #existingPages} is being loaded or re-created,
+     * each page once (<tt>null</tt> otherwise).
+     */
+    private Set<NormalisedTitle> existingPagesPending = null;
+    private final Object existingPagesLock = new Object();
 
     protected static final EnumMap<SpecialPage, String> SPECIAL_SUFFIX_EN = MyWikiModel.SPECIAL_SUFFIX.get("en");
     protected EnumMap<SpecialPage, String> SPECIAL_SUFFIX_LANG;
+    /**
+     * Language of the wiki as found in the siteinfo's base URL.
+     */
+    protected String siteLanguage = "en";
 
     /**
      * Full list of normalised special page titles for {@link #existingPages}. 
@@ -166,9 +187,18 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         init2(config);
         
         loadSiteInfo();
+        RenderedPageCache.getInstance().setMaxBytes(
+                Options.getInstance().WIKI_RENDERED_PAGES_CACHE_SIZE * 1024L * 1024L);
+        RenderedPageCache.getInstance().setMaxAge(
+                Options.getInstance().WIKI_TEMPLATE_CACHE_MAX_AGE * 1000L);
+        TemplateCache.getInstance().setMaxEntries(
+                Options.getInstance().WIKI_TEMPLATE_CACHE_SIZE);
+        TemplateCache.getInstance().setMaxAge(
+                Options.getInstance().WIKI_TEMPLATE_CACHE_MAX_AGE * 1000L);
+        registerEventHandler(new CacheInvalidator(this));
         loadPlugins(config);
         startExistingPagesUpdate();
-        existingPages.addAll(specialPages);
+        existingPages.setSpecialPages(specialPages);
         if (Options.getInstance().LOG_USER_REQS > 0) {
             userReqLogs = new LinkedList[Options.getInstance().LOG_USER_REQS];
             for (int i = 0; i < userReqLogs.length; ++i) {
@@ -191,9 +221,13 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
                 config.getInitParameter("SERVERNAME"),
                 config.getInitParameter("SERVERPATH"),
                 config.getInitParameter("WIKI_USE_BACKLINKS"),
+                config.getInitParameter("WIKI_USE_SEARCH_INDEX"),
                 config.getInitParameter("WIKI_SAVEPAGE_RETRIES"),
                 config.getInitParameter("WIKI_SAVEPAGE_RETRY_DELAY"),
                 config.getInitParameter("WIKI_REBUILD_PAGES_CACHE"),
+                config.getInitParameter("WIKI_RENDERED_PAGES_CACHE_SIZE"),
+                config.getInitParameter("WIKI_TEMPLATE_CACHE_SIZE"),
+                config.getInitParameter("WIKI_TEMPLATE_CACHE_MAX_AGE"),
                 config.getInitParameter("WIKI_STORE_CONTRIBUTIONS"),
                 config.getInitParameter("WIKI_OPTIMISATIONS"),
                 config.getInitParameter("LOG_USER_REQS"),
@@ -253,7 +287,8 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
     }
 
     /**
-     * Starts the service updating the bloom filter for existing pages.
+     * Starts the service loading and regularly storing the bloom filter for
+     * existing pages.
      */
     protected void startExistingPagesUpdate() {
         if (Options.getInstance().WIKI_REBUILD_PAGES_CACHE > 0) {
@@ -261,7 +296,7 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             ses.scheduleWithFixedDelay(new Runnable() {
                 @Override
                 public void run() {
-                    updateExistingPages();
+                    maintainExistingPages();
                 }
             }, 0, Options.getInstance().WIKI_REBUILD_PAGES_CACHE, TimeUnit.SECONDS);
         }
@@ -280,6 +315,7 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             Matcher matcher = MATCH_WIKI_SITE_LANG.matcher(fullBaseUrl);
             if (matcher.matches()) {
                 lang = matcher.group(1);
+                siteLanguage = lang;
                 final EnumMap<SpecialPage, String> specialSuffixLang = MyWikiModel.SPECIAL_SUFFIX.get(lang);
                 if (specialSuffixLang != null) {
                     SPECIAL_SUFFIX_LANG = specialSuffixLang;
@@ -292,7 +328,7 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         for (String suffix : SPECIAL_SUFFIX_LANG.values()) {
             specialPages.add(new NormalisedTitle(MyNamespace.SPECIAL_NAMESPACE_KEY, suffix));
         }
-        existingPages.addAll(specialPages);
+        existingPages.setSpecialPages(specialPages);
     }
 
     /**
@@ -320,6 +356,16 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
 
     @Override
     public void destroy() {
+        if (existingPagesLoaded) {
+            Connection connection = getConnection(null);
+            if (connection != null) {
+                try {
+                    storeExistingPagesFilter(existingPages, connection);
+                } finally {
+                    releaseConnection(null, connection);
+                }
+            }
+        }
     }
 
     /*
@@ -503,19 +549,46 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
                 req_search = "";
             }
         }
+        String req_from = request.getParameter("from");
+        if (req_from == null) {
+            req_from = "";
+        }
         // use default namespace (id 0) for invalid values
         int nsId = parseInt(request.getParameter("namespace"), 0);
+        int limit = getParam_limit(request);
         page.setPageHeading("Search");
         page.setFormTitle("Search results");
         page.setFormType(FormType.PageSearchForm);
         ValueResult<List<NormalisedTitle>> result;
         page.setSearch(req_search);
+        page.setFromPage(req_from);
         page.setTitle(MyWikiModel.createFullPageName(namespace.getSpecial(), SPECIAL_SUFFIX_LANG.get(SpecialPage.SPECIAL_SEARCH)));
         page.setShowAllPages(false);
         if (req_search.isEmpty()) {
             result = new ValueResult<List<NormalisedTitle>>(new ArrayList<InvolvedKey>(0), new ArrayList<NormalisedTitle>(0));
         } else {
-            result = getPageList(nsId, connection);
+            // the exact match may not be among the pages shown -> look it up
+            final String searchTitle = MyWikiModel.normaliseName(req_search);
+            ValueResult<List<NormalisedTitle>> fullMatch = getPageListRange(
+                    nsId, searchTitle, "", searchTitle, "", PAGE_LIST_MAX_LIMIT, connection);
+            page.addStats(fullMatch.stats);
+            page.getInvolvedKeys().addAll(fullMatch.involvedKeys);
+            if (fullMatch.success) {
+                page.setFoundFullMatch(fullMatch.value.contains(new NormalisedTitle(nsId, searchTitle)));
+            }
+            result = getPageListRange(nsId, "", req_from, "", req_search, limit + 1, connection);
+            setNextPage(result, limit, page);
+            if (req_from.isEmpty()) {
+                ValueResult<List<NormalisedTitle>> textMatches = searchPages(
+                        nsId, req_search, PAGE_SEARCH_TEXT_MATCHES, connection);
+                page.addStats(textMatches.stats);
+                page.getInvolvedKeys().addAll(textMatches.involvedKeys);
+                if (textMatches.success) {
+                    page.setTextMatches(MyWikiModel.denormalisePageTitles(
+                            textMatches.value, namespace,
+                            new ArrayList<String>(textMatches.value.size())));
+                }
+            }
         }
         page.setNamespaceId(nsId);
         page.addStats(result.stats);
@@ -523,6 +596,74 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         handleViewSpecialPageList(request, response, result, connection, page);
     }
 
+    /**
+     * Gets the maximum number of pages to show in a page list from the
+     * request's <tt>limit</tt> parameter.
+     * 
+     * @param request
+     *            the HTTP request
+     * 
+     * @return a limit between <tt>1</tt> and {@link #PAGE_LIST_MAX_LIMIT}
+     */
+    private static int getParam_limit(HttpServletRequest request) {
+        return getParam_limit(request, PAGE_LIST_DEFAULT_LIMIT);
+    }
+
+    /**
+     * Gets the maximum number of entries to show in a list from the request's
+     * <tt>limit</tt> parameter.
+     * 
+     * @param request
+     *            the HTTP request
+     * @param defaultLimit
+     *            the limit to use if the parameter is missing or invalid
+     * 
+     * @return a limit between <tt>1</tt> and {@link #PAGE_LIST_MAX_LIMIT}
+     */
+    private static int getParam_limit(HttpServletRequest request, int defaultLimit) {
+        int limit = parseInt(request.getParameter("limit"), defaultLimit);
+        return Math.max(1, Math.min(limit, PAGE_LIST_MAX_LIMIT));
+    }
+
+    /**
+     * Gets the continuation token of a page list from the request's
+     * <tt>from</tt> parameter, i.e. the (full) title of the last page shown
+     * before.
+     * 
+     * @param request
+     *            the HTTP request
+     * 
+     * @return the normalised title or <tt>null</tt> to start with the first
+     *         page
+     */
+    private NormalisedTitle getParam_from(HttpServletRequest request) {
+        final String from = request.getParameter("from");
+        if (from == null || !MyWikiModel.isValidTitle(from)) {
+            return null;
+        }
+        return NormalisedTitle.fromUnnormalised(from, namespace);
+    }
+
+    /**
+     * Cuts the given (sorted) page list retrieved with <tt>limit + 1</tt>
+     * entries to <tt>limit</tt> entries and sets the start of the next page
+     * of the list if there are more pages.
+     * 
+     * @param result
+     *            the page list (will be modified)
+     * @param limit
+     *            maximum number of pages to show
+     * @param page
+     *            the bean for the page
+     */
+    private static void setNextPage(ValueResult<List<NormalisedTitle>> result,
+            int limit, WikiPageListBean page) {
+        if (result.success && result.value.size() > limit) {
+            result.value = result.value.subList(0, limit);
+            page.setNextPage(result.value.get(limit - 1).title);
+        }
+    }
+
     /**
      * @param request
      *            the HTTP request
@@ -551,6 +692,7 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         String req_to = request.getParameter("to");
         // use default namespace (id 0) for invalid values
         int nsId = parseInt(request.getParameter("namespace"), 0);
+        int limit = getParam_limit(request);
         page.setPageHeading("All pages");
         page.setFormTitle("All pages");
         page.setFormType(FormType.FromToForm);
@@ -571,7 +713,8 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             }
             page.setFromPage(req_from);
             page.setToPage(req_to);
-            result = getPageList(nsId, connection);
+            result = getPageListRange(nsId, "", req_from, req_to, "", limit + 1, connection);
+            setNextPage(result, limit, page);
         }
         page.addStats(result.stats);
         page.getInvolvedKeys().addAll(result.involvedKeys);
@@ -604,8 +747,13 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
                 req_prefix = title.substring(slashIndex + 1);
             }
         }
+        String req_from = request.getParameter("from");
+        if (req_from == null) {
+            req_from = "";
+        }
         // use default namespace (id 0) for invalid values
         int nsId = parseInt(request.getParameter("namespace"), 0);
+        int limit = getParam_limit(request);
         page.setPageHeading("All pages");
         page.setFormTitle("All pages");
         page.setFormType(FormType.PagePrefixForm);
@@ -618,7 +766,9 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         } else {
             page.setShowAllPages(true);
             page.setPrefix(req_prefix);
-            result = getPageList(nsId, connection);
+            page.setFromPage(req_from);
+            result = getPageListRange(nsId, req_prefix, req_from, "", "", limit + 1, connection);
+            setNextPage(result, limit, page);
         }
         page.addStats(result.stats);
         page.getInvolvedKeys().addAll(result.involvedKeys);
@@ -652,6 +802,8 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
                 req_target = title.substring(slashIndex + 1);
             }
         }
+        final NormalisedTitle req_from = getParam_from(request);
+        int limit = getParam_limit(request);
         page.setFormTitle("What links here");
         page.setFormType(FormType.TargetPageForm);
         page.setTitle(MyWikiModel.createFullPageName(namespace.getSpecial(), SPECIAL_SUFFIX_LANG.get(SpecialPage.SPECIAL_WHATLINKSHERE)));
@@ -665,7 +817,11 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             page.setShowAllPages(true);
             page.setPageHeading("Pages that link to \"" + req_target + "\"");
             page.setTarget(req_target);
-            result = getPagesLinkingTo(connection, req_target, namespace);
+            result = getPagesLinkingTo(connection, req_target, namespace, req_from, limit + 1);
+            if (result.success && result.value.size() > limit) {
+                result.value = result.value.subList(0, limit);
+                page.setNextPage(result.value.get(limit - 1).denormalise(namespace));
+            }
         }
         page.addStats(result.stats);
         page.getInvolvedKeys().addAll(result.involvedKeys);
@@ -884,13 +1040,45 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         NormalisedTitle titleN = NormalisedTitle.fromUnnormalised(title, namespace);
         wikiModel.setNamespaceName(namespace.getNamespaceByNumber(titleN.namespace));
         wikiModel.setPageName(titleN.title);
+        if (result.page != null) {
+            // we got the current revision id for free - drop outdated templates
+            TemplateCache.getInstance().validate(result.normalisedTitle, result.page.getCurRev().getId());
+        }
         if (renderer > 0) {
-            String mainText = wikiModel.renderPageWithCache(result.revision.unpackedText());
+            // rendered pages only depend on the revision, the pages it
+            // includes and whether linked pages exist (invalidated on save or
+            // creation) - note that other pages, e.g.
+            // MediaWiki:Noarticletext, may be rendered under this title
+            final RenderedPageCache renderCache = RenderedPageCache.getInstance();
+            final RenderedPageCache.Key renderKey = titleN.equals(result.normalisedTitle)
+                    ? new RenderedPageCache.Key(titleN, result.revision.getId(), renderer, siteLanguage)
+                    : null;
+            RenderedPageCache.CachedPage rendered = (renderKey == null) ? null : renderCache.get(renderKey);
+            if (rendered == null) {
+                final String html = wikiModel.renderPageWithCache(result.revision.unpackedText());
+                final Set<NormalisedTitle> dependencies = new HashSet<NormalisedTitle>(
+                        wikiModel.getRetrievedPages());
+                dependencies.addAll(wikiModel.getMissingLinks());
+                rendered = new RenderedPageCache.CachedPage(html,
+                        wikiModel.getRedirectLink(),
+                        wikiModel.getCategories().keySet(), dependencies);
+                if (renderKey != null && html != null) {
+                    renderCache.put(renderKey, rendered);
+                }
+            }
+            String mainText = rendered.html;
             if (titleN.namespace == MyNamespace.CATEGORY_NAMESPACE_KEY) {
-                ValueResult<List<NormalisedTitle>> catPagesResult = getPagesInCategory(connection, titleN);
+                final int limit = getParam_limit(request, CATEGORY_DEFAULT_LIMIT);
+                // get one more page to know whether there is a next page
+                ValueResult<List<NormalisedTitle>> catPagesResult = getPagesInCategory(
+                        connection, titleN, getParam_from(request), limit + 1);
                 page.addStats(catPagesResult.stats);
                 page.getInvolvedKeys().addAll(catPagesResult.involvedKeys);
                 if (catPagesResult.success) {
+                    if (catPagesResult.value.size() > limit) {
+                        catPagesResult.value = catPagesResult.value.subList(0, limit);
+                        page.setCategoryNextPage(catPagesResult.value.get(limit - 1).denormalise(namespace));
+                    }
                     TreeSet<String> subCategories = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
                     TreeSet<String> categoryPages = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
                     final List<String> catPageList = new ArrayList<String>(catPagesResult.value.size());
@@ -933,7 +1121,7 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             }
             page.setTitle(title);
             page.setVersion(result.revision.getId());
-            String redirectedPageName = wikiModel.getRedirectLink();
+            String redirectedPageName = rendered.redirectLink;
             if (redirectedPageName != null) {
                 if (noRedirect) {
                     if (topLevel) {
@@ -966,7 +1154,7 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
                 }
             }
             page.setPage(mainText);
-            page.setCategories(wikiModel.getCategories().keySet());
+            page.setCategories(rendered.categories);
             page.addStats(wikiModel.getStats());
             page.getInvolvedKeys().addAll(wikiModel.getInvolvedKeys());
         } else if (renderer == 0) {
@@ -1183,7 +1371,9 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
     private void handleViewPageHistory(HttpServletRequest request,
             HttpServletResponse response, String title, Connection connection,
             WikiPageBean page) throws ServletException, IOException {
-        PageHistoryResult result = getPageHistory(connection, title, namespace);
+        final int offset = Math.max(0, parseInt(request.getParameter("offset"), 0));
+        final int limit = getParam_limit(request, HISTORY_DEFAULT_LIMIT);
+        PageHistoryResult result = getPageHistory(connection, title, namespace, offset, limit);
         page.addStats(result.stats);
         page.getInvolvedKeys().addAll(result.involvedKeys);
         if (result.connect_failed) {
@@ -1198,14 +1388,17 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         if (result.success) {
             page.setNotice(getParam_notice(request));
             page.setRevisions(result.revisions);
+            page.setRevisionCount(result.revisionCount);
+            page.setRevisionOffset(offset);
+            page.setRevisionLimit(limit);
             if (!result.page.checkEditAllowed("")) {
                 page.setEditRestricted(true);
             }
 
             page.setError(getParam_error(request));
             page.setTitle(title);
-            if (!result.revisions.isEmpty()) { 
-                page.setVersion(result.revisions.get(0).getId());
+            if (result.page.getCurRev() != null) {
+                page.setVersion(result.page.getCurRev().getId());
             }
             page.setWikiTitle(siteinfo.getSitename());
             page.setWikiNamespace(namespace);
@@ -1259,7 +1452,7 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             final String fullTo = nsPrefix + page.getToPage();
             final String search = page.getSearch().toLowerCase();
             final String searchTitle = MyWikiModel.normaliseName(page.getSearch());
-            boolean foundMatch = false;
+            boolean foundMatch = page.isFoundFullMatch();
             if (!prefix.isEmpty() || !from.isEmpty() || !to.isEmpty() || !search.isEmpty()) {
                 // only show pages with this prefix:
                 for (Iterator<String> it = pageList.iterator(); it.hasNext(); ) {
@@ -1477,6 +1670,25 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         // User statistics
         curStats = new LinkedHashMap<String, String>();
         specialPages.put("User statistics", curStats);
+        // Rendered page cache statistics
+        final RenderedPageCache renderCache = RenderedPageCache.getInstance();
+        curStats = new LinkedHashMap<String, String>();
+        curStats.put("Cached pages", wikiModel.formatStatisticNumber(false, renderCache.getSize()));
+        curStats.put("Cache size (KiB)", wikiModel.formatStatisticNumber(false, renderCache.getBytes() / 1024));
+        curStats.put("Hit rate (%)", wikiModel.formatStatisticNumber(false, 100.0 * renderCache.getHitRate()));
+        curStats.put("Hits", wikiModel.formatStatisticNumber(false, renderCache.getHits()));
+        curStats.put("Misses", wikiModel.formatStatisticNumber(false, renderCache.getMisses()));
+        curStats.put("Evictions", wikiModel.formatStatisticNumber(false, renderCache.getEvictions()));
+        curStats.put("Invalidations", wikiModel.formatStatisticNumber(false, renderCache.getInvalidations()));
+        specialPages.put("Rendered page cache", curStats);
+        // Template cache statistics
+        final TemplateCache tplCache = TemplateCache.getInstance();
+        curStats = new LinkedHashMap<String, String>();
+        curStats.put("Cached pages", wikiModel.formatStatisticNumber(false, tplCache.getSize()));
+        curStats.put("Hit rate (%)", wikiModel.formatStatisticNumber(false, 100.0 * tplCache.getHitRate()));
+        curStats.put("Hits", wikiModel.formatStatisticNumber(false, tplCache.getHits()));
+        curStats.put("Misses", wikiModel.formatStatisticNumber(false, tplCache.getMisses()));
+        specialPages.put("Template cache", curStats);
 
         StringBuilder content = new StringBuilder();
         content.append("<table class=\"wikitable mw-statistics-table\">\n");
@@ -1792,7 +2004,11 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             if (result.success) {
                 // successfully saved -> show page with a notice of the successful operation
                 // also actively update the bloom filter of existing pages
-                existingPages.add(NormalisedTitle.fromUnnormalised(title, namespace));
+                final NormalisedTitle normTitle = NormalisedTitle.fromUnnormalised(title, namespace);
+                if (result.oldPage == null) {
+                    addExistingPage(normTitle);
+                    publishNewPage(normTitle, connection);
+                }
                 ArrayList<Long> times = new ArrayList<Long>();
                 for (List<Long> time : page.getStats().values()) {
                     times.addAll(time);
@@ -2124,19 +2340,38 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
     }
 
     /**
-     * Updates the bloom filter of existing pages for quick checks.
+     * Re-creates the bloom filter of existing pages from the full list of
+     * pages and stores it in the DB.
      */
     protected void updateExistingPages() {
         if (initialized) {
             Connection connection = getConnection(null);
             if (connection != null) {
                 try {
-                    ValueResult<List<NormalisedTitle>> result = getPageList(connection);
-                    if (result.success) {
-                        List<NormalisedTitle> pages = result.value;
-                        pages.addAll(specialPages);
-                        BloomFilter<NormalisedTitle> filter = MyWikiModel.createBloomFilter(pages);
-                        existingPages = filter;
+                    rebuildExistingPages(connection);
+                } finally {
+                    releaseConnection(null, connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the bloom filter of existing pages (if not done yet), re-creates
+     * it if it became too full or otherwise stores it in the DB so that
+     * servlets started later on do not need to re-create it.
+     */
+    protected void maintainExistingPages() {
+        if (initialized) {
+            Connection connection = getConnection(null);
+            if (connection != null) {
+                try {
+                    if (!existingPagesLoaded) {
+                        loadExistingPages(connection);
+                    } else if (existingPages.isFull()) {
+                        rebuildExistingPages(connection);
+                    } else {
+                        storeExistingPagesFilter(existingPages, connection);
                     }
                 } finally {
                     releaseConnection(null, connection);
@@ -2144,6 +2379,108 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             }
         }
     }
+
+    /**
+     * Loads the stored bloom filter of existing pages from the DB. Falls back
+     * to re-creating it if there is no stored filter or if its number of
+     * pages does not match the number of pages in the DB (it missed some
+     * changes).
+     * 
+     * @param connection
+     *            connection to the database
+     */
+    private void loadExistingPages(Connection connection) {
+        beginExistingPagesUpdate();
+        ValueResult<ExistingPagesFilter> filter = getExistingPagesFilter(connection);
+        ValueResult<BigInteger> pageCount = getPageCount(connection);
+        if (filter.success && filter.value != null && pageCount.success
+                && pageCount.value.equals(BigInteger.valueOf(filter.value.getCount()))) {
+            finishExistingPagesUpdate(filter.value);
+        } else {
+            rebuildExistingPages(connection);
+        }
+    }
+
+    /**
+     * Re-creates the bloom filter of existing pages from the full list of
+     * pages and stores it in the DB.
+     * 
+     * @param connection
+     *            connection to the database
+     */
+    private void rebuildExistingPages(Connection connection) {
+        beginExistingPagesUpdate();
+        ValueResult<List<NormalisedTitle>> result = getPageList(connection);
+        if (result.success) {
+            ExistingPagesFilter filter = MyWikiModel.createBloomFilter(result.value);
+            finishExistingPagesUpdate(filter);
+            storeExistingPagesFilter(filter, connection);
+        } else {
+            finishExistingPagesUpdate(null);
+        }
+    }
+
+    /**
+     * Starts recording pages added to the bloom filter of existing pages so
+     * that they can be added to a new filter, too.
+     */
+    private void beginExistingPagesUpdate() {
+        synchronized (existingPagesLock) {
+            if (existingPagesPending == null) {
+                existingPagesPending = new HashSet<NormalisedTitle>();
+            }
+        }
+    }
+
+    /**
+     * Replaces the bloom filter of existing pages with the given one after
+     * adding the pages recorded since
+     * {@link #beginExistingPagesUpdate()}.
+     * 
+     * @param filter
+     *            the new filter (<tt>null</tt> to keep the current one)
+     */
+    private void finishExistingPagesUpdate(ExistingPagesFilter filter) {
+        synchronized (existingPagesLock) {
+            if (filter != null) {
+                filter.setSpecialPages(specialPages);
+                for (NormalisedTitle page : existingPagesPending) {
+                    filter.add(page);
+                }
+                existingPages = filter;
+                existingPagesLoaded = true;
+            }
+            existingPagesPending = null;
+        }
+    }
+
+    /**
+     * Adds a new page to the bloom filter of existing pages.
+     * 
+     * @param page
+     *            the (normalised) page title
+     */
+    protected void addExistingPage(NormalisedTitle page) {
+        synchronized (existingPagesLock) {
+            existingPages.add(page);
+            if (existingPagesPending != null) {
+                existingPagesPending.add(page);
+            }
+        }
+    }
+
+    /**
+     * Notifies other servlets sharing the same DB of a new page so that they
+     * can update their bloom filters of existing pages. Does nothing by
+     * default.
+     * 
+     * @param page
+     *            the (normalised) page title
+     * @param connection
+     *            connection to the database
+     */
+    protected void publishNewPage(NormalisedTitle page, Connection connection) {
+    }
     
     @Override
     public void storeUserReq(WikiPageBeanBase page, long servertime) {
@@ -193,11 +193,16 @@ public interface WikiServletDataHandler<Connection> {
      *            the title of the page
      * @param nsObject
      *            the namespace for page title normalisation
+     * @param offset
+     *            number of (newest) revisions to skip
+     * @param limit
+     *            maximum number of revisions to retrieve
      * 
-     * @return a result object with the page history on success
+     * @return a result object with the page history (newest revision first)
+     *         on success
      */
     public PageHistoryResult getPageHistory(Connection connection,
-            String title, final MyNamespace nsObject);
+            String title, final MyNamespace nsObject, int offset, int limit);
 
     /**
      * Retrieves the current, i.e. most up-to-date, version of a page from
@@ -254,6 +259,53 @@ public interface WikiServletDataHandler<Connection> {
      */
     public ValueResult<List<NormalisedTitle>> getPageList(int namespace, Connection connection);
     
+    /**
+     * Retrieves a sorted range of pages in the given namespace from the DB.
+     * 
+     * All title comparisons are case-insensitive.
+     * 
+     * @param namespace
+     *            the namespace ID
+     * @param prefix
+     *            only return pages starting with this prefix (empty for all
+     *            pages)
+     * @param from
+     *            only return pages after this title (exclusive, empty to
+     *            start with the first page)
+     * @param to
+     *            only return pages up to this title (inclusive, empty to stop
+     *            at the last page)
+     * @param search
+     *            only return pages containing this string (empty for all
+     *            pages)
+     * @param limit
+     *            maximum number of pages to return
+     * @param connection
+     *            the connection to the DB
+     * 
+     * @return a result object with the page list on success
+     */
+    public ValueResult<List<NormalisedTitle>> getPageListRange(int namespace,
+            String prefix, String from, String to, String search, int limit,
+            Connection connection);
+    
+    /**
+     * Searches the full-text index for pages matching the given query.
+     * 
+     * @param namespace
+     *            the namespace ID
+     * @param query
+     *            the search query
+     * @param limit
+     *            maximum number of pages to return
+     * @param connection
+     *            the connection to the DB
+     * 
+     * @return a result object with the pages (best match first) on success
+     */
+    public ValueResult<List<NormalisedTitle>> searchPages(int namespace,
+            String query, int limit, Connection connection);
+    
     /**
      * Retrieves a list of pages in the given category from the DB.
      * 
@@ -261,11 +313,16 @@ public interface WikiServletDataHandler<Connection> {
      *            the connection to the DB
      * @param title
      *            the title of the category
+     * @param from
+     *            continuation token, i.e. the last page of the previous part
+     *            (exclusive, <tt>null</tt> to start with the first page)
+     * @param limit
+     *            maximum number of pages to return
      * 
-     * @return a result object with the page list on success
+     * @return a result object with the (sorted) page list on success
      */
     public ValueResult<List<NormalisedTitle>> getPagesInCategory(Connection connection,
-            NormalisedTitle title);
+            NormalisedTitle title, NormalisedTitle from, int limit);
     
     /**
      * Retrieves a list of pages using the given template from the DB.
@@ -289,25 +346,36 @@ public interface WikiServletDataHandler<Connection> {
      *            the title of the page
      * @param nsObject
      *            the namespace for page title normalisation
+     * @param from
+     *            continuation token, i.e. the last page of the previous part
+     *            (exclusive, <tt>null</tt> to start with the first page)
+     * @param limit
+     *            maximum number of pages to return
      * 
-     * @return a result object with the page list on success
+     * @return a result object with the (sorted) page list on success
      */
     public ValueResult<List<NormalisedTitle>> getPagesLinkingTo(Connection connection,
-            String title, final MyNamespace nsObject);
+            String title, final MyNamespace nsObject, NormalisedTitle from, int limit);
 
     /**
-     * Retrieves a list of pages linking to the given page from the DB.
+     * Retrieves a part of the list of contributions of a user from the DB.
      * 
      * @param connection
      *            the connection to the DB
      * @param contributor
      *            the user name or IP address of the user who created the
      *            revision
-     * 
-     * @return a result object with the page list on success
+     * @param offset
+     *            continuation token, i.e. the number of (newer) contributions
+     *            to skip
+     * @param limit
+     *            maximum number of contributions to return
+     * 
+     * @return a result object with the contributions (newest first) on
+     *         success
      */
     public ValueResult<List<Contribution>> getContributions(
-            Connection connection, String contributor);
+            Connection connection, String contributor, int offset, int limit);
     
     /**
      * Retrieves the number of all available pages from the DB.
@@ -332,6 +400,29 @@ public interface WikiServletDataHandler<Connection> {
      */
     public ValueResult<BigInteger> getPageCount(int namespace, Connection connection);
     
+    /**
+     * Retrieves the (last stored) filter of existing pages from the DB.
+     * 
+     * @param connection
+     *            the connection to the DB
+     * 
+     * @return a result object with the filter on success (<tt>null</tt> if
+     *         there is no stored filter)
+     */
+    public ValueResult<ExistingPagesFilter> getExistingPagesFilter(Connection connection);
+    
+    /**
+     * Stores the filter of existing pages in the DB.
+     * 
+     * @param filter
+     *            the filter to store
+     * @param connection
+     *            the connection to the DB
+     * 
+     * @return the result of the operation
+     */
+    public ValueResult<Integer> storeExistingPagesFilter(ExistingPagesFilter filter, Connection connection);
+    
     /**
      * Retrieves the number of available articles, i.e. pages in the main
      * namespace, from the DB.
@@ -43,12 +43,17 @@ import de.zib.scalaris.Connection;
 import de.zib.scalaris.ConnectionFactory;
 import de.zib.scalaris.ConnectionPool;
 import de.zib.scalaris.NodeDiscovery;
+import de.zib.scalaris.PeerNode;
+import de.zib.scalaris.PubSub;
+import de.zib.scalaris.PubSubMailbox;
+import de.zib.scalaris.PubSubMailbox.Notification;
 import de.zib.scalaris.TransactionSingleOp;
 import de.zib.scalaris.examples.wikipedia.CircularByteArrayOutputStream;
 import de.zib.scalaris.examples.wikipedia.Options;
 import de.zib.scalaris.examples.wikipedia.PageHistoryResult;
 import de.zib.scalaris.examples.wikipedia.RevisionResult;
 import de.zib.scalaris.examples.wikipedia.SavePageResult;
+import de.zib.scalaris.examples.wikipedia.ScalarisDataHandler;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerNormalised;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerUnnormalised;
 import de.zib.scalaris.examples.wikipedia.ValueResult;
@@ -74,6 +79,12 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
     
     private ConnectionPool cPool;
     protected NodeDiscovery nodeDiscovery;
+    /**
+     * Receives new pages created by other servlets (<tt>null</tt> if not
+     * subscribed).
+     */
+    private volatile PubSubMailbox newPagesMailbox = null;
+    private static final int NEW_PAGES_QUEUE_SIZE = 1000;
 
     /**
      * Default constructor creating the servlet.
@@ -206,6 +217,102 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
     protected void releaseConnection(HttpServletRequest request, Connection conn) {
         cPool.releaseConnection(conn);
     }
+
+    /**
+     * Subscribes to new pages created by other servlets before loading the
+     * bloom filter of existing pages.
+     */
+    @Override
+    protected void startExistingPagesUpdate() {
+        if (Options.getInstance().WIKI_REBUILD_PAGES_CACHE > 0) {
+            Connection conn = getConnection(null);
+            if (conn != null) {
+                try {
+                    newPagesMailbox = new PubSubMailbox(
+                            cPool.getConnectionFactory(), NEW_PAGES_QUEUE_SIZE,
+                            true, new PubSubMailbox.Listener() {
+                                @Override
+                                public void onNotification(Notification notification) {
+                                    onNewPageNotification(notification.getContent());
+                                }
+                            });
+                    // other servlets may publish through any of the nodes:
+                    for (PeerNode node : cPool.getConnectionFactory().getNodes()) {
+                        newPagesMailbox.connect(node.getNode().node());
+                    }
+                    new PubSub(conn).subscribe(
+                            ScalarisDataHandler.getNewPagesTopic(), newPagesMailbox);
+                } catch (Exception e) {
+                    System.err.println("failed to subscribe to new pages: " + e.getMessage());
+                    if (newPagesMailbox != null) {
+                        newPagesMailbox.close();
+                        newPagesMailbox = null;
+                    }
+                } finally {
+                    releaseConnection(null, conn);
+                }
+            }
+        }
+        super.startExistingPagesUpdate();
+    }
+
+    /**
+     * Adds a page published by another servlet to the bloom filter of
+     * existing pages and drops cached entries which are outdated by the new
+     * page, e.g. rendered pages linking to it.
+     * 
+     * @param content
+     *            the published message (see {@link #publishNewPage(NormalisedTitle, Connection)})
+     */
+    private void onNewPageNotification(String content) {
+        final int separator = content.indexOf('\n');
+        final PubSubMailbox mailbox = newPagesMailbox;
+        if (separator > 0 && mailbox != null
+                && !content.substring(0, separator).equals(mailbox.getUrl())) {
+            final NormalisedTitle page = NormalisedTitle.fromNormalised(content.substring(separator + 1));
+            addExistingPage(page);
+            TemplateCache.getInstance().invalidate(page);
+            RenderedPageCache.getInstance().invalidate(page);
+        }
+    }
+
+    /**
+     * Publishes the new page together with this servlet's mailbox URL (to
+     * ignore its own notifications).
+     */
+    @Override
+    protected void publishNewPage(NormalisedTitle page, Connection connection) {
+        final PubSubMailbox mailbox = newPagesMailbox;
+        if (mailbox != null) {
+            try {
+                new PubSub(connection).publish(ScalarisDataHandler.getNewPagesTopic(),
+                        mailbox.getUrl() + '\n' + page.toString());
+            } catch (Exception e) {
+                System.err.println("failed to publish new page " + page + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (newPagesMailbox != null) {
+            Connection conn = getConnection(null);
+            if (conn != null) {
+                try {
+                    new PubSub(conn).unsubscribe(
+                            ScalarisDataHandler.getNewPagesTopic(), newPagesMailbox);
+                } catch (Exception e) {
+                    // the subscription will be orphaned but this does not
+                    // affect other servlets
+                } finally {
+                    releaseConnection(null, conn);
+                }
+            }
+            newPagesMailbox.close();
+            newPagesMailbox = null;
+        }
+        super.destroy();
+    }
     
     /**
      * Shows a page for importing a DB dump.
@@ -419,6 +526,9 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
         final MyScalarisWikiModel model = new MyScalarisWikiModel(getImagebaseurl(page),
                 getLinkbaseurl(page), connection, namespace);
         model.setExistingPages(existingPages);
+        if (TemplateCache.getInstance().isEnabled()) {
+            model.setTemplateCache(TemplateCache.getInstance());
+        }
         return model;
     }
 
@@ -493,8 +603,9 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
     }
 
     @Override
-    public PageHistoryResult getPageHistory(Connection connection, String title, final MyNamespace nsObject) {
-        return ScalarisDataHandlerUnnormalised.getPageHistory(connection, title, nsObject);
+    public PageHistoryResult getPageHistory(Connection connection, String title,
+            final MyNamespace nsObject, int offset, int limit) {
+        return ScalarisDataHandlerUnnormalised.getPageHistory(connection, title, nsObject, offset, limit);
     }
 
     @Override
@@ -518,8 +629,24 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
     }
 
     @Override
-    public ValueResult<List<NormalisedTitle>> getPagesInCategory(Connection connection, NormalisedTitle title) {
-        return ScalarisDataHandlerNormalised.getPagesInCategory(connection, title);
+    public ValueResult<List<NormalisedTitle>> getPageListRange(int namespace,
+            String prefix, String from, String to, String search, int limit,
+            Connection connection) {
+        return ScalarisDataHandlerUnnormalised.getPageListRange(namespace,
+                prefix, from, to, search, limit, connection);
+    }
+
+    @Override
+    public ValueResult<List<NormalisedTitle>> searchPages(int namespace,
+            String query, int limit, Connection connection) {
+        return ScalarisDataHandlerUnnormalised.searchPages(namespace, query,
+                limit, connection);
+    }
+
+    @Override
+    public ValueResult<List<NormalisedTitle>> getPagesInCategory(Connection connection,
+            NormalisedTitle title, NormalisedTitle from, int limit) {
+        return ScalarisDataHandlerNormalised.getPagesInCategory(connection, title, from, limit);
     }
 
     @Override
@@ -528,14 +655,15 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
     }
 
     @Override
-    public ValueResult<List<NormalisedTitle>> getPagesLinkingTo(Connection connection, String title, final MyNamespace nsObject) {
-        return ScalarisDataHandlerUnnormalised.getPagesLinkingTo(connection, title, nsObject);
+    public ValueResult<List<NormalisedTitle>> getPagesLinkingTo(Connection connection,
+            String title, final MyNamespace nsObject, NormalisedTitle from, int limit) {
+        return ScalarisDataHandlerUnnormalised.getPagesLinkingTo(connection, title, nsObject, from, limit);
     }
 
     @Override
     public ValueResult<List<Contribution>> getContributions(
-            Connection connection, String contributor) {
-        return ScalarisDataHandlerUnnormalised.getContributions(connection, contributor);
+            Connection connection, String contributor, int offset, int limit) {
+        return ScalarisDataHandlerUnnormalised.getContributions(connection, contributor, offset, limit);
     }
 
     @Override
@@ -548,6 +676,16 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
         return ScalarisDataHandlerUnnormalised.getPageCount(namespace, connection);
     }
 
+    @Override
+    public ValueResult<ExistingPagesFilter> getExistingPagesFilter(Connection connection) {
+        return ScalarisDataHandlerUnnormalised.getExistingPagesFilter(connection);
+    }
+
+    @Override
+    public ValueResult<Integer> storeExistingPagesFilter(ExistingPagesFilter filter, Connection connection) {
+        return ScalarisDataHandlerUnnormalised.storeExistingPagesFilter(filter, connection);
+    }
+
     @Override
     public ValueResult<BigInteger> getArticleCount(Connection connection) {
         return ScalarisDataHandlerUnnormalised.getArticleCount(connection);
@@ -0,0 +1,127 @@
+/**
+ *  Copyright 2007-2011 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Represents the categories, templates and links of the current revision of
+ * a page as parsed by the wiki model.
+ * 
+ * This is stored separately from the {@link Page} object since it is only
+ * needed when the page is saved (to compute the changes of the category,
+ * template and back-link page lists without rendering the old revision).
+ */
+public class PageMetadata implements Serializable {
+    /**
+     * Version for serialisation.
+     */
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Categories of the current revision (un-normalised).
+     */
+    protected List<String> categories = new ArrayList<String>();
+    
+    /**
+     * Templates of the current revision (un-normalised).
+     */
+    protected List<String> templates = new ArrayList<String>();
+    
+    /**
+     * Links of the current revision (un-normalised).
+     */
+    protected List<String> links = new ArrayList<String>();
+
+    /**
+     * Creates a new object without any categories, templates and links.
+     */
+    public PageMetadata() {
+    }
+
+    /**
+     * Creates a new object with the given categories, templates and links as
+     * parsed by the wiki model (stored sorted and without duplicates).
+     * 
+     * @param categories the categories of the current revision
+     * @param templates the templates of the current revision
+     * @param links the links of the current revision
+     */
+    public PageMetadata(Collection<String> categories,
+            Collection<String> templates, Collection<String> links) {
+        this.categories = new ArrayList<String>(new TreeSet<String>(categories));
+        this.templates = new ArrayList<String>(new TreeSet<String>(templates));
+        this.links = new ArrayList<String>(new TreeSet<String>(links));
+    }
+
+    /**
+     * Gets the categories of the current revision.
+     * 
+     * @return the categories (un-normalised)
+     */
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    /**
+     * Sets the categories of the current revision.
+     * 
+     * @param categories the categories to set
+     */
+    public void setCategories(List<String> categories) {
+        this.categories = categories;
+    }
+
+    /**
+     * Gets the templates of the current revision.
+     * 
+     * @return the templates (un-normalised)
+     */
+    public List<String> getTemplates() {
+        return templates;
+    }
+
+    /**
+     * Sets the templates of the current revision.
+     * 
+     * @param templates the templates to set
+     */
+    public void setTemplates(List<String> templates) {
+        this.templates = templates;
+    }
+
+    /**
+     * Gets the links of the current revision.
+     * 
+     * @return the links (un-normalised)
+     */
+    public List<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * Sets the links of the current revision.
+     * 
+     * @param links the links to set
+     */
+    public void setLinks(List<String> links) {
+        this.links = links;
+    }
+}
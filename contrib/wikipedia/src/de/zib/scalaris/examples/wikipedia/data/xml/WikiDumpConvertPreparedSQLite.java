@@ -33,6 +33,8 @@ import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
 
 import de.zib.scalaris.ErlangValue;
+import de.zib.scalaris.examples.wikipedia.ArticleIndex;
+import de.zib.scalaris.examples.wikipedia.BucketedPageList;
 import de.zib.scalaris.examples.wikipedia.Options;
 import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS;
 import de.zib.scalaris.examples.wikipedia.Options.Optimisation;
@@ -41,6 +43,7 @@ import de.zib.scalaris.examples.wikipedia.SQLiteDataHandler;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandler;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerUnnormalised;
 import de.zib.scalaris.examples.wikipedia.ScalarisOpType;
+import de.zib.scalaris.examples.wikipedia.SearchIndex;
 import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace;
 
 /**
@@ -464,25 +467,52 @@ public class WikiDumpConvertPreparedSQLite implements WikiDump {
                 assert ScalarisDataHandler.getPageListKey(0).equals("pages:0");
                 assert ScalarisDataHandler.getPageListKey(-2).equals("pages:-2");
                 assert ScalarisDataHandler.getPageCountKey(0).equals("pages:0:count");
+                assert ScalarisDataHandler.getPageIndexKey(0).equals("pages:0:idx");
+                assert ScalarisDataHandler.getPageIndexBucketKey(0, "fo").equals("pages:0:idx:fo");
+                assert ScalarisDataHandler.getNextPageIdKey().equals("pages:nextid");
+                assert SearchIndex.getTermKey(0, "foobar", 2).equals("fts:0:foobar:2");
+                assert SearchIndex.getPostingsKey(0, "foobar", 2, 1).equals("fts:0:foobar:2:1");
+                assert SearchIndex.getDocKey(1).equals("fts:doc:1");
+                assert ArticleIndex.getCountKey().equals("articles:idx:count");
+                assert ArticleIndex.getChunkKey(1).equals("articles:idx:1");
+                assert ArticleIndex.getPositionKey("foobar").equals("foobar:artidx");
                 assert ScalarisDataHandlerUnnormalised.getRevKey("foobar", 0, new MyNamespace()).equals("foobar:rev:0");
                 assert ScalarisDataHandlerUnnormalised.getPageKey("foobar", new MyNamespace()).equals("foobar:page");
+                assert ScalarisDataHandlerUnnormalised.getPageMetadataKey("foobar", new MyNamespace()).equals("foobar:meta");
                 assert ScalarisDataHandlerUnnormalised.getRevListKey("foobar", new MyNamespace()).equals("foobar:revs");
+                assert ScalarisDataHandlerUnnormalised.getRevListHeadKey("foobar", new MyNamespace()).equals("foobar:revs:head");
+                assert ScalarisDataHandlerUnnormalised.getRevListSegmentKey("foobar", 1, new MyNamespace()).equals("foobar:revs:1");
                 assert ScalarisDataHandlerUnnormalised.getCatPageListKey("foobar", new MyNamespace()).equals("foobar:cpages");
                 assert ScalarisDataHandlerUnnormalised.getCatPageCountKey("foobar", new MyNamespace()).equals("foobar:cpages:count");
                 assert ScalarisDataHandlerUnnormalised.getTplPageListKey("foobar", new MyNamespace()).equals("foobar:tpages");
                 assert ScalarisDataHandlerUnnormalised.getBackLinksPageListKey("foobar", new MyNamespace()).equals("foobar:blpages");
+                assert BucketedPageList.getIndexKey("foobar:cpages").equals("foobar:cpages:idx");
+                assert BucketedPageList.getBucketKey("foobar:cpages", "0:fo").equals("foobar:cpages:idx:0:fo");
                 assert ScalarisDataHandler.getContributionListKey("foobar").equals("foobar:user:contrib");
+                assert ScalarisDataHandler.getContributionListHeadKey("foobar").equals("foobar:user:contrib:head");
+                assert ScalarisDataHandler.getContributionListSegmentKey("foobar", 1).equals("foobar:user:contrib:1");
                 
                 final Pattern pageListPattern = Pattern.compile("^pages:([+-]?[0-9]+)$", Pattern.DOTALL);
                 final Pattern pageCountPattern = Pattern.compile("^pages:([+-]?[0-9]+):count$", Pattern.DOTALL);
+                final Pattern pageIndexPattern = Pattern.compile("^pages:([+-]?[0-9]+):idx(:.*)?$", Pattern.DOTALL);
+                final Pattern searchIndexPattern = Pattern.compile("^fts:([+-]?[0-9]+|doc):.*$", Pattern.DOTALL);
+                final Pattern articleIndexPattern = Pattern.compile("^articles:idx:(count|[0-9]+)$", Pattern.DOTALL);
+                final Pattern articleIndexPosPattern = Pattern.compile("^(.*):artidx$", Pattern.DOTALL);
                 final Pattern revPattern = Pattern.compile("^(.*):rev:([0-9]+)$", Pattern.DOTALL);
                 final Pattern pagePattern = Pattern.compile("^(.*):page$", Pattern.DOTALL);
+                final Pattern pageMetadataPattern = Pattern.compile("^(.*):meta$", Pattern.DOTALL);
                 final Pattern revListPattern = Pattern.compile("^(.*):revs$", Pattern.DOTALL);
+                final Pattern revListHeadPattern = Pattern.compile("^(.*):revs:head$", Pattern.DOTALL);
+                final Pattern revListSegmentPattern = Pattern.compile("^(.*):revs:([0-9]+)$", Pattern.DOTALL);
                 final Pattern catPageListPattern = Pattern.compile("^(.*):cpages$", Pattern.DOTALL);
                 final Pattern catPageCountPattern = Pattern.compile("^(.*):cpages:count$", Pattern.DOTALL);
                 final Pattern tplPageListPattern = Pattern.compile("^(.*):tpages$", Pattern.DOTALL);
                 final Pattern backLinksPageListPattern = Pattern.compile("^(.*):blpages$", Pattern.DOTALL);
+                final Pattern catPageIndexPattern = Pattern.compile("^(.*):cpages:idx(:.*)?$", Pattern.DOTALL);
+                final Pattern backLinksPageIndexPattern = Pattern.compile("^(.*):blpages:idx(:.*)?$", Pattern.DOTALL);
                 final Pattern contributionListPattern = Pattern.compile("^(.*):user:contrib$", Pattern.DOTALL);
+                final Pattern contributionListHeadPattern = Pattern.compile("^(.*):user:contrib:head$", Pattern.DOTALL);
+                final Pattern contributionListSegmentPattern = Pattern.compile("^(.*):user:contrib:([0-9]+)$", Pattern.DOTALL);
                 
                 while (stRead.step()) {
                     ++importedKeys;
@@ -491,14 +521,25 @@ public class WikiDumpConvertPreparedSQLite implements WikiDump {
 
                     final Matcher pageListMatcher = pageListPattern.matcher(key);
                     final Matcher pageCountMatcher = pageCountPattern.matcher(key);
+                    final Matcher pageIndexMatcher = pageIndexPattern.matcher(key);
+                    final Matcher searchIndexMatcher = searchIndexPattern.matcher(key);
+                    final Matcher articleIndexMatcher = articleIndexPattern.matcher(key);
+                    final Matcher articleIndexPosMatcher = articleIndexPosPattern.matcher(key);
                     final Matcher revMatcher = revPattern.matcher(key);
                     final Matcher pageMatcher = pagePattern.matcher(key);
+                    final Matcher pageMetadataMatcher = pageMetadataPattern.matcher(key);
                     final Matcher revListMatcher = revListPattern.matcher(key);
+                    final Matcher revListHeadMatcher = revListHeadPattern.matcher(key);
+                    final Matcher revListSegmentMatcher = revListSegmentPattern.matcher(key);
                     final Matcher catPageListMatcher = catPageListPattern.matcher(key);
                     final Matcher catPageCountMatcher = catPageCountPattern.matcher(key);
                     final Matcher tplPageListMatcher = tplPageListPattern.matcher(key);
                     final Matcher backLinksPageListMatcher = backLinksPageListPattern.matcher(key);
+                    final Matcher catPageIndexMatcher = catPageIndexPattern.matcher(key);
+                    final Matcher backLinksPageIndexMatcher = backLinksPageIndexPattern.matcher(key);
                     final Matcher contributionListMatcher = contributionListPattern.matcher(key);
+                    final Matcher contributionListHeadMatcher = contributionListHeadPattern.matcher(key);
+                    final Matcher contributionListSegmentMatcher = contributionListSegmentPattern.matcher(key);
                     
                     boolean copyValue = false;
                     ScalarisOpType opType = null;
@@ -507,6 +548,21 @@ public class WikiDumpConvertPreparedSQLite implements WikiDump {
                     
                     if (key.equals(ScalarisDataHandler.getSiteInfoKey())) {
                         copyValue = true;
+                    } else if (searchIndexMatcher.matches()) {
+                        // omit if disabled (check first - terms may look like other keys)
+                        copyValue = dbWriteOptions.WIKI_USE_SEARCH_INDEX;
+                    } else if (catPageIndexMatcher.matches()) {
+                        // sorted lists, independent of the optimisation scheme
+                        // (check early - bucket names may look like other keys)
+                        copyValue = true;
+                    } else if (backLinksPageIndexMatcher.matches()) {
+                        // omit if disabled
+                        copyValue = dbWriteOptions.WIKI_USE_BACKLINKS;
+                    } else if (key.equals(ScalarisDataHandler.getNextPageIdKey())) {
+                        copyValue = true;
+                    } else if (articleIndexMatcher.matches() || articleIndexPosMatcher.matches()) {
+                        // plain values, independent of the optimisation scheme
+                        copyValue = true;
                     } else if (pageListMatcher.matches()) {
                         int namespace = Integer.parseInt(pageListMatcher.group(1));
                         countKey = ScalarisDataHandler.getPageCountKey(namespace);
@@ -515,6 +571,9 @@ public class WikiDumpConvertPreparedSQLite implements WikiDump {
                     } else if (pageCountMatcher.matches()) {
                         // ignore (written during page list partitioning (see below)
                         listOrCount = ListOrCountOp.COUNTER;
+                    } else if (pageIndexMatcher.matches()) {
+                        // sorted lists, independent of the optimisation scheme
+                        copyValue = true;
                     } else if (key.equals(ScalarisDataHandler.getArticleCountKey())) {
                         countKey = null;
                         opType = ScalarisOpType.ARTICLE_COUNT;
@@ -524,11 +583,19 @@ public class WikiDumpConvertPreparedSQLite implements WikiDump {
                     } else if (pageMatcher.matches()) {
                         opType = ScalarisOpType.PAGE;
                         copyValue = true;
+                    } else if (pageMetadataMatcher.matches()) {
+                        copyValue = true;
                     } else if (revListMatcher.matches()) {
                         opType = ScalarisOpType.REVISION;
                         countKey = null;
                         opType = ScalarisOpType.SHORTREV_LIST;
                         listOrCount = ListOrCountOp.LIST;
+                    } else if (revListSegmentMatcher.matches()) {
+                        countKey = null;
+                        opType = ScalarisOpType.SHORTREV_LIST;
+                        listOrCount = ListOrCountOp.LIST;
+                    } else if (revListHeadMatcher.matches()) {
+                        copyValue = true;
                     } else if (catPageListMatcher.matches()) {
                         String title = catPageListMatcher.group(1);
                         countKey = title + ":cpages:count";
@@ -559,6 +626,16 @@ public class WikiDumpConvertPreparedSQLite implements WikiDump {
                             opType = ScalarisOpType.CONTRIBUTION;
                             listOrCount = ListOrCountOp.LIST;
                         }
+                    } else if (contributionListSegmentMatcher.matches()) {
+                        // omit if disabled
+                        if (dbWriteOptions.WIKI_STORE_CONTRIBUTIONS != STORE_CONTRIB_TYPE.NONE) {
+                            countKey = null;
+                            opType = ScalarisOpType.CONTRIBUTION;
+                            listOrCount = ListOrCountOp.LIST;
+                        }
+                    } else if (contributionListHeadMatcher.matches()) {
+                        // omit if disabled
+                        copyValue = dbWriteOptions.WIKI_STORE_CONTRIBUTIONS != STORE_CONTRIB_TYPE.NONE;
                     } else {
                         println("unknown key: " + key);
                     }
@@ -4,15 +4,20 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import de.zib.scalaris.examples.wikipedia.MultiHashMap;
+import de.zib.scalaris.examples.wikipedia.SearchIndex;
 import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace;
 import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace.NamespaceEnum;
 import de.zib.scalaris.examples.wikipedia.bliki.MyWikiModel;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.PageMetadata;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
@@ -32,9 +37,13 @@ public abstract class WikiDumpPageHandler extends WikiDumpHandler {
 
     protected EnumMap<NamespaceEnum, ArrayList<NormalisedTitle>> newPages;
     protected int articleCount = 0;
+    protected ArrayList<NormalisedTitle> newArticles;
     protected MultiHashMap<NormalisedTitle, NormalisedTitle> newCategories;
     protected MultiHashMap<NormalisedTitle, NormalisedTitle> newTemplates;
     protected MultiHashMap<NormalisedTitle, NormalisedTitle> newBackLinks;
+    protected EnumMap<NamespaceEnum, HashMap<String, TreeMap<Integer, Integer>>> newPostings;
+    protected HashMap<Integer, NormalisedTitle> newDocs;
+    protected int maxPageId = 0;
 
     /**
      * Sets up a SAX XmlHandler exporting all parsed pages except the ones in a
@@ -62,13 +71,15 @@ public abstract class WikiDumpPageHandler extends WikiDumpHandler {
         super(blacklist, whitelist, maxRevisions, minTime, maxTime);
         initNewPagesList();
         initLinkLists();
+        initNewPostings();
     }
 
     /**
-     * Initialises the {@link #newPages} member.
+     * Initialises the {@link #newPages} and {@link #newArticles} members.
      */
     protected void initNewPagesList() {
         newPages = createNewPagesList();
+        newArticles = new ArrayList<NormalisedTitle>(UPDATE_PAGELIST_EVERY);
     }
 
     /**
@@ -95,6 +106,18 @@ public abstract class WikiDumpPageHandler extends WikiDumpHandler {
         newBackLinks = new MultiHashMap<NormalisedTitle, NormalisedTitle>(NEW_BLNKS_HASH_DEF_SIZE);
     }
 
+    /**
+     * Initialises the {@link #newPostings} (terms mapped to page IDs and
+     * their tiers) and {@link #newDocs} members.
+     */
+    protected void initNewPostings() {
+        newPostings = new EnumMap<NamespaceEnum, HashMap<String, TreeMap<Integer, Integer>>>(NamespaceEnum.class);
+        for(NamespaceEnum ns : NamespaceEnum.values()) {
+            newPostings.put(ns, new HashMap<String, TreeMap<Integer, Integer>>());
+        }
+        newDocs = new HashMap<Integer, NormalisedTitle>(UPDATE_PAGELIST_EVERY);
+    }
+
     /**
      * Exports the given siteinfo to Scalaris
      * 
@@ -124,6 +147,7 @@ public abstract class WikiDumpPageHandler extends WikiDumpHandler {
             Collections.sort(revisions_short, Collections.reverseOrder(new byShortRevId()));
 
             final NormalisedTitle normTitle = wikiModel.normalisePageTitle(page.getTitle());
+            PageMetadata metadata = null;
             if (!revisions.isEmpty() && wikiModel != null) {
                 wikiModel.setUp();
                 wikiModel.setNamespaceName(wikiModel.getNamespace().getNamespaceByNumber(normTitle.namespace));
@@ -148,11 +172,27 @@ public abstract class WikiDumpPageHandler extends WikiDumpHandler {
                 if (MyWikiModel.isArticle(normTitle.namespace, wikiModel
                         .getLinks(), wikiModel.getCategories().keySet())) {
                     ++articleCount;
+                    newArticles.add(normTitle);
+                }
+                final HashMap<String, TreeMap<Integer, Integer>> nsPostings =
+                        newPostings.get(NamespaceEnum.fromId(normTitle.namespace));
+                for (Entry<String, Integer> term : SearchIndex.getTermTiers(
+                        normTitle.title, revisions.get(0).unpackedText()).entrySet()) {
+                    TreeMap<Integer, Integer> postings = nsPostings.get(term.getKey());
+                    if (postings == null) {
+                        postings = new TreeMap<Integer, Integer>();
+                        nsPostings.put(term.getKey(), postings);
+                    }
+                    postings.put(page.getId(), term.getValue());
                 }
+                newDocs.put(page.getId(), normTitle);
+                maxPageId = Math.max(maxPageId, page.getId());
+                metadata = new PageMetadata(wikiModel.getCategories().keySet(),
+                        wikiModel.getTemplates(), wikiModel.getLinks());
                 wikiModel.tearDown();
             }
     
-            doExport(page, revisions, revisions_short, normTitle);
+            doExport(page, metadata, revisions, revisions_short, normTitle);
         }
         if ((pageCount % UPDATE_PAGELIST_EVERY) == 0) {
             println("processed pages: " + pageCount);
@@ -161,7 +201,8 @@ public abstract class WikiDumpPageHandler extends WikiDumpHandler {
 
     abstract protected void doExport(SiteInfo siteInfo);
 
-    abstract protected void doExport(Page page, List<Revision> revisions,
+    abstract protected void doExport(Page page, PageMetadata metadata,
+            List<Revision> revisions,
             List<ShortRevision> revisions_short, NormalisedTitle title);
 
     /**
@@ -20,10 +20,16 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
 
 import com.almworks.sqlite4java.SQLiteConnection;
@@ -34,13 +40,17 @@ import com.ericsson.otp.erlang.OtpErlangObject;
 
 import de.zib.scalaris.CommonErlangObjects;
 import de.zib.scalaris.ErlangValue;
+import de.zib.scalaris.examples.wikipedia.ArticleIndex;
+import de.zib.scalaris.examples.wikipedia.BucketedPageList;
 import de.zib.scalaris.examples.wikipedia.MultiHashMap;
 import de.zib.scalaris.examples.wikipedia.SQLiteDataHandler;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandler;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerNormalised;
+import de.zib.scalaris.examples.wikipedia.SearchIndex;
 import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace.NamespaceEnum;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.PageMetadata;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
@@ -282,7 +292,8 @@ public class WikiDumpPrepareSQLiteForScalarisHandler extends WikiDumpPageHandler
     }
 
     @Override
-    protected void doExport(Page page, List<Revision> revisions,
+    protected void doExport(Page page, PageMetadata metadata,
+            List<Revision> revisions,
             List<ShortRevision> revisions_short, NormalisedTitle title)
             throws UnsupportedOperationException {
         for (Revision rev : revisions) {
@@ -292,11 +303,24 @@ public class WikiDumpPrepareSQLiteForScalarisHandler extends WikiDumpPageHandler
                                 rev.getId()), rev, stWrite));
             }
         }
-        addSQLiteJob(new SQLiteWriteObjectJob<List<ShortRevision>>(
-                ScalarisDataHandlerNormalised.getRevListKey(title),
-                revisions_short, stWrite));
+        final List<ShortRevision> revisions_short_asc = new ArrayList<ShortRevision>(revisions_short);
+        Collections.sort(revisions_short_asc, ScalarisDataHandler.REV_LIST_ORDER);
+        for (Entry<Integer, List<ShortRevision>> segment : ScalarisDataHandlerNormalised
+                .groupByRevListSegment(0, revisions_short_asc).entrySet()) {
+            addSQLiteJob(new SQLiteWriteObjectJob<List<ShortRevision>>(
+                    ScalarisDataHandlerNormalised.getRevListSegmentKey(title, segment.getKey()),
+                    segment.getValue(), stWrite));
+        }
+        addSQLiteJob(new SQLiteWriteObjectJob<Integer>(
+                ScalarisDataHandlerNormalised.getRevListHeadKey(title),
+                revisions_short.size(), stWrite));
         addSQLiteJob(new SQLiteWriteObjectJob<Page>(
                 ScalarisDataHandlerNormalised.getPageKey(title), page, stWrite));
+        if (metadata != null) {
+            addSQLiteJob(new SQLiteWriteObjectJob<PageMetadata>(
+                    ScalarisDataHandlerNormalised.getPageMetadataKey(title),
+                    metadata, stWrite));
+        }
 
         // note: do not normalise page titles (this will be done later)
         newPages.get(NamespaceEnum.fromId(title.namespace)).add(title);
@@ -312,8 +336,10 @@ public class WikiDumpPrepareSQLiteForScalarisHandler extends WikiDumpPageHandler
     }
     
     protected void updatePageList() {
-        addSQLiteJob(new SQLiteUpdatePageLists1Job(newPages, articleCount));
+        addSQLiteJob(new SQLiteUpdatePageLists1Job(newPages, newArticles, articleCount));
         initNewPagesList();
+        addSQLiteJob(new SQLiteUpdateSearchIndexJob(newPostings, newDocs, maxPageId));
+        initNewPostings();
     }
     
     protected void updateLinkLists() {
@@ -492,6 +518,7 @@ public class WikiDumpPrepareSQLiteForScalarisHandler extends WikiDumpPageHandler
      */
     protected class SQLiteUpdatePageLists1Job extends SQLiteUpdatePageListsJob {
         EnumMap<NamespaceEnum, ArrayList<NormalisedTitle>> newPages;
+        ArrayList<NormalisedTitle> newArticles;
         int articleCount;
         
         /**
@@ -499,11 +526,15 @@ public class WikiDumpPrepareSQLiteForScalarisHandler extends WikiDumpPageHandler
          * 
          * @param newPages
          *            list of page titles
+         * @param newArticles
+         *            list of new article titles (for the article index)
          * @param articleCount
          *            number of articles
          */
-        public SQLiteUpdatePageLists1Job(EnumMap<NamespaceEnum, ArrayList<NormalisedTitle>> newPages, int articleCount) {
+        public SQLiteUpdatePageLists1Job(EnumMap<NamespaceEnum, ArrayList<NormalisedTitle>> newPages,
+                ArrayList<NormalisedTitle> newArticles, int articleCount) {
             this.newPages = newPages;
+            this.newArticles = newArticles;
             this.articleCount = articleCount;
         }
         
@@ -525,10 +556,157 @@ public class WikiDumpPrepareSQLiteForScalarisHandler extends WikiDumpPageHandler
                 }
                 writeObject(scalaris_key, pageList);
                 writeObject(ScalarisDataHandler.getPageCountKey(ns.getId()), pageList.size());
+                
+                // page title index:
+                final Map<String, List<String>> newBuckets = ScalarisDataHandler
+                        .groupByPageIndexBucket(newPages.get(ns));
+                for (Entry<String, List<String>> bucket : newBuckets.entrySet()) {
+                    addToSortedList(ScalarisDataHandler.getPageIndexBucketKey(
+                            ns.getId(), bucket.getKey()), bucket.getValue());
+                }
+                if (!newBuckets.isEmpty()) {
+                    addToSortedList(ScalarisDataHandler.getPageIndexKey(ns.getId()),
+                            newBuckets.keySet());
+                }
             }
             
             // number articles:
             writeObject(ScalarisDataHandler.getArticleCountKey(), articleCount);
+            
+            // article index:
+            addToArticleIndex(ScalarisDataHandlerNormalised.normList2normStringList(newArticles));
+        }
+        
+        /**
+         * Appends the given (new) articles to the article index.
+         * 
+         * @param articles
+         *            the normalised titles of the articles
+         * 
+         * @see ArticleIndex
+         */
+        protected void addToArticleIndex(List<String> articles) {
+            int count;
+            try {
+                count = readObject2(ArticleIndex.getCountKey()).intValue();
+            } catch (FileNotFoundException e) {
+                count = 0;
+            }
+            final TreeSet<Integer> chunks = ArticleIndex.getTouchedChunks(
+                    count, new ArrayList<Integer>(0), articles.size());
+            final Map<Integer, List<String>> chunkEntries =
+                    new HashMap<Integer, List<String>>(chunks.size());
+            for (Integer chunk : chunks) {
+                try {
+                    chunkEntries.put(chunk, readObject2(
+                            ArticleIndex.getChunkKey(chunk)).stringListValue());
+                } catch (FileNotFoundException e) {
+                    // new chunk
+                }
+            }
+            final Map<String, Integer> changedPositions = new HashMap<String, Integer>();
+            count = ArticleIndex.changeIndex(count, chunkEntries,
+                    new HashMap<String, Integer>(), articles,
+                    new ArrayList<String>(0), changedPositions);
+            for (Entry<Integer, List<String>> chunk : chunkEntries.entrySet()) {
+                writeObject(ArticleIndex.getChunkKey(chunk.getKey()), chunk.getValue());
+            }
+            for (Entry<String, Integer> pos : changedPositions.entrySet()) {
+                writeObject(ArticleIndex.getPositionKey(pos.getKey()), pos.getValue());
+            }
+            writeObject(ArticleIndex.getCountKey(), count);
+        }
+        
+        /**
+         * Adds the given values to the sorted list at the given key.
+         * 
+         * @param key
+         *            the key of the list
+         * @param values
+         *            the values to add
+         * 
+         * @see ScalarisDataHandler#PAGE_INDEX_ORDER
+         */
+        protected void addToSortedList(String key, Collection<String> values) {
+            TreeSet<String> list = new TreeSet<String>(ScalarisDataHandler.PAGE_INDEX_ORDER);
+            try {
+                list.addAll(readObject2(key).stringListValue());
+            } catch (FileNotFoundException e) {
+                // new list
+            }
+            list.addAll(values);
+            writeObject(key, new ArrayList<String>(list));
+        }
+    }
+
+    /**
+     * Updates the full-text search index.
+     */
+    protected class SQLiteUpdateSearchIndexJob extends SQLiteUpdatePageListsJob {
+        EnumMap<NamespaceEnum, HashMap<String, TreeMap<Integer, Integer>>> newPostings;
+        HashMap<Integer, NormalisedTitle> newDocs;
+        int maxPageId;
+        
+        /**
+         * Writes the postings and page titles of the search index to the DB.
+         * 
+         * @param newPostings
+         *            terms of each namespace mapped to the page IDs (and
+         *            their tiers) to add
+         * @param newDocs
+         *            page IDs mapped to their titles
+         * @param maxPageId
+         *            the highest page ID so far
+         */
+        public SQLiteUpdateSearchIndexJob(
+                EnumMap<NamespaceEnum, HashMap<String, TreeMap<Integer, Integer>>> newPostings,
+                HashMap<Integer, NormalisedTitle> newDocs, int maxPageId) {
+            this.newPostings = newPostings;
+            this.newDocs = newDocs;
+            this.maxPageId = maxPageId;
+        }
+        
+        @Override
+        public void run() {
+            final HashMap<Integer, Integer> noPostings = new HashMap<Integer, Integer>(0);
+            for(NamespaceEnum ns : NamespaceEnum.values()) {
+                for (Entry<String, TreeMap<Integer, Integer>> term : newPostings.get(ns).entrySet()) {
+                    for (Entry<Integer, Map<Integer, Integer>> shard : SearchIndex
+                            .splitByShard(term.getValue()).entrySet()) {
+                        final String termKey = SearchIndex.getTermKey(ns.getId(), term.getKey(), shard.getKey());
+                        final TreeSet<Integer> tiers = SearchIndex.getTouchedTiers(shard.getValue(), noPostings);
+                        List<Integer> tierSizes;
+                        try {
+                            tierSizes = SearchIndex.toTierSizes(readObject2(termKey).longListValue());
+                        } catch (FileNotFoundException e) {
+                            tierSizes = SearchIndex.toTierSizes(null);
+                        }
+                        final Map<Integer, SortedSet<Integer>> postings =
+                                new HashMap<Integer, SortedSet<Integer>>(tiers.size());
+                        for (Integer tier : tiers) {
+                            byte[] data;
+                            try {
+                                data = readObject2(SearchIndex.getPostingsKey(
+                                        ns.getId(), term.getKey(), shard.getKey(), tier)).binaryValue();
+                            } catch (FileNotFoundException e) {
+                                data = null;
+                            }
+                            postings.put(tier, SearchIndex.decodePostings(data));
+                        }
+                        SearchIndex.changePostings(postings, shard.getValue(), noPostings);
+                        for (Integer tier : tiers) {
+                            tierSizes.set(tier, postings.get(tier).size());
+                            writeObject(SearchIndex.getPostingsKey(ns.getId(), term.getKey(), shard.getKey(), tier),
+                                    SearchIndex.encodePostings(postings.get(tier)));
+                        }
+                        writeObject(termKey, tierSizes);
+                    }
+                }
+            }
+            for (Entry<Integer, NormalisedTitle> doc : newDocs.entrySet()) {
+                writeObject(SearchIndex.getDocKey(doc.getKey()), doc.getValue().toString());
+            }
+            writeObject(ScalarisDataHandler.getNextPageIdKey(), maxPageId + 1);
         }
     }
 
@@ -717,7 +895,7 @@ public class WikiDumpPrepareSQLiteForScalarisHandler extends WikiDumpPageHandler
             // note: titles in the page list are already normalised!
             String scalaris_key;
             scalaris_key = ScalarisDataHandlerNormalised.getCatPageListKey(category0);
-            writeObject(scalaris_key, catPageList);
+            writeBucketedPageList(scalaris_key, catPageList);
             scalaris_key = ScalarisDataHandlerNormalised.getCatPageCountKey(category0);
             writeObject(scalaris_key, catPageList.size());
             catPageList.clear();
@@ -737,9 +915,33 @@ public class WikiDumpPrepareSQLiteForScalarisHandler extends WikiDumpPageHandler
             // note: titles in the page list are already normalised!
             String scalaris_key;
             scalaris_key = ScalarisDataHandlerNormalised.getBackLinksPageListKey(linkDest0);
-            writeObject(scalaris_key, backLinksPageList);
+            writeBucketedPageList(scalaris_key, backLinksPageList);
             backLinksPageList.clear();
         }
+
+        /**
+         * Writes the given page list as a bucketed page list.
+         * 
+         * @param scalaris_key
+         *            the key of the page list
+         * @param pageList
+         *            the (normalised) titles in the page list
+         * 
+         * @see BucketedPageList
+         */
+        private void writeBucketedPageList(String scalaris_key,
+                List<String> pageList) throws RuntimeException {
+            final TreeMap<String, List<String>> buckets = BucketedPageList
+                    .groupByBucket(pageList);
+            for (Entry<String, List<String>> bucket : buckets.entrySet()) {
+                final List<String> bucketTitles = bucket.getValue();
+                Collections.sort(bucketTitles, ScalarisDataHandler.PAGE_INDEX_ORDER);
+                writeObject(BucketedPageList.getBucketKey(scalaris_key, bucket.getKey()),
+                        bucketTitles);
+            }
+            writeObject(BucketedPageList.getIndexKey(scalaris_key),
+                    new ArrayList<String>(buckets.keySet()));
+        }
     }
     
     protected static class SQLiteWriteSiteInfoJob implements Runnable {
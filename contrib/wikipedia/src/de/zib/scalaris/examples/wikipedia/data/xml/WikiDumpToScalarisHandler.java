@@ -15,11 +15,16 @@
  */
 package de.zib.scalaris.examples.wikipedia.data.xml;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -33,14 +38,17 @@ import de.zib.scalaris.TimeoutException;
 import de.zib.scalaris.Transaction;
 import de.zib.scalaris.TransactionSingleOp;
 import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.examples.wikipedia.ArticleIndex;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandler;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerNormalised;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerUnnormalised;
 import de.zib.scalaris.examples.wikipedia.ScalarisOpType;
+import de.zib.scalaris.examples.wikipedia.SearchIndex;
 import de.zib.scalaris.examples.wikipedia.ValueResult;
 import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace.NamespaceEnum;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.PageMetadata;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
@@ -58,6 +66,7 @@ public class WikiDumpToScalarisHandler extends WikiDumpPageHandler {
     private ArrayBlockingQueue<Transaction> scalaris_tx = new ArrayBlockingQueue<Transaction>(MAX_SCALARIS_CONNECTIONS);
     private ExecutorService executor = createExecutor(MAX_SCALARIS_CONNECTIONS);
     private ExecutorService pageListExecutor = createExecutor(1);
+    private static final int SEARCH_INDEX_TERMS_PER_TX = 100;
     protected boolean errorDuringImport = false;
 
     /**
@@ -203,7 +212,8 @@ public class WikiDumpToScalarisHandler extends WikiDumpPageHandler {
     }
     
     @Override
-    protected void doExport(Page page, List<Revision> revisions,
+    protected void doExport(Page page, PageMetadata metadata,
+            List<Revision> revisions,
             List<ShortRevision> revisions_short, NormalisedTitle title)
             throws UnsupportedOperationException {
         // do not make the translog too full -> write revisions beforehand,
@@ -215,8 +225,18 @@ public class WikiDumpToScalarisHandler extends WikiDumpPageHandler {
                 requests.addOp(new WriteOp(key, rev));
             }
         }
-        requests.addOp(new WriteOp(ScalarisDataHandlerUnnormalised.getRevListKey(page.getTitle(), wikiModel.getNamespace()), revisions_short));
+        final List<ShortRevision> revisions_short_asc = new ArrayList<ShortRevision>(revisions_short);
+        Collections.sort(revisions_short_asc, ScalarisDataHandler.REV_LIST_ORDER);
+        for (Entry<Integer, List<ShortRevision>> segment : ScalarisDataHandlerNormalised
+                .groupByRevListSegment(0, revisions_short_asc).entrySet()) {
+            requests.addOp(new WriteOp(ScalarisDataHandlerUnnormalised.getRevListSegmentKey(
+                    page.getTitle(), segment.getKey(), wikiModel.getNamespace()), segment.getValue()));
+        }
+        requests.addOp(new WriteOp(ScalarisDataHandlerUnnormalised.getRevListHeadKey(page.getTitle(), wikiModel.getNamespace()), revisions_short.size()));
         requests.addOp(new WriteOp(ScalarisDataHandlerUnnormalised.getPageKey(page.getTitle(), wikiModel.getNamespace()), page));
+        if (metadata != null) {
+            requests.addOp(new WriteOp(ScalarisDataHandlerUnnormalised.getPageMetadataKey(page.getTitle(), wikiModel.getNamespace()), metadata));
+        }
         Runnable worker = new MyScalarisSingleRunnable(this, requests,
                 scalaris_single, "revisions and page of " + page.getTitle());
         executor.execute(worker);
@@ -248,9 +268,45 @@ public class WikiDumpToScalarisHandler extends WikiDumpPageHandler {
                     newPages.get(ns), scalaris_tx, ScalarisOpType.PAGE_LIST,
                     ScalarisDataHandler.getPageCountKey(ns.getId()));
             pageListExecutor.execute(worker);
+            worker = new MyScalarisAddToPageIndexRunnable(this, ns.getId(),
+                    newPages.get(ns), scalaris_tx);
+            pageListExecutor.execute(worker);
         }
+        worker = new MyScalarisAddToArticleIndexRunnable(this, newArticles,
+                scalaris_tx);
+        pageListExecutor.execute(worker);
         initNewPagesList();
         
+        // full-text search index (chunks of terms per transaction, serialised
+        // so that chunks of consecutive updates do not conflict):
+        for(NamespaceEnum ns : NamespaceEnum.values()) {
+            HashMap<String, TreeMap<Integer, Integer>> chunk =
+                    new HashMap<String, TreeMap<Integer, Integer>>(SEARCH_INDEX_TERMS_PER_TX);
+            for (Entry<String, TreeMap<Integer, Integer>> term : newPostings.get(ns).entrySet()) {
+                chunk.put(term.getKey(), term.getValue());
+                if (chunk.size() >= SEARCH_INDEX_TERMS_PER_TX) {
+                    pageListExecutor.execute(new MyScalarisAddToSearchIndexRunnable(
+                            this, ns.getId(), chunk, scalaris_tx));
+                    chunk = new HashMap<String, TreeMap<Integer, Integer>>(SEARCH_INDEX_TERMS_PER_TX);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                pageListExecutor.execute(new MyScalarisAddToSearchIndexRunnable(
+                        this, ns.getId(), chunk, scalaris_tx));
+            }
+        }
+        if (!newDocs.isEmpty()) {
+            TransactionSingleOp.RequestList requests = new TransactionSingleOp.RequestList();
+            for (Entry<Integer, NormalisedTitle> doc : newDocs.entrySet()) {
+                requests.addOp(new WriteOp(SearchIndex.getDocKey(doc.getKey()), doc.getValue().toString()));
+            }
+            requests.addOp(new WriteOp(ScalarisDataHandler.getNextPageIdKey(), maxPageId + 1));
+            // serialised, too, so that the next free page ID never decreases
+            pageListExecutor.execute(new MyScalarisSingleRunnable(this, requests,
+                    scalaris_single, "search index page titles"));
+        }
+        initNewPostings();
+        
         // articles count:
         TransactionSingleOp.RequestList requests = new TransactionSingleOp.RequestList();
         requests.addOp(new WriteOp(ScalarisDataHandler.getArticleCountKey(), articleCount));
@@ -418,4 +474,144 @@ public class WikiDumpToScalarisHandler extends WikiDumpPageHandler {
             }
         }
     }
+
+    /**
+     * Processes full-text search index update requests to Scalaris in a
+     * separate thread. Takes one of the available {@link #scalaris_tx}
+     * connections.
+     */
+    private static class MyScalarisAddToSearchIndexRunnable implements Runnable {
+        private final int namespace;
+        private final Map<String, TreeMap<Integer, Integer>> newPostings;
+        private final ArrayBlockingQueue<Transaction> scalaris_tx;
+        private final WikiDump importer;
+        
+        public MyScalarisAddToSearchIndexRunnable(WikiDump importer,
+                int namespace, Map<String, TreeMap<Integer, Integer>> newPostings,
+                ArrayBlockingQueue<Transaction> scalaris_tx) {
+            this.importer = importer;
+            this.namespace = namespace;
+            this.newPostings = newPostings;
+            this.scalaris_tx = scalaris_tx;
+        }
+        
+        @Override
+        public void run() {
+            Transaction scalaris_tx;
+            try {
+                scalaris_tx = this.scalaris_tx.take();
+            } catch (InterruptedException e) {
+                importer.error("update of the search index of namespace " + namespace + " interrupted while getting connection to Scalaris");
+                throw new RuntimeException(e);
+            }
+            
+            ValueResult<Integer> result = ScalarisDataHandlerNormalised.updateSearchIndex(
+                    scalaris_tx, namespace, newPostings, "");
+            if (!result.success) {
+                importer.error(result.message);
+            }
+            
+            if (scalaris_tx != null) {
+                try {
+                    this.scalaris_tx.put(scalaris_tx);
+                } catch (InterruptedException e) {
+                    importer.error("update of the search index of namespace " + namespace + " interrupted while putting back a connection to Scalaris");
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes page title index update requests to Scalaris in a separate
+     * thread. Takes one of the available {@link #scalaris_tx} connections.
+     */
+    private static class MyScalarisAddToPageIndexRunnable implements Runnable {
+        private final int namespace;
+        private final List<NormalisedTitle> newEntries;
+        private final ArrayBlockingQueue<Transaction> scalaris_tx;
+        private final WikiDump importer;
+        
+        public MyScalarisAddToPageIndexRunnable(WikiDump importer,
+                int namespace, List<NormalisedTitle> newEntries,
+                ArrayBlockingQueue<Transaction> scalaris_tx) {
+            this.importer = importer;
+            this.namespace = namespace;
+            this.newEntries = newEntries;
+            this.scalaris_tx = scalaris_tx;
+        }
+        
+        @Override
+        public void run() {
+            final String scalaris_pageIndex_key = ScalarisDataHandler.getPageIndexKey(namespace);
+            Transaction scalaris_tx;
+            try {
+                scalaris_tx = this.scalaris_tx.take();
+            } catch (InterruptedException e) {
+                importer.error("update of " + scalaris_pageIndex_key + " interrupted while getting connection to Scalaris");
+                throw new RuntimeException(e);
+            }
+            
+            ValueResult<Integer> result = ScalarisDataHandlerNormalised.updatePageIndex(
+                    scalaris_tx, namespace, newEntries,
+                    new LinkedList<NormalisedTitle>(), "");
+            if (!result.success) {
+                importer.error(result.message);
+            }
+            
+            if (scalaris_tx != null) {
+                try {
+                    this.scalaris_tx.put(scalaris_tx);
+                } catch (InterruptedException e) {
+                    importer.error("update of " + scalaris_pageIndex_key + " interrupted while putting back a connection to Scalaris");
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes article index update requests to Scalaris in a separate
+     * thread. Takes one of the available {@link #scalaris_tx} connections.
+     */
+    private static class MyScalarisAddToArticleIndexRunnable implements Runnable {
+        private final List<NormalisedTitle> newEntries;
+        private final ArrayBlockingQueue<Transaction> scalaris_tx;
+        private final WikiDump importer;
+        
+        public MyScalarisAddToArticleIndexRunnable(WikiDump importer,
+                List<NormalisedTitle> newEntries,
+                ArrayBlockingQueue<Transaction> scalaris_tx) {
+            this.importer = importer;
+            this.newEntries = newEntries;
+            this.scalaris_tx = scalaris_tx;
+        }
+        
+        @Override
+        public void run() {
+            final String scalaris_articleIndex_key = ArticleIndex.getCountKey();
+            Transaction scalaris_tx;
+            try {
+                scalaris_tx = this.scalaris_tx.take();
+            } catch (InterruptedException e) {
+                importer.error("update of " + scalaris_articleIndex_key + " interrupted while getting connection to Scalaris");
+                throw new RuntimeException(e);
+            }
+            
+            ValueResult<Integer> result = ScalarisDataHandlerNormalised.updateArticleIndex(
+                    scalaris_tx, newEntries, new LinkedList<NormalisedTitle>(), "");
+            if (!result.success) {
+                importer.error(result.message);
+            }
+            
+            if (scalaris_tx != null) {
+                try {
+                    this.scalaris_tx.put(scalaris_tx);
+                } catch (InterruptedException e) {
+                    importer.error("update of " + scalaris_articleIndex_key + " interrupted while putting back a connection to Scalaris");
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,539 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+import de.zib.scalaris.operations.ReadOp;
+import de.zib.scalaris.operations.WriteOp;
+
+/**
+ * Generic base class for values which are distributed among several buckets,
+ * i.e. Scalaris keys, in order to reduce the contention on hot keys.
+ *
+ * <p>
+ * A value stored under <tt>key</tt> with <tt>n &gt; 1</tt> buckets is
+ * distributed among the keys <tt>key:0</tt> to <tt>key:(n-1)</tt>; with only
+ * a single bucket, <tt>key</tt> itself is used. This is compatible with the
+ * bucket scheme the Wiki-on-Scalaris example uses for its lists and counters.
+ * The current number of buckets is stored under <tt>key:shards</tt>. If this
+ * key does not exist, the default number of buckets given at construction
+ * time is assumed.
+ * </p>
+ *
+ * <p>
+ * Every operation reads the number of buckets inside the same transaction
+ * it uses to access the buckets themselves. The bucket count is cached and
+ * an operation is re-tried with the new count if it changed. This way, the
+ * number of buckets can be changed with {@link #reshard(int)} while other
+ * clients continue to read and modify the value.
+ * </p>
+ *
+ * <p>
+ * Objects of this class are not thread-safe (as are {@link Transaction}
+ * objects).
+ * </p>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public abstract class AbstractShardedValue {
+    /**
+     * Suffix of the key storing the number of buckets.
+     */
+    public static final String SHARDS_KEY_SUFFIX = ":shards";
+
+    /**
+     * Strategies to select a bucket for a new (partial) value.
+     */
+    public static enum BucketSelection {
+        /**
+         * Selects a random bucket for each value.
+         */
+        RANDOM,
+        /**
+         * Selects a bucket based on the value's hash code (the same values
+         * always end up in the same bucket).
+         */
+        HASH
+    }
+
+    /**
+     * Transaction object used for all operations.
+     */
+    protected final Transaction transaction;
+    /**
+     * The (base) key of the value.
+     */
+    protected final String key;
+    /**
+     * The key storing the current number of buckets.
+     */
+    protected final String shardsKey;
+    /**
+     * Number of buckets to assume if {@link #shardsKey} does not exist.
+     */
+    protected final int defaultBuckets;
+    /**
+     * Strategy to select a bucket for a new (partial) value.
+     */
+    protected final BucketSelection bucketSelection;
+    /**
+     * The (cached) current number of buckets.
+     */
+    protected int buckets;
+    /**
+     * Maximum number of re-tries if the number of buckets changed or a commit
+     * failed due to concurrent operations.
+     */
+    protected int maxRetries = 10;
+
+    private final Random rand = new Random();
+
+    /**
+     * Creates a new sharded value.
+     *
+     * @param conn
+     *            connection to use for the operations
+     * @param key
+     *            the (base) key of the value
+     * @param defaultBuckets
+     *            number of buckets to assume if no bucket count has been
+     *            stored yet
+     * @param bucketSelection
+     *            strategy to select a bucket for a new (partial) value
+     */
+    protected AbstractShardedValue(final Connection conn, final String key,
+            final int defaultBuckets, final BucketSelection bucketSelection) {
+        if (defaultBuckets < 1) {
+            throw new IllegalArgumentException("at least one bucket is required");
+        }
+        this.transaction = new Transaction(conn);
+        this.key = key;
+        this.shardsKey = key + SHARDS_KEY_SUFFIX;
+        this.defaultBuckets = defaultBuckets;
+        this.buckets = defaultBuckets;
+        this.bucketSelection = bucketSelection;
+    }
+
+    /**
+     * Gets the key of the given bucket.
+     *
+     * @param bucket
+     *            the bucket number
+     * @param buckets
+     *            the total number of buckets
+     *
+     * @return the key, e.g. <tt>key:0</tt>
+     */
+    public String getBucketKey(final int bucket, final int buckets) {
+        if (buckets > 1) {
+            return key + ":" + bucket;
+        } else {
+            return key;
+        }
+    }
+
+    /**
+     * Selects a bucket for the given value using the {@link #bucketSelection}
+     * strategy.
+     *
+     * @param value
+     *            the value to store
+     * @param buckets
+     *            the total number of buckets
+     *
+     * @return the bucket number
+     */
+    protected int selectBucket(final Object value, final int buckets) {
+        if (buckets <= 1) {
+            return 0;
+        }
+        switch (bucketSelection) {
+            case HASH:
+                return Math.abs(value.hashCode() % buckets);
+            case RANDOM:
+            default:
+                return rand.nextInt(buckets);
+        }
+    }
+
+    /**
+     * Gets the bucket count from the result of a read on {@link #shardsKey}.
+     *
+     * @param results
+     *            the results of the requests
+     * @param pos
+     *            the position of the read result
+     *
+     * @return the number of buckets stored in Scalaris or
+     *         {@link #defaultBuckets} if there is none
+     *
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch the value
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    protected int processShardsReadAt(final Transaction.ResultList results,
+            final int pos) throws TimeoutException, UnknownException {
+        try {
+            return results.processReadAt(pos).intValue();
+        } catch (final NotFoundException e) {
+            return defaultBuckets;
+        } catch (final ClassCastException e) {
+            throw new UnknownException(e, results.getResults());
+        }
+    }
+
+    /**
+     * Reads all buckets of the value in a single request list (which is
+     * committed in order to get a consistent view on all buckets).
+     *
+     * @return the values of all buckets (<tt>null</tt> for buckets which do
+     *         not exist)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch the value
+     * @throws AbortException
+     *             if the read failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    protected List<ErlangValue> readBuckets() throws ConnectionException,
+            TimeoutException, AbortException, UnknownException {
+        AbortException lastAbort = null;
+        for (int retry = 0; retry <= maxRetries; ++retry) {
+            final int n = buckets;
+            final Transaction.RequestList req = readBucketsReqList(n);
+            req.addCommit();
+            final Transaction.ResultList results;
+            try {
+                results = transaction.req_list(req);
+            } catch (final AbortException e) {
+                transaction.abort();
+                lastAbort = e;
+                continue;
+            }
+            buckets = processShardsReadAt(results, 0);
+            if (buckets != n) {
+                continue;
+            }
+            return processReadBuckets(results, n);
+        }
+        throw abortAfterRetries(lastAbort);
+    }
+
+    /**
+     * Changes the number of buckets of the value to <tt>newBuckets</tt>.
+     *
+     * Re-distributes the current contents to the new buckets, resets obsolete
+     * buckets and stores the new bucket count in a single transaction. Other
+     * clients (using the same key) will pick up the new bucket count with
+     * their next operation.
+     *
+     * @param newBuckets
+     *            the new number of buckets
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch/write the values
+     * @throws AbortException
+     *             if the commit failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void reshard(final int newBuckets) throws ConnectionException,
+            TimeoutException, AbortException, UnknownException {
+        if (newBuckets < 1) {
+            throw new IllegalArgumentException("at least one bucket is required");
+        }
+        AbortException lastAbort = null;
+        for (int retry = 0; retry <= maxRetries; ++retry) {
+            final int n = buckets;
+            final Transaction.ResultList results = transaction.req_list(readBucketsReqList(n));
+            buckets = processShardsReadAt(results, 0);
+            if (buckets != n) {
+                transaction.abort();
+                continue;
+            }
+            final List<ErlangValue> oldValues = processReadBuckets(results, n);
+            final List<OtpErlangObject> newValues = redistribute(oldValues, newBuckets);
+
+            final Transaction.RequestList req = new Transaction.RequestList();
+            final Set<String> obsoleteKeys = new LinkedHashSet<String>(n);
+            for (int i = 0; i < n; ++i) {
+                obsoleteKeys.add(getBucketKey(i, n));
+            }
+            for (int i = 0; i < newBuckets; ++i) {
+                final String bucketKey = getBucketKey(i, newBuckets);
+                obsoleteKeys.remove(bucketKey);
+                req.addOp(new WriteOp(bucketKey, newValues.get(i)));
+            }
+            for (final String obsoleteKey : obsoleteKeys) {
+                req.addOp(new WriteOp(obsoleteKey, emptyValue()));
+            }
+            req.addOp(new WriteOp(shardsKey, newBuckets));
+            req.addCommit();
+            try {
+                transaction.req_list(req);
+            } catch (final AbortException e) {
+                transaction.abort();
+                lastAbort = e;
+                continue;
+            }
+            buckets = newBuckets;
+            return;
+        }
+        throw abortAfterRetries(lastAbort);
+    }
+
+    /**
+     * Executes the given requests inside a transaction together with a read
+     * of the bucket count and commits them if the bucket count did not
+     * change. Re-tries with new requests (see
+     * {@link #addModifyRequests(Transaction.RequestList, int)}) if the bucket
+     * count changed or the commit failed.
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch/write the values
+     * @throws NotAListException
+     *             if a list operation was applied to a bucket which is no list
+     * @throws NotANumberException
+     *             if a number operation was applied to a bucket which is no
+     *             number
+     * @throws AbortException
+     *             if the commit failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    protected void modify() throws ConnectionException, TimeoutException,
+            NotAListException, NotANumberException, AbortException,
+            UnknownException {
+        AbortException lastAbort = null;
+        for (int retry = 0; retry <= maxRetries; ++retry) {
+            final int n = buckets;
+            final Transaction.RequestList req = new Transaction.RequestList();
+            req.addOp(new ReadOp(shardsKey));
+            addModifyRequests(req, n);
+            final Transaction.ResultList results = transaction.req_list(req);
+            buckets = processShardsReadAt(results, 0);
+            if (buckets != n) {
+                transaction.abort();
+                continue;
+            }
+            boolean success = false;
+            try {
+                processModifyResults(results, 1);
+                transaction.commit();
+                success = true;
+                return;
+            } catch (final AbortException e) {
+                lastAbort = e;
+            } finally {
+                if (!success) {
+                    transaction.abort();
+                }
+            }
+        }
+        throw abortAfterRetries(lastAbort);
+    }
+
+    /**
+     * Creates a request list reading the bucket count and all buckets.
+     *
+     * @param n
+     *            the number of buckets
+     *
+     * @return a request list
+     */
+    private Transaction.RequestList readBucketsReqList(final int n) {
+        final Transaction.RequestList req = new Transaction.RequestList();
+        req.addOp(new ReadOp(shardsKey));
+        for (int i = 0; i < n; ++i) {
+            req.addOp(new ReadOp(getBucketKey(i, n)));
+        }
+        return req;
+    }
+
+    /**
+     * Processes the results of a request list created by
+     * {@link #readBucketsReqList(int)}.
+     *
+     * @param results
+     *            the results
+     * @param n
+     *            the number of buckets
+     *
+     * @return the values of all buckets (<tt>null</tt> for buckets which do
+     *         not exist)
+     *
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch the value
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    private List<ErlangValue> processReadBuckets(
+            final Transaction.ResultList results, final int n)
+            throws TimeoutException, UnknownException {
+        final List<ErlangValue> values = new ArrayList<ErlangValue>(n);
+        for (int i = 0; i < n; ++i) {
+            try {
+                values.add(results.processReadAt(i + 1));
+            } catch (final NotFoundException e) {
+                values.add(null);
+            }
+        }
+        return values;
+    }
+
+    private AbortException abortAfterRetries(final AbortException lastAbort) {
+        if (lastAbort != null) {
+            return lastAbort;
+        }
+        return new AbortException("bucket count of " + key
+                + " changed too often (" + maxRetries + " retries)",
+                Arrays.asList(shardsKey));
+    }
+
+    /**
+     * Adds the requests of a modifying operation to the given request list.
+     *
+     * @param req
+     *            the request list to add to
+     * @param buckets
+     *            the current number of buckets
+     */
+    protected abstract void addModifyRequests(Transaction.RequestList req,
+            int buckets);
+
+    /**
+     * Processes the results of the requests added by
+     * {@link #addModifyRequests(Transaction.RequestList, int)}.
+     *
+     * @param results
+     *            the results
+     * @param firstOp
+     *            the position of the first result to process
+     *
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write the value
+     * @throws NotAListException
+     *             if a list operation was applied to a bucket which is no list
+     * @throws NotANumberException
+     *             if a number operation was applied to a bucket which is no
+     *             number
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    protected abstract void processModifyResults(
+            Transaction.ResultList results, int firstOp)
+            throws TimeoutException, NotAListException, NotANumberException,
+            UnknownException;
+
+    /**
+     * Re-distributes the given bucket values among <tt>newBuckets</tt>
+     * buckets.
+     *
+     * @param oldValues
+     *            the values of all old buckets (<tt>null</tt> for buckets
+     *            which do not exist)
+     * @param newBuckets
+     *            the new number of buckets
+     *
+     * @return the values of the new buckets
+     *
+     * @throws UnknownException
+     *             if an old value could not be converted
+     */
+    protected abstract List<OtpErlangObject> redistribute(
+            List<ErlangValue> oldValues, int newBuckets)
+            throws UnknownException;
+
+    /**
+     * Gets the value to write into obsolete buckets.
+     *
+     * @return an empty value
+     */
+    protected abstract OtpErlangObject emptyValue();
+
+    /**
+     * Gets the (base) key of the value.
+     *
+     * @return the key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the last known number of buckets.
+     *
+     * @return the number of buckets
+     */
+    public int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Gets the maximum number of re-tries due to concurrent modifications.
+     *
+     * @return the maximum number of re-tries
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Sets the maximum number of re-tries due to concurrent modifications.
+     *
+     * @param maxRetries
+     *            the maximum number of re-tries
+     */
+    public void setMaxRetries(final int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Closes the transaction's connection to the scalaris node.
+     *
+     * Note: Subsequent calls to the other methods will throw
+     * {@link ConnectionException}s!
+     */
+    public void closeConnection() {
+        transaction.closeConnection();
+    }
+}
@@ -0,0 +1,754 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+import de.zib.scalaris.operations.TransactionSingleOpOperation;
+
+/**
+ * Writes a large number of key/value pairs to Scalaris.
+ *
+ * <p>
+ * Writes are collected into batches which are sent with
+ * {@link TransactionSingleOp#req_list(TransactionSingleOp.RequestList)}
+ * (i.e. each write is committed on its own). A batch is sent as soon as it
+ * contains {@link #getMaxBatchSize()} writes or its encoded values reach
+ * {@link #getMaxBatchBytes()} bytes. A number of pipelines (threads) send
+ * batches in parallel, each with a connection from the given
+ * {@link ConnectionPool} which should therefore allow at least as many
+ * connections as there are pipelines. If all pipelines are busy and the
+ * queue of waiting batches is full, {@link #write(String, Object)} blocks
+ * (backpressure).
+ * </p>
+ *
+ * <p>
+ * If some writes of a batch fail (timeout or abort), only these are sent
+ * again (up to {@link #getMaxRetries()} times with an increasing delay); if
+ * the connection fails, the whole batch is sent again. Writes failing
+ * permanently are counted and their keys are available from
+ * {@link #getFailedKeys()}.
+ * </p>
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * <code style="white-space:pre;">
+ *   ConnectionPool pool = new ConnectionPool(new ConnectionFactory(), 8);
+ *   BulkWriter writer = new BulkWriter(pool, 8);
+ *   writer.setProgressListener(new BulkWriter.ProgressListener() {
+ *       public void onProgress(BulkWriter w) {
+ *           System.out.println(w.getWritten() + " written, " + w.getThroughput() + " writes/s");
+ *       }
+ *   }, 10000);
+ *   for (...) {
+ *       writer.write(key, value);
+ *   }
+ *   writer.close();
+ *   pool.closeAll();
+ * </code>
+ * </pre>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class BulkWriter {
+    /**
+     * Default maximum number of writes per batch.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    /**
+     * Default maximum size of the values in a batch (in bytes).
+     */
+    public static final long DEFAULT_MAX_BATCH_BYTES = 1024 * 1024;
+    /**
+     * Default number of retries of failed writes.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * Reports the progress of a {@link BulkWriter}.
+     */
+    public static interface ProgressListener {
+        /**
+         * Called periodically (from a separate thread) and once the writer
+         * has been closed.
+         *
+         * @param writer
+         *            the writer whose progress to report
+         */
+        public abstract void onProgress(BulkWriter writer);
+    }
+
+    /**
+     * An Erlang term which has already been encoded (without the version
+     * tag) and is copied as-is into the request.
+     */
+    private static final class EncodedTerm extends OtpErlangObject {
+        private static final long serialVersionUID = 1L;
+        private final byte[] bytes;
+
+        EncodedTerm(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        OtpErlangObject decode() throws OtpErlangDecodeException {
+            return new OtpInputStream(bytes).read_any();
+        }
+
+        @Override
+        public void encode(final OtpOutputStream buf) {
+            buf.write(bytes);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return (o instanceof EncodedTerm)
+                    && Arrays.equals(bytes, ((EncodedTerm) o).bytes);
+        }
+
+        @Override
+        protected int doHashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public String toString() {
+            return "<encoded>";
+        }
+    }
+
+    /**
+     * Writes a value which is already encoded, either in the external term
+     * format as used by the compressed API (an {@link OtpErlangBinary}
+     * including the version tag) or as an {@link EncodedTerm}.
+     *
+     * The value is converted if the compression setting changed after it
+     * had been encoded.
+     */
+    private static final class EncodedWriteOp implements TransactionSingleOpOperation {
+        private final OtpErlangString key;
+        private final OtpErlangObject value;
+
+        EncodedWriteOp(final OtpErlangString key, final OtpErlangObject value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public OtpErlangObject getErlang(final boolean compressed) {
+            OtpErlangObject erlValue = value;
+            try {
+                if (value instanceof EncodedTerm) {
+                    if (compressed) {
+                        erlValue = CommonErlangObjects.encode(((EncodedTerm) value).decode());
+                    }
+                } else if (!compressed) {
+                    erlValue = CommonErlangObjects.decode(value);
+                }
+            } catch (final OtpErlangDecodeException e) {
+                throw new UnknownException(e, value);
+            }
+            return new OtpErlangTuple(new OtpErlangObject[] {
+                    CommonErlangObjects.writeAtom, key, erlValue });
+        }
+
+        public OtpErlangString getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return "write(" + key + ", <encoded>)";
+        }
+    }
+
+    /**
+     * A batch of writes and their (approximate) sizes.
+     */
+    private static final class Batch {
+        final List<TransactionSingleOpOperation> ops;
+        final List<Integer> sizes;
+        long bytes = 0;
+
+        Batch(final int capacity) {
+            ops = new ArrayList<TransactionSingleOpOperation>(capacity);
+            sizes = new ArrayList<Integer>(capacity);
+        }
+
+        void add(final TransactionSingleOpOperation op, final int size) {
+            ops.add(op);
+            sizes.add(size);
+            bytes += size;
+        }
+    }
+
+    /**
+     * Marks the end of the input for the pipelines.
+     */
+    private static final Batch END = new Batch(0);
+
+    private final ConnectionPool pool;
+    private final BlockingQueue<Batch> queue;
+    private final Thread[] pipelines;
+    private final long startTime = System.nanoTime();
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+    private volatile long retryDelay = 100;
+    private volatile boolean compressed = true;
+    private Thread reporter = null;
+    private ProgressListener listener = null;
+
+    private Batch current = null;
+    private boolean closed = false;
+    /**
+     * Number of batches queued or being processed (guarded by
+     * {@link #pendingLock}).
+     */
+    private int pending = 0;
+    private final Object pendingLock = new Object();
+
+    private final AtomicLong submitted = new AtomicLong(0);
+    private final AtomicLong written = new AtomicLong(0);
+    private final AtomicLong bytesWritten = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong retries = new AtomicLong(0);
+    private final AtomicLong batches = new AtomicLong(0);
+    private final List<String> failedKeys = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Creates a bulk writer and starts its pipelines.
+     *
+     * @param pool
+     *            the pool to get connections from (should allow at least
+     *            <tt>pipelines</tt> connections)
+     * @param pipelines
+     *            the number of batches to send in parallel
+     */
+    public BulkWriter(final ConnectionPool pool, final int pipelines) {
+        if (pipelines < 1) {
+            throw new IllegalArgumentException("pipelines must be at least 1");
+        }
+        this.pool = pool;
+        this.queue = new ArrayBlockingQueue<Batch>(pipelines);
+        this.pipelines = new Thread[pipelines];
+        for (int i = 0; i < pipelines; ++i) {
+            this.pipelines[i] = new Thread(new Runnable() {
+                public void run() {
+                    pipelineLoop();
+                }
+            }, "scalaris-bulk-" + i);
+            this.pipelines[i].setDaemon(true);
+            this.pipelines[i].start();
+        }
+    }
+
+    /**
+     * @return the maximum number of writes per batch
+     */
+    public synchronized int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize
+     *            the maximum number of writes per batch
+     */
+    public synchronized void setMaxBatchSize(final int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return the size of the encoded keys and values at which a batch is
+     *         sent (in bytes)
+     */
+    public synchronized long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Sets the size of the encoded keys and values at which a batch is sent.
+     * A single larger value is sent in a batch of its own.
+     *
+     * @param maxBatchBytes
+     *            size in bytes
+     */
+    public synchronized void setMaxBatchBytes(final long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * @return the number of times a failed write is retried
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param maxRetries
+     *            the number of times a failed write is retried
+     */
+    public void setMaxRetries(final int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @return the delay before the first retry (doubled for each further
+     *         retry, in milliseconds)
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * @param retryDelay
+     *            the delay before the first retry (doubled for each further
+     *            retry, in milliseconds)
+     */
+    public void setRetryDelay(final long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * @return whether to compress the values (see
+     *         {@link AbstractTransaction#setCompressed(boolean)})
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @param compressed
+     *            whether to compress the values (see
+     *            {@link AbstractTransaction#setCompressed(boolean)})
+     */
+    public void setCompressed(final boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Sets a listener which is informed about the progress every
+     * <tt>intervalMillis</tt> milliseconds.
+     *
+     * @param listener
+     *            the listener (<tt>null</tt> to remove the current one)
+     * @param intervalMillis
+     *            the reporting interval in milliseconds
+     */
+    public synchronized void setProgressListener(final ProgressListener listener,
+            final long intervalMillis) {
+        if (reporter != null) {
+            reporter.interrupt();
+            reporter = null;
+        }
+        this.listener = listener;
+        if (listener != null) {
+            reporter = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        while (true) {
+                            Thread.sleep(intervalMillis);
+                            listener.onProgress(BulkWriter.this);
+                        }
+                    } catch (final InterruptedException e) {
+                        // stopped
+                    }
+                }
+            }, "scalaris-bulk-progress");
+            reporter.setDaemon(true);
+            reporter.start();
+        }
+    }
+
+    /**
+     * Adds a write of the given key/value pair. Blocks if all pipelines are
+     * busy.
+     *
+     * @param <T>
+     *            the type of the value
+     * @param key
+     *            the key to write the value to
+     * @param value
+     *            the value to write (see
+     *            {@link ErlangValue#convertToErlang(Object)})
+     *
+     * @throws ClassCastException
+     *             if the value cannot be converted
+     * @throws InterruptedException
+     *             if interrupted while waiting for a free pipeline
+     */
+    public <T> void write(final String key, final T value)
+            throws ClassCastException, InterruptedException {
+        final OtpErlangObject erlValue = ErlangValue.convertToErlang(value);
+        // encode the value only once: the encoded form determines the size
+        // and is sent as-is (also when retrying)
+        final OtpErlangObject encoded;
+        final int size;
+        if (compressed) {
+            encoded = CommonErlangObjects.encode(erlValue);
+            size = (encoded instanceof OtpErlangBinary)
+                    ? ((OtpErlangBinary) encoded).size()
+                    : new OtpOutputStream(encoded).size();
+        } else {
+            final byte[] bytes = new OtpOutputStream(erlValue).toByteArray();
+            encoded = new EncodedTerm(bytes);
+            size = bytes.length;
+        }
+        add(new EncodedWriteOp(new OtpErlangString(key), encoded),
+                key.length() + size);
+    }
+
+    /**
+     * Adds a write of a value which is already encoded in the external term
+     * format (as used by the compressed API, see
+     * {@link AbstractTransaction#setCompressed(boolean)}), e.g. from a
+     * {@link Snapshot}. Blocks if all pipelines are busy.
+     *
+     * @param key
+     *            the key to write the value to
+     * @param encodedValue
+     *            the encoded value (including the version tag)
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for a free pipeline
+     */
+    public void writeEncoded(final String key, final byte[] encodedValue)
+            throws InterruptedException {
+        add(new EncodedWriteOp(new OtpErlangString(key), new OtpErlangBinary(encodedValue)),
+                key.length() + encodedValue.length);
+    }
+
+    private void add(final TransactionSingleOpOperation op, final int size)
+            throws InterruptedException {
+        Batch full = null;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("writer is closed");
+            }
+            if (current != null
+                    && (current.ops.size() >= maxBatchSize
+                    || current.bytes + size > maxBatchBytes)) {
+                full = current;
+                current = null;
+            }
+            if (current == null) {
+                current = new Batch(maxBatchSize);
+            }
+            current.add(op, size);
+            submitted.incrementAndGet();
+        }
+        if (full != null) {
+            submit(full);
+        }
+    }
+
+    /**
+     * Adds writes of all given key/value pairs. Blocks if all pipelines are
+     * busy.
+     *
+     * @param <T>
+     *            the type of the values
+     * @param entries
+     *            the key/value pairs to write
+     *
+     * @throws ClassCastException
+     *             if a value cannot be converted
+     * @throws InterruptedException
+     *             if interrupted while waiting for a free pipeline
+     */
+    public <T> void writeAll(final Iterable<? extends Map.Entry<String, T>> entries)
+            throws ClassCastException, InterruptedException {
+        for (final Map.Entry<String, T> entry : entries) {
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void submit(final Batch batch) throws InterruptedException {
+        synchronized (pendingLock) {
+            ++pending;
+        }
+        try {
+            queue.put(batch);
+        } catch (final InterruptedException e) {
+            batchDone();
+            throw e;
+        }
+    }
+
+    private void batchDone() {
+        synchronized (pendingLock) {
+            --pending;
+            pendingLock.notifyAll();
+        }
+    }
+
+    /**
+     * Sends all collected writes and waits until all batches have been
+     * processed.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        final Batch batch;
+        synchronized (this) {
+            batch = current;
+            current = null;
+        }
+        if (batch != null) {
+            submit(batch);
+        }
+        synchronized (pendingLock) {
+            while (pending > 0) {
+                pendingLock.wait();
+            }
+        }
+    }
+
+    /**
+     * Sends all collected writes, waits for them to finish and stops the
+     * pipelines. The progress listener is informed one last time.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public void close() throws InterruptedException {
+        flush();
+        final ProgressListener lastListener;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lastListener = listener;
+            if (reporter != null) {
+                reporter.interrupt();
+                reporter = null;
+            }
+        }
+        for (int i = 0; i < pipelines.length; ++i) {
+            queue.put(END);
+        }
+        for (final Thread pipeline : pipelines) {
+            pipeline.join();
+        }
+        if (lastListener != null) {
+            lastListener.onProgress(this);
+        }
+    }
+
+    private void pipelineLoop() {
+        while (true) {
+            final Batch batch;
+            try {
+                batch = queue.take();
+            } catch (final InterruptedException e) {
+                return;
+            }
+            if (batch == END) {
+                return;
+            }
+            try {
+                execute(batch);
+            } finally {
+                batchDone();
+            }
+        }
+    }
+
+    /**
+     * Sends a batch, retrying failed writes. If the pipeline is interrupted,
+     * the remaining writes of the batch fail without further retries.
+     */
+    private void execute(final Batch batch) {
+        List<Integer> positions = new ArrayList<Integer>(batch.ops.size());
+        for (int i = 0; i < batch.ops.size(); ++i) {
+            positions.add(i);
+        }
+        for (int attempt = 0; ; ++attempt) {
+            final List<Integer> failedPositions = send(batch, positions);
+            if (failedPositions.isEmpty()) {
+                return;
+            }
+            if (attempt >= maxRetries || Thread.currentThread().isInterrupted()) {
+                fail(batch, failedPositions);
+                return;
+            }
+            retries.addAndGet(failedPositions.size());
+            try {
+                Thread.sleep(retryDelay << attempt);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(batch, failedPositions);
+                return;
+            }
+            positions = failedPositions;
+        }
+    }
+
+    /**
+     * Records the writes at the given positions of a batch as failed
+     * permanently.
+     */
+    private void fail(final Batch batch, final List<Integer> positions) {
+        failed.addAndGet(positions.size());
+        for (final int pos : positions) {
+            failedKeys.add(batch.ops.get(pos).getKey().stringValue());
+        }
+    }
+
+    /**
+     * Sends the writes at the given positions of a batch.
+     *
+     * @return the positions of failed writes
+     */
+    private List<Integer> send(final Batch batch, final List<Integer> positions) {
+        final List<Integer> failedPositions = new ArrayList<Integer>();
+        Connection conn = null;
+        try {
+            // wait for a connection if the pool is exhausted (this is no
+            // failed attempt)
+            conn = pool.getConnection(0);
+            if (conn == null) {
+                // interrupted
+                return positions;
+            }
+            final TransactionSingleOp tx = new TransactionSingleOp(conn);
+            tx.setCompressed(compressed);
+            final TransactionSingleOp.RequestList req = new TransactionSingleOp.RequestList();
+            for (final int pos : positions) {
+                req.addOp(batch.ops.get(pos));
+            }
+            batches.incrementAndGet();
+            final TransactionSingleOp.ResultList results = tx.req_list(req);
+            for (int i = 0; i < positions.size(); ++i) {
+                try {
+                    results.processWriteAt(i);
+                    written.incrementAndGet();
+                    bytesWritten.addAndGet(batch.sizes.get(positions.get(i)));
+                } catch (final TimeoutException e) {
+                    failedPositions.add(positions.get(i));
+                } catch (final AbortException e) {
+                    failedPositions.add(positions.get(i));
+                } catch (final UnknownException e) {
+                    failedPositions.add(positions.get(i));
+                }
+            }
+            return failedPositions;
+        } catch (final ConnectionException e) {
+            return positions;
+        } catch (final UnknownException e) {
+            return positions;
+        } finally {
+            if (conn != null) {
+                pool.releaseConnection(conn);
+            }
+        }
+    }
+
+    /**
+     * @return the number of writes added so far
+     */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * @return the number of successful writes
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return the size of the successfully written keys and values (in
+     *         bytes, as encoded in the Erlang external term format)
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return the number of writes which failed permanently
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the keys of all writes which failed permanently
+     */
+    public List<String> getFailedKeys() {
+        synchronized (failedKeys) {
+            return new ArrayList<String>(failedKeys);
+        }
+    }
+
+    /**
+     * @return the number of retried writes
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return the number of sent request lists (including retries)
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return the number of writes waiting to be sent or being sent
+     */
+    public long getOutstanding() {
+        return submitted.get() - written.get() - failed.get();
+    }
+
+    /**
+     * @return the time since the writer was created (in milliseconds)
+     */
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startTime) / 1000000L;
+    }
+
+    /**
+     * @return the number of successful writes per second since the writer
+     *         was created
+     */
+    public double getThroughput() {
+        final long elapsed = System.nanoTime() - startTime;
+        return elapsed <= 0 ? 0.0 : (written.get() * 1e9) / elapsed;
+    }
+}
@@ -0,0 +1,366 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects (process-wide) statistics about the client side of the Scalaris
+ * API, e.g. RPC latencies per module and function, retries, reconnects and
+ * connection pool wait times.
+ *
+ * <p>
+ * Once an RPC's histogram exists, recording does not allocate any memory.
+ * The collected values can be exported via JMX (see
+ * {@link de.zib.scalaris.jmx.ClientStats}) or as plain text (see
+ * {@link #toText()}).
+ * </p>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class ClientMetrics {
+    private static final ClientMetrics instance = new ClientMetrics();
+
+    /**
+     * RPC latencies (in nanoseconds), grouped by module and function.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> rpcLatencies =
+            new ConcurrentHashMap<String, ConcurrentMap<String, LatencyHistogram>>();
+    private final LatencyHistogram poolWait = new LatencyHistogram();
+    private final AtomicLong rpcFailures = new AtomicLong(0);
+    private final AtomicLong retries = new AtomicLong(0);
+    private final AtomicLong reconnects = new AtomicLong(0);
+    private final AtomicLong failovers = new AtomicLong(0);
+    private final AtomicLong bytesEncoded = new AtomicLong(0);
+    private final AtomicLong bytesDecoded = new AtomicLong(0);
+    private final AtomicLong txOperations = new AtomicLong(0);
+    private final AtomicLong txCommits = new AtomicLong(0);
+    private final AtomicLong txAborts = new AtomicLong(0);
+
+    /**
+     * Creates a new (empty) metrics registry.
+     *
+     * Use {@link #getInstance()} to get the registry the API records to.
+     */
+    protected ClientMetrics() {
+    }
+
+    /**
+     * Returns the (process-wide) instance of the metrics registry.
+     *
+     * @return the registry
+     */
+    public static ClientMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets (or creates) the latency histogram of the given RPC.
+     *
+     * @param mod
+     *            the module of the function
+     * @param fun
+     *            the function
+     *
+     * @return the histogram (in nanoseconds)
+     */
+    private LatencyHistogram rpcHistogram(final String mod, final String fun) {
+        ConcurrentMap<String, LatencyHistogram> funs = rpcLatencies.get(mod);
+        if (funs == null) {
+            rpcLatencies.putIfAbsent(mod, new ConcurrentHashMap<String, LatencyHistogram>());
+            funs = rpcLatencies.get(mod);
+        }
+        LatencyHistogram hist = funs.get(fun);
+        if (hist == null) {
+            funs.putIfAbsent(fun, new LatencyHistogram());
+            hist = funs.get(fun);
+        }
+        return hist;
+    }
+
+    /**
+     * Records a successful RPC.
+     *
+     * @param mod
+     *            the module of the function
+     * @param fun
+     *            the function
+     * @param nanos
+     *            the time the RPC took (including retries) in nanoseconds
+     */
+    public void recordRpc(final String mod, final String fun, final long nanos) {
+        rpcHistogram(mod, fun).record(nanos);
+    }
+
+    /**
+     * Records an RPC which failed with a {@link ConnectionException}.
+     */
+    public void recordRpcFailure() {
+        rpcFailures.incrementAndGet();
+    }
+
+    /**
+     * Records a retry of an RPC after a communication failure.
+     */
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * Records a reconnect of a connection.
+     */
+    public void recordReconnect() {
+        reconnects.incrementAndGet();
+    }
+
+    /**
+     * Records that a connection has been established with a different node
+     * than before, i.e. that the {@link ConnectionPolicy} failed over to
+     * another node.
+     */
+    public void recordFailover() {
+        failovers.incrementAndGet();
+    }
+
+    /**
+     * Records the time spent waiting for a connection of a
+     * {@link ConnectionPool}.
+     *
+     * @param nanos
+     *            the wait time in nanoseconds
+     */
+    public void recordPoolWait(final long nanos) {
+        poolWait.record(nanos);
+    }
+
+    /**
+     * Records the size of an encoded value.
+     *
+     * @param bytes
+     *            number of bytes
+     */
+    public void recordBytesEncoded(final long bytes) {
+        bytesEncoded.addAndGet(bytes);
+    }
+
+    /**
+     * Records the size of a decoded value.
+     *
+     * @param bytes
+     *            number of bytes
+     */
+    public void recordBytesDecoded(final long bytes) {
+        bytesDecoded.addAndGet(bytes);
+    }
+
+    /**
+     * Records the number of operations sent in a request list.
+     *
+     * @param operations
+     *            number of operations
+     */
+    public void recordTxOperations(final int operations) {
+        txOperations.addAndGet(operations);
+    }
+
+    /**
+     * Records a successful commit.
+     */
+    public void recordTxCommit() {
+        txCommits.incrementAndGet();
+    }
+
+    /**
+     * Records a failed (aborted) commit.
+     */
+    public void recordTxAbort() {
+        txAborts.incrementAndGet();
+    }
+
+    /**
+     * Gets the latency histograms (in nanoseconds) of all RPCs issued so far.
+     *
+     * @return a map from <tt>module:function</tt> to the RPC's latencies
+     */
+    public Map<String, LatencyHistogram> getRpcLatencies() {
+        final Map<String, LatencyHistogram> result = new TreeMap<String, LatencyHistogram>();
+        for (final Entry<String, ConcurrentMap<String, LatencyHistogram>> mod : rpcLatencies.entrySet()) {
+            for (final Entry<String, LatencyHistogram> fun : mod.getValue().entrySet()) {
+                result.put(mod.getKey() + ":" + fun.getKey(), fun.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the total number of successful RPCs.
+     *
+     * @return number of RPCs
+     */
+    public long getRpcCount() {
+        long total = 0;
+        for (final LatencyHistogram hist : getRpcLatencies().values()) {
+            total += hist.getCount();
+        }
+        return total;
+    }
+
+    /**
+     * @return the connection pool wait time histogram (in nanoseconds)
+     */
+    public LatencyHistogram getPoolWait() {
+        return poolWait;
+    }
+
+    /**
+     * @return the number of RPCs failed with a {@link ConnectionException}
+     */
+    public long getRpcFailures() {
+        return rpcFailures.get();
+    }
+
+    /**
+     * @return the number of RPC retries
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return the number of reconnects
+     */
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    /**
+     * @return the number of fail-overs to another node
+     */
+    public long getFailovers() {
+        return failovers.get();
+    }
+
+    /**
+     * @return the number of bytes encoded
+     */
+    public long getBytesEncoded() {
+        return bytesEncoded.get();
+    }
+
+    /**
+     * @return the number of bytes decoded
+     */
+    public long getBytesDecoded() {
+        return bytesDecoded.get();
+    }
+
+    /**
+     * @return the number of operations sent in request lists
+     */
+    public long getTxOperations() {
+        return txOperations.get();
+    }
+
+    /**
+     * @return the number of successful commits
+     */
+    public long getTxCommits() {
+        return txCommits.get();
+    }
+
+    /**
+     * @return the number of aborted commits
+     */
+    public long getTxAborts() {
+        return txAborts.get();
+    }
+
+    /**
+     * Resets all statistics.
+     */
+    public void reset() {
+        for (final ConcurrentMap<String, LatencyHistogram> funs : rpcLatencies.values()) {
+            for (final LatencyHistogram hist : funs.values()) {
+                hist.reset();
+            }
+        }
+        poolWait.reset();
+        rpcFailures.set(0);
+        retries.set(0);
+        reconnects.set(0);
+        failovers.set(0);
+        bytesEncoded.set(0);
+        bytesDecoded.set(0);
+        txOperations.set(0);
+        txCommits.set(0);
+        txAborts.set(0);
+    }
+
+    /**
+     * Renders all statistics in a line-based plain text format (compatible
+     * with the Prometheus text exposition format). Latencies are given in
+     * microseconds.
+     *
+     * @return the statistics as text
+     */
+    public String toText() {
+        final StringBuilder sb = new StringBuilder(1024);
+        sb.append("# TYPE scalaris_client_rpc_latency_us summary\n");
+        for (final Entry<String, LatencyHistogram> rpc : getRpcLatencies().entrySet()) {
+            final int sep = rpc.getKey().indexOf(':');
+            final String labels = "module=\"" + rpc.getKey().substring(0, sep)
+                    + "\",function=\"" + rpc.getKey().substring(sep + 1) + "\"";
+            appendSummary(sb, "scalaris_client_rpc_latency_us", labels, rpc.getValue());
+        }
+        sb.append("# TYPE scalaris_client_pool_wait_us summary\n");
+        appendSummary(sb, "scalaris_client_pool_wait_us", null, poolWait);
+        appendCounter(sb, "scalaris_client_rpc_failures_total", rpcFailures.get());
+        appendCounter(sb, "scalaris_client_retries_total", retries.get());
+        appendCounter(sb, "scalaris_client_reconnects_total", reconnects.get());
+        appendCounter(sb, "scalaris_client_failovers_total", failovers.get());
+        appendCounter(sb, "scalaris_client_bytes_encoded_total", bytesEncoded.get());
+        appendCounter(sb, "scalaris_client_bytes_decoded_total", bytesDecoded.get());
+        appendCounter(sb, "scalaris_client_tx_operations_total", txOperations.get());
+        appendCounter(sb, "scalaris_client_tx_commits_total", txCommits.get());
+        appendCounter(sb, "scalaris_client_tx_aborts_total", txAborts.get());
+        return sb.toString();
+    }
+
+    private static void appendSummary(final StringBuilder sb,
+            final String name, final String labels, final LatencyHistogram hist) {
+        final String prefix = (labels == null) ? "{" : ("{" + labels + ",");
+        final double[] quantiles = {0.5, 0.9, 0.99, 0.999};
+        for (final double q : quantiles) {
+            sb.append(name).append(prefix).append("quantile=\"").append(q).append("\"} ")
+              .append(hist.getValueAtPercentile(q * 100.0) / 1000.0).append('\n');
+        }
+        final String suffix = (labels == null) ? " " : ("{" + labels + "} ");
+        sb.append(name).append("_sum").append(suffix).append(hist.getSum() / 1000.0).append('\n');
+        sb.append(name).append("_count").append(suffix).append(hist.getCount()).append('\n');
+    }
+
+    private static void appendCounter(final StringBuilder sb,
+            final String name, final long value) {
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -84,6 +84,36 @@ public final class CommonErlangObjects {
     static final OtpErlangObject processResult_read(
             final OtpErlangObject received_raw, final boolean compressed)
             throws TimeoutException, NotFoundException, UnknownException {
+        return processResult_readValue(received_raw, compressed).value();
+    }
+
+    /**
+     * Processes the <tt>received_raw</tt> term from erlang interpreting it as a
+     * result from a read operation.
+     *
+     * In contrast to {@link #processResult_read(OtpErlangObject, boolean)},
+     * compressed values are only decoded when they are accessed (see
+     * {@link ErlangValue#fromCompressed(OtpErlangObject)}).
+     *
+     * @param received_raw
+     *            the object to process
+     * @param compressed
+     *            whether the transfer of values is compressed or not
+     *
+     * @return the contained value
+     *
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch the value
+     * @throws NotFoundException
+     *             if the requested key does not exist
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     */
+    static final ErlangValue processResult_readValue(
+            final OtpErlangObject received_raw, final boolean compressed)
+            throws TimeoutException, NotFoundException, UnknownException {
         /*
          * possible return values:
          *  {ok, Value} | {fail, timeout | not_found}
@@ -95,11 +125,11 @@ public final class CommonErlangObjects {
                 throw new UnknownException(received_raw);
             }
             if (state.equals(CommonErlangObjects.okAtom)) {
-                OtpErlangObject result = received.elementAt(1);
+                final OtpErlangObject result = received.elementAt(1);
                 if (compressed) {
-                    result = decode(result);
+                    return ErlangValue.fromCompressed(result);
                 }
-                return result;
+                return new ErlangValue(result);
             } else if (state.equals(CommonErlangObjects.failAtom)) {
                 final OtpErlangObject reason = received.elementAt(1);
                 if (reason.equals(CommonErlangObjects.timeoutAtom)) {
@@ -112,9 +142,6 @@ public final class CommonErlangObjects {
         } catch (final ClassCastException e) {
             // e.printStackTrace();
             throw new UnknownException(e, received_raw);
-        } catch (final OtpErlangDecodeException e) {
-            // e.printStackTrace();
-            throw new UnknownException(e, received_raw);
         }
     }
 
@@ -141,12 +168,14 @@ public final class CommonErlangObjects {
             oos.write1(OtpExternal.versionTag);
             oos.write_any(value);
             final byte[] encoded = oos.toByteArray();
+            ClientMetrics.getInstance().recordBytesEncoded(encoded.length);
             return new OtpErlangBinary(encoded);
         } else {
             final OtpOutputStream oos = new OtpOutputStream();
             oos.write1(OtpExternal.versionTag);
             oos.write_compressed(value);
             final byte[] encoded = oos.toByteArray();
+            ClientMetrics.getInstance().recordBytesEncoded(encoded.length);
             return new OtpErlangBinary(encoded);
         }
     }
@@ -167,7 +196,9 @@ public final class CommonErlangObjects {
             throws OtpErlangDecodeException {
         if (value instanceof OtpErlangBinary) {
             final OtpErlangBinary valueBin = (OtpErlangBinary) value;
-            final OtpInputStream ois = new OtpInputStream(valueBin.binaryValue());
+            final byte[] bytes = valueBin.binaryValue();
+            ClientMetrics.getInstance().recordBytesDecoded(bytes.length);
+            final OtpInputStream ois = new OtpInputStream(bytes);
             return ois.read_any();
         } else {
             return value;
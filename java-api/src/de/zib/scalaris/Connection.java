@@ -26,19 +26,27 @@ import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpSelf;
 
 /**
- * Wraps an {@link OtpConnection} and allows automatic re-connects using a
- * {@link ConnectionPolicy} object.
+ * Wraps a {@link Transport} (by default an {@link OtpConnection}) and allows
+ * automatic re-connects using a {@link ConnectionPolicy} object.
+ *
+ * A connection must not be used by multiple threads concurrently - share
+ * connections between threads with a {@link ConnectionPool} instead. See
+ * there for the use with virtual threads.
  *
  * @author Nico Kruber, kruber@zib.de
  *
- * @version 3.14
+ * @version 3.18
  * @since 2.3
  */
 public class Connection {
     /**
-     * The connection this object wraps.
+     * The transport this object wraps.
+     */
+    Transport transport;
+    /**
+     * The factory creating the transport on (re-)connects.
      */
-    OtpConnection connection;
+    final TransportFactory transportFactory;
     /**
      * The local node used for the connection to a remote node.
      */
@@ -52,6 +60,15 @@ public class Connection {
      * reconnect on failures.
      */
     ConnectionPolicy connectionPolicy;
+    /**
+     * The remote node the last connection was established with (used to
+     * detect fail-overs).
+     */
+    private PeerNode connectedTo = null;
+    /**
+     * Registry to record client statistics to.
+     */
+    private final ClientMetrics metrics = ClientMetrics.getInstance();
 
     /**
      * Creates a new connection using the given nodes and a default connection
@@ -77,6 +94,7 @@ public class Connection {
         this.self = self;
         this.connectionPolicy = new DefaultConnectionPolicy(remote);
         this.remote = connectionPolicy.selectNode();
+        this.transportFactory = OtpTransport.FACTORY;
 
         connect();
     }
@@ -99,10 +117,38 @@ public class Connection {
      */
     public Connection(final OtpSelf self, final ConnectionPolicy connectionPolicy) throws UnknownHostException,
             IOException, OtpAuthException {
+        this(self, connectionPolicy, OtpTransport.FACTORY);
+    }
+
+    /**
+     * Creates a new connection between the a <tt>self</tt> node and one of the
+     * <tt>remoteNodes</tt>, selected by the <tt>connectionPolicy</tt>, using
+     * transports created by the given factory.
+     *
+     * @param self
+     *            the local node
+     * @param connectionPolicy
+     *            the connection policy to use
+     * @param transportFactory
+     *            the factory creating the transport to the remote node
+     *
+     * @throws UnknownHostException
+     *             if the remote host could not be found
+     * @throws IOException
+     *             if it was not possible to connect to the remote node
+     * @throws OtpAuthException
+     *             if the connection was refused by the remote node
+     *
+     * @since 3.18
+     */
+    public Connection(final OtpSelf self, final ConnectionPolicy connectionPolicy,
+            final TransportFactory transportFactory) throws UnknownHostException,
+            IOException, OtpAuthException {
         super();
         this.self = self;
         this.remote = connectionPolicy.selectNode();
         this.connectionPolicy = connectionPolicy;
+        this.transportFactory = transportFactory;
 
         connect();
     }
@@ -127,8 +173,12 @@ public class Connection {
         int retry = 0;
         while(!success) {
             try {
-                connection = self.connect(remote.getNode());
+                transport = transportFactory.connect(self, remote);
                 connectionPolicy.nodeConnectSuccess(remote);
+                if (connectedTo != null && connectedTo != remote) {
+                    metrics.recordFailover();
+                }
+                connectedTo = remote;
                 success = true;
             } catch (final UnknownHostException e) {
                 connectionPolicy.nodeFailed(remote);
@@ -145,6 +195,7 @@ public class Connection {
 
     private void reconnect() throws UnknownHostException, IOException,
             OtpAuthException {
+        metrics.recordReconnect();
         close();
         connect();
     }
@@ -169,27 +220,32 @@ public class Connection {
      */
     public OtpErlangObject doRPC(final String mod, final String fun, final OtpErlangList args)
             throws ConnectionException {
+        final long start = System.nanoTime();
         try {
             boolean success = false;
             while(!success) {
                 try {
-                    connection.sendRPC(mod, fun, args);
-                    final OtpErlangObject result = connection.receiveRPC();
+                    transport.sendRPC(mod, fun, args);
+                    final OtpErlangObject result = transport.receiveRPC();
                     success = true;
+                    metrics.recordRpc(mod, fun, System.nanoTime() - start);
                     return result;
                 } catch (final OtpErlangExit e) {
+                    metrics.recordRetry();
                     connectionPolicy.nodeFailed(remote);
                     // first re-try (connection was the first contact)
                     remote = connectionPolicy.selectNode(1, remote, e);
                     // reconnect (and then re-try the operation) if no exception was thrown:
                     reconnect();
                 } catch (final OtpAuthException e) {
+                    metrics.recordRetry();
                     connectionPolicy.nodeFailed(remote);
                     // first re-try (connection was the first contact)
                     remote = connectionPolicy.selectNode(1, remote, e);
                     // reconnect (and then re-try the operation) if no exception was thrown:
                     reconnect();
                 } catch (final IOException e) {
+                    metrics.recordRetry();
                     connectionPolicy.nodeFailed(remote);
                     // first re-try (connection was the first contact)
                     remote = connectionPolicy.selectNode(1, remote, e);
@@ -202,12 +258,15 @@ public class Connection {
             throw new InternalError();
         } catch (final OtpErlangExit e) {
             // e.printStackTrace();
+            metrics.recordRpcFailure();
             throw new ConnectionException(e);
         } catch (final OtpAuthException e) {
             // e.printStackTrace();
+            metrics.recordRpcFailure();
             throw new ConnectionException(e);
         } catch (final IOException e) {
             // e.printStackTrace();
+            metrics.recordRpcFailure();
             throw new ConnectionException(e);
         }
     }
@@ -259,10 +318,11 @@ public class Connection {
             boolean success = false;
             while(!success) {
                 try {
-                    connection.sendRPC(mod, fun, args);
+                    transport.sendRPC(mod, fun, args);
                     success = true;
                     return;
                 } catch (final IOException e) {
+                    metrics.recordRetry();
                     connectionPolicy.nodeFailed(remote);
                     // first re-try (connection was the first contact)
                     remote = connectionPolicy.selectNode(1, remote, e);
@@ -275,9 +335,11 @@ public class Connection {
             throw new InternalError();
         } catch (final OtpAuthException e) {
             // e.printStackTrace();
+            metrics.recordRpcFailure();
             throw new ConnectionException(e);
         } catch (final IOException e) {
             // e.printStackTrace();
+            metrics.recordRpcFailure();
             throw new ConnectionException(e);
         }
     }
@@ -305,11 +367,51 @@ public class Connection {
         sendRPC(mod, fun, new OtpErlangList(args));
     }
 
+    /**
+     * Receives the result of an RPC previously sent with
+     * {@link #sendRPC(String, String, OtpErlangList)}, waiting if necessary.
+     *
+     * Note: if multiple RPCs are outstanding, their results may be received
+     * in any order. Also, there is no automatic re-try as the request may
+     * already have been processed.
+     *
+     * @return the result of the call
+     *
+     * @throws ConnectionException
+     *             if the connection is not active, a communication error
+     *             occurs, an exit signal is received from a process on the
+     *             peer node or the remote node sends a message containing an
+     *             invalid cookie
+     *
+     * @since 3.18
+     */
+    public OtpErlangObject receiveRPC() throws ConnectionException {
+        try {
+            final OtpErlangObject result = transport.receiveRPC();
+            if (result == null) {
+                throw new ConnectionException("no RPC result received");
+            }
+            return result;
+        } catch (final OtpErlangExit e) {
+            // e.printStackTrace();
+            metrics.recordRpcFailure();
+            throw new ConnectionException(e);
+        } catch (final OtpAuthException e) {
+            // e.printStackTrace();
+            metrics.recordRpcFailure();
+            throw new ConnectionException(e);
+        } catch (final IOException e) {
+            // e.printStackTrace();
+            metrics.recordRpcFailure();
+            throw new ConnectionException(e);
+        }
+    }
+
     /**
      * Closes the connection to the remote node.
      */
     public void close() {
-        connection.close();
+        transport.close();
     }
 
     /**
@@ -333,10 +435,25 @@ public class Connection {
     /**
      * Gets the encapsulated OTP connection object.
      *
-     * @return the connection object
+     * @return the connection object or <tt>null</tt> if a different
+     *         {@link Transport} than {@link OtpTransport} is used
      */
     public OtpConnection getConnection() {
-        return connection;
+        if (transport instanceof OtpTransport) {
+            return ((OtpTransport) transport).getConnection();
+        }
+        return null;
+    }
+
+    /**
+     * Gets the encapsulated transport object (changes on re-connects).
+     *
+     * @return the transport object
+     *
+     * @since 3.18
+     */
+    public Transport getTransport() {
+        return transport;
     }
 
     /**
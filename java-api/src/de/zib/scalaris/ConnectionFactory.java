@@ -15,6 +15,7 @@
  */
 package de.zib.scalaris;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -24,6 +25,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.ericsson.otp.erlang.OtpNode;
 import com.ericsson.otp.erlang.OtpSelf;
 
 import de.zib.tools.PropertyLoader;
@@ -53,6 +55,8 @@ import de.zib.tools.PropertyLoader;
  * <li><tt>scalaris.cookie = "chocolate chip cookie"</tt></li>
  * <li><tt>scalaris.client.name = "java_client"</tt></li>
  * <li><tt>scalaris.client.appendUUID = "true"</tt></li>
+ * <li><tt>scalaris.transport = "otp"</tt></li>
+ * <li><tt>scalaris.jsonrpc.port = "8000"</tt></li>
  * </ul>
  *
  * Note: {@code scalaris.node} can be a whitespace, ',' or ';' separated list of
@@ -71,8 +75,15 @@ import de.zib.tools.PropertyLoader;
  * change previously created connections - they keep the old policy. By
  * default, {@link DefaultConnectionPolicy} is used.
  *
+ * Connections send their RPCs via Erlang distribution unless
+ * <tt>scalaris.transport</tt> is set to <tt>"jsonrpc"</tt> in which case
+ * the JSON-RPC interface of the nodes' web servers (listening on
+ * <tt>scalaris.jsonrpc.port</tt>) is used, see {@link JsonRpcTransport}.
+ * Other transports can be set with
+ * {@link #setTransportFactory(TransportFactory)}.
+ *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.16
+ * @version 3.18
  * @since 2.0
  */
 public class ConnectionFactory {
@@ -131,6 +142,13 @@ public class ConnectionFactory {
      */
     private ConnectionPolicy connectionPolicy = new DefaultConnectionPolicy(nodes);
 
+    /**
+     * Creates the transports of new connections.
+     *
+     * @since 3.18
+     */
+    private TransportFactory transportFactory = OtpTransport.FACTORY;
+
     /**
      * Returns the static instance of a connection factory.
      *
@@ -155,6 +173,8 @@ public class ConnectionFactory {
      * <li><tt>scalaris.cookie = "chocolate chip cookie"</tt></li>
      * <li><tt>scalaris.client.name = "java_client"</tt></li>
      * <li><tt>scalaris.client.appendUUID = "true"</tt></li>
+     * <li><tt>scalaris.transport = "otp"</tt></li>
+     * <li><tt>scalaris.jsonrpc.port = "8000"</tt></li>
      * </ul>
      *
      * These properties can be overridden by specifying (non-empty) system
@@ -168,7 +188,8 @@ public class ConnectionFactory {
         }
 //        System.out.println("loading config file: " + configFile);
         PropertyLoader.loadProperties(properties, configFile, true, false,
-                new String[] {"scalaris.node", "scalaris.cookie", "scalaris.client.name", "scalaris.client.appendUUID"});
+                new String[] {"scalaris.node", "scalaris.cookie", "scalaris.client.name", "scalaris.client.appendUUID",
+                        "scalaris.transport", "scalaris.jsonrpc.port"});
         setProperties(properties);
     }
 
@@ -184,6 +205,8 @@ public class ConnectionFactory {
      * <li><tt>scalaris.cookie = "chocolate chip cookie"</tt></li>
      * <li><tt>scalaris.client.name = "java_client"</tt></li>
      * <li><tt>scalaris.client.appendUUID = "true"</tt></li>
+     * <li><tt>scalaris.transport = "otp"</tt></li>
+     * <li><tt>scalaris.jsonrpc.port = "8000"</tt></li>
      * </ul>
      *
      * @param properties
@@ -203,6 +226,8 @@ public class ConnectionFactory {
      * <li><tt>scalaris.cookie = "chocolate chip cookie"</tt></li>
      * <li><tt>scalaris.client.name = "java_client"</tt></li>
      * <li><tt>scalaris.client.appendUUID = "true"</tt></li>
+     * <li><tt>scalaris.transport = "otp"</tt></li>
+     * <li><tt>scalaris.jsonrpc.port = "8000"</tt></li>
      * </ul>
      *
      * NOTE: Existing connections are not changed!
@@ -224,11 +249,42 @@ public class ConnectionFactory {
         } else {
             clientNameAppendUUID = false;
         }
+        final String transport = properties.getProperty("scalaris.transport", "otp");
+        if (transport.equals("jsonrpc")) {
+            transportFactory = new JsonRpcTransport.Factory(Integer.parseInt(
+                    properties.getProperty("scalaris.jsonrpc.port", "8000")));
+        } else if (transport.equals("otp")) {
+            transportFactory = OtpTransport.FACTORY;
+        } else {
+            throw new IllegalArgumentException("unknown transport: " + transport);
+        }
         configFileUsed = properties.getProperty("PropertyLoader.loadedfile", "");
 
         //System.out.println("node: " + node);
     }
 
+    /**
+     * Creates a local OTP node which is able to receive messages from
+     * Scalaris, e.g. in an {@link com.ericsson.otp.erlang.OtpMbox}. A pseudo
+     * UUID is appended to the configured client name so that the node name
+     * does not clash with the names of the connections.
+     *
+     * @return the created node
+     *
+     * @throws ConnectionException
+     *             if the node cannot be created
+     *
+     * @since 3.18
+     */
+    public OtpNode createNode() throws ConnectionException {
+        final String nodeName = clientName + "_node_" + clientNameUUID.getAndIncrement();
+        try {
+            return new OtpNode(nodeName + "@" + getLocalhostName(), cookie);
+        } catch (final IOException e) {
+            throw new ConnectionException(e);
+        }
+    }
+
     /**
      * Creates a connection to a scalaris erlang node specified by the given
      * parameters. Uses the given client name.
@@ -261,7 +317,7 @@ public class ConnectionFactory {
         }
         try {
             final OtpSelf self = new OtpSelf(clientName + "@" + getLocalhostName(), cookie);
-            return new Connection(self, connectionPolicy);
+            return new Connection(self, connectionPolicy, transportFactory);
         } catch (final Exception e) {
 //                 e.printStackTrace();
             throw new ConnectionException(e);
@@ -431,6 +487,7 @@ public class ConnectionFactory {
         out.println("  scalaris.cookie            = " + cookie);
         out.println("  scalaris.client.name       = " + clientName);
         out.println("  scalaris.client.appendUUID = " + clientNameAppendUUID);
+        out.println("  transport                  = " + transportFactory);
     }
 
     /**
@@ -639,4 +696,29 @@ public class ConnectionFactory {
     public ConnectionPolicy getConnectionPolicy() {
         return connectionPolicy;
     }
+
+    /**
+     * Sets the factory creating the transports of new connections.
+     *
+     * Existing connections are not changed.
+     *
+     * @param transportFactory
+     *            the transport factory to set
+     *
+     * @since 3.18
+     */
+    public void setTransportFactory(final TransportFactory transportFactory) {
+        this.transportFactory = transportFactory;
+    }
+
+    /**
+     * Gets the factory creating the transports of new connections.
+     *
+     * @return the transport factory
+     *
+     * @since 3.18
+     */
+    public TransportFactory getTransportFactory() {
+        return transportFactory;
+    }
 }
@@ -26,7 +26,7 @@ import java.util.List;
  *
  * @see ConnectionFactory
  *
- * @version 2.3
+ * @version 3.18
  * @since 2.3
  */
 public abstract class ConnectionPolicy {
@@ -90,9 +90,7 @@ public abstract class ConnectionPolicy {
      * @param node the failed node
      */
     public void nodeFailed(final PeerNode node) {
-        synchronized (node) {
-            node.setLastFailedConnect();
-        }
+        node.setLastFailedConnect();
     }
 
     /**
@@ -103,9 +101,7 @@ public abstract class ConnectionPolicy {
      * @param node the node
      */
     public void nodeFailReset(final PeerNode node) {
-        synchronized (node) {
-            node.resetFailureCount();
-        }
+        node.resetFailureCount();
     }
 
     /**
@@ -117,10 +113,8 @@ public abstract class ConnectionPolicy {
      * @param node the node
      */
     public void nodeConnectSuccess(final PeerNode node) {
-        synchronized (node) {
-            node.resetFailureCount();
-            node.setLastConnectSuccess();
-        }
+        node.resetFailureCount();
+        node.setLastConnectSuccess();
     }
 
     /**
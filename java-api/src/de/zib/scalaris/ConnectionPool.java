@@ -15,16 +15,36 @@
  */
 package de.zib.scalaris;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Implements a simple (thread-safe) connection pool for Scalaris connections.
  *
+ * The pool's state is guarded by a {@link ReentrantLock} which is never held
+ * while connections are created or closed. Threads waiting for a connection
+ * in {@link #getConnection(long)} wait on a {@link Condition}, i.e. they do
+ * not block any (carrier) thread in a monitor.
+ *
+ * Virtual threads: the pool may be shared by a large number of (virtual) threads, e.g. one
+ * per request of a servlet container running on virtual threads. Limit the
+ * number of connections with <tt>maxConnections</tt> and let the threads
+ * wait for a connection using {@link #getConnection(long)}. The connections
+ * should then use the {@link JsonRpcTransport} (set
+ * <tt>scalaris.transport = "jsonrpc"</tt>, see {@link ConnectionFactory})
+ * which only performs plain socket I/O in the calling thread. Connections
+ * using the default {@link OtpTransport} start a receiver thread per
+ * connection and block in monitors of the OTP library.
+ *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.7
+ * @version 3.18
  * @since 3.7
  */
 public class ConnectionPool {
@@ -38,13 +58,25 @@ public class ConnectionPool {
      */
     protected int maxConnections;
     /**
-     * All available connections not checked out yet.
+     * All available connections not checked out yet (guarded by
+     * {@link #lock}).
      */
     protected LinkedList<Connection> availableConns;
     /**
-     * Number of checked out connections.
+     * Number of checked out connections including connections currently
+     * being created (guarded by {@link #lock}).
      */
     protected int checkedOut = 0;
+    /**
+     * Lock guarding the state of the pool.
+     *
+     * @since 3.18
+     */
+    protected final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Signalled whenever a connection is released or may be created.
+     */
+    private final Condition connectionAvailable = lock.newCondition();
 
     /**
      * Creates a new connection pool.
@@ -72,17 +104,44 @@ public class ConnectionPool {
      * @throws ConnectionException
      *             if creating the connection fails
      */
-    public synchronized Connection getConnection() throws ConnectionException {
-        Connection conn = null;
-        // use first available connection (if any):
-        if (!availableConns.isEmpty()) {
-            conn = availableConns.remove();
-            ++checkedOut;
-        } else if ((maxConnections == 0) || (checkedOut < maxConnections)) {
-            conn = cFactory.createConnection();
+    public Connection getConnection() throws ConnectionException {
+        lock.lock();
+        try {
+            if (!availableConns.isEmpty()) {
+                ++checkedOut;
+                return availableConns.remove();
+            } else if ((maxConnections != 0) && (checkedOut >= maxConnections)) {
+                return null;
+            }
+            // reserve the new connection
             ++checkedOut;
+        } finally {
+            lock.unlock();
+        }
+        return createConnection();
+    }
+
+    /**
+     * Creates a new connection for a previously reserved slot (outside the
+     * lock since this involves blocking I/O).
+     */
+    private Connection createConnection() throws ConnectionException {
+        boolean success = false;
+        try {
+            final Connection conn = cFactory.createConnection();
+            success = true;
+            return conn;
+        } finally {
+            if (!success) {
+                lock.lock();
+                try {
+                    --checkedOut;
+                    connectionAvailable.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
         }
-        return conn;
     }
 
     /**
@@ -91,6 +150,9 @@ public class ConnectionPool {
      * the maximum number of connections has not been hit yet. If the timeout is
      * hit and no connection is available, <tt>null</tt> is returned.
      *
+     * If the waiting thread is interrupted, <tt>null</tt> is returned and the
+     * thread's interrupted status is set.
+     *
      * @param timeout
      *            number of milliseconds to wait at most for a valid connection
      *            to appear (<tt>0</tt> to wait forever)
@@ -102,19 +164,37 @@ public class ConnectionPool {
      *             if creating the connection fails
      */
     public Connection getConnection(final long timeout) throws ConnectionException {
-        final long timeAtStart = System.currentTimeMillis();
-        Connection conn;
-        while ((conn = getConnection()) == null) {
-            try {
-                Thread.currentThread().wait(timeout);
-            } catch (final InterruptedException e) {
+        final long waitStart = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            while (availableConns.isEmpty()
+                    && (maxConnections != 0) && (checkedOut >= maxConnections)) {
+                if (timeout == 0) {
+                    connectionAvailable.await();
+                } else if (remaining <= 0) {
+                    ClientMetrics.getInstance().recordPoolWait(System.nanoTime() - waitStart);
+                    return null; // timeout
+                } else {
+                    remaining = connectionAvailable.awaitNanos(remaining);
+                }
             }
-            final long timeAtEnd = System.currentTimeMillis();
-            if ((timeAtEnd - timeAtStart) >= timeout) {
-                return null; // timeout
+            ++checkedOut;
+            if (!availableConns.isEmpty()) {
+                ClientMetrics.getInstance().recordPoolWait(System.nanoTime() - waitStart);
+                return availableConns.remove();
             }
+        } catch (final InterruptedException e) {
+            // pass on a signal this thread may have consumed
+            connectionAvailable.signal();
+            Thread.currentThread().interrupt();
+            ClientMetrics.getInstance().recordPoolWait(System.nanoTime() - waitStart);
+            return null;
+        } finally {
+            lock.unlock();
         }
-        return conn;
+        ClientMetrics.getInstance().recordPoolWait(System.nanoTime() - waitStart);
+        return createConnection();
     }
 
     /**
@@ -123,11 +203,15 @@ public class ConnectionPool {
      * @param conn
      *            the connection to release
      */
-    public synchronized void releaseConnection(final Connection conn) {
-        availableConns.add(conn);
-        --checkedOut;
-        // need to notify all waiting threads so they do not exceed their timeouts
-        notifyAll();
+    public void releaseConnection(final Connection conn) {
+        lock.lock();
+        try {
+            availableConns.add(conn);
+            --checkedOut;
+            connectionAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -135,11 +219,18 @@ public class ConnectionPool {
      *
      * NOTE: This does not include any checked out connections!
      */
-    public synchronized void closeAll() {
-        for (final Connection conn : availableConns) {
+    public void closeAll() {
+        final List<Connection> toClose;
+        lock.lock();
+        try {
+            toClose = new ArrayList<Connection>(availableConns);
+            availableConns.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (final Connection conn : toClose) {
             conn.close();
         }
-        availableConns.clear();
     }
 
     /**
@@ -153,16 +244,24 @@ public class ConnectionPool {
      *            to {@link Collection#contains(Object)} is preferable, e.g. use
      *            {@link Set})
      */
-    public synchronized void closeAllBut(
+    public void closeAllBut(
             final Collection<PeerNode> remainingNodes) {
-        for (final Iterator<Connection> iterator = availableConns.iterator();
-                iterator.hasNext();) {
-            final Connection conn = iterator.next();
-            if (!remainingNodes.contains(conn.getRemote())) {
-                conn.close();
-                iterator.remove();
+        final List<Connection> toClose = new ArrayList<Connection>();
+        lock.lock();
+        try {
+            for (final Iterator<Connection> iterator = availableConns.iterator();
+                    iterator.hasNext();) {
+                final Connection conn = iterator.next();
+                if (!remainingNodes.contains(conn.getRemote())) {
+                    toClose.add(conn);
+                    iterator.remove();
+                }
             }
-
+        } finally {
+            lock.unlock();
+        }
+        for (final Connection conn : toClose) {
+            conn.close();
         }
     }
 
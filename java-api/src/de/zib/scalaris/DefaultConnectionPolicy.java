@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Random;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.ericsson.otp.erlang.OtpAuthException;
 
@@ -49,25 +50,31 @@ import com.ericsson.otp.erlang.OtpAuthException;
  * ) - the number of the current attempt will not be cached in this class. Set
  * the maximal number of retries using {@link #setMaxRetries(int)}.
  *
- * Attention: All member's functions are synchronised as there can be a single
- * connection policy object used by many threads and the access to the
+ * Attention: All member's functions acquire {@link #lock} as there can be a
+ * single connection policy object used by many threads and the access to the
  * {@link #goodNodes} and {@link #badNodes} members are logically linked
- * together and operations on both need to be performed atomically. Additionally
- * access to {@link PeerNode} objects are synchronised on themselves. It is
- * therefore important not to use any of this classes methods in blocks that
- * synchronise on any node object. Otherwise deadlocks might occur!!
+ * together and operations on both need to be performed atomically. A
+ * {@link ReentrantLock} is used instead of monitors so that (virtual) threads
+ * waiting for the lock do not pin their carrier threads. The lock is never
+ * held during I/O.
  *
  * @author Nico Kruber, kruber@zib.de
  *
- * @version 2.3
+ * @version 3.18
  * @since 2.3
  */
 public class DefaultConnectionPolicy extends ConnectionPolicy {
 
     // we could use synchronised lists and sets as provided by
     // Collections.synchronizedList and Collections.synchronizedSortedSet
-    // but those two depend on each other and we thus need synchronised methods
-    // which make synchronisations here obsolete
+    // but those two depend on each other and we thus need a common lock
+    // which makes synchronisations here obsolete
+    /**
+     * Lock guarding {@link #goodNodes} and {@link #badNodes}.
+     *
+     * @since 3.18
+     */
+    protected final ReentrantLock lock = new ReentrantLock();
     /**
      * A list of good nodes (nodes which recently successfully connected).
      */
@@ -94,8 +101,6 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
      *
      * Provided for convenience.
      *
-     * Attention: This method also synchronises on the node.
-     *
      * @param remoteNode the (only) available remote node
      */
     public DefaultConnectionPolicy(final PeerNode remoteNode) {
@@ -129,18 +134,19 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
      * Adds the given node to the {@link #goodNodes} list if it has no failures,
      * otherwise it will be added to {@link #badNodes}.
      *
-     * Attention: This method also synchronises on the node.
-     *
      * @param newNode the new node
      */
     @Override
-    public synchronized void availableNodeAdded(final PeerNode newNode) {
-        synchronized (newNode) {
+    public void availableNodeAdded(final PeerNode newNode) {
+        lock.lock();
+        try {
             if (newNode.getFailureCount() == 0) {
                 goodNodes.add(newNode);
             } else {
                 badNodes.add(newNode);
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -150,9 +156,14 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
      * @param removedNode the removed node
      */
     @Override
-    public synchronized void availableNodeRemoved(final PeerNode removedNode) {
-        goodNodes.remove(removedNode);
-        badNodes.remove(removedNode);
+    public void availableNodeRemoved(final PeerNode removedNode) {
+        lock.lock();
+        try {
+            goodNodes.remove(removedNode);
+            badNodes.remove(removedNode);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -160,22 +171,26 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
      * of available nodes has been reset.
      */
     @Override
-    public synchronized void availableNodesReset() {
-        goodNodes.clear();
-        badNodes.clear();
+    public void availableNodesReset() {
+        lock.lock();
+        try {
+            goodNodes.clear();
+            badNodes.clear();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Sets the given node's last failed connect time stamp and moves it to the
      * {@link #badNodes} list.
      *
-     * Attention: This method also synchronises on the node.
-     *
      * @param node the failed node
      */
     @Override
-    public synchronized void nodeFailed(final PeerNode node) {
-        synchronized (node) {
+    public void nodeFailed(final PeerNode node) {
+        lock.lock();
+        try {
             // remove the node from the badNodes if it is in there (will be
             // reinserted at a new point)
             badNodes.remove(node);
@@ -187,6 +202,8 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
                 goodNodes.remove(node);
             }
             badNodes.add(node);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -199,7 +216,8 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
      */
     @Override
     public void nodeFailReset(final PeerNode node) {
-        synchronized (node) {
+        lock.lock();
+        try {
             if (node.getFailureCount() > 0) {
                 // a previously failed node must be in badNodes
                 // -> move it back to goodNodes
@@ -207,6 +225,8 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
                 node.resetFailureCount();
                 goodNodes.add(node);
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -214,13 +234,12 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
      * Sets the node's last successful connect time stamp, resets its failure
      * statistics and moves it to the {@link #goodNodes} list.
      *
-     * Attention: This method also synchronises on the node.
-     *
      * @param node the node
      */
     @Override
-    public synchronized void nodeConnectSuccess(final PeerNode node) {
-        synchronized (node) {
+    public void nodeConnectSuccess(final PeerNode node) {
+        lock.lock();
+        try {
             node.setLastConnectSuccess();
             if (node.getFailureCount() > 0) {
                 // a previously failed node must be in badNodes
@@ -229,16 +248,19 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
                 node.resetFailureCount();
                 goodNodes.add(node);
             }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * Returns a random node from the list of good nodes.
-     * Assumes {@link #goodNodes} to have at least one element.
+     * Assumes {@link #goodNodes} to have at least one element and
+     * {@link #lock} to be held by the current thread.
      *
      * @return a random good node
      */
-    protected synchronized PeerNode getGoodNode() {
+    protected PeerNode getGoodNode() {
         if (goodNodes.size() == 1) {
             return goodNodes.get(0);
         } else {
@@ -281,9 +303,19 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
      *      com.ericsson.otp.erlang.OtpErlangObject[])
      */
     @Override
-    @SuppressWarnings("unchecked")
-    public synchronized <E extends Exception> PeerNode selectNode(final int retry,
+    public <E extends Exception> PeerNode selectNode(final int retry,
             final PeerNode failedNode, final E e) throws E {
+        lock.lock();
+        try {
+            return selectNodeLocked(retry, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Exception> PeerNode selectNodeLocked(final int retry,
+            final E e) throws E {
         if (retry <= maxRetries) {
             if ((goodNodes.size() + badNodes.size()) < 1) {
                 throw new UnsupportedOperationException(
@@ -334,8 +366,13 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
      *
      * @return the list of good nodes
      */
-    public synchronized List<PeerNode> getGoodNodes() {
-        return new ArrayList<PeerNode>(goodNodes);
+    public List<PeerNode> getGoodNodes() {
+        lock.lock();
+        try {
+            return new ArrayList<PeerNode>(goodNodes);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -344,11 +381,16 @@ public class DefaultConnectionPolicy extends ConnectionPolicy {
      *
      * @return the list of good nodes
      */
-    public synchronized List<PeerNode> getBadNodes() {
-        final ArrayList<PeerNode> result = new ArrayList<PeerNode>(badNodes.size());
-        for (final PeerNode p : badNodes) {
-            result.add(p);
+    public List<PeerNode> getBadNodes() {
+        lock.lock();
+        try {
+            final ArrayList<PeerNode> result = new ArrayList<PeerNode>(badNodes.size());
+            for (final PeerNode p : badNodes) {
+                result.add(p);
+            }
+            return result;
+        } finally {
+            lock.unlock();
         }
-        return result;
     }
 }
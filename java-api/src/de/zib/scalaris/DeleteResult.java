@@ -7,13 +7,15 @@ import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangList;
 
 /**
- * Stores the result of a delete operation.
+ * Stores the result of a delete operation (or the aggregated results of a
+ * bulk delete).
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 2.6
+ * @version 3.18
  * @since 2.2
  *
  * @see ReplicatedDHT#delete(String)
+ * @see ReplicatedDHT#deleteAll(java.util.Collection)
  */
 public class DeleteResult {
     /**
@@ -28,6 +30,21 @@ public class DeleteResult {
      * Skipped replicas because they did not exist.
      */
     public int undef = 0;
+    /**
+     * Number of keys whose delete timed out or whose result was lost due to
+     * a connection failure (bulk deletes only).
+     *
+     * @since 3.18
+     */
+    public int failed = 0;
+
+    /**
+     * Creates an empty delete state object.
+     *
+     * @since 3.18
+     */
+    public DeleteResult() {
+    }
 
     /**
      * Creates a delete state object by converting the result list returned from
@@ -39,6 +56,20 @@ public class DeleteResult {
      *             is thrown if an unknown reason was encountered
      */
     public DeleteResult(final OtpErlangList list) throws UnknownException {
+        add(list);
+    }
+
+    /**
+     * Adds the replica states of the given result list returned from erlang.
+     *
+     * @param list
+     *            the list to convert
+     * @throws UnknownException
+     *             is thrown if an unknown reason was encountered
+     *
+     * @since 3.18
+     */
+    void add(final OtpErlangList list) throws UnknownException {
         if (list != null) {
             for (int i = 0; i < list.arity(); ++i) {
                 final OtpErlangAtom element = (OtpErlangAtom) list.elementAt(i);
@@ -55,4 +86,19 @@ public class DeleteResult {
             }
         }
     }
+
+    /**
+     * Adds the counters of another delete result to this one.
+     *
+     * @param other
+     *            the result to add
+     *
+     * @since 3.18
+     */
+    public void add(final DeleteResult other) {
+        ok += other.ok;
+        locks_set += other.locks_set;
+        undef += other.undef;
+        failed += other.failed;
+    }
 }
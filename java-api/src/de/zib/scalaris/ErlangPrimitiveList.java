@@ -0,0 +1,399 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * Erlang lists backed by Java arrays of primitive types.
+ *
+ * <p>
+ * Instances are encoded directly from the array into the external term
+ * format (e.g. when sent in an RPC or compressed by
+ * {@link CommonErlangObjects#encode(OtpErlangObject)}) without creating an
+ * {@link OtpErlangObject} for each element. The static <tt>decode*</tt>
+ * methods provide the opposite direction, i.e. from an encoded value (as
+ * returned by the <tt>api_txc</tt> module) to an array.
+ * </p>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+abstract class ErlangPrimitiveList extends OtpErlangObject {
+    /**
+     * class version for serialisation
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Gets the number of list elements.
+     *
+     * @return the list size
+     */
+    public abstract int arity();
+
+    /**
+     * Encodes the element at the given position.
+     *
+     * @param buf
+     *            the stream to write to
+     * @param i
+     *            the position of the element
+     */
+    protected abstract void encodeElement(OtpOutputStream buf, int i);
+
+    /**
+     * Creates an {@link OtpErlangObject} for the element at the given
+     * position.
+     *
+     * @param i
+     *            the position of the element
+     *
+     * @return the element
+     */
+    protected abstract OtpErlangObject elementAt(int i);
+
+    @Override
+    public void encode(final OtpOutputStream buf) {
+        final int arity = arity();
+        if (arity > 0) {
+            buf.write_list_head(arity);
+            for (int i = 0; i < arity; ++i) {
+                encodeElement(buf, i);
+            }
+        }
+        buf.write_nil();
+    }
+
+    /**
+     * Converts this list to an {@link OtpErlangList} (slow path).
+     *
+     * @return an equivalent list object
+     */
+    public OtpErlangList toOtpErlangList() {
+        final OtpErlangObject[] elements = new OtpErlangObject[arity()];
+        for (int i = 0; i < elements.length; ++i) {
+            elements[i] = elementAt(i);
+        }
+        return new OtpErlangList(elements);
+    }
+
+    @Override
+    public String toString() {
+        return toOtpErlangList().toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o instanceof ErlangPrimitiveList) {
+            return toOtpErlangList().equals(((ErlangPrimitiveList) o).toOtpErlangList());
+        }
+        return toOtpErlangList().equals(o);
+    }
+
+    @Override
+    protected int doHashCode() {
+        return toOtpErlangList().hashCode();
+    }
+
+    /**
+     * A list of integers backed by a <tt>long[]</tt>.
+     */
+    static final class OfLong extends ErlangPrimitiveList {
+        private static final long serialVersionUID = 1L;
+        private final long[] values;
+
+        /**
+         * Creates a new list (the array is not copied).
+         *
+         * @param values
+         *            the list elements
+         */
+        OfLong(final long[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int arity() {
+            return values.length;
+        }
+
+        @Override
+        protected void encodeElement(final OtpOutputStream buf, final int i) {
+            buf.write_long(values[i]);
+        }
+
+        @Override
+        protected OtpErlangObject elementAt(final int i) {
+            return new OtpErlangLong(values[i]);
+        }
+
+        /**
+         * Gets the backing array.
+         *
+         * @return the list elements
+         */
+        long[] values() {
+            return values;
+        }
+    }
+
+    /**
+     * A list of floats backed by a <tt>double[]</tt>.
+     */
+    static final class OfDouble extends ErlangPrimitiveList {
+        private static final long serialVersionUID = 1L;
+        private final double[] values;
+
+        /**
+         * Creates a new list (the array is not copied).
+         *
+         * @param values
+         *            the list elements
+         */
+        OfDouble(final double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int arity() {
+            return values.length;
+        }
+
+        @Override
+        protected void encodeElement(final OtpOutputStream buf, final int i) {
+            buf.write_double(values[i]);
+        }
+
+        @Override
+        protected OtpErlangObject elementAt(final int i) {
+            return new OtpErlangDouble(values[i]);
+        }
+
+        /**
+         * Gets the backing array.
+         *
+         * @return the list elements
+         */
+        double[] values() {
+            return values;
+        }
+    }
+
+    /**
+     * A list of binaries backed by a <tt>byte[][]</tt>.
+     */
+    static final class OfBinary extends ErlangPrimitiveList {
+        private static final long serialVersionUID = 1L;
+        private final byte[][] values;
+
+        /**
+         * Creates a new list (the array is not copied).
+         *
+         * @param values
+         *            the list elements
+         */
+        OfBinary(final byte[][] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int arity() {
+            return values.length;
+        }
+
+        @Override
+        protected void encodeElement(final OtpOutputStream buf, final int i) {
+            buf.write_binary(values[i]);
+        }
+
+        @Override
+        protected OtpErlangObject elementAt(final int i) {
+            return new OtpErlangBinary(values[i]);
+        }
+
+        /**
+         * Gets the backing array.
+         *
+         * @return the list elements
+         */
+        byte[][] values() {
+            return values;
+        }
+    }
+
+    /**
+     * Opens a stream on the given encoded value (see
+     * {@link CommonErlangObjects#encode(OtpErlangObject)}), skipping the
+     * version tag and inflating compressed terms.
+     *
+     * @param encoded
+     *            the encoded value
+     *
+     * @return a stream positioned at the (uncompressed) term
+     *
+     * @throws OtpErlangDecodeException
+     *             if the value is no valid term
+     */
+    private static OtpInputStream openTerm(final OtpErlangBinary encoded)
+            throws OtpErlangDecodeException {
+        final byte[] bytes = encoded.binaryValue();
+        ClientMetrics.getInstance().recordBytesDecoded(bytes.length);
+        final OtpInputStream ois = new OtpInputStream(bytes);
+        if (ois.peek1skip_version() != OtpExternal.compressedTag) {
+            return ois;
+        }
+        ois.read1();
+        final int size = ois.read4BE();
+        final byte[] inflated = new byte[size];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, ois.getPos(), bytes.length - ois.getPos());
+            if (inflater.inflate(inflated) != size) {
+                throw new OtpErlangDecodeException("Decompression gave wrong size");
+            }
+        } catch (final DataFormatException e) {
+            throw new OtpErlangDecodeException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return new OtpInputStream(inflated);
+    }
+
+    /**
+     * Reads the head of a list, taking care of strings (lists of small
+     * integers may be encoded as strings by Erlang).
+     *
+     * @param ois
+     *            the stream to read from
+     *
+     * @return the list elements if encoded as a string, otherwise
+     *         <tt>null</tt> (and the number of elements in <tt>arity</tt>)
+     */
+    private static String readListHead(final OtpInputStream ois,
+            final int[] arity) throws OtpErlangDecodeException {
+        final int tag = ois.peek1();
+        if (tag == OtpExternal.stringTag) {
+            return ois.read_string();
+        } else if (tag == OtpExternal.nilTag) {
+            ois.read_nil();
+            arity[0] = 0;
+        } else {
+            arity[0] = ois.read_list_head();
+        }
+        return null;
+    }
+
+    /**
+     * Decodes a list of integers directly from an encoded value.
+     *
+     * @param encoded
+     *            the encoded value
+     *
+     * @return the list elements
+     *
+     * @throws OtpErlangDecodeException
+     *             if the value is no list of (64 bit) integers
+     */
+    static long[] decodeLongArray(final OtpErlangBinary encoded)
+            throws OtpErlangDecodeException {
+        final OtpInputStream ois = openTerm(encoded);
+        final int[] arity = new int[1];
+        final String str = readListHead(ois, arity);
+        if (str != null) {
+            final long[] result = new long[str.length()];
+            for (int i = 0; i < result.length; ++i) {
+                result[i] = str.charAt(i);
+            }
+            return result;
+        }
+        final long[] result = new long[arity[0]];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = ois.read_long();
+        }
+        if (result.length > 0) {
+            ois.read_nil();
+        }
+        return result;
+    }
+
+    /**
+     * Decodes a list of floats directly from an encoded value.
+     *
+     * @param encoded
+     *            the encoded value
+     *
+     * @return the list elements
+     *
+     * @throws OtpErlangDecodeException
+     *             if the value is no list of floats
+     */
+    static double[] decodeDoubleArray(final OtpErlangBinary encoded)
+            throws OtpErlangDecodeException {
+        final OtpInputStream ois = openTerm(encoded);
+        final int[] arity = new int[1];
+        if (readListHead(ois, arity) != null) {
+            throw new OtpErlangDecodeException("Wrong tag encountered, expected float");
+        }
+        final double[] result = new double[arity[0]];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = ois.read_double();
+        }
+        if (result.length > 0) {
+            ois.read_nil();
+        }
+        return result;
+    }
+
+    /**
+     * Decodes a list of binaries directly from an encoded value.
+     *
+     * @param encoded
+     *            the encoded value
+     *
+     * @return the list elements
+     *
+     * @throws OtpErlangDecodeException
+     *             if the value is no list of binaries
+     */
+    static byte[][] decodeBinaryArray(final OtpErlangBinary encoded)
+            throws OtpErlangDecodeException {
+        final OtpInputStream ois = openTerm(encoded);
+        final int[] arity = new int[1];
+        if (readListHead(ois, arity) != null) {
+            throw new OtpErlangDecodeException("Wrong tag encountered, expected binary");
+        }
+        final byte[][] result = new byte[arity[0]][];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = ois.read_binary();
+        }
+        if (result.length > 0) {
+            ois.read_nil();
+        }
+        return result;
+    }
+}
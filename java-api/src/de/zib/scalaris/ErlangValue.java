@@ -23,6 +23,7 @@ import java.util.Map;
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangBinary;
 import com.ericsson.otp.erlang.OtpErlangBoolean;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
 import com.ericsson.otp.erlang.OtpErlangDouble;
 import com.ericsson.otp.erlang.OtpErlangException;
 import com.ericsson.otp.erlang.OtpErlangList;
@@ -31,6 +32,8 @@ import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangRangeException;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpOutputStream;
 
 /**
  * Encapsulates a result from a read operation on scalaris.
@@ -43,8 +46,18 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
 public class ErlangValue {
     /**
      * The (internal representation of the) wrapped erlang value.
+     *
+     * Decoded lazily if created from an encoded value - volatile so that
+     * objects shared between threads see a completely decoded value.
+     */
+    private volatile OtpErlangObject value;
+
+    /**
+     * The still encoded value as returned by the <tt>api_txc</tt> module (see
+     * {@link CommonErlangObjects#encode(OtpErlangObject)}) or <tt>null</tt>
+     * if the value is not encoded.
      */
-    private final OtpErlangObject value;
+    private final OtpErlangBinary encoded;
 
     /**
      * Creates a new object wrapping the given erlang value.
@@ -54,6 +67,43 @@ public class ErlangValue {
      */
     public ErlangValue(final OtpErlangObject value) {
         this.value = value;
+        this.encoded = null;
+    }
+
+    /**
+     * Creates a new object wrapping the given encoded erlang value which is
+     * only decoded on demand.
+     *
+     * @param encoded
+     *            an encoded value from erlang
+     * @param dummy
+     *            only used to distinguish this constructor from
+     *            {@link #ErlangValue(OtpErlangObject)}
+     */
+    private ErlangValue(final OtpErlangBinary encoded, final boolean dummy) {
+        this.value = null;
+        this.encoded = encoded;
+    }
+
+    /**
+     * Creates a new object wrapping a value as returned by the compressed
+     * API (<tt>api_txc</tt>). Encoded values are not decoded until needed so
+     * that {@link #longArrayValue()}, {@link #doubleArrayValue()} and
+     * {@link #binaryArrayValue()} can read them without creating an
+     * {@link OtpErlangObject} for each list element.
+     *
+     * @param value
+     *            a (possibly encoded) value from erlang
+     *
+     * @return the wrapped value
+     *
+     * @since 3.18
+     */
+    static ErlangValue fromCompressed(final OtpErlangObject value) {
+        if (value instanceof OtpErlangBinary) {
+            return new ErlangValue((OtpErlangBinary) value, true);
+        }
+        return new ErlangValue(value);
     }
 
     /**
@@ -77,6 +127,9 @@ public class ErlangValue {
      * </ul>
      * custom types:
      * <ul>
+     * <li><tt>long[]</tt>, <tt>double[]</tt>, <tt>byte[][]</tt> - lists of
+     * integers, floats or binaries (encoded without intermediate objects,
+     * the arrays are not copied)</li>
      * <li>{@link OtpErlangObject} - an arbitrary erlang value</li>
      * <li>{@link ErlangValue}</li>
      * </ul>
@@ -92,6 +145,7 @@ public class ErlangValue {
      */
     public <T> ErlangValue(final T value) throws ClassCastException {
         this.value = convertToErlang(value);
+        this.encoded = null;
     }
 
     /**
@@ -124,6 +178,12 @@ public class ErlangValue {
             return new OtpErlangString((String) value);
         } else if (value instanceof byte[]) {
             return new OtpErlangBinary((byte[]) value);
+        } else if (value instanceof long[]) {
+            return new ErlangPrimitiveList.OfLong((long[]) value);
+        } else if (value instanceof double[]) {
+            return new ErlangPrimitiveList.OfDouble((double[]) value);
+        } else if (value instanceof byte[][]) {
+            return new ErlangPrimitiveList.OfBinary((byte[][]) value);
         } else if (value instanceof List<?>) {
             final List<?> list = (List<?>) value;
             final int listSize = list.size();
@@ -168,9 +228,9 @@ public class ErlangValue {
      * @since 3.3
      */
     public boolean boolValue() throws ClassCastException {
-        if (value.equals(CommonErlangObjects.falseAtom)) {
+        if (value().equals(CommonErlangObjects.falseAtom)) {
             return false;
-        } else if (value.equals(CommonErlangObjects.trueAtom)) {
+        } else if (value().equals(CommonErlangObjects.trueAtom)) {
             return true;
         } else {
             throw new ClassCastException("No boolean.");
@@ -188,7 +248,7 @@ public class ErlangValue {
      */
     public int intValue() throws ClassCastException {
         try {
-            return ((OtpErlangLong) value).intValue();
+            return ((OtpErlangLong) value()).intValue();
         } catch (final OtpErlangRangeException e) {
             throw new ClassCastException("Cannot cast to int - value is too big (use longValue() or bigIntValue() instead).");
         }
@@ -204,7 +264,7 @@ public class ErlangValue {
      *             not supported or the value is too big
      */
     public long longValue() throws ClassCastException {
-        final OtpErlangLong longValue = (OtpErlangLong) value;
+        final OtpErlangLong longValue = (OtpErlangLong) value();
         if (longValue.isLong()) {
             return longValue.longValue();
         } else {
@@ -222,7 +282,7 @@ public class ErlangValue {
      *             not supported
      */
     public BigInteger bigIntValue() throws ClassCastException {
-        return ((OtpErlangLong) value).bigIntegerValue();
+        return ((OtpErlangLong) value()).bigIntegerValue();
     }
 
     /**
@@ -235,7 +295,7 @@ public class ErlangValue {
      *             not supported
      */
     public double doubleValue() throws ClassCastException {
-        return ((OtpErlangDouble) value).doubleValue();
+        return ((OtpErlangDouble) value()).doubleValue();
     }
 
     /**
@@ -306,7 +366,7 @@ public class ErlangValue {
      *             not supported
      */
     public String stringValue() throws ClassCastException {
-        return otpObjectToString(value);
+        return otpObjectToString(value());
     }
 
     /**
@@ -319,7 +379,7 @@ public class ErlangValue {
      *             not supported
      */
     public byte[] binaryValue() throws ClassCastException {
-        return ((OtpErlangBinary) value).binaryValue();
+        return ((OtpErlangBinary) value()).binaryValue();
     }
 
     /**
@@ -340,7 +400,7 @@ public class ErlangValue {
          *
          * first term must be an object!
          */
-        final OtpErlangTuple value_tpl = (OtpErlangTuple) value;
+        final OtpErlangTuple value_tpl = (OtpErlangTuple) value();
         if ((value_tpl.arity() == 2)
                 && value_tpl.elementAt(0).equals(CommonErlangObjects.structAtom)) {
             final ErlangValueJSONToMap json_converter = new ErlangValueJSONToMap();
@@ -374,7 +434,7 @@ public class ErlangValue {
          *
          * first term must be an object!
          */
-        final OtpErlangTuple value_tpl = (OtpErlangTuple) value;
+        final OtpErlangTuple value_tpl = (OtpErlangTuple) value();
         if ((value_tpl.arity() == 2)
                 && value_tpl.elementAt(0).equals(CommonErlangObjects.structAtom)) {
             final ErlangValueJSONToBean<T> json_converter = new ErlangValueJSONToBean<T>(c);
@@ -403,6 +463,8 @@ public class ErlangValue {
         if (value instanceof OtpErlangString) {
             final OtpErlangString value_string = (OtpErlangString) value;
             return new OtpErlangList(value_string.stringValue());
+        } else if (value instanceof ErlangPrimitiveList) {
+            return ((ErlangPrimitiveList) value).toOtpErlangList();
         } else {
             return (OtpErlangList) value;
         }
@@ -447,7 +509,7 @@ public class ErlangValue {
      *             not supported
      */
     public <T> List<T> listValue(final ListElementConverter<T> converter) throws ClassCastException {
-        final OtpErlangList list = otpObjectToOtpList(value);
+        final OtpErlangList list = otpObjectToOtpList(value());
         final ArrayList<T> result = new ArrayList<T>(list.arity());
         for (int i = 0; i < list.arity(); ++i) {
             result.add(converter.convert(i, new ErlangValue(list.elementAt(i))));
@@ -484,9 +546,12 @@ public class ErlangValue {
      * @see #listValue(ListElementConverter)
      */
     public List<Long> longListValue() throws ClassCastException {
-        return listValue(new ListElementConverter<Long>() {
-            public Long convert(final int i, final ErlangValue v) { return v.longValue(); }
-        });
+        final long[] values = longArrayValue();
+        final ArrayList<Long> result = new ArrayList<Long>(values.length);
+        for (final long v : values) {
+            result.add(v);
+        }
+        return result;
     }
 
     /**
@@ -502,9 +567,12 @@ public class ErlangValue {
      * @see #listValue(ListElementConverter)
      */
     public List<Double> doubleListValue() throws ClassCastException {
-        return listValue(new ListElementConverter<Double>() {
-            public Double convert(final int i, final ErlangValue v) { return v.doubleValue(); }
-        });
+        final double[] values = doubleArrayValue();
+        final ArrayList<Double> result = new ArrayList<Double>(values.length);
+        for (final double v : values) {
+            result.add(v);
+        }
+        return result;
     }
 
     /**
@@ -543,6 +611,109 @@ public class ErlangValue {
         });
     }
 
+    /**
+     * Returns a <tt>long[]</tt> array of the wrapped erlang list.
+     *
+     * Values read from the compressed API are decoded directly from their
+     * external term format without creating an {@link OtpErlangObject} for
+     * each element.
+     *
+     * @return the converted value
+     *
+     * @throws ClassCastException
+     *             if thrown if a conversion is not possible, i.e. the value
+     *             is no list or an element is no integer or too big
+     *
+     * @since 3.18
+     */
+    public long[] longArrayValue() throws ClassCastException {
+        if (value == null) {
+            try {
+                return ErlangPrimitiveList.decodeLongArray(encoded);
+            } catch (final OtpErlangDecodeException e) {
+                throw new ClassCastException(e.getMessage());
+            }
+        } else if (value instanceof ErlangPrimitiveList.OfLong) {
+            return ((ErlangPrimitiveList.OfLong) value).values().clone();
+        }
+        final OtpErlangList list = otpObjectToOtpList(value);
+        final long[] result = new long[list.arity()];
+        for (int i = 0; i < result.length; ++i) {
+            final OtpErlangLong element = (OtpErlangLong) list.elementAt(i);
+            if (!element.isLong()) {
+                throw new ClassCastException("Cannot cast to long - value is too big.");
+            }
+            result[i] = element.longValue();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a <tt>double[]</tt> array of the wrapped erlang list.
+     *
+     * Values read from the compressed API are decoded directly from their
+     * external term format without creating an {@link OtpErlangObject} for
+     * each element.
+     *
+     * @return the converted value
+     *
+     * @throws ClassCastException
+     *             if thrown if a conversion is not possible, i.e. the value
+     *             is no list or an element is no float
+     *
+     * @since 3.18
+     */
+    public double[] doubleArrayValue() throws ClassCastException {
+        if (value == null) {
+            try {
+                return ErlangPrimitiveList.decodeDoubleArray(encoded);
+            } catch (final OtpErlangDecodeException e) {
+                throw new ClassCastException(e.getMessage());
+            }
+        } else if (value instanceof ErlangPrimitiveList.OfDouble) {
+            return ((ErlangPrimitiveList.OfDouble) value).values().clone();
+        }
+        final OtpErlangList list = otpObjectToOtpList(value);
+        final double[] result = new double[list.arity()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = ((OtpErlangDouble) list.elementAt(i)).doubleValue();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a <tt>byte[][]</tt> array of the wrapped erlang list.
+     *
+     * Values read from the compressed API are decoded directly from their
+     * external term format without creating an {@link OtpErlangObject} for
+     * each element.
+     *
+     * @return the converted value
+     *
+     * @throws ClassCastException
+     *             if thrown if a conversion is not possible, i.e. the value
+     *             is no list or an element is no binary
+     *
+     * @since 3.18
+     */
+    public byte[][] binaryArrayValue() throws ClassCastException {
+        if (value == null) {
+            try {
+                return ErlangPrimitiveList.decodeBinaryArray(encoded);
+            } catch (final OtpErlangDecodeException e) {
+                throw new ClassCastException(e.getMessage());
+            }
+        } else if (value instanceof ErlangPrimitiveList.OfBinary) {
+            return ((ErlangPrimitiveList.OfBinary) value).values().clone();
+        }
+        final OtpErlangList list = otpObjectToOtpList(value);
+        final byte[][] result = new byte[list.arity()][];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = ((OtpErlangBinary) list.elementAt(i)).binaryValue();
+        }
+        return result;
+    }
+
     /**
      * Returns a list of JSON objects (as an instance of the given class) of the
      * wrapped erlang value. Provided for convenience.
@@ -574,7 +745,42 @@ public class ErlangValue {
      * @return the value as reported by erlang
      */
     public OtpErlangObject value() {
-        return value;
+        // racy single-check: concurrent callers may decode the value more
+        // than once but always publish an equal, fully constructed object
+        OtpErlangObject result = value;
+        if (result == null) {
+            try {
+                result = CommonErlangObjects.decode(encoded);
+            } catch (final OtpErlangDecodeException e) {
+                // should not occur (the value was encoded by erlang)
+                throw new UnknownException(e, encoded);
+            }
+            value = result;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the value in the external term format as used by the compressed
+     * API (<tt>api_txc</tt>). Values read in compressed mode are returned as
+     * received, i.e. without decoding and encoding them again.
+     *
+     * @return the encoded value (including the version tag)
+     *
+     * @since 3.18
+     */
+    byte[] encodedValue() {
+        if (encoded != null) {
+            return encoded.binaryValue();
+        }
+        final OtpOutputStream oos = new OtpOutputStream();
+        oos.write1(OtpExternal.versionTag);
+        if (value instanceof OtpErlangBinary) {
+            oos.write_any(value);
+        } else {
+            oos.write_compressed(value);
+        }
+        return oos.toByteArray();
     }
 
     @Override
@@ -587,11 +793,16 @@ public class ErlangValue {
         }
 
         final ErlangValue erlValue = (ErlangValue) obj;
-        return value.equals(erlValue.value);
+        final OtpErlangObject otherValue = erlValue.value();
+        if (otherValue instanceof ErlangPrimitiveList) {
+            // OtpErlangList#equals does not know about primitive lists
+            return value().equals(((ErlangPrimitiveList) otherValue).toOtpErlangList());
+        }
+        return value().equals(otherValue);
     }
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return value().hashCode();
     }
 }
@@ -0,0 +1,797 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangBoolean;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * Maps the RPCs of the Java API to the calls of the JSON-RPC interface
+ * (<tt>api_json</tt>) and converts their results back to the Erlang terms
+ * the according API functions return.
+ *
+ * JSON values are represented by {@link String}, {@link Long},
+ * {@link BigInteger}, {@link Double}, {@link Boolean}, <tt>null</tt>,
+ * {@link List} and {@link Map} objects.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+final class JsonRpcCodec {
+    private static final OtpErlangAtom badrpcAtom = new OtpErlangAtom("badrpc");
+    private static final OtpErlangAtom commitAtom = new OtpErlangAtom("commit");
+    private static final char[] base64Chars =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private JsonRpcCodec() {
+    }
+
+    /**
+     * Converts the result of a JSON-RPC call to an Erlang term.
+     */
+    static abstract class ResultConverter {
+        /**
+         * Converts the given JSON-RPC result.
+         *
+         * @param result
+         *            the (parsed) JSON result
+         *
+         * @return the according Erlang term
+         *
+         * @throws ClassCastException
+         *             if the result has an unexpected structure
+         * @throws OtpErlangDecodeException
+         *             if an encoded Erlang term could not be decoded
+         */
+        abstract OtpErlangObject convert(Object result)
+                throws ClassCastException, OtpErlangDecodeException;
+    }
+
+    /**
+     * A JSON-RPC call.
+     */
+    static final class Call {
+        final String method;
+        final List<Object> params;
+        final ResultConverter converter;
+
+        Call(final String method, final List<Object> params,
+                final ResultConverter converter) {
+            this.method = method;
+            this.params = params;
+            this.converter = converter;
+        }
+    }
+
+    /**
+     * Maps an RPC of the Java API to a call of the JSON-RPC interface.
+     *
+     * Supported are the transactional operations (<tt>api_tx</tt> and
+     * <tt>api_txc</tt>: <tt>req_list/1,2</tt> and
+     * <tt>req_list_commit_each/1</tt>), <tt>api_pubsub</tt> (except
+     * <tt>publish_list/2</tt> and mailbox subscriptions) and
+     * <tt>api_rdht:delete/1,2</tt>.
+     *
+     * @param mod
+     *            the module of the function to call
+     * @param fun
+     *            the function to call
+     * @param args
+     *            the function's arguments
+     *
+     * @return the call
+     *
+     * @throws IllegalArgumentException
+     *             if the RPC is not supported or its arguments cannot be
+     *             represented in JSON
+     */
+    static Call toCall(final String mod, final String fun, final OtpErlangList args)
+            throws IllegalArgumentException {
+        final int arity = args.arity();
+        try {
+            if (mod.equals("api_tx") || mod.equals("api_txc")) {
+                final boolean compressed = mod.equals("api_txc");
+                if (fun.equals("req_list") && (arity == 1 || arity == 2)) {
+                    final List<Object> params = new ArrayList<Object>(2);
+                    if (arity == 2) {
+                        params.add(tlogToJson(args.elementAt(0)));
+                    }
+                    params.add(reqListToJson((OtpErlangList) args.elementAt(arity - 1), compressed));
+                    return new Call(fun, params, new ResultConverter() {
+                        @Override
+                        OtpErlangObject convert(final Object result)
+                                throws ClassCastException, OtpErlangDecodeException {
+                            final Map<?, ?> res = (Map<?, ?>) result;
+                            return new OtpErlangTuple(new OtpErlangObject[] {
+                                    jsonToTlog((String) res.get("tlog")),
+                                    resultsToTerm((List<?>) res.get("results"), compressed) });
+                        }
+                    });
+                } else if (fun.equals("req_list_commit_each") && arity == 1) {
+                    final List<Object> params = new ArrayList<Object>(1);
+                    params.add(reqListToJson((OtpErlangList) args.elementAt(0), compressed));
+                    return new Call(fun, params, new ResultConverter() {
+                        @Override
+                        OtpErlangObject convert(final Object result)
+                                throws ClassCastException, OtpErlangDecodeException {
+                            return resultsToTerm((List<?>) result, compressed);
+                        }
+                    });
+                }
+            } else if (mod.equals("api_pubsub")) {
+                if ((fun.equals("publish") || fun.equals("subscribe") || fun
+                        .equals("unsubscribe")) && arity == 2) {
+                    final List<Object> params = new ArrayList<Object>(2);
+                    params.add(stringValue(args.elementAt(0)));
+                    params.add(stringValue(args.elementAt(1)));
+                    return new Call(fun, params, new ResultConverter() {
+                        @Override
+                        OtpErlangObject convert(final Object result)
+                                throws ClassCastException, OtpErlangDecodeException {
+                            return resultToTerm((Map<?, ?>) result, false);
+                        }
+                    });
+                } else if (fun.equals("get_subscribers") && arity == 1) {
+                    final List<Object> params = new ArrayList<Object>(1);
+                    params.add(stringValue(args.elementAt(0)));
+                    return new Call(fun, params, new ResultConverter() {
+                        @Override
+                        OtpErlangObject convert(final Object result)
+                                throws ClassCastException {
+                            return stringsToTerm((List<?>) result);
+                        }
+                    });
+                }
+            } else if (mod.equals("api_rdht")) {
+                if (fun.equals("delete") && (arity == 1 || arity == 2)) {
+                    final List<Object> params = new ArrayList<Object>(2);
+                    params.add(stringValue(args.elementAt(0)));
+                    if (arity == 2) {
+                        params.add(Long.valueOf(((OtpErlangLong) args.elementAt(1)).longValue()));
+                    }
+                    return new Call(fun, params, new ResultConverter() {
+                        @Override
+                        OtpErlangObject convert(final Object result)
+                                throws ClassCastException {
+                            final Map<?, ?> res = (Map<?, ?>) result;
+                            final OtpErlangLong ok = new OtpErlangLong(((Number) res.get("ok")).longValue());
+                            final List<?> states = (List<?>) res.get("results");
+                            final OtpErlangObject[] statesErl = new OtpErlangObject[states.size()];
+                            for (int i = 0; i < statesErl.length; ++i) {
+                                statesErl[i] = new OtpErlangAtom((String) states.get(i));
+                            }
+                            final String failure = (String) res.get("failure");
+                            if (failure == null) {
+                                return new OtpErlangTuple(new OtpErlangObject[] {
+                                        CommonErlangObjects.okAtom, ok,
+                                        new OtpErlangList(statesErl) });
+                            }
+                            return new OtpErlangTuple(new OtpErlangObject[] {
+                                    CommonErlangObjects.failAtom, new OtpErlangAtom(failure),
+                                    ok, new OtpErlangList(statesErl) });
+                        }
+                    });
+                }
+            }
+        } catch (final ClassCastException e) {
+            throw new IllegalArgumentException("unsupported arguments for " + mod
+                    + ":" + fun + "/" + arity + ": " + args, e);
+        } catch (final OtpErlangDecodeException e) {
+            throw new IllegalArgumentException("unsupported arguments for " + mod
+                    + ":" + fun + "/" + arity + ": " + args, e);
+        }
+        throw new IllegalArgumentException(mod + ":" + fun + "/" + arity
+                + " is not supported by the JSON-RPC interface");
+    }
+
+    /**
+     * Creates the result of an RPC that failed locally, i.e. in the same way
+     * <tt>rpc:call/4</tt> reports failures.
+     *
+     * @param reason
+     *            the reason of the failure
+     *
+     * @return <tt>{badrpc, Reason}</tt>
+     */
+    static OtpErlangObject badrpc(final String reason) {
+        return new OtpErlangTuple(new OtpErlangObject[] { badrpcAtom,
+                new OtpErlangString(reason) });
+    }
+
+    private static String stringValue(final OtpErlangObject value)
+            throws ClassCastException {
+        return ((OtpErlangString) value).stringValue();
+    }
+
+    private static List<Object> reqListToJson(final OtpErlangList reqList,
+            final boolean compressed) throws ClassCastException,
+            OtpErlangDecodeException {
+        final List<Object> result = new ArrayList<Object>(reqList.arity());
+        for (final OtpErlangObject reqErl : reqList) {
+            final OtpErlangTuple req = (OtpErlangTuple) reqErl;
+            final String op = ((OtpErlangAtom) req.elementAt(0)).atomValue();
+            final Map<String, Object> reqJson = new LinkedHashMap<String, Object>(2);
+            if (op.equals("read")) {
+                reqJson.put(op, stringValue(req.elementAt(1)));
+            } else if (op.equals("write")) {
+                final Map<String, Object> kv = new LinkedHashMap<String, Object>(2);
+                kv.put(stringValue(req.elementAt(1)), valueToJson(req.elementAt(2), compressed));
+                reqJson.put(op, kv);
+            } else if (op.equals("add_del_on_list")) {
+                final Map<String, Object> params = new LinkedHashMap<String, Object>(4);
+                params.put("key", stringValue(req.elementAt(1)));
+                params.put("add", termToJson(decode(req.elementAt(2), compressed), false));
+                params.put("del", termToJson(decode(req.elementAt(3), compressed), false));
+                if (!(params.get("add") instanceof List) || !(params.get("del") instanceof List)) {
+                    throw new ClassCastException("not a list");
+                }
+                reqJson.put(op, params);
+            } else if (op.equals("add_on_nr")) {
+                final Map<String, Object> kv = new LinkedHashMap<String, Object>(2);
+                kv.put(stringValue(req.elementAt(1)),
+                        termToJson(decode(req.elementAt(2), compressed), false));
+                reqJson.put(op, kv);
+            } else if (op.equals("test_and_set")) {
+                final Map<String, Object> params = new LinkedHashMap<String, Object>(4);
+                params.put("key", stringValue(req.elementAt(1)));
+                params.put("old", valueToJson(req.elementAt(2), compressed));
+                params.put("new", valueToJson(req.elementAt(3), compressed));
+                reqJson.put(op, params);
+            } else if (op.equals("commit")) {
+                reqJson.put(op, "");
+            } else {
+                throw new ClassCastException("unknown request: " + req);
+            }
+            result.add(reqJson);
+        }
+        return result;
+    }
+
+    private static OtpErlangObject decode(final OtpErlangObject value,
+            final boolean compressed) throws OtpErlangDecodeException {
+        return compressed ? CommonErlangObjects.decode(value) : value;
+    }
+
+    /**
+     * Converts a (client) value to the <tt>{"type": ..., "value": ...}</tt>
+     * object of the JSON-RPC interface.
+     */
+    private static Map<String, Object> valueToJson(final OtpErlangObject value,
+            final boolean compressed) throws ClassCastException,
+            OtpErlangDecodeException {
+        final OtpErlangObject decoded = decode(value, compressed);
+        final Map<String, Object> result = new LinkedHashMap<String, Object>(2);
+        if (decoded instanceof OtpErlangBinary) {
+            result.put("type", "as_bin");
+            result.put("value", base64Encode(((OtpErlangBinary) decoded).binaryValue()));
+        } else {
+            result.put("type", "as_is");
+            result.put("value", termToJson(decoded, false));
+        }
+        return result;
+    }
+
+    private static OtpErlangObject jsonToValue(final Map<?, ?> value,
+            final boolean compressed) throws ClassCastException {
+        final OtpErlangObject result;
+        if ("as_bin".equals(value.get("type"))) {
+            result = new OtpErlangBinary(base64Decode((String) value.get("value")));
+        } else {
+            result = jsonToTerm(value.get("value"), false);
+        }
+        return compressed ? CommonErlangObjects.encode(result) : result;
+    }
+
+    /**
+     * Converts an Erlang term to JSON. Inside JSON objects, i.e.
+     * <tt>{struct, [{Key, Value}]}</tt> tuples, lists are expected as
+     * <tt>{array, List}</tt> tuples.
+     */
+    static Object termToJson(final OtpErlangObject value, final boolean inObject)
+            throws ClassCastException {
+        if (value instanceof OtpErlangString) {
+            return ((OtpErlangString) value).stringValue();
+        } else if (value instanceof OtpErlangLong) {
+            final OtpErlangLong l = (OtpErlangLong) value;
+            return l.isLong() ? (Object) Long.valueOf(l.longValue()) : l.bigIntegerValue();
+        } else if (value instanceof OtpErlangDouble) {
+            return Double.valueOf(((OtpErlangDouble) value).doubleValue());
+        } else if (value instanceof OtpErlangBoolean) {
+            return Boolean.valueOf(((OtpErlangBoolean) value).booleanValue());
+        } else if (value.equals(CommonErlangObjects.nullAtom)) {
+            return null;
+        } else if (value instanceof OtpErlangList && !inObject) {
+            final OtpErlangList list = (OtpErlangList) value;
+            final List<Object> result = new ArrayList<Object>(list.arity());
+            for (final OtpErlangObject e : list) {
+                result.add(termToJson(e, false));
+            }
+            return result;
+        } else if (value instanceof OtpErlangTuple) {
+            final OtpErlangTuple tuple = (OtpErlangTuple) value;
+            if (tuple.arity() == 2 && tuple.elementAt(0).equals(CommonErlangObjects.arrayAtom)) {
+                final OtpErlangList list = (OtpErlangList) tuple.elementAt(1);
+                final List<Object> result = new ArrayList<Object>(list.arity());
+                for (final OtpErlangObject e : list) {
+                    result.add(termToJson(e, true));
+                }
+                return result;
+            } else if (tuple.arity() == 2 && tuple.elementAt(0).equals(CommonErlangObjects.structAtom)) {
+                final OtpErlangList list = (OtpErlangList) tuple.elementAt(1);
+                final Map<String, Object> result = new LinkedHashMap<String, Object>(list.arity());
+                for (final OtpErlangObject e : list) {
+                    final OtpErlangTuple kv = (OtpErlangTuple) e;
+                    final OtpErlangObject key = kv.elementAt(0);
+                    result.put(key instanceof OtpErlangAtom ? ((OtpErlangAtom) key)
+                            .atomValue() : stringValue(key), termToJson(kv.elementAt(1), true));
+                }
+                return result;
+            }
+        }
+        throw new ClassCastException("no JSON representation: " + value);
+    }
+
+    /**
+     * Converts JSON to an Erlang term (inverse of
+     * {@link #termToJson(OtpErlangObject, boolean)}).
+     */
+    static OtpErlangObject jsonToTerm(final Object value, final boolean inObject)
+            throws ClassCastException {
+        if (value == null) {
+            return CommonErlangObjects.nullAtom;
+        } else if (value instanceof String) {
+            return new OtpErlangString((String) value);
+        } else if (value instanceof Long) {
+            return new OtpErlangLong(((Long) value).longValue());
+        } else if (value instanceof BigInteger) {
+            return new OtpErlangLong((BigInteger) value);
+        } else if (value instanceof Double) {
+            return new OtpErlangDouble(((Double) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            return new OtpErlangBoolean(((Boolean) value).booleanValue());
+        } else if (value instanceof List) {
+            final List<?> list = (List<?>) value;
+            final OtpErlangObject[] result = new OtpErlangObject[list.size()];
+            int i = 0;
+            for (final Object e : list) {
+                result[i++] = jsonToTerm(e, inObject);
+            }
+            if (inObject) {
+                return new OtpErlangTuple(new OtpErlangObject[] {
+                        CommonErlangObjects.arrayAtom, new OtpErlangList(result) });
+            }
+            return new OtpErlangList(result);
+        } else {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            final OtpErlangObject[] result = new OtpErlangObject[map.size()];
+            int i = 0;
+            for (final Map.Entry<?, ?> e : map.entrySet()) {
+                result[i++] = new OtpErlangTuple(new OtpErlangObject[] {
+                        new OtpErlangString((String) e.getKey()),
+                        jsonToTerm(e.getValue(), true) });
+            }
+            return new OtpErlangTuple(new OtpErlangObject[] {
+                    CommonErlangObjects.structAtom, new OtpErlangList(result) });
+        }
+    }
+
+    /**
+     * Converts a result object of the JSON-RPC interface to the result of
+     * the according Erlang API function.
+     */
+    private static OtpErlangObject resultToTerm(final Map<?, ?> result,
+            final boolean compressed) throws ClassCastException {
+        final boolean hasValue = result.containsKey("value");
+        if ("ok".equals(result.get("status"))) {
+            if (hasValue) {
+                return new OtpErlangTuple(new OtpErlangObject[] {
+                        CommonErlangObjects.okAtom,
+                        jsonToValue((Map<?, ?>) result.get("value"), compressed) });
+            }
+            return CommonErlangObjects.okTupleAtom;
+        } else if (!"fail".equals(result.get("status"))) {
+            throw new ClassCastException("unknown result: " + result);
+        }
+        final String reason = (String) result.get("reason");
+        if (reason.equals("key_changed") && hasValue) {
+            return new OtpErlangTuple(new OtpErlangObject[] {
+                    CommonErlangObjects.failAtom,
+                    new OtpErlangTuple(new OtpErlangObject[] {
+                            CommonErlangObjects.keyChangedAtom,
+                            jsonToValue((Map<?, ?>) result.get("value"), compressed) }) });
+        } else if (reason.equals("abort") && result.containsKey("keys")) {
+            return new OtpErlangTuple(new OtpErlangObject[] {
+                    CommonErlangObjects.failAtom, CommonErlangObjects.abortAtom,
+                    stringsToTerm((List<?>) result.get("keys")) });
+        }
+        return new OtpErlangTuple(new OtpErlangObject[] {
+                CommonErlangObjects.failAtom, new OtpErlangAtom(reason) });
+    }
+
+    private static OtpErlangList resultsToTerm(final List<?> results,
+            final boolean compressed) throws ClassCastException {
+        final OtpErlangObject[] result = new OtpErlangObject[results.size()];
+        int i = 0;
+        for (final Object r : results) {
+            result[i++] = resultToTerm((Map<?, ?>) r, compressed);
+        }
+        return new OtpErlangList(result);
+    }
+
+    private static OtpErlangList stringsToTerm(final List<?> strings)
+            throws ClassCastException {
+        final OtpErlangObject[] result = new OtpErlangObject[strings.size()];
+        int i = 0;
+        for (final Object s : strings) {
+            result[i++] = new OtpErlangString((String) s);
+        }
+        return new OtpErlangList(result);
+    }
+
+    /**
+     * Encodes a transaction log as <tt>base64(term_to_binary(TLog))</tt>.
+     */
+    static String tlogToJson(final OtpErlangObject tlog) {
+        final OtpOutputStream oos = new OtpOutputStream();
+        oos.write1(OtpExternal.versionTag);
+        oos.write_any(tlog);
+        return base64Encode(oos.toByteArray());
+    }
+
+    /**
+     * Decodes a transaction log encoded by {@link #tlogToJson(OtpErlangObject)}
+     * (or the JSON-RPC interface).
+     */
+    static OtpErlangObject jsonToTlog(final String tlog)
+            throws OtpErlangDecodeException {
+        return new OtpInputStream(base64Decode(tlog)).read_any();
+    }
+
+    /**
+     * Encodes the given bytes with base64 (RFC 4648, with padding).
+     *
+     * @param data
+     *            the bytes to encode
+     *
+     * @return the encoded string
+     */
+    static String base64Encode(final byte[] data) {
+        final StringBuilder sb = new StringBuilder(((data.length + 2) / 3) * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            final int b0 = data[i] & 0xff;
+            final int b1 = i + 1 < data.length ? data[i + 1] & 0xff : 0;
+            final int b2 = i + 2 < data.length ? data[i + 2] & 0xff : 0;
+            sb.append(base64Chars[b0 >> 2]);
+            sb.append(base64Chars[((b0 & 0x03) << 4) | (b1 >> 4)]);
+            sb.append(i + 1 < data.length ? base64Chars[((b1 & 0x0f) << 2) | (b2 >> 6)] : '=');
+            sb.append(i + 2 < data.length ? base64Chars[b2 & 0x3f] : '=');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decodes a base64-encoded string (RFC 4648), ignoring any characters
+     * outside the base64 alphabet.
+     *
+     * @param data
+     *            the string to decode
+     *
+     * @return the decoded bytes
+     */
+    static byte[] base64Decode(final String data) {
+        final byte[] result = new byte[(data.length() / 4) * 3 + 3];
+        int length = 0;
+        int buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < data.length(); ++i) {
+            final char c = data.charAt(i);
+            final int v;
+            if (c >= 'A' && c <= 'Z') {
+                v = c - 'A';
+            } else if (c >= 'a' && c <= 'z') {
+                v = c - 'a' + 26;
+            } else if (c >= '0' && c <= '9') {
+                v = c - '0' + 52;
+            } else if (c == '+') {
+                v = 62;
+            } else if (c == '/') {
+                v = 63;
+            } else {
+                continue;
+            }
+            buffer = (buffer << 6) | v;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                result[length++] = (byte) (buffer >> bits);
+            }
+        }
+        final byte[] trimmed = new byte[length];
+        System.arraycopy(result, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    /**
+     * Writes the given JSON value. Non-ASCII characters are escaped so that
+     * the result only consists of ASCII characters.
+     *
+     * @param value
+     *            the value to write
+     * @param sb
+     *            the builder to append to
+     *
+     * @throws IllegalArgumentException
+     *             if the value contains objects which can not be represented
+     *             in JSON
+     */
+    static void writeJson(final Object value, final StringBuilder sb)
+            throws IllegalArgumentException {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String) {
+            writeJsonString((String) value, sb);
+        } else if (value instanceof Double) {
+            final Double d = (Double) value;
+            if (d.isNaN() || d.isInfinite()) {
+                throw new IllegalArgumentException("no JSON representation: " + d);
+            }
+            sb.append(d.toString());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value.toString());
+        } else if (value instanceof List) {
+            sb.append('[');
+            boolean first = true;
+            for (final Object e : (List<?>) value) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                writeJson(e, sb);
+            }
+            sb.append(']');
+        } else if (value instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+            for (final Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                writeJsonString((String) e.getKey(), sb);
+                sb.append(':');
+                writeJson(e.getValue(), sb);
+            }
+            sb.append('}');
+        } else {
+            throw new IllegalArgumentException("no JSON representation: " + value);
+        }
+    }
+
+    private static void writeJsonString(final String value, final StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                final String hex = Integer.toHexString(c);
+                sb.append("\\u");
+                for (int j = hex.length(); j < 4; ++j) {
+                    sb.append('0');
+                }
+                sb.append(hex);
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Parses a JSON value.
+     *
+     * @param json
+     *            the string to parse
+     *
+     * @return the parsed value
+     *
+     * @throws IllegalArgumentException
+     *             if the string is not valid JSON
+     */
+    static Object parseJson(final String json) throws IllegalArgumentException {
+        final Parser parser = new Parser(json);
+        final Object result = parser.parseValue();
+        parser.skipWhitespace();
+        if (parser.pos != json.length()) {
+            throw parser.error();
+        }
+        return result;
+    }
+
+    /**
+     * A recursive descent JSON parser.
+     */
+    private static final class Parser {
+        private final String json;
+        int pos = 0;
+
+        Parser(final String json) {
+            this.json = json;
+        }
+
+        IllegalArgumentException error() {
+            return new IllegalArgumentException("invalid JSON at position " + pos);
+        }
+
+        void skipWhitespace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                ++pos;
+            }
+        }
+
+        private void expect(final String s) {
+            if (!json.startsWith(s, pos)) {
+                throw error();
+            }
+            pos += s.length();
+        }
+
+        Object parseValue() {
+            skipWhitespace();
+            if (pos >= json.length()) {
+                throw error();
+            }
+            final char c = json.charAt(pos);
+            switch (c) {
+                case '{': {
+                    ++pos;
+                    final Map<String, Object> result = new LinkedHashMap<String, Object>();
+                    skipWhitespace();
+                    if (json.startsWith("}", pos)) {
+                        ++pos;
+                        return result;
+                    }
+                    while (true) {
+                        skipWhitespace();
+                        final String key = parseString();
+                        skipWhitespace();
+                        expect(":");
+                        result.put(key, parseValue());
+                        skipWhitespace();
+                        if (json.startsWith("}", pos)) {
+                            ++pos;
+                            return result;
+                        }
+                        expect(",");
+                    }
+                }
+                case '[': {
+                    ++pos;
+                    final List<Object> result = new ArrayList<Object>();
+                    skipWhitespace();
+                    if (json.startsWith("]", pos)) {
+                        ++pos;
+                        return result;
+                    }
+                    while (true) {
+                        result.add(parseValue());
+                        skipWhitespace();
+                        if (json.startsWith("]", pos)) {
+                            ++pos;
+                            return result;
+                        }
+                        expect(",");
+                    }
+                }
+                case '"':
+                    return parseString();
+                case 't':
+                    expect("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    expect("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    expect("null");
+                    return null;
+                default:
+                    return parseNumber();
+            }
+        }
+
+        private String parseString() {
+            expect("\"");
+            final StringBuilder sb = new StringBuilder();
+            while (pos < json.length()) {
+                final char c = json.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                } else if (c == '\\') {
+                    if (pos >= json.length()) {
+                        break;
+                    }
+                    final char e = json.charAt(pos++);
+                    switch (e) {
+                        case 'b': sb.append('\b'); break;
+                        case 'f': sb.append('\f'); break;
+                        case 'n': sb.append('\n'); break;
+                        case 'r': sb.append('\r'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'u':
+                            if (pos + 4 > json.length()) {
+                                throw error();
+                            }
+                            try {
+                                sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                            } catch (final NumberFormatException ex) {
+                                throw error();
+                            }
+                            pos += 4;
+                            break;
+                        default: sb.append(e); break;
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+            throw error();
+        }
+
+        private Object parseNumber() {
+            final int start = pos;
+            boolean integral = true;
+            while (pos < json.length()) {
+                final char c = json.charAt(pos);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    integral = false;
+                } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                    break;
+                }
+                ++pos;
+            }
+            final String number = json.substring(start, pos);
+            try {
+                if (!integral) {
+                    return Double.valueOf(number);
+                }
+                final BigInteger result = new BigInteger(number);
+                if (result.bitLength() < 64) {
+                    return Long.valueOf(result.longValue());
+                }
+                return result;
+            } catch (final NumberFormatException e) {
+                throw error();
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpSelf;
+
+/**
+ * Sends RPCs to the JSON-RPC interface of a Scalaris node's web server
+ * (<tt>jsonrpc.yaws</tt>, handled by <tt>api_json</tt>) using a persistent
+ * HTTP/1.1 connection.
+ *
+ * RPCs sent with {@link #sendRPC(String, String, OtpErlangList)} are
+ * pipelined, i.e. written to the connection without waiting for the
+ * responses of previous requests. Their results are converted to the Erlang
+ * terms the according API functions return, so that the classes of this API
+ * can be used unchanged. RPCs the JSON-RPC interface does not provide (see
+ * {@link JsonRpcCodec#toCall(String, String, OtpErlangList)}) result in a
+ * <tt>{badrpc, Reason}</tt> tuple without contacting the node.
+ *
+ * The web server is expected on the host of the connection's
+ * {@link PeerNode}.
+ *
+ * The transport performs blocking socket I/O in the calling thread only,
+ * i.e. it neither starts threads nor blocks in monitors, and is thus suited
+ * for the use with virtual threads (see {@link ConnectionPool}).
+ *
+ * @version 3.18
+ * @since 3.18
+ *
+ * @see ConnectionFactory
+ */
+public class JsonRpcTransport implements Transport {
+    /**
+     * Default port of the web server (<tt>yaws_port</tt>).
+     */
+    public static final int DEFAULT_PORT = 8000;
+    /**
+     * Default path of the JSON-RPC interface.
+     */
+    public static final String DEFAULT_PATH = "/jsonrpc.yaws";
+
+    /**
+     * Creates {@link JsonRpcTransport} objects.
+     */
+    public static class Factory implements TransportFactory {
+        private final int port;
+        private final String path;
+
+        /**
+         * Creates a factory for transports to the default JSON-RPC path
+         * ({@link JsonRpcTransport#DEFAULT_PATH}) at the given port.
+         *
+         * @param port
+         *            the port of the web server
+         */
+        public Factory(final int port) {
+            this(port, DEFAULT_PATH);
+        }
+
+        /**
+         * Creates a factory for transports to the given JSON-RPC path and
+         * port.
+         *
+         * @param port
+         *            the port of the web server
+         * @param path
+         *            the path of the JSON-RPC interface
+         */
+        public Factory(final int port, final String path) {
+            this.port = port;
+            this.path = path;
+        }
+
+        public Transport connect(final OtpSelf self, final PeerNode remote)
+                throws IOException {
+            return new JsonRpcTransport(remote.getNode().host(), port, path);
+        }
+
+        @Override
+        public String toString() {
+            return "jsonrpc(port " + port + ", " + path + ")";
+        }
+    }
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final String host;
+    private final String path;
+    /**
+     * Converters for the results of the outstanding requests (in the order
+     * the requests were sent) or the (local) results of RPCs which could not
+     * be sent.
+     */
+    private final LinkedList<Object> pending = new LinkedList<Object>();
+    private int nextId = 0;
+    /**
+     * Buffer for the body of the last response.
+     */
+    private byte[] responseBody = new byte[0];
+    private int responseLength = 0;
+
+    /**
+     * Connects to the JSON-RPC interface at the given host, port and path.
+     *
+     * @param host
+     *            the host of the web server
+     * @param port
+     *            the port of the web server
+     * @param path
+     *            the path of the JSON-RPC interface
+     *
+     * @throws IOException
+     *             if the connection could not be established
+     */
+    public JsonRpcTransport(final String host, final int port, final String path)
+            throws IOException {
+        this.host = host + ":" + port;
+        this.path = path;
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port));
+        in = new BufferedInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    public void sendRPC(final String mod, final String fun, final OtpErlangList args)
+            throws IOException {
+        final JsonRpcCodec.Call call;
+        final StringBuilder body = new StringBuilder();
+        try {
+            call = JsonRpcCodec.toCall(mod, fun, args);
+            final Map<String, Object> request = new LinkedHashMap<String, Object>(4);
+            request.put("jsonrpc", "2.0");
+            request.put("method", call.method);
+            request.put("params", call.params);
+            request.put("id", Long.valueOf(nextId++));
+            JsonRpcCodec.writeJson(request, body);
+        } catch (final IllegalArgumentException e) {
+            pending.addLast(JsonRpcCodec.badrpc(e.getMessage()));
+            return;
+        }
+        // yaws URL-decodes the request body (up to the first '?')
+        final byte[] encoded = urlEncode(body);
+        out.write(("POST " + path + " HTTP/1.1\r\n"
+                + "Host: " + host + "\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n"
+                + "Content-Length: " + encoded.length + "\r\n"
+                + "\r\n").getBytes("ISO-8859-1"));
+        out.write(encoded);
+        out.flush();
+        pending.addLast(call.converter);
+    }
+
+    public OtpErlangObject receiveRPC() throws IOException {
+        if (pending.isEmpty()) {
+            throw new IOException("no outstanding RPC");
+        }
+        final Object next = pending.removeFirst();
+        if (next instanceof OtpErlangObject) {
+            return (OtpErlangObject) next;
+        }
+        final JsonRpcCodec.ResultConverter converter = (JsonRpcCodec.ResultConverter) next;
+        final int status = readResponse();
+        // note: json2 encodes characters below 256 as single bytes
+        final String body = new String(responseBody, 0, responseLength, "ISO-8859-1");
+        if (status != 200) {
+            return JsonRpcCodec.badrpc("HTTP status " + status + ": " + body);
+        }
+        try {
+            final Map<?, ?> response = (Map<?, ?>) JsonRpcCodec.parseJson(body);
+            if (response.get("error") != null) {
+                return JsonRpcCodec.badrpc("JSON-RPC error: " + response.get("error"));
+            }
+            return converter.convert(response.get("result"));
+        } catch (final IllegalArgumentException e) {
+            return JsonRpcCodec.badrpc(e.getMessage());
+        } catch (final ClassCastException e) {
+            return JsonRpcCodec.badrpc("unexpected response: " + body);
+        } catch (final OtpErlangDecodeException e) {
+            return JsonRpcCodec.badrpc("unexpected response: " + body);
+        }
+    }
+
+    public void close() {
+        try {
+            socket.close();
+        } catch (final IOException e) {
+            // ignore
+        }
+        pending.clear();
+    }
+
+    /**
+     * Reads an HTTP response, setting {@link #responseBody} and
+     * {@link #responseLength}.
+     *
+     * @return the response's status code
+     */
+    private int readResponse() throws IOException {
+        final String statusLine = readLine();
+        final String[] statusParts = statusLine.split(" ", 3);
+        final int status;
+        try {
+            status = Integer.parseInt(statusParts[1]);
+        } catch (final RuntimeException e) {
+            throw new IOException("invalid HTTP status line: " + statusLine);
+        }
+        int contentLength = -1;
+        boolean chunked = false;
+        boolean close = false;
+        String line;
+        while ((line = readLine()).length() > 0) {
+            final int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            final String name = line.substring(0, colon).trim();
+            final String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                contentLength = Integer.parseInt(value);
+            } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                chunked = value.equalsIgnoreCase("chunked");
+            } else if (name.equalsIgnoreCase("Connection")) {
+                close = value.equalsIgnoreCase("close");
+            }
+        }
+        responseLength = 0;
+        if (chunked) {
+            int chunkLength;
+            while ((chunkLength = Integer.parseInt(readLine().split(";")[0].trim(), 16)) > 0) {
+                readBody(chunkLength);
+                readLine();
+            }
+            // trailers
+            while (readLine().length() > 0) {
+                // ignore
+            }
+        } else if (contentLength >= 0) {
+            readBody(contentLength);
+        } else {
+            throw new IOException("HTTP response without content length");
+        }
+        if (close) {
+            // the server will not process any further (pipelined) request
+            socket.close();
+        }
+        return status;
+    }
+
+    private void readBody(final int length) throws IOException {
+        if (responseLength + length > responseBody.length) {
+            final byte[] newBody = new byte[Math.max(responseLength + length, 2 * responseBody.length)];
+            System.arraycopy(responseBody, 0, newBody, 0, responseLength);
+            responseBody = newBody;
+        }
+        int read = 0;
+        while (read < length) {
+            final int r = in.read(responseBody, responseLength + read, length - read);
+            if (r < 0) {
+                throw new EOFException();
+            }
+            read += r;
+        }
+        responseLength += length;
+    }
+
+    private String readLine() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Percent-encodes the characters of the given (ASCII) string which
+     * would be changed by URL-decoding.
+     */
+    private static byte[] urlEncode(final CharSequence s) {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream(s.length() + 16);
+        for (int i = 0; i < s.length(); ++i) {
+            final char c = s.charAt(i);
+            if (c == '%' || c == '?') {
+                result.write('%');
+                result.write(Character.toUpperCase(Character.forDigit(c >> 4, 16)));
+                result.write(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            } else {
+                result.write(c);
+            }
+        }
+        return result.toByteArray();
+    }
+}
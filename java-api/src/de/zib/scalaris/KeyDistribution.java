@@ -0,0 +1,189 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.Random;
+
+/**
+ * Chooses record numbers in <tt>[0, records)</tt> for the operations of a
+ * {@link Workload}.
+ *
+ * Implementations are immutable and thus may be shared between threads; each
+ * thread uses its own {@link Random} instance.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public abstract class KeyDistribution {
+    /**
+     * Default skew of the Zipfian distribution (as used by YCSB).
+     */
+    public static final double ZIPFIAN_CONSTANT = 0.99;
+
+    protected final long records;
+
+    /**
+     * Creates a distribution over the given number of records.
+     *
+     * @param records
+     *            the number of records (at least 1)
+     */
+    protected KeyDistribution(final long records) {
+        if (records < 1) {
+            throw new IllegalArgumentException("records must be at least 1");
+        }
+        this.records = records;
+    }
+
+    /**
+     * Gets the number of records.
+     *
+     * @return the number of records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Chooses the next record.
+     *
+     * @param random
+     *            the random number generator of the calling thread
+     *
+     * @return a record number in <tt>[0, records)</tt>
+     */
+    public abstract long next(Random random);
+
+    /**
+     * Creates a distribution choosing each record with the same probability.
+     *
+     * @param records
+     *            the number of records
+     *
+     * @return a uniform distribution
+     */
+    public static KeyDistribution uniform(final long records) {
+        return new Uniform(records);
+    }
+
+    /**
+     * Creates a Zipfian distribution with the default skew
+     * {@link #ZIPFIAN_CONSTANT}, i.e. record <tt>0</tt> is the most popular
+     * one, then record <tt>1</tt> and so on.
+     *
+     * @param records
+     *            the number of records
+     *
+     * @return a Zipfian distribution
+     */
+    public static KeyDistribution zipfian(final long records) {
+        return new Zipfian(records, ZIPFIAN_CONSTANT);
+    }
+
+    /**
+     * Creates a Zipfian distribution.
+     *
+     * @param records
+     *            the number of records
+     * @param theta
+     *            the skew of the distribution (<tt>0 &lt; theta &lt; 1</tt>)
+     *
+     * @return a Zipfian distribution
+     */
+    public static KeyDistribution zipfian(final long records, final double theta) {
+        return new Zipfian(records, theta);
+    }
+
+    /**
+     * Uniform distribution.
+     */
+    static final class Uniform extends KeyDistribution {
+        Uniform(final long records) {
+            super(records);
+        }
+
+        @Override
+        public long next(final Random random) {
+            if (records <= Integer.MAX_VALUE) {
+                return random.nextInt((int) records);
+            }
+            return (random.nextLong() >>> 1) % records;
+        }
+
+        @Override
+        public String toString() {
+            return "uniform";
+        }
+    }
+
+    /**
+     * Zipfian distribution using the algorithm from Gray et al., "Quickly
+     * Generating Billion-Record Synthetic Databases" (as in YCSB), which only
+     * needs a single random number per sample.
+     */
+    static final class Zipfian extends KeyDistribution {
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+        private final double halfPowTheta;
+
+        Zipfian(final long records, final double theta) {
+            super(records);
+            if (theta <= 0.0 || theta >= 1.0) {
+                throw new IllegalArgumentException("theta must be in (0, 1)");
+            }
+            this.theta = theta;
+            this.alpha = 1.0 / (1.0 - theta);
+            this.zetan = zeta(records, theta);
+            final double zeta2 = zeta(2, theta);
+            this.eta = (1.0 - Math.pow(2.0 / records, 1.0 - theta))
+                    / (1.0 - (zeta2 / zetan));
+            this.halfPowTheta = 1.0 + Math.pow(0.5, theta);
+        }
+
+        /**
+         * Computes the generalised harmonic number
+         * <tt>sum_{i=1}^{n} 1/i^theta</tt>.
+         */
+        static double zeta(final long n, final double theta) {
+            double sum = 0.0;
+            for (long i = 1; i <= n; ++i) {
+                sum += 1.0 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        @Override
+        public long next(final Random random) {
+            final double u = random.nextDouble();
+            final double uz = u * zetan;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < halfPowTheta) {
+                return Math.min(1, records - 1);
+            }
+            final long result = (long) (records * Math.pow((eta * u) - eta + 1.0, alpha));
+            return Math.min(result, records - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "zipfian(" + theta + ")";
+        }
+    }
+}
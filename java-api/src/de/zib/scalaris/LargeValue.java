@@ -0,0 +1,699 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stores large values split into fixed-size chunks.
+ *
+ * <p>
+ * A value stored under <tt>key</tt> consists of a manifest (see
+ * {@link Manifest}) stored under <tt>key</tt> itself and its chunks stored
+ * under <tt>key:chunk:&lt;generation&gt;:&lt;i&gt;</tt>. Each write creates a
+ * new generation of chunks which are written in parallel; the manifest is
+ * written last, i.e. only after all chunks have been written successfully.
+ * Readers thus either see the old or the new value, never a mixture of both.
+ * Chunks of previous generations are not removed (use {@link ReplicatedDHT}
+ * to delete them if no reader uses them anymore, see
+ * {@link #chunkKey(String, String, int)}).
+ * </p>
+ *
+ * <p>
+ * Reads fetch the chunks concurrently (with a bounded number of outstanding
+ * chunks) and stream them into an {@link InputStream} in the order they are
+ * needed (see {@link #openStream(String)}).
+ * </p>
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * <code style="white-space:pre;">
+ *   LargeValue lv = new LargeValue(ConnectionFactory.getInstance(), 4);
+ *   lv.write(key, new FileInputStream(file)); // {@link #write(String, InputStream)}
+ *   InputStream in = lv.openStream(key);      // {@link #openStream(String)}
+ *   lv.close();                               // {@link #close()}
+ * </code>
+ * </pre>
+ *
+ * <p>
+ * Objects of this class are thread-safe, operations share a pool of
+ * <tt>parallelism</tt> connections and worker threads.
+ * </p>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class LargeValue {
+    /**
+     * Default size of a single chunk in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Gets the key of a chunk of a large value.
+     *
+     * Note: not part of {@link Manifest} as its JSON conversion treats every
+     * <tt>get*</tt> method as a getter of a property.
+     *
+     * @param key
+     *            the key of the value
+     * @param generation
+     *            the generation of the chunks (see
+     *            {@link Manifest#getGeneration()})
+     * @param chunk
+     *            the chunk number
+     *
+     * @return the chunk's key
+     */
+    public static String chunkKey(final String key, final String generation,
+            final int chunk) {
+        return key + ":chunk:" + generation + ":" + chunk;
+    }
+
+    /**
+     * The manifest of a large value describing its chunks.
+     *
+     * Stored as a JSON object.
+     */
+    public static class Manifest {
+        private String generation = "";
+        private long size = 0;
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        private int chunks = 0;
+
+        /**
+         * Creates an empty manifest.
+         */
+        public Manifest() {
+        }
+
+        /**
+         * Creates a new manifest.
+         *
+         * @param generation
+         *            the generation of the chunks
+         * @param size
+         *            total size of the value in bytes
+         * @param chunkSize
+         *            size of a single chunk in bytes
+         * @param chunks
+         *            number of chunks
+         */
+        public Manifest(final String generation, final long size,
+                final int chunkSize, final int chunks) {
+            this.generation = generation;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.chunks = chunks;
+        }
+
+        /**
+         * @return the generation of the chunks
+         */
+        public String getGeneration() {
+            return generation;
+        }
+
+        /**
+         * @param generation
+         *            the generation of the chunks to set
+         */
+        public void setGeneration(final String generation) {
+            this.generation = generation;
+        }
+
+        /**
+         * @return the total size of the value in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @param size
+         *            the total size of the value in bytes to set
+         */
+        public void setSize(final long size) {
+            this.size = size;
+        }
+
+        /**
+         * @return the size of a single chunk in bytes
+         */
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        /**
+         * @param chunkSize
+         *            the size of a single chunk in bytes to set
+         */
+        public void setChunkSize(final int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * @return the number of chunks
+         */
+        public int getChunks() {
+            return chunks;
+        }
+
+        /**
+         * @param chunks
+         *            the number of chunks to set
+         */
+        public void setChunks(final int chunks) {
+            this.chunks = chunks;
+        }
+    }
+
+    /**
+     * Connections used by the worker threads.
+     */
+    protected final ConnectionPool pool;
+    /**
+     * Worker threads reading and writing chunks.
+     */
+    protected final ExecutorService executor;
+    /**
+     * Size of a single chunk in bytes (for new values).
+     */
+    protected final int chunkSize;
+    /**
+     * Maximum number of outstanding chunk reads/writes per operation.
+     */
+    protected final int maxInFlight;
+
+    /**
+     * Creates a new object using {@link #DEFAULT_CHUNK_SIZE}.
+     *
+     * @param cFactory
+     *            the connection factory to create connections with
+     * @param parallelism
+     *            number of parallel connections (and worker threads)
+     */
+    public LargeValue(final ConnectionFactory cFactory, final int parallelism) {
+        this(cFactory, parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new object.
+     *
+     * @param cFactory
+     *            the connection factory to create connections with
+     * @param parallelism
+     *            number of parallel connections (and worker threads)
+     * @param chunkSize
+     *            size of a single chunk in bytes (for new values)
+     */
+    public LargeValue(final ConnectionFactory cFactory, final int parallelism,
+            final int chunkSize) {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("parallelism and chunk size must be positive");
+        }
+        this.pool = new ConnectionPool(cFactory, parallelism);
+        this.executor = Executors.newFixedThreadPool(parallelism);
+        this.chunkSize = chunkSize;
+        this.maxInFlight = 2 * parallelism;
+    }
+
+    /**
+     * Writes the given value.
+     *
+     * @param key
+     *            the key to write the value to
+     * @param value
+     *            the value to write
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write a chunk or the
+     *             manifest
+     * @throws AbortException
+     *             if the commit of a chunk or the manifest failed
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void write(final String key, final byte[] value)
+            throws ConnectionException, TimeoutException, AbortException,
+            UnknownException {
+        try {
+            write(key, new ByteArrayInputStream(value));
+        } catch (final IOException e) {
+            // should not occur (reading from a byte array)
+            throw new UnknownException(e);
+        }
+    }
+
+    /**
+     * Writes the contents of the given stream.
+     *
+     * The stream is read chunk by chunk while previous chunks are still being
+     * written to Scalaris. The stream is not closed.
+     *
+     * @param key
+     *            the key to write the value to
+     * @param in
+     *            the stream to write
+     *
+     * @throws IOException
+     *             if reading from the stream fails
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write a chunk or the
+     *             manifest
+     * @throws AbortException
+     *             if the commit of a chunk or the manifest failed
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void write(final String key, final InputStream in)
+            throws IOException, ConnectionException, TimeoutException,
+            AbortException, UnknownException {
+        final String generation = UUID.randomUUID().toString();
+        final Manifest manifest = new Manifest(generation, 0, chunkSize, 0);
+        final LinkedList<Future<Object>> inFlight = new LinkedList<Future<Object>>();
+        try {
+            byte[] chunk;
+            while ((chunk = readChunk(in)) != null) {
+                if (inFlight.size() >= maxInFlight) {
+                    waitFor(inFlight.removeFirst());
+                }
+                inFlight.add(executor.submit(new WriteChunk(
+                        chunkKey(key, generation, manifest.getChunks()), chunk)));
+                manifest.setChunks(manifest.getChunks() + 1);
+                manifest.setSize(manifest.getSize() + chunk.length);
+            }
+            while (!inFlight.isEmpty()) {
+                waitFor(inFlight.removeFirst());
+            }
+        } catch (final NotFoundException e) {
+            // should not occur (we do not read anything)
+            throw new UnknownException(e);
+        } finally {
+            for (final Future<Object> future : inFlight) {
+                future.cancel(false);
+            }
+        }
+        // all chunks have been written -> write the manifest
+        try {
+            waitFor(executor.submit(new WriteChunk(key, manifest)));
+        } catch (final NotFoundException e) {
+            // should not occur (we do not read anything)
+            throw new UnknownException(e);
+        }
+    }
+
+    /**
+     * Reads the manifest of the given value.
+     *
+     * @param key
+     *            the key of the value
+     *
+     * @return the manifest
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch the manifest
+     * @throws NotFoundException
+     *             if the requested key does not exist
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public Manifest readManifest(final String key) throws ConnectionException,
+            TimeoutException, NotFoundException, UnknownException {
+        final Future<ErlangValue> future = executor.submit(new Callable<ErlangValue>() {
+            public ErlangValue call() throws Exception {
+                final Connection conn = getConnection();
+                try {
+                    return new TransactionSingleOp(conn).read(key);
+                } finally {
+                    pool.releaseConnection(conn);
+                }
+            }
+        });
+        final ErlangValue value;
+        try {
+            value = future.get();
+        } catch (final InterruptedException e) {
+            throw new UnknownException(e);
+        } catch (final ExecutionException e) {
+            try {
+                rethrow(e);
+            } catch (final AbortException e1) {
+                // should not occur (we do not write anything)
+                throw new UnknownException(e1);
+            }
+            return null; // unreachable
+        }
+        try {
+            return value.jsonValue(Manifest.class);
+        } catch (final ClassCastException e) {
+            throw new UnknownException(e, value.value());
+        }
+    }
+
+    /**
+     * Opens a stream reading the value stored under the given key.
+     *
+     * Chunks are fetched concurrently in the background. Close the stream to
+     * cancel outstanding reads if it is not read completely.
+     *
+     * @param key
+     *            the key of the value
+     *
+     * @return a stream of the value's contents
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch the manifest
+     * @throws NotFoundException
+     *             if the requested key does not exist
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public InputStream openStream(final String key) throws ConnectionException,
+            TimeoutException, NotFoundException, UnknownException {
+        return new ChunkInputStream(key, readManifest(key));
+    }
+
+    /**
+     * Reads the value stored under the given key.
+     *
+     * @param key
+     *            the key of the value
+     *
+     * @return the value
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch the value
+     * @throws NotFoundException
+     *             if the requested key or one of its chunks does not exist
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public byte[] read(final String key) throws ConnectionException,
+            TimeoutException, NotFoundException, UnknownException {
+        final Manifest manifest = readManifest(key);
+        if (manifest.getSize() > Integer.MAX_VALUE) {
+            throw new UnknownException("value too large for a byte array: "
+                    + manifest.getSize() + " bytes");
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream((int) manifest.getSize());
+        final ChunkInputStream in = new ChunkInputStream(key, manifest);
+        try {
+            byte[] chunk;
+            while ((chunk = in.nextChunk()) != null) {
+                out.write(chunk, 0, chunk.length);
+            }
+        } catch (final ExecutionException e) {
+            try {
+                rethrow(e);
+            } catch (final AbortException e1) {
+                // should not occur (we do not write anything)
+                throw new UnknownException(e1);
+            }
+        } catch (final InterruptedException e) {
+            throw new UnknownException(e);
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Stops the worker threads and closes all connections.
+     */
+    public void close() {
+        executor.shutdownNow();
+        pool.closeAll();
+    }
+
+    /**
+     * Reads the next chunk from the given stream.
+     *
+     * @param in
+     *            the stream to read from
+     *
+     * @return the chunk (shorter than {@link #chunkSize} if the end of the
+     *         stream is reached) or <tt>null</tt> if there is no more data
+     *
+     * @throws IOException
+     *             if reading from the stream fails
+     */
+    private byte[] readChunk(final InputStream in) throws IOException {
+        final byte[] buffer = new byte[chunkSize];
+        int read = 0;
+        int n;
+        while (read < chunkSize && (n = in.read(buffer, read, chunkSize - read)) != -1) {
+            read += n;
+        }
+        if (read == 0) {
+            return null;
+        } else if (read < chunkSize) {
+            final byte[] result = new byte[read];
+            System.arraycopy(buffer, 0, result, 0, read);
+            return result;
+        }
+        return buffer;
+    }
+
+    /**
+     * Waits for the given task to finish.
+     *
+     * @param future
+     *            the task of a worker thread
+     */
+    private static void waitFor(final Future<?> future)
+            throws ConnectionException, TimeoutException, NotFoundException,
+            AbortException, UnknownException {
+        try {
+            future.get();
+        } catch (final InterruptedException e) {
+            throw new UnknownException(e);
+        } catch (final ExecutionException e) {
+            rethrow(e);
+        }
+    }
+
+    /**
+     * Re-throws the cause of the given exception.
+     *
+     * @param e
+     *            the exception from a worker thread
+     */
+    private static void rethrow(final ExecutionException e)
+            throws ConnectionException, TimeoutException, NotFoundException,
+            AbortException, UnknownException {
+        final Throwable cause = e.getCause();
+        if (cause instanceof ConnectionException) {
+            throw (ConnectionException) cause;
+        } else if (cause instanceof TimeoutException) {
+            throw (TimeoutException) cause;
+        } else if (cause instanceof NotFoundException) {
+            throw (NotFoundException) cause;
+        } else if (cause instanceof AbortException) {
+            throw (AbortException) cause;
+        } else if (cause instanceof UnknownException) {
+            throw (UnknownException) cause;
+        } else {
+            throw new UnknownException(cause);
+        }
+    }
+
+    /**
+     * Gets a connection from the pool.
+     *
+     * Only the <tt>parallelism</tt> worker threads use connections, so there
+     * is always a connection available.
+     */
+    private Connection getConnection() throws ConnectionException {
+        final Connection conn = pool.getConnection();
+        if (conn == null) {
+            throw new ConnectionException("no connection available");
+        }
+        return conn;
+    }
+
+    /**
+     * Writes a single chunk (or the manifest).
+     */
+    private class WriteChunk implements Callable<Object> {
+        private final String key;
+        private final Object value;
+
+        public WriteChunk(final String key, final Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Object call() throws Exception {
+            final Connection conn = getConnection();
+            try {
+                new TransactionSingleOp(conn).write(key, value);
+                return null;
+            } finally {
+                pool.releaseConnection(conn);
+            }
+        }
+    }
+
+    /**
+     * Reads a single chunk.
+     */
+    private class ReadChunk implements Callable<byte[]> {
+        private final String key;
+
+        public ReadChunk(final String key) {
+            this.key = key;
+        }
+
+        public byte[] call() throws Exception {
+            final Connection conn = getConnection();
+            try {
+                return new TransactionSingleOp(conn).read(key).binaryValue();
+            } finally {
+                pool.releaseConnection(conn);
+            }
+        }
+    }
+
+    /**
+     * Streams the chunks of a value, fetching up to {@link #maxInFlight}
+     * chunks ahead.
+     */
+    private class ChunkInputStream extends InputStream {
+        private final String key;
+        private final Manifest manifest;
+        private final LinkedList<Future<byte[]>> inFlight = new LinkedList<Future<byte[]>>();
+        private int nextChunk = 0;
+        private byte[] current = new byte[0];
+        private int pos = 0;
+        private boolean closed = false;
+
+        public ChunkInputStream(final String key, final Manifest manifest) {
+            this.key = key;
+            this.manifest = manifest;
+            fill();
+        }
+
+        private void fill() {
+            while (inFlight.size() < maxInFlight && nextChunk < manifest.getChunks()) {
+                inFlight.add(executor.submit(new ReadChunk(chunkKey(key, manifest.getGeneration(), nextChunk))));
+                ++nextChunk;
+            }
+        }
+
+        /**
+         * Waits for the next chunk.
+         *
+         * @return the chunk or <tt>null</tt> if there are no more chunks
+         */
+        byte[] nextChunk() throws InterruptedException, ExecutionException {
+            if (closed || inFlight.isEmpty()) {
+                return null;
+            }
+            final byte[] chunk = inFlight.removeFirst().get();
+            fill();
+            return chunk;
+        }
+
+        private boolean ensureData() throws IOException {
+            while (pos >= current.length) {
+                try {
+                    final byte[] chunk = nextChunk();
+                    if (chunk == null) {
+                        return false;
+                    }
+                    current = chunk;
+                    pos = 0;
+                } catch (final InterruptedException e) {
+                    throw new InterruptedIOException(e.getMessage());
+                } catch (final ExecutionException e) {
+                    final IOException ioe = new IOException("reading a chunk of " + key + " failed");
+                    ioe.initCause(e.getCause());
+                    throw ioe;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureData()) {
+                return -1;
+            }
+            return current[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureData()) {
+                return -1;
+            }
+            final int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current.length - pos;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            for (final Future<byte[]> future : inFlight) {
+                future.cancel(false);
+            }
+            inFlight.clear();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A (thread-safe) histogram of non-negative values, e.g. latencies in
+ * nanoseconds, with logarithmic bucket sizes similar to an HDR histogram.
+ *
+ * <p>
+ * Values below {@link #SUB_BUCKETS} are counted exactly, larger values are
+ * counted in buckets with a relative width of at most
+ * <tt>1/{@link #SUB_BUCKETS}</tt>. All buckets are allocated up-front so that
+ * {@link #record(long)} does not allocate any memory.
+ * </p>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class LatencyHistogram {
+    /**
+     * Number of bits used for the linear sub-buckets of each power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    /**
+     * Number of linear sub-buckets of each power of two.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Total number of buckets (enough for any non-negative <tt>long</tt>).
+     */
+    private static final int BUCKETS = ((63 - SUB_BUCKET_BITS) + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Creates a new (empty) histogram.
+     */
+    public LatencyHistogram() {
+    }
+
+    /**
+     * Gets the index of the bucket the given value belongs to.
+     *
+     * @param value
+     *            a non-negative value
+     *
+     * @return the bucket index
+     */
+    static int bucketIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int msb = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = msb - SUB_BUCKET_BITS;
+        final int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return ((shift + 1) << SUB_BUCKET_BITS) + sub;
+    }
+
+    /**
+     * Gets the highest value belonging to the bucket with the given index.
+     *
+     * @param index
+     *            the bucket index
+     *
+     * @return the highest value in the bucket
+     */
+    static long bucketUpperBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        final long sub = SUB_BUCKETS + (index & (SUB_BUCKETS - 1));
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a value. Negative values are recorded as <tt>0</tt>.
+     *
+     * @param value
+     *            the value to record
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long curMax;
+        while (value > (curMax = max.get())) {
+            if (max.compareAndSet(curMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets the sum of all recorded values.
+     *
+     * @return the sum
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return the maximum (<tt>0</tt> if no value has been recorded)
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the average of all recorded values.
+     *
+     * @return the mean (<tt>0</tt> if no value has been recorded)
+     */
+    public double getMean() {
+        final long n = count.get();
+        return (n == 0) ? 0.0 : ((double) sum.get() / n);
+    }
+
+    /**
+     * Gets the value below which the given percentage of recorded values
+     * lies (up to the precision of the buckets).
+     *
+     * @param percentile
+     *            the percentile, e.g. <tt>99.0</tt>
+     *
+     * @return the value at the percentile (<tt>0</tt> if no value has been
+     *         recorded)
+     */
+    public long getValueAtPercentile(final double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil((Math.min(percentile, 100.0) / 100.0) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Removes all recorded values. Values recorded concurrently may or may
+     * not be removed.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,346 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+
+import de.zib.scalaris.Workload.Op;
+
+/**
+ * Runs a {@link Workload} against Scalaris and records the latency of each
+ * operation in a {@link LoadResult}.
+ *
+ * <p>
+ * In contrast to the closed-loop threads of {@link Benchmark}, operations can
+ * be started at a fixed rate (see {@link Workload#setTargetRate(double)}): the
+ * <tt>n</tt>-th operation is intended to start at <tt>start + n / rate</tt>,
+ * no matter how long earlier operations took. Its response time is measured
+ * from this intended start, so a stalled server is not hidden by the client
+ * simply sending fewer requests (coordinated omission). Operations started
+ * during the warm-up phase are executed but not recorded.
+ * </p>
+ *
+ * Each thread uses its own connection created by the given
+ * {@link ConnectionFactory}.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class LoadGenerator {
+    /**
+     * Time to wait for all threads to be set up before the first operation is
+     * scheduled (in nanoseconds).
+     */
+    private static final long START_DELAY = 100000000L;
+
+    private final Workload workload;
+    private final KeyDistribution keys;
+    private final ConnectionFactory cFactory;
+
+    /**
+     * Creates a load generator using the global connection factory.
+     *
+     * @param workload
+     *            the workload to run
+     */
+    public LoadGenerator(final Workload workload) {
+        this(workload, ConnectionFactory.getInstance());
+    }
+
+    /**
+     * Creates a load generator.
+     *
+     * @param workload
+     *            the workload to run
+     * @param cFactory
+     *            the connection factory to create the threads' connections
+     *            with
+     */
+    public LoadGenerator(final Workload workload, final ConnectionFactory cFactory) {
+        this.workload = workload;
+        this.keys = workload.getKeyDistribution();
+        this.cFactory = cFactory;
+    }
+
+    /**
+     * Creates a random value of the given size.
+     */
+    private static String randomValue(final Random random, final int size) {
+        final char[] chars = new char[size];
+        for (int i = 0; i < size; ++i) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Writes all value records of the workload (with the workload's threads,
+     * as fast as possible).
+     *
+     * @throws ConnectionException
+     *             if a connection cannot be established
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    public void preload() throws ConnectionException, InterruptedException {
+        final AtomicLong next = new AtomicLong(0);
+        final ArrayList<Worker> workers = new ArrayList<Worker>(workload.getThreads());
+        for (int i = 0; i < workload.getThreads(); ++i) {
+            workers.add(new Worker(i) {
+                @Override
+                void work() {
+                    long record;
+                    while ((record = next.getAndIncrement()) < workload.getRecords()) {
+                        try {
+                            tx.write(workload.valueKey(record), value);
+                        } catch (final OtpErlangException e) {
+                            failure = e;
+                            return;
+                        } catch (final UnknownException e) {
+                            failure = e;
+                            return;
+                        }
+                    }
+                }
+            });
+        }
+        runWorkers(workers);
+    }
+
+    /**
+     * Runs the workload (preloading the records first if configured).
+     *
+     * @return the recorded results
+     *
+     * @throws ConnectionException
+     *             if a connection cannot be established
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    public LoadResult run() throws ConnectionException, InterruptedException {
+        if (workload.isPreload()) {
+            preload();
+        }
+        final long interval = intervalNanos(workload.getTargetRate());
+        final long warmup = workload.getWarmupMillis() * 1000000L;
+        final long duration = workload.getDurationMillis() * 1000000L;
+        final long scheduled = scheduledOps(duration, interval);
+        final LoadResult result = new LoadResult(workload, duration, scheduled);
+        final AtomicLong sequence = new AtomicLong(0);
+        final long start = System.nanoTime() + START_DELAY;
+        final long recordFrom = start + warmup;
+        final long end = recordFrom + duration;
+
+        final ArrayList<Worker> workers = new ArrayList<Worker>(workload.getThreads());
+        for (int i = 0; i < workload.getThreads(); ++i) {
+            workers.add(new Worker(i) {
+                @Override
+                void work() {
+                    while (true) {
+                        final long intended;
+                        if (interval > 0) {
+                            intended = start + (sequence.getAndIncrement() * interval);
+                            if (intended >= end) {
+                                return;
+                            }
+                            long wait;
+                            while ((wait = intended - System.nanoTime()) > 0) {
+                                LockSupport.parkNanos(wait);
+                            }
+                        } else {
+                            long wait;
+                            while ((wait = start - System.nanoTime()) > 0) {
+                                LockSupport.parkNanos(wait);
+                            }
+                            intended = System.nanoTime();
+                        }
+                        final long actualStart = System.nanoTime();
+                        if (actualStart >= end) {
+                            // could not keep up with the schedule - the
+                            // remaining operations are reported as missing
+                            return;
+                        }
+                        final Op op = workload.nextOp(random);
+                        try {
+                            final boolean miss = execute(op);
+                            final long done = System.nanoTime();
+                            if (intended >= recordFrom) {
+                                result.record(op, miss, done - intended, done - actualStart);
+                            }
+                        } catch (final OtpErlangException e) {
+                            if (intended >= recordFrom) {
+                                result.recordError(op);
+                            }
+                        } catch (final UnknownException e) {
+                            if (intended >= recordFrom) {
+                                result.recordError(op);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        runWorkers(workers);
+        return result;
+    }
+
+    /**
+     * Gets the time between the intended starts of two operations.
+     *
+     * @param targetRate
+     *            operations per second (<tt>0</tt> for a closed loop)
+     *
+     * @return the interval in nanoseconds (at least <tt>1</tt>) or <tt>0</tt>
+     *         if running in a closed loop
+     */
+    static long intervalNanos(final double targetRate) {
+        return targetRate > 0 ? Math.max(1L, (long) (1e9 / targetRate)) : 0L;
+    }
+
+    /**
+     * Gets the number of operations scheduled for the measurement period.
+     *
+     * @param durationNanos
+     *            the length of the measurement period
+     * @param intervalNanos
+     *            the time between the intended starts of two operations
+     *            (<tt>0</tt> for a closed loop)
+     *
+     * @return the number of operations or <tt>-1</tt> if running in a closed
+     *         loop
+     */
+    static long scheduledOps(final long durationNanos, final long intervalNanos) {
+        return intervalNanos > 0 ? (durationNanos + intervalNanos - 1) / intervalNanos : -1;
+    }
+
+    /**
+     * Starts the given workers, waits for them to finish and closes their
+     * connections.
+     *
+     * @throws ConnectionException
+     *             if a worker could not connect
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    private void runWorkers(final ArrayList<Worker> workers)
+            throws ConnectionException, InterruptedException {
+        try {
+            for (final Worker worker : workers) {
+                worker.connect();
+            }
+            final ArrayList<Thread> threads = new ArrayList<Thread>(workers.size());
+            for (final Worker worker : workers) {
+                final Thread thread = new Thread(worker, "scalaris-load-" + worker.id);
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            for (final Worker worker : workers) {
+                worker.close();
+            }
+        }
+        for (final Worker worker : workers) {
+            if (worker.failure instanceof ConnectionException) {
+                throw (ConnectionException) worker.failure;
+            } else if (worker.failure != null) {
+                throw new UnknownException(worker.failure);
+            }
+        }
+    }
+
+    /**
+     * A thread executing operations with its own connection.
+     */
+    private abstract class Worker implements Runnable {
+        final int id;
+        final Random random = new Random();
+        final String value;
+        TransactionSingleOp tx = null;
+        volatile Exception failure = null;
+
+        Worker(final int id) {
+            this.id = id;
+            this.value = randomValue(random, workload.getValueSize());
+        }
+
+        void connect() throws ConnectionException {
+            tx = new TransactionSingleOp(cFactory.createConnection());
+        }
+
+        void close() {
+            if (tx != null) {
+                tx.closeConnection();
+            }
+        }
+
+        public void run() {
+            work();
+        }
+
+        abstract void work();
+
+        /**
+         * Executes a single operation.
+         *
+         * @return whether the record was not found or had changed
+         */
+        boolean execute(final Op op) throws OtpErlangException, UnknownException {
+            final long record = keys.next(random);
+            try {
+                switch (op) {
+                    case READ:
+                        tx.read(workload.valueKey(record));
+                        break;
+                    case WRITE:
+                        tx.write(workload.valueKey(record), value);
+                        break;
+                    case ADD_ON_NR:
+                        tx.addOnNr(workload.counterKey(record), 1L);
+                        break;
+                    case TEST_AND_SET:
+                        final OtpErlangString key = new OtpErlangString(workload.valueKey(record));
+                        final OtpErlangObject old = tx.read(key).value();
+                        tx.testAndSet(key, old, new OtpErlangString(value));
+                        break;
+                    case APPEND:
+                        tx.addDelOnList(workload.listKey(record),
+                                Collections.singletonList(id),
+                                Collections.<Integer>emptyList());
+                        break;
+                    default:
+                        throw new UnknownException("unsupported operation: " + op);
+                }
+                return false;
+            } catch (final NotFoundException e) {
+                return true;
+            } catch (final KeyChangedException e) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.zib.scalaris.Workload.Op;
+
+/**
+ * Results of a {@link LoadGenerator} run: per operation, the number of
+ * successful operations, misses and errors as well as histograms of the
+ * response times (measured from the intended start time, i.e. including any
+ * queueing in the client) and service times (measured from the actual start
+ * time).
+ *
+ * All times are recorded in nanoseconds and reported in microseconds.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class LoadResult {
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final Workload workload;
+    private final LatencyHistogram[] responseTimes;
+    private final LatencyHistogram[] serviceTimes;
+    private final AtomicLong[] misses;
+    private final AtomicLong[] errors;
+    private final long durationNanos;
+    private final long scheduled;
+
+    /**
+     * Creates an empty result.
+     *
+     * @param workload
+     *            the executed workload
+     * @param durationNanos
+     *            the length of the measurement period
+     * @param scheduled
+     *            the number of operations scheduled for the measurement
+     *            period (<tt>-1</tt> if running in a closed loop)
+     */
+    LoadResult(final Workload workload, final long durationNanos, final long scheduled) {
+        this.workload = workload;
+        this.durationNanos = durationNanos;
+        this.scheduled = scheduled;
+        final int ops = Op.values().length;
+        responseTimes = new LatencyHistogram[ops];
+        serviceTimes = new LatencyHistogram[ops];
+        misses = new AtomicLong[ops];
+        errors = new AtomicLong[ops];
+        for (int i = 0; i < ops; ++i) {
+            responseTimes[i] = new LatencyHistogram();
+            serviceTimes[i] = new LatencyHistogram();
+            misses[i] = new AtomicLong(0);
+            errors[i] = new AtomicLong(0);
+        }
+    }
+
+    /**
+     * Records a finished operation.
+     *
+     * @param op
+     *            the operation
+     * @param miss
+     *            whether the record was not found or had changed
+     * @param responseNanos
+     *            time from the intended start to the end of the operation
+     * @param serviceNanos
+     *            time from the actual start to the end of the operation
+     */
+    void record(final Op op, final boolean miss, final long responseNanos,
+            final long serviceNanos) {
+        responseTimes[op.ordinal()].record(responseNanos);
+        serviceTimes[op.ordinal()].record(serviceNanos);
+        if (miss) {
+            misses[op.ordinal()].incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a failed operation.
+     *
+     * @param op
+     *            the operation
+     */
+    void recordError(final Op op) {
+        errors[op.ordinal()].incrementAndGet();
+    }
+
+    /**
+     * @return the executed workload
+     */
+    public Workload getWorkload() {
+        return workload;
+    }
+
+    /**
+     * @return the length of the measurement period (in nanoseconds)
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Gets the number of operations scheduled for the measurement period in
+     * open-loop mode. If this is larger than the number of finished and
+     * failed operations, the client could not keep up with the target rate.
+     *
+     * @return the number of scheduled operations or <tt>-1</tt> in closed-loop
+     *         mode
+     */
+    public long getScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * Gets the number of finished (including missed) operations.
+     *
+     * @param op
+     *            the operation
+     *
+     * @return the number of operations
+     */
+    public long getCount(final Op op) {
+        return responseTimes[op.ordinal()].getCount();
+    }
+
+    /**
+     * Gets the number of operations whose record was not found or (for
+     * test-and-set) had changed in the meantime.
+     *
+     * @param op
+     *            the operation
+     *
+     * @return the number of misses
+     */
+    public long getMisses(final Op op) {
+        return misses[op.ordinal()].get();
+    }
+
+    /**
+     * Gets the number of failed operations (timeouts, aborts, connection
+     * errors, ...).
+     *
+     * @param op
+     *            the operation
+     *
+     * @return the number of errors
+     */
+    public long getErrors(final Op op) {
+        return errors[op.ordinal()].get();
+    }
+
+    /**
+     * Gets the response times, i.e. from the intended start of the operation
+     * (corrected for coordinated omission).
+     *
+     * @param op
+     *            the operation
+     *
+     * @return a histogram of the response times in nanoseconds
+     */
+    public LatencyHistogram getResponseTimes(final Op op) {
+        return responseTimes[op.ordinal()];
+    }
+
+    /**
+     * Gets the service times, i.e. from the actual start of the operation.
+     *
+     * @param op
+     *            the operation
+     *
+     * @return a histogram of the service times in nanoseconds
+     */
+    public LatencyHistogram getServiceTimes(final Op op) {
+        return serviceTimes[op.ordinal()];
+    }
+
+    /**
+     * Gets the number of finished operations of all kinds.
+     *
+     * @return the number of operations
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (final Op op : Op.values()) {
+            total += getCount(op);
+        }
+        return total;
+    }
+
+    /**
+     * Gets the number of finished operations per second.
+     *
+     * @param op
+     *            the operation
+     *
+     * @return operations per second
+     */
+    public double getThroughput(final Op op) {
+        return (getCount(op) * 1e9) / durationNanos;
+    }
+
+    /**
+     * Gets the number of finished operations of all kinds per second.
+     *
+     * @return operations per second
+     */
+    public double getTotalThroughput() {
+        return (getTotalCount() * 1e9) / durationNanos;
+    }
+
+    private static String micros(final double nanos) {
+        return String.format(Locale.US, "%.1f", nanos / 1000.0);
+    }
+
+    private static void appendLatencies(final StringBuilder sb, final LatencyHistogram hist) {
+        sb.append("{\"mean\":").append(micros(hist.getMean()));
+        for (int i = 0; i < PERCENTILES.length; ++i) {
+            sb.append(",\"").append(PERCENTILE_NAMES[i]).append("\":")
+                    .append(micros(hist.getValueAtPercentile(PERCENTILES[i])));
+        }
+        sb.append(",\"max\":").append(micros(hist.getMax())).append('}');
+    }
+
+    private static String jsonString(final String s) {
+        final StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); ++i) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Converts the results to a JSON object (latencies in microseconds).
+     *
+     * @return a JSON string
+     */
+    public String toJson() {
+        final StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"workload\":").append(jsonString(workload.getName()));
+        sb.append(",\"distribution\":").append(jsonString(workload.getKeyDistribution().toString()));
+        sb.append(",\"records\":").append(workload.getRecords());
+        sb.append(",\"threads\":").append(workload.getThreads());
+        sb.append(",\"targetRate\":").append(String.format(Locale.US, "%.1f", workload.getTargetRate()));
+        sb.append(",\"warmupMillis\":").append(workload.getWarmupMillis());
+        sb.append(",\"durationMillis\":").append(durationNanos / 1000000);
+        sb.append(",\"scheduled\":").append(scheduled);
+        sb.append(",\"count\":").append(getTotalCount());
+        sb.append(",\"throughput\":").append(String.format(Locale.US, "%.1f", getTotalThroughput()));
+        sb.append(",\"operations\":{");
+        boolean first = true;
+        for (final Op op : Op.values()) {
+            if (workload.getProportion(op) <= 0.0) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append('"').append(op).append("\":{");
+            sb.append("\"count\":").append(getCount(op));
+            sb.append(",\"misses\":").append(getMisses(op));
+            sb.append(",\"errors\":").append(getErrors(op));
+            sb.append(",\"throughput\":").append(String.format(Locale.US, "%.1f", getThroughput(op)));
+            sb.append(",\"responseTime\":");
+            appendLatencies(sb, getResponseTimes(op));
+            sb.append(",\"serviceTime\":");
+            appendLatencies(sb, getServiceTimes(op));
+            sb.append('}');
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    /**
+     * Converts the results to CSV with a header line and one line per
+     * operation (latencies in microseconds).
+     *
+     * @return CSV lines
+     */
+    public String toCsv() {
+        final StringBuilder sb = new StringBuilder(1024);
+        sb.append("workload,operation,count,misses,errors,throughput,mean");
+        for (final String p : PERCENTILE_NAMES) {
+            sb.append(',').append(p);
+        }
+        sb.append(",max,service_mean");
+        for (final String p : PERCENTILE_NAMES) {
+            sb.append(",service_").append(p);
+        }
+        sb.append(",service_max\n");
+        for (final Op op : Op.values()) {
+            if (workload.getProportion(op) <= 0.0) {
+                continue;
+            }
+            sb.append(workload.getName()).append(',').append(op);
+            sb.append(',').append(getCount(op));
+            sb.append(',').append(getMisses(op));
+            sb.append(',').append(getErrors(op));
+            sb.append(',').append(String.format(Locale.US, "%.1f", getThroughput(op)));
+            for (final LatencyHistogram hist : new LatencyHistogram[] {
+                    getResponseTimes(op), getServiceTimes(op) }) {
+                sb.append(',').append(micros(hist.getMean()));
+                for (final double p : PERCENTILES) {
+                    sb.append(',').append(micros(hist.getValueAtPercentile(p)));
+                }
+                sb.append(',').append(micros(hist.getMax()));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Converts the results to a human-readable table (latencies in
+     * microseconds).
+     *
+     * @return a multi-line string
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(1024);
+        sb.append(String.format(Locale.US,
+                "workload %s (%s, %d records), %d threads, target rate: %s%n",
+                workload.getName(), workload.getKeyDistribution(),
+                workload.getRecords(), workload.getThreads(),
+                workload.getTargetRate() > 0 ? String.format(Locale.US,
+                        "%.1f ops/s", workload.getTargetRate()) : "closed loop"));
+        sb.append(String.format(Locale.US, "%d operations in %.1f s: %.1f ops/s",
+                getTotalCount(), durationNanos / 1e9, getTotalThroughput()));
+        if (scheduled >= 0) {
+            sb.append(" (scheduled: ").append(scheduled).append(')');
+        }
+        sb.append(String.format("%n%-14s %10s %8s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "misses", "errors", "mean[us]",
+                "p50[us]", "p99[us]", "p999[us]", "max[us]"));
+        for (final Op op : Op.values()) {
+            if (workload.getProportion(op) <= 0.0) {
+                continue;
+            }
+            final LatencyHistogram hist = getResponseTimes(op);
+            sb.append(String.format("%-14s %10d %8d %8d %10s %10s %10s %10s %10s%n",
+                    op, getCount(op), getMisses(op), getErrors(op),
+                    micros(hist.getMean()),
+                    micros(hist.getValueAtPercentile(50.0)),
+                    micros(hist.getValueAtPercentile(99.0)),
+                    micros(hist.getValueAtPercentile(99.9)),
+                    micros(hist.getMax())));
+        }
+        return sb.toString();
+    }
+}
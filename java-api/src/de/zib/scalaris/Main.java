@@ -15,10 +15,18 @@
  */
 package de.zib.scalaris;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.MBeanRegistrationException;
@@ -62,7 +70,11 @@ public class Main {
      *                                              benchmark(s) [1|...|18|all]
      *                                              (default: all benchmarks, 500
      *                                              operations, 10 threads per
-     *                                              Scalaris node)
+     *                                              Scalaris node) or a workload
+     *                                              [a|b|c|d|f|mixed] <[ops/s]>
+     *                                              <[seconds]> <[text|json|csv]>
+     *                                              (default: closed loop, 30s,
+     *                                              text)
      *  -r,--read <key>                             read an item
      *  -w,--write <key> <value>                    write an item
      *     --test-and-set <key> <old> <new>         atomic test and set, i.e.
@@ -82,6 +94,13 @@ public class Main {
      *  -s,--subscribe <topic> <url>                subscribe to a topic
      *  -u,--unsubscribe <topic> <url>              unsubscribe from a topic
      *  -g,--getsubscribers <topic>                 get subscribers of a topic
+     *     --export <file> <[keyfile]>              export the items with the
+     *                                              keys in <keyfile> (one per
+     *                                              line, default: stdin) to a
+     *                                              snapshot file
+     *     --restore <file> <[pipelines]>           write all items of a
+     *                                              snapshot file (default: 4
+     *                                              parallel pipelines)
      * </code>
      * </pre>
      *
@@ -109,7 +128,9 @@ public class Main {
             ConnectionFactory.getInstance().printProperties();
         }
 
-        if (line.hasOption("minibench")) {
+        if (line.hasOption("minibench") && isWorkload(line.getOptionValues("minibench"))) {
+            runWorkload(line.getOptionValues("minibench"), verbose);
+        } else if (line.hasOption("minibench")) {
             final String[] optionValues = line.getOptionValues("minibench");
             int nrOperations = 500;
             int threadsPerNode = 10;
@@ -299,12 +320,39 @@ public class Main {
             } catch (final UnknownException e) {
                 printException("delete failed with unknown error", e, verbose);
             }
+        } else if (line.hasOption("export")) { // export to a snapshot
+            final String[] optionValues = line.getOptionValues("export");
+            checkArguments(optionValues, 1, options, "export");
+            exportSnapshot(optionValues, verbose);
+        } else if (line.hasOption("restore")) { // restore from a snapshot
+            final String[] optionValues = line.getOptionValues("restore");
+            checkArguments(optionValues, 1, options, "restore");
+            int pipelines = 4;
+            if (optionValues.length >= 2) {
+                try {
+                    pipelines = Integer.parseInt(optionValues[1]);
+                } catch (final NumberFormatException e) {
+                    printException("Parsing failed", new ParseException(
+                            "wrong parameter for option restore (pipelines must be an integer)"), verbose);
+                }
+            }
+            restoreSnapshot(optionValues[0], pipelines, verbose);
         } else if (line.hasOption("lh")) { // get local host name
             System.out.println(ConnectionFactory.getLocalhostName());
         } else if (line.hasOption("jmx")) { // start JMX monitoring service
-            final String node = line.getOptionValue("jmx");
-            checkArguments(node, options, "jmx");
-            startJmxService(node, verbose);
+            final String[] optionValues = line.getOptionValues("jmxservice");
+            checkArguments(optionValues, 1, options, "jmx");
+            final String node = optionValues[0];
+            int statsPort = -1;
+            if (optionValues.length >= 2) {
+                try {
+                    statsPort = Integer.parseInt(optionValues[1]);
+                } catch (final NumberFormatException e) {
+                    printException("Parsing failed", new ParseException(
+                            "wrong parameter for option jmx (port must be an integer)"), verbose);
+                }
+            }
+            startJmxService(node, statsPort, verbose);
         } else {
             // print help if no other option was given
 //        if (line.hasOption("help")) {
@@ -339,10 +387,14 @@ public class Main {
                         return 13;
                     } else if (option.getLongOpt().equals("getsubscribers")) {
                         return 14;
-                    } else if (option.getLongOpt().equals("jmxservice")) {
+                    } else if (option.getLongOpt().equals("export")) {
                         return 15;
-                    } else {
+                    } else if (option.getLongOpt().equals("restore")) {
                         return 16;
+                    } else if (option.getLongOpt().equals("jmxservice")) {
+                        return 17;
+                    } else {
+                        return 18;
                     }
                 }
 
@@ -371,11 +423,14 @@ public class Main {
      *
      * @param node
      *            the node name of the Erlang VM to connect to
+     * @param statsPort
+     *            port to serve the client statistics as text on (<tt>-1</tt>
+     *            to only export them via JMX)
      * @param verbose
      *            whether verbose information should be printed in case of
      *            connection failures
      */
-    private static void startJmxService(final String node, final boolean verbose) {
+    private static void startJmxService(final String node, final int statsPort, final boolean verbose) {
         try {
             final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
             final ObjectName nodeMonitorName = new ObjectName("de.zib.scalaris:type=MonitorNode");
@@ -384,6 +439,13 @@ public class Main {
             final de.zib.scalaris.jmx.MonitorService serviceMonitorMbean = new de.zib.scalaris.jmx.MonitorService(node);
             mbs.registerMBean(nodeMonitorMbean, nodeMonitorName);
             mbs.registerMBean(serviceMonitorMbean, serviceMonitorName);
+            final ObjectName clientStatsName = new ObjectName("de.zib.scalaris:type=ClientStats");
+            mbs.registerMBean(new de.zib.scalaris.jmx.ClientStats(), clientStatsName);
+            if (statsPort >= 0) {
+                new de.zib.scalaris.jmx.ClientStatsTextEndpoint(
+                        ClientMetrics.getInstance(),
+                        new InetSocketAddress(statsPort)).start();
+            }
             System.out.println("Waiting forever...");
             Thread.sleep(Long.MAX_VALUE);
         } catch (final InterruptedException e) {
@@ -400,6 +462,178 @@ public class Main {
             throw new RuntimeException(e);
         } catch (final NotCompliantMBeanException e) {
             throw new RuntimeException(e);
+        } catch (final IOException e) {
+            printException("starting the statistics endpoint failed", e, verbose, 1);
+        }
+    }
+
+    /**
+     * Checks whether the arguments of the <tt>--minibench</tt> option denote a
+     * workload (instead of the number of operations of the mini benchmarks).
+     *
+     * @param optionValues
+     *            the arguments of the option
+     *
+     * @return <tt>true</tt> if the first argument is a workload name
+     */
+    private static boolean isWorkload(final String[] optionValues) {
+        if (optionValues == null || optionValues.length == 0) {
+            return false;
+        }
+        try {
+            Integer.parseInt(optionValues[0]);
+            return false;
+        } catch (final NumberFormatException e) {
+            return !optionValues[0].equals("all");
+        }
+    }
+
+    /**
+     * Runs a workload with the {@link LoadGenerator} using 10 threads per
+     * Scalaris node and prints the results.
+     *
+     * @param optionValues
+     *            <tt>&lt;workload&gt; &lt;[ops/s]&gt; &lt;[seconds]&gt;
+     *            &lt;[text|json|csv]&gt;</tt>
+     * @param verbose
+     *            specifies whether to include the stack trace of exceptions
+     */
+    private static void runWorkload(final String[] optionValues, final boolean verbose) {
+        final Workload workload;
+        final String format;
+        try {
+            workload = Workload.ycsb(optionValues[0]);
+            if (optionValues.length >= 2) {
+                workload.setTargetRate(Double.parseDouble(optionValues[1]));
+            }
+            if (optionValues.length >= 3) {
+                workload.setDurationMillis(Long.parseLong(optionValues[2]) * 1000);
+            }
+            format = (optionValues.length >= 4) ? optionValues[3] : "text";
+            if (!format.equals("text") && !format.equals("json") && !format.equals("csv")) {
+                throw new IllegalArgumentException("unknown output format: " + format);
+            }
+        } catch (final IllegalArgumentException e) {
+            printException("Parsing failed", new ParseException(
+                    "wrong parameter for option minibench (" + e.getMessage() + ")"), verbose);
+            return;
+        }
+
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        final List<PeerNode> nodes = cf.getNodes();
+        // set a connection policy that goes through the available nodes in a round-robin fashion:
+        cf.setConnectionPolicy(new RoundRobinConnectionPolicy(nodes));
+        workload.setThreads(nodes.size() * 10);
+        try {
+            final LoadResult result = new LoadGenerator(workload).run();
+            if (format.equals("json")) {
+                System.out.println(result.toJson());
+            } else if (format.equals("csv")) {
+                System.out.print(result.toCsv());
+            } else {
+                System.out.print(result);
+            }
+        } catch (final ConnectionException e) {
+            printException("workload failed with connection error", e, verbose);
+        } catch (final InterruptedException e) {
+            System.out.println("workload interrupted");
+        }
+    }
+
+    /**
+     * Exports the items with the given keys to a snapshot file and prints the
+     * number of exported items.
+     *
+     * @param optionValues
+     *            <tt>&lt;file&gt; &lt;[keyfile]&gt;</tt>
+     * @param verbose
+     *            specifies whether to include the stack trace of exceptions
+     */
+    private static void exportSnapshot(final String[] optionValues, final boolean verbose) {
+        final File file = new File(optionValues[0]);
+        try {
+            final BufferedReader keys = new BufferedReader(new InputStreamReader(
+                    (optionValues.length >= 2) ? new FileInputStream(optionValues[1]) : System.in,
+                    "UTF-8"));
+            final Iterator<String> keyIterator = new Iterator<String>() {
+                private String next = readNext();
+
+                private String readNext() {
+                    try {
+                        String key;
+                        do {
+                            key = keys.readLine();
+                        } while (key != null && key.isEmpty());
+                        return key;
+                    } catch (final IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                public String next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    final String result = next;
+                    next = readNext();
+                    return result;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+            final Connection connection = ConnectionFactory.getInstance().createConnection();
+            try {
+                final long count = Snapshot.export(connection, keyIterator, file);
+                System.out.println("export(" + file + "): " + count + " items");
+            } finally {
+                connection.close();
+                keys.close();
+            }
+        } catch (final ConnectionException e) {
+            printException("export failed with connection error", e, verbose);
+        } catch (final TimeoutException e) {
+            printException("export failed with timeout", e, verbose);
+        } catch (final UnknownException e) {
+            printException("export failed with unknown error", e, verbose);
+        } catch (final IOException e) {
+            printException("export failed with I/O error", e, verbose, 1);
+        }
+    }
+
+    /**
+     * Writes all items of a snapshot file and prints the number of written
+     * and failed items.
+     *
+     * @param fileName
+     *            the snapshot file
+     * @param pipelines
+     *            the number of parallel write pipelines
+     * @param verbose
+     *            specifies whether to include the stack trace of exceptions
+     */
+    private static void restoreSnapshot(final String fileName, final int pipelines,
+            final boolean verbose) {
+        final ConnectionPool pool = new ConnectionPool(ConnectionFactory.getInstance(), pipelines);
+        final BulkWriter writer = new BulkWriter(pool, pipelines);
+        try {
+            final Snapshot snapshot = Snapshot.open(new File(fileName));
+            snapshot.restore(writer, pipelines);
+            writer.close();
+            System.out.println("restore(" + fileName + "): "
+                    + writer.getWritten() + " written, "
+                    + writer.getFailed() + " failed");
+        } catch (final IOException e) {
+            printException("restore failed with I/O error", e, verbose, 1);
+        } catch (final InterruptedException e) {
+            System.out.println("restore interrupted");
+        } finally {
+            pool.closeAll();
         }
     }
 
@@ -475,15 +709,27 @@ public class Main {
         delete.setOptionalArg(true);
         group.addOption(delete);
 
-        final Option bench = new Option("b", "minibench", true, "run selected mini benchmark(s) [1|...|18|all] (default: all benchmarks, 500 operations, 10 threads per Scalaris node)");
+        final Option bench = new Option("b", "minibench", true, "run selected mini benchmark(s) [1|...|18|all] (default: all benchmarks, 500 operations, 10 threads per Scalaris node) or a workload [a|b|c|d|f|mixed] <[ops/s]> <[seconds]> <[text|json|csv]> (default: closed loop, 30s, text)");
         bench.setArgName("[ops]> <[tpn]> <[benchs]");
         bench.setArgs(20);
         bench.setOptionalArg(true);
         group.addOption(bench);
 
-        final Option jmx = new Option("jmx", "jmxservice", true, "starts a service exposing Scalaris monitoring values via JMX");
-        jmx.setArgName("node");
-        jmx.setArgs(1);
+        final Option export = new Option(null, "export", true, "export the items with the keys in <keyfile> (one per line, default: stdin) to a snapshot file");
+        export.setArgName("file> <[keyfile]");
+        export.setArgs(2);
+        export.setOptionalArg(true);
+        group.addOption(export);
+
+        final Option restore = new Option(null, "restore", true, "write all items of a snapshot file (default: 4 parallel pipelines)");
+        restore.setArgName("file> <[pipelines]");
+        restore.setArgs(2);
+        restore.setOptionalArg(true);
+        group.addOption(restore);
+
+        final Option jmx = new Option("jmx", "jmxservice", true, "starts a service exposing Scalaris monitoring values and client statistics via JMX (and optionally the client statistics as text via HTTP on the given port)");
+        jmx.setArgName("node> <[port]");
+        jmx.setArgs(2);
         jmx.setOptionalArg(true);
         group.addOption(jmx);
 
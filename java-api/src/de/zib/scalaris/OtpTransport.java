@@ -0,0 +1,79 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.io.IOException;
+
+import com.ericsson.otp.erlang.OtpAuthException;
+import com.ericsson.otp.erlang.OtpConnection;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpSelf;
+
+/**
+ * Sends RPCs via Erlang distribution using an {@link OtpConnection} (the
+ * default transport).
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class OtpTransport implements Transport {
+    /**
+     * Creates {@link OtpTransport} objects.
+     */
+    public static final TransportFactory FACTORY = new TransportFactory() {
+        public Transport connect(final OtpSelf self, final PeerNode remote)
+                throws IOException, OtpAuthException {
+            return new OtpTransport(self.connect(remote.getNode()));
+        }
+    };
+
+    private final OtpConnection connection;
+
+    /**
+     * Creates a transport using the given (connected) OTP connection.
+     *
+     * @param connection
+     *            the connection to use
+     */
+    public OtpTransport(final OtpConnection connection) {
+        this.connection = connection;
+    }
+
+    public void sendRPC(final String mod, final String fun, final OtpErlangList args)
+            throws IOException {
+        connection.sendRPC(mod, fun, args);
+    }
+
+    public OtpErlangObject receiveRPC() throws IOException, OtpErlangExit,
+            OtpAuthException {
+        return connection.receiveRPC();
+    }
+
+    public void close() {
+        connection.close();
+    }
+
+    /**
+     * Gets the encapsulated OTP connection object.
+     *
+     * @return the connection object
+     */
+    public OtpConnection getConnection() {
+        return connection;
+    }
+}
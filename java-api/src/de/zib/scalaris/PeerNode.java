@@ -17,6 +17,7 @@ package de.zib.scalaris;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.ericsson.otp.erlang.OtpPeer;
 
@@ -24,7 +25,12 @@ import com.ericsson.otp.erlang.OtpPeer;
  * Wrapper class to the {@link OtpPeer} class, adding some additional
  * information.
  *
+ * The connection statistics are stored without locks (volatile fields and an
+ * atomic counter). Compound updates, e.g. re-sorting nodes by their failure
+ * dates, are coordinated by the {@link ConnectionPolicy}.
+ *
  * @author Nico Kruber, kruber@zib.de
+ * @version 3.18
  */
 public class PeerNode {
     /**
@@ -34,17 +40,17 @@ public class PeerNode {
     /**
      * Date of the last failed connection.
      */
-    private Date lastFailedConnection = null;
+    private volatile Date lastFailedConnection = null;
 
     /**
      * Total number of connection failures.
      */
-    private int failureCount = 0;
+    private final AtomicInteger failureCount = new AtomicInteger(0);
 
     /**
      * Date of the last successful connection attempt.
      */
-    private Date lastConnectSuccess = null;
+    private volatile Date lastConnectSuccess = null;
 
     /**
      * Creates a new object using the given node.
@@ -86,9 +92,9 @@ public class PeerNode {
      * Note: Only call this from a connection policy since it might set up
      * additional data structures based on this time.
      */
-    synchronized void setLastFailedConnect() {
+    void setLastFailedConnect() {
         lastFailedConnection = new Date();
-        ++failureCount;
+        failureCount.incrementAndGet();
     }
 
     /**
@@ -96,7 +102,7 @@ public class PeerNode {
      *
      * @return the date of the last connection failure (or {@code null})
      */
-    synchronized public Date getLastFailedConnect() {
+    public Date getLastFailedConnect() {
         return lastFailedConnection;
     }
 
@@ -109,7 +115,7 @@ public class PeerNode {
      * @return the number of failed connections (dates and times)
      */
     public int getFailureCount() {
-        return failureCount;
+        return failureCount.get();
     }
 
     /**
@@ -118,8 +124,8 @@ public class PeerNode {
      * Note: Only call this from a connection policy since it might set up
      * additional data structures based on this time.
      */
-    synchronized void resetFailureCount() {
-        failureCount = 0;
+    void resetFailureCount() {
+        failureCount.set(0);
         lastFailedConnection = null;
     }
 
@@ -128,7 +134,7 @@ public class PeerNode {
      *
      * @return the last connection success
      */
-    synchronized public Date getLastConnectSuccess() {
+    public Date getLastConnectSuccess() {
         return lastConnectSuccess;
     }
 
@@ -138,7 +144,7 @@ public class PeerNode {
      * Note: Only call this from a connection policy since it might set up
      * additional data structures based on this time.
      */
-    synchronized void setLastConnectSuccess() {
+    void setLastConnectSuccess() {
         this.lastConnectSuccess = new Date();
     }
 
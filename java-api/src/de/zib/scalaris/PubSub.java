@@ -15,6 +15,10 @@
  */
 package de.zib.scalaris;
 
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangBinary;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangString;
@@ -46,6 +50,29 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
  *
  * <p>For the full example, see {@link de.zib.scalaris.examples.PubSubPublishExample}</p>
  *
+ * <h3>Publishing many events</h3>
+ *
+ * Each call to {@link #publish(String, String)} waits for its RPC to finish.
+ * For higher throughput, events can either be bundled into a single RPC with
+ * {@link #publishBatch(String, List)} (delivered in the given order) or be
+ * pipelined with {@link #publishAsync(String, String)} which only waits if
+ * the number of outstanding RPCs exceeds {@link #getMaxInFlight()}. Pipelined
+ * events are processed concurrently by the Scalaris node, i.e. their order is
+ * not preserved. Outstanding events are waited for by {@link #flush()} and
+ * before any other operation on this object.
+ *
+ * <pre>
+ * <code style="white-space:pre;">
+ *   PubSub sc = new PubSub();
+ *   sc.setBinaryPayloads(true);       // {@link #setBinaryPayloads(boolean)}
+ *   sc.publishBatch(topic, contents); // {@link #publishBatch(String, List)}
+ *   for (String content : contents) {
+ *     sc.publishAsync(topic, content); // {@link #publishAsync(String, String)}
+ *   }
+ *   sc.flush();                       // {@link #flush()}
+ * </code>
+ * </pre>
+ *
  * <h3>Subscribing to topics</h3>
  * <pre>
  * <code style="white-space:pre;">
@@ -109,15 +136,44 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
  * number of automatic retries is adjustable (default: 3).
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.4
+ * @version 3.18
  * @since 2.5
  */
 public class PubSub {
+    /**
+     * Default maximum number of outstanding RPCs of
+     * {@link #publishAsync(String, String)}.
+     *
+     * @since 3.18
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
     /**
      * Connection to a TransactionSingleOp node.
      */
     private final Connection connection;
 
+    /**
+     * Whether to send string contents as (UTF-8 encoded) binaries.
+     */
+    private boolean binaryPayloads = false;
+
+    /**
+     * Maximum number of outstanding asynchronous publish RPCs.
+     */
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Number of outstanding asynchronous publish RPCs.
+     */
+    private int inFlight = 0;
+
+    /**
+     * The transport the outstanding RPCs have been sent with (the results of
+     * these RPCs are lost if the connection is re-established).
+     */
+    private Transport inFlightConnection = null;
+
     /**
      * Constructor, uses the default connection returned by
      * {@link ConnectionFactory#createConnection()}.
@@ -139,6 +195,100 @@ public class PubSub {
         connection = conn;
     }
 
+    // /////////////////////////////
+    // payload options
+    // /////////////////////////////
+
+    /**
+     * Sets whether to send string contents as (UTF-8 encoded) Erlang binaries
+     * instead of character lists. Binaries are considerably more compact to
+     * encode, transfer and store in the Scalaris node. Subscribers receive the
+     * content as a binary (mailboxes, see {@link PubSubMailbox}) or as a
+     * string of its bytes (JSON-RPC).
+     *
+     * @param binaryPayloads
+     *            <tt>true</tt> to send binaries, <tt>false</tt> (default) to
+     *            send character lists
+     *
+     * @since 3.18
+     */
+    public void setBinaryPayloads(final boolean binaryPayloads) {
+        this.binaryPayloads = binaryPayloads;
+    }
+
+    /**
+     * Gets whether string contents are sent as (UTF-8 encoded) Erlang
+     * binaries.
+     *
+     * @return <tt>true</tt> if binaries are sent
+     *
+     * @since 3.18
+     */
+    public boolean isBinaryPayloads() {
+        return binaryPayloads;
+    }
+
+    /**
+     * Sets the maximum number of outstanding RPCs of
+     * {@link #publishAsync(String, String)}.
+     *
+     * @param maxInFlight
+     *            the maximum number of outstanding RPCs (at least 1)
+     *
+     * @since 3.18
+     */
+    public void setMaxInFlight(final int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Gets the maximum number of outstanding RPCs of
+     * {@link #publishAsync(String, String)}.
+     *
+     * @return the maximum number of outstanding RPCs
+     *
+     * @since 3.18
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Gets the number of outstanding RPCs of
+     * {@link #publishAsync(String, String)}.
+     *
+     * @return the number of RPCs whose result has not been received yet
+     *
+     * @since 3.18
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Converts a string content to the configured payload type.
+     *
+     * @param content
+     *            the content to publish
+     *
+     * @return an Erlang string or binary
+     */
+    private OtpErlangObject toPayload(final String content) {
+        if (binaryPayloads) {
+            try {
+                return new OtpErlangBinary(content.getBytes("UTF-8"));
+            } catch (final UnsupportedEncodingException e) {
+                // should not occur (UTF-8 is always supported)
+                throw new UnknownException(e);
+            }
+        } else {
+            return new OtpErlangString(content);
+        }
+    }
+
     // /////////////////////////////
     // publish methods
     // /////////////////////////////
@@ -149,7 +299,7 @@ public class PubSub {
      * @param topic
      *            the topic to publish the content under
      * @param content
-     *            the content to publish
+     *            the content to publish (a string or binary)
      *
      * @throws ConnectionException
      *             if the connection is not active or a communication error
@@ -158,8 +308,9 @@ public class PubSub {
      * @throws UnknownException
      *             if any other error occurs
      */
-    public void publish(final OtpErlangString topic, final OtpErlangString content)
+    private void publish(final OtpErlangString topic, final OtpErlangObject content)
             throws ConnectionException, UnknownException {
+        flush();
         /*
          * possible return values:
          *  {ok}
@@ -186,9 +337,262 @@ public class PubSub {
      * @throws UnknownException
      *             if any other error occurs
      */
+    public void publish(final OtpErlangString topic, final OtpErlangString content)
+            throws ConnectionException, UnknownException {
+        publish(topic, (OtpErlangObject) content);
+    }
+
+    /**
+     * Publishes an event under a given <tt>topic</tt>.
+     *
+     * @param topic
+     *            the topic to publish the content under
+     * @param content
+     *            the content to publish
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @see #setBinaryPayloads(boolean)
+     */
     public void publish(final String topic, final String content)
             throws ConnectionException, UnknownException {
-        publish(new OtpErlangString(topic), new OtpErlangString(content));
+        publish(new OtpErlangString(topic), toPayload(content));
+    }
+
+    /**
+     * Publishes a binary event under a given <tt>topic</tt>.
+     *
+     * @param topic
+     *            the topic to publish the content under
+     * @param content
+     *            the content to publish
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     */
+    public void publish(final String topic, final byte[] content)
+            throws ConnectionException, UnknownException {
+        publish(new OtpErlangString(topic), new OtpErlangBinary(content));
+    }
+
+    /**
+     * Publishes a list of events under a given <tt>topic</tt> with a single
+     * RPC. The subscribers are notified in the order of the list.
+     *
+     * @param topic
+     *            the topic to publish the contents under
+     * @param contents
+     *            the contents to publish (a list of strings or binaries)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     */
+    public void publishBatch(final OtpErlangString topic, final OtpErlangList contents)
+            throws ConnectionException, UnknownException {
+        flush();
+        /*
+         * possible return values:
+         *  {ok}
+         */
+        final OtpErlangObject received_raw = connection.doRPC("api_pubsub", "publish_list",
+                new OtpErlangObject[] { topic, contents });
+        if (!received_raw.equals(CommonErlangObjects.okTupleAtom)) {
+            throw new UnknownException(received_raw);
+        }
+    }
+
+    /**
+     * Publishes a list of events under a given <tt>topic</tt> with a single
+     * RPC. The subscribers are notified in the order of the list.
+     *
+     * @param topic
+     *            the topic to publish the contents under
+     * @param contents
+     *            the contents to publish
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @see #setBinaryPayloads(boolean)
+     * @since 3.18
+     */
+    public void publishBatch(final String topic, final List<String> contents)
+            throws ConnectionException, UnknownException {
+        final OtpErlangObject[] payloads = new OtpErlangObject[contents.size()];
+        int i = 0;
+        for (final String content : contents) {
+            payloads[i++] = toPayload(content);
+        }
+        publishBatch(new OtpErlangString(topic), new OtpErlangList(payloads));
+    }
+
+    /**
+     * Publishes an event under a given <tt>topic</tt> without waiting for the
+     * result, unless there are already {@link #getMaxInFlight()} outstanding
+     * RPCs in which case the oldest result is waited for first.
+     *
+     * @param topic
+     *            the topic to publish the content under
+     * @param content
+     *            the content to publish (a string or binary)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if a previous asynchronous publish failed
+     */
+    private void publishAsync(final OtpErlangString topic, final OtpErlangObject content)
+            throws ConnectionException, UnknownException {
+        while (inFlight >= maxInFlight) {
+            receivePublishResult();
+        }
+        connection.sendRPC("api_pubsub", "publish",
+                new OtpErlangObject[] { topic, content });
+        if (connection.getTransport() != inFlightConnection) {
+            // re-connected: results of previous RPCs will never arrive
+            inFlightConnection = connection.getTransport();
+            inFlight = 0;
+        }
+        ++inFlight;
+    }
+
+    /**
+     * Publishes an event under a given <tt>topic</tt> without waiting for the
+     * result, unless there are already {@link #getMaxInFlight()} outstanding
+     * RPCs.
+     *
+     * Note: the order of asynchronously published events is not preserved.
+     * Errors may be reported by any later call on this object.
+     *
+     * @param topic
+     *            the topic to publish the content under
+     * @param content
+     *            the content to publish
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if a previous asynchronous publish failed
+     *
+     * @see #flush()
+     * @see #setBinaryPayloads(boolean)
+     * @since 3.18
+     */
+    public void publishAsync(final String topic, final String content)
+            throws ConnectionException, UnknownException {
+        publishAsync(new OtpErlangString(topic), toPayload(content));
+    }
+
+    /**
+     * Publishes a binary event under a given <tt>topic</tt> without waiting
+     * for the result, unless there are already {@link #getMaxInFlight()}
+     * outstanding RPCs.
+     *
+     * Note: the order of asynchronously published events is not preserved.
+     * Errors may be reported by any later call on this object.
+     *
+     * @param topic
+     *            the topic to publish the content under
+     * @param content
+     *            the content to publish
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if a previous asynchronous publish failed
+     *
+     * @see #flush()
+     * @since 3.18
+     */
+    public void publishAsync(final String topic, final byte[] content)
+            throws ConnectionException, UnknownException {
+        publishAsync(new OtpErlangString(topic), new OtpErlangBinary(content));
+    }
+
+    /**
+     * Waits for the results of all outstanding asynchronous publish RPCs.
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any of the publish RPCs failed
+     *
+     * @see #publishAsync(String, String)
+     * @since 3.18
+     */
+    public void flush() throws ConnectionException, UnknownException {
+        UnknownException error = null;
+        while (inFlight > 0) {
+            try {
+                receivePublishResult();
+            } catch (final UnknownException e) {
+                // wait for the remaining results before reporting the error
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Receives the result of an outstanding asynchronous publish RPC.
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if the publish RPC failed
+     */
+    private void receivePublishResult() throws ConnectionException, UnknownException {
+        if (connection.getTransport() != inFlightConnection) {
+            // re-connected: results of previous RPCs will never arrive
+            inFlight = 0;
+            return;
+        }
+        final OtpErlangObject received_raw;
+        try {
+            received_raw = connection.receiveRPC();
+        } catch (final ConnectionException e) {
+            inFlight = 0;
+            throw e;
+        }
+        --inFlight;
+        if (!received_raw.equals(CommonErlangObjects.okTupleAtom)) {
+            throw new UnknownException(received_raw);
+        }
     }
 
     // /////////////////////////////
@@ -217,6 +621,7 @@ public class PubSub {
      */
     public void subscribe(final OtpErlangString topic, final OtpErlangString url) throws ConnectionException,
             TimeoutException, AbortException, UnknownException {
+        flush();
         final OtpErlangObject received_raw = connection.doRPC("api_pubsub", "subscribe",
                 new OtpErlangObject[] { topic, url });
         CommonErlangObjects.processResult_commit(received_raw, false);
@@ -247,6 +652,37 @@ public class PubSub {
         subscribe(new OtpErlangString(topic), new OtpErlangString(url));
     }
 
+    /**
+     * Subscribes a mailbox in this JVM to a <tt>topic</tt>, i.e. published
+     * events are sent as Erlang messages to the mailbox instead of calling a
+     * JSON-RPC url. The mailbox is connected to the Scalaris node of this
+     * object's connection (see {@link PubSubMailbox#connect(String)}).
+     *
+     * @param topic
+     *            the topic to subscribe the mailbox to
+     * @param mailbox
+     *            the mailbox receiving the events
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write the value
+     * @throws AbortException
+     *             if the commit of the subscribe failed
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     */
+    public void subscribe(final String topic, final PubSubMailbox mailbox)
+            throws ConnectionException, TimeoutException, AbortException,
+            UnknownException {
+        mailbox.connect(connection.getRemote().getNode().node());
+        subscribe(topic, mailbox.getUrl());
+    }
+
     // /////////////////////////////
     // unsubscribe methods
     // /////////////////////////////
@@ -276,6 +712,7 @@ public class PubSub {
     public void unsubscribe(final OtpErlangString topic, final OtpErlangString url)
             throws ConnectionException, TimeoutException, NotFoundException,
             AbortException, UnknownException {
+        flush();
         final OtpErlangObject received_raw = connection.doRPC("api_pubsub", "unsubscribe",
                 new OtpErlangObject[] { topic, url });
         try {
@@ -333,6 +770,36 @@ public class PubSub {
         unsubscribe(new OtpErlangString(topic), new OtpErlangString(url));
     }
 
+    /**
+     * Unsubscribes a mailbox in this JVM from a <tt>topic</tt>.
+     *
+     * @param topic
+     *            the topic to unsubscribe the mailbox from
+     * @param mailbox
+     *            the subscribed mailbox
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write the value
+     * @throws NotFoundException
+     *             if the topic does not exist or the given mailbox is not
+     *             subscribed to the given topic
+     * @throws AbortException
+     *             if the commit of the subscribe failed
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     */
+    public void unsubscribe(final String topic, final PubSubMailbox mailbox)
+            throws ConnectionException, TimeoutException, NotFoundException,
+            AbortException, UnknownException {
+        unsubscribe(topic, mailbox.getUrl());
+    }
+
     // /////////////////////////////
     // get subscribers methods
     // /////////////////////////////
@@ -355,6 +822,7 @@ public class PubSub {
      */
     public ErlangValue getSubscribers(
             final OtpErlangString topic) throws ConnectionException, UnknownException {
+        flush();
         final OtpErlangObject received_raw = connection.doRPC("api_pubsub", "get_subscribers",
                 new OtpErlangList(topic));
         try {
@@ -392,9 +860,11 @@ public class PubSub {
      * Closes the transaction's connection to a scalaris node.
      *
      * Note: Subsequent calls to the other methods will throw
-     * {@link ConnectionException}s!
+     * {@link ConnectionException}s! Results of outstanding asynchronous
+     * publishes are not waited for (see {@link #flush()}).
      */
     public void closeConnection() {
+        inFlight = 0;
         connection.close();
     }
 }
@@ -0,0 +1,394 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+
+/**
+ * Receives pub/sub notifications directly in the client JVM, i.e. without
+ * running an HTTP server for JSON-RPC callbacks.
+ *
+ * <p>
+ * The mailbox creates a local OTP node with a registered {@link OtpMbox}
+ * whose address (see {@link #getUrl()}) can be subscribed to topics like
+ * any other URL. Scalaris then sends each published message as an Erlang
+ * message to this mailbox. Received notifications are buffered in a bounded
+ * queue which can either be consumed with {@link #take()} and
+ * {@link #poll(long, TimeUnit)} or by a {@link Listener} running in its own
+ * thread. If the queue is full, the receiving thread either drops the
+ * notification (see {@link #getDropped()}) or waits until the consumer
+ * catches up. Note that while waiting, further messages pile up in the
+ * (unbounded) mailbox of the local node, so waiting is only suitable for
+ * consumers which are known to keep up with short bursts - use the dropping
+ * mode (the default) whenever memory needs to be bounded.
+ * </p>
+ *
+ * <p>
+ * Scalaris only notifies mailboxes of nodes it already knows (it does not
+ * create atoms or connect to arbitrary nodes because of a subscription).
+ * {@link PubSub#subscribe(String, PubSubMailbox)} therefore connects the
+ * mailbox to the Scalaris node the subscription is made at. If messages are
+ * published through other Scalaris nodes, connect the mailbox to them, too
+ * (see {@link #connect(String)}).
+ * </p>
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * <code style="white-space:pre;">
+ *   PubSubMailbox mailbox = new PubSubMailbox(1000);
+ *   PubSub pubSub = new PubSub();
+ *   pubSub.subscribe("topic", mailbox);           // {@link PubSub#subscribe(String, PubSubMailbox)}
+ *   PubSubMailbox.Notification n = mailbox.take(); // {@link #take()}
+ *   pubSub.unsubscribe("topic", mailbox);
+ *   mailbox.close();                               // {@link #close()}
+ * </code>
+ * </pre>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class PubSubMailbox {
+    /**
+     * Prefix of URLs denoting an Erlang mailbox.
+     */
+    public static final String URL_PREFIX = "erlang://";
+
+    /**
+     * Atom tagging notification messages.
+     */
+    private static final OtpErlangAtom notifyAtom = new OtpErlangAtom("notify");
+
+    /**
+     * A message published for a topic.
+     */
+    public static class Notification {
+        private final String topic;
+        private final ErlangValue content;
+
+        /**
+         * Creates a new notification.
+         *
+         * @param topic
+         *            the topic the message was published for
+         * @param content
+         *            the published message
+         */
+        public Notification(final String topic, final ErlangValue content) {
+            this.topic = topic;
+            this.content = content;
+        }
+
+        /**
+         * @return the topic the message was published for
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * @return the published message (binaries are decoded as UTF-8)
+         */
+        public String getContent() {
+            if (content.value() instanceof OtpErlangBinary) {
+                try {
+                    return new String(content.binaryValue(), "UTF-8");
+                } catch (final UnsupportedEncodingException e) {
+                    // should not occur (UTF-8 is always supported)
+                    throw new UnknownException(e);
+                }
+            }
+            return content.stringValue();
+        }
+
+        /**
+         * @return the published message as it was received
+         */
+        public ErlangValue getValue() {
+            return content;
+        }
+    }
+
+    /**
+     * Receives notifications from a mailbox.
+     */
+    public static interface Listener {
+        /**
+         * Called for each received notification (from the mailbox's
+         * dispatcher thread).
+         *
+         * @param notification
+         *            the received notification
+         */
+        public abstract void onNotification(Notification notification);
+    }
+
+    private final OtpNode node;
+    private final OtpMbox mbox;
+    private final BlockingQueue<Notification> queue;
+    private final boolean dropWhenFull;
+    private final AtomicLong dropped = new AtomicLong(0);
+    private volatile boolean closed = false;
+    private final Thread receiver;
+    private Thread dispatcher = null;
+
+    /**
+     * Creates a new mailbox using the global connection factory which drops
+     * notifications if the queue is full.
+     *
+     * @param capacity
+     *            maximum number of buffered notifications
+     *
+     * @throws ConnectionException
+     *             if the local node cannot be created
+     */
+    public PubSubMailbox(final int capacity) throws ConnectionException {
+        this(ConnectionFactory.getInstance(), capacity, true);
+    }
+
+    /**
+     * Creates a new mailbox.
+     *
+     * @param cFactory
+     *            the connection factory to create the local node with
+     * @param capacity
+     *            maximum number of buffered notifications
+     * @param dropWhenFull
+     *            whether to drop notifications if the queue is full (instead
+     *            of waiting for the consumer which leaves further messages in
+     *            the unbounded mailbox of the local node)
+     *
+     * @throws ConnectionException
+     *             if the local node cannot be created
+     */
+    public PubSubMailbox(final ConnectionFactory cFactory, final int capacity,
+            final boolean dropWhenFull) throws ConnectionException {
+        this.node = cFactory.createNode();
+        this.mbox = node.createMbox("pubsub");
+        this.queue = new ArrayBlockingQueue<Notification>(capacity);
+        this.dropWhenFull = dropWhenFull;
+        this.receiver = new Thread(new Runnable() {
+            public void run() {
+                receiveLoop();
+            }
+        }, "scalaris-pubsub-" + node.node());
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Creates a new mailbox delivering all notifications to the given
+     * listener (in a separate dispatcher thread). Runtime exceptions thrown
+     * by the listener are reported to the dispatcher thread's uncaught
+     * exception handler and do not stop the delivery of further
+     * notifications.
+     *
+     * @param cFactory
+     *            the connection factory to create the local node with
+     * @param capacity
+     *            maximum number of buffered notifications
+     * @param dropWhenFull
+     *            whether to drop notifications if the queue is full (instead
+     *            of waiting for the listener which leaves further messages in
+     *            the unbounded mailbox of the local node)
+     * @param listener
+     *            the listener to notify
+     *
+     * @throws ConnectionException
+     *             if the local node cannot be created
+     */
+    public PubSubMailbox(final ConnectionFactory cFactory, final int capacity,
+            final boolean dropWhenFull, final Listener listener)
+            throws ConnectionException {
+        this(cFactory, capacity, dropWhenFull);
+        dispatcher = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (!closed) {
+                        final Notification n = queue.poll(500, TimeUnit.MILLISECONDS);
+                        if (n != null) {
+                            try {
+                                listener.onNotification(n);
+                            } catch (final RuntimeException e) {
+                                // report, but keep dispatching further notifications
+                                final Thread t = Thread.currentThread();
+                                t.getUncaughtExceptionHandler().uncaughtException(t, e);
+                            }
+                        }
+                    }
+                } catch (final InterruptedException e) {
+                    // closed
+                }
+            }
+        }, "scalaris-pubsub-dispatcher-" + node.node());
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private void receiveLoop() {
+        try {
+            while (!closed) {
+                final OtpErlangObject msg;
+                try {
+                    msg = mbox.receive(500);
+                } catch (final OtpErlangDecodeException e) {
+                    continue;
+                }
+                if (msg == null) {
+                    continue;
+                }
+                final Notification n = toNotification(msg);
+                if (n == null) {
+                    continue;
+                }
+                if (dropWhenFull) {
+                    if (!queue.offer(n)) {
+                        dropped.incrementAndGet();
+                    }
+                } else {
+                    while (!closed && !queue.offer(n, 500, TimeUnit.MILLISECONDS)) {
+                        // wait for the consumer
+                    }
+                }
+            }
+        } catch (final OtpErlangExit e) {
+            // mailbox closed
+        } catch (final InterruptedException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Converts a <tt>{notify, Topic, Content}</tt> message.
+     *
+     * @param msg
+     *            the received message
+     *
+     * @return the notification or <tt>null</tt> if the message is no
+     *         notification
+     */
+    private static Notification toNotification(final OtpErlangObject msg) {
+        try {
+            final OtpErlangTuple tuple = (OtpErlangTuple) msg;
+            if (tuple.arity() != 3 || !tuple.elementAt(0).equals(notifyAtom)) {
+                return null;
+            }
+            final String topic = new ErlangValue(tuple.elementAt(1)).stringValue();
+            return new Notification(topic, new ErlangValue(tuple.elementAt(2)));
+        } catch (final ClassCastException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the URL to subscribe this mailbox with, i.e.
+     * <tt>erlang://&lt;node&gt;/&lt;mailbox&gt;</tt>.
+     *
+     * @return the mailbox's URL
+     */
+    public String getUrl() {
+        return URL_PREFIX + node.node() + "/" + mbox.getName();
+    }
+
+    /**
+     * Connects the mailbox's node to the given Scalaris node so that this
+     * node is able to notify the mailbox.
+     *
+     * @param scalarisNode
+     *            the name of the Scalaris node, e.g. <tt>node1@localhost</tt>
+     *
+     * @return whether the connection was successful
+     */
+    public boolean connect(final String scalarisNode) {
+        return node.ping(scalarisNode, 2000);
+    }
+
+    /**
+     * Retrieves the next notification, waiting if necessary.
+     *
+     * @return the next notification
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public Notification take() throws InterruptedException {
+        return queue.take();
+    }
+
+    /**
+     * Retrieves the next notification, waiting up to the given time if
+     * necessary.
+     *
+     * @param timeout
+     *            how long to wait
+     * @param unit
+     *            the unit of <tt>timeout</tt>
+     *
+     * @return the next notification or <tt>null</tt> if the timeout elapsed
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public Notification poll(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Gets the number of buffered notifications.
+     *
+     * @return the queue size
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of notifications dropped because the queue was full.
+     *
+     * @return number of dropped notifications
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops receiving notifications and closes the local node.
+     *
+     * Note: this does not unsubscribe the mailbox from any topic.
+     */
+    public void close() {
+        closed = true;
+        receiver.interrupt();
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        mbox.close();
+        node.close();
+    }
+}
@@ -15,6 +15,19 @@
  */
 package de.zib.scalaris;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ericsson.otp.erlang.OtpAuthException;
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangInt;
 import com.ericsson.otp.erlang.OtpErlangList;
@@ -23,10 +36,11 @@ import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangRangeException;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpSelf;
 
 /**
- * Provides methods to delete all replicas of the given key
- * (from <code>api_rdht.erl</code>).
+ * Provides methods to delete all replicas of the given key and to read
+ * single replicas (from <code>api_rdht.erl</code>).
  *
  * <p>
  * Instances of this class can be generated using a given connection to a
@@ -49,6 +63,44 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
  * </code>
  * </pre>
  *
+ * <h3>Deleting many values</h3>
+ *
+ * {@link #deleteAll(Collection)} pipelines the deletes, i.e. it sends up to
+ * {@link #getMaxInFlight()} RPCs before waiting for their results, and
+ * spreads the keys over {@link #getConnections()} connections to nodes
+ * selected by the connection policy of this object's connection. The replica
+ * states of all keys are aggregated into a single {@link DeleteResult}.
+ *
+ * <pre>
+ * <code style="white-space:pre;">
+ *   Collection&lt;String&gt; keys;
+ *
+ *   ReplicatedDHT sc = new ReplicatedDHT();
+ *   sc.setConnections(4);              // {@link #setConnections(int)}
+ *   result = sc.deleteAll(keys);       // {@link #deleteAll(Collection)}
+ * </code>
+ * </pre>
+ *
+ * <h3>Reading (possibly outdated) values</h3>
+ *
+ * {@link #readStale(String)} asks a single, randomly chosen replica instead
+ * of a majority of the replicas and thus reduces latency and server load for
+ * data which tolerates outdated values. A lower bound for the version of the
+ * returned value can be given with {@link #readStale(String, long)}: replicas
+ * with older versions are skipped and if none of the replicas is recent
+ * enough, a quorum read is used instead.
+ *
+ * <pre>
+ * <code style="white-space:pre;">
+ *   ErlangValue value;
+ *   long version;
+ *
+ *   value = sc.readStale(key);                  // {@link #readStale(String)}
+ *   version = sc.getLastReadVersion();          // {@link #getLastReadVersion()}
+ *   value = sc.readStale(key, version);         // {@link #readStale(String, long)}
+ * </code>
+ * </pre>
+ *
  * <h3>Connection errors</h3>
  *
  * Errors when setting up connections or trying to send/receive RPCs will be
@@ -59,10 +111,18 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
  * number of automatic retries is adjustable (default: 3).
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.4
+ * @version 3.18
  * @since 2.6
  */
 public class ReplicatedDHT {
+    /**
+     * Default maximum number of outstanding delete RPCs per connection
+     * during a bulk delete.
+     *
+     * @since 3.18
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
     /**
      * Stores the result list returned by erlang during a delete operation.
      *
@@ -70,6 +130,13 @@ public class ReplicatedDHT {
      */
     private OtpErlangList lastDeleteResult = null;
 
+    /**
+     * Stores the version of the value returned by the last stale read.
+     *
+     * @see #readStale(String)
+     */
+    private long lastReadVersion = -1;
+
     /**
      * Connection to a TransactionSingleOp node.
      */
@@ -96,6 +163,80 @@ public class ReplicatedDHT {
         connection = conn;
     }
 
+    /**
+     * Maximum number of outstanding delete RPCs per connection during a bulk
+     * delete.
+     */
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Number of connections a bulk delete is spread over.
+     */
+    private int connections = 1;
+
+    /**
+     * Suffix of the node name of the next additional bulk delete connection.
+     */
+    private static final AtomicLong bulkConnectionId = new AtomicLong(0);
+
+    private static final OtpErlangAtom outdatedAtom = new OtpErlangAtom("outdated");
+
+    /**
+     * Sets the maximum number of outstanding delete RPCs per connection
+     * during a bulk delete.
+     *
+     * @param maxInFlight
+     *            the maximum number of outstanding RPCs (at least 1)
+     *
+     * @since 3.18
+     */
+    public void setMaxInFlight(final int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Gets the maximum number of outstanding delete RPCs per connection
+     * during a bulk delete.
+     *
+     * @return the maximum number of outstanding RPCs
+     *
+     * @since 3.18
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets the number of connections a bulk delete is spread over. Besides
+     * this object's connection, <tt>connections - 1</tt> connections are
+     * opened for each bulk delete.
+     *
+     * @param connections
+     *            the number of connections (at least 1)
+     *
+     * @since 3.18
+     */
+    public void setConnections(final int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be at least 1");
+        }
+        this.connections = connections;
+    }
+
+    /**
+     * Gets the number of connections a bulk delete is spread over.
+     *
+     * @return the number of connections
+     *
+     * @since 3.18
+     */
+    public int getConnections() {
+        return connections;
+    }
+
     // /////////////////////////////
     // delete methods
     // /////////////////////////////
@@ -249,6 +390,380 @@ public class ReplicatedDHT {
         return delete(new OtpErlangString(key), timeout);
     }
 
+    /**
+     * Tries to delete all replicas of the given <tt>keys</tt> with a timeout
+     * of 2000ms per key.
+     *
+     * @param keys
+     *            the keys to delete
+     *
+     * @return the aggregated replica states
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     *
+     * @see #deleteAll(Collection, int)
+     */
+    public DeleteResult deleteAll(final Collection<String> keys)
+            throws ConnectionException, UnknownException {
+        return deleteAll(keys, 2000);
+    }
+
+    /**
+     * Tries to delete all replicas of the given <tt>keys</tt>. The deletes
+     * are pipelined with up to {@link #getMaxInFlight()} outstanding RPCs on
+     * each of the {@link #getConnections()} connections.
+     *
+     * Keys whose delete timed out or whose result was lost because a
+     * connection was re-established are counted in
+     * {@link DeleteResult#failed} (a timed out delete may have succeeded on
+     * some replicas though).
+     *
+     * WARNING: This function can lead to inconsistent data (e.g. deleted items
+     * can re-appear). Also when re-creating an item the version before the
+     * delete can re-appear.
+     *
+     * @param keys
+     *            the keys to delete
+     * @param timeout
+     *            the time (in milliseconds) to wait for the results of each
+     *            key
+     *
+     * @return the aggregated replica states
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     */
+    public DeleteResult deleteAll(final Collection<String> keys, final int timeout)
+            throws ConnectionException, UnknownException {
+        final int parts = Math.max(1, Math.min(connections, keys.size()));
+        if (parts == 1) {
+            return deleteAll(connection, keys, timeout);
+        }
+        // distribute the keys round-robin
+        final List<List<String>> partKeys = new ArrayList<List<String>>(parts);
+        for (int i = 0; i < parts; ++i) {
+            partKeys.add(new ArrayList<String>(keys.size() / parts + 1));
+        }
+        int i = 0;
+        for (final String key : keys) {
+            partKeys.get(i++ % parts).add(key);
+        }
+
+        final List<Connection> extraConnections = new ArrayList<Connection>(parts - 1);
+        final ExecutorService executor = Executors.newFixedThreadPool(parts - 1);
+        try {
+            final List<Future<DeleteResult>> futures = new ArrayList<Future<DeleteResult>>(parts - 1);
+            for (int part = 1; part < parts; ++part) {
+                final Connection conn;
+                try {
+                    // each connection needs its own node name since a node
+                    // only keeps one connection to another node
+                    final OtpSelf self = connection.getSelf();
+                    conn = new Connection(new OtpSelf(self.alive() + "_bulk_"
+                            + bulkConnectionId.getAndIncrement() + "@" + self.host(),
+                            self.cookie()), connection.connectionPolicy,
+                            connection.transportFactory);
+                } catch (final OtpAuthException e) {
+                    throw new ConnectionException(e);
+                } catch (final IOException e) {
+                    throw new ConnectionException(e);
+                }
+                extraConnections.add(conn);
+                final List<String> myKeys = partKeys.get(part);
+                futures.add(executor.submit(new Callable<DeleteResult>() {
+                    public DeleteResult call() throws ConnectionException, UnknownException {
+                        return deleteAll(conn, myKeys, timeout);
+                    }
+                }));
+            }
+            final DeleteResult result = deleteAll(connection, partKeys.get(0), timeout);
+            for (final Future<DeleteResult> future : futures) {
+                try {
+                    result.add(future.get());
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof ConnectionException) {
+                        throw (ConnectionException) e.getCause();
+                    } else if (e.getCause() instanceof UnknownException) {
+                        throw (UnknownException) e.getCause();
+                    }
+                    throw new UnknownException(e.getCause());
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UnknownException(e);
+                }
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+            for (final Connection conn : extraConnections) {
+                conn.close();
+            }
+        }
+    }
+
+    /**
+     * Tries to delete all replicas of the keys in the range
+     * <tt>[from, to)</tt> of the given sorted key set with a timeout of
+     * 2000ms per key.
+     *
+     * Note: Scalaris only stores the hashes of the keys, i.e. the keys in the
+     * range cannot be determined from the stored items.
+     *
+     * @param keys
+     *            all known keys
+     * @param from
+     *            the lowest key to delete (inclusive)
+     * @param to
+     *            the highest key to delete (exclusive)
+     *
+     * @return the aggregated replica states
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     *
+     * @see #deleteAll(Collection, int)
+     */
+    public DeleteResult deleteRange(final SortedSet<String> keys, final String from,
+            final String to) throws ConnectionException, UnknownException {
+        return deleteAll(keys.subSet(from, to), 2000);
+    }
+
+    /**
+     * Deletes the given keys using pipelined RPCs on a single connection.
+     */
+    private DeleteResult deleteAll(final Connection conn, final Collection<String> keys,
+            final int timeout) throws ConnectionException, UnknownException {
+        final DeleteResult result = new DeleteResult();
+        final OtpErlangInt otpTimeout = new OtpErlangInt(timeout);
+        Transport inFlightConnection = conn.getTransport();
+        int inFlight = 0;
+        UnknownException error = null;
+        for (final String key : keys) {
+            if (inFlight >= maxInFlight) {
+                error = receiveDeleteResult(conn, result, error);
+                --inFlight;
+            }
+            conn.sendRPC("api_rdht", "delete",
+                    new OtpErlangObject[] { new OtpErlangString(key), otpTimeout });
+            if (conn.getTransport() != inFlightConnection) {
+                // re-connected: results of previous RPCs will never arrive
+                inFlightConnection = conn.getTransport();
+                result.failed += inFlight;
+                inFlight = 0;
+            }
+            ++inFlight;
+        }
+        while (inFlight > 0) {
+            error = receiveDeleteResult(conn, result, error);
+            --inFlight;
+        }
+        if (error != null) {
+            throw error;
+        }
+        return result;
+    }
+
+    /**
+     * Receives the result of an outstanding delete RPC and adds it to the
+     * given result.
+     *
+     * @return the first error that occurred (<tt>error</tt> or the error of
+     *         this RPC)
+     */
+    private static UnknownException receiveDeleteResult(final Connection conn,
+            final DeleteResult result, final UnknownException error)
+            throws ConnectionException {
+        final OtpErlangObject received_raw = conn.receiveRPC();
+        try {
+            final OtpErlangTuple received = (OtpErlangTuple) received_raw;
+            final OtpErlangAtom state = (OtpErlangAtom) received.elementAt(0);
+            if (state.equals(CommonErlangObjects.okAtom) && (received.arity() == 3)) {
+                result.add((OtpErlangList) received.elementAt(2));
+                return error;
+            } else if (state.equals(CommonErlangObjects.failAtom) && (received.arity() == 4)
+                    && received.elementAt(1).equals(CommonErlangObjects.timeoutAtom)) {
+                result.add((OtpErlangList) received.elementAt(3));
+                ++result.failed;
+                return error;
+            }
+            return (error != null) ? error : new UnknownException(received_raw);
+        } catch (final ClassCastException e) {
+            // e.printStackTrace();
+            return (error != null) ? error : new UnknownException(e, received_raw);
+        } catch (final UnknownException e) {
+            return (error != null) ? error : new UnknownException(e, received_raw);
+        }
+    }
+
+    // /////////////////////////////
+    // read methods
+    // /////////////////////////////
+
+    /**
+     * Reads the value of the given <tt>key</tt> from a single replica with a
+     * timeout of 2000ms per replica. The value may be outdated.
+     *
+     * @param key
+     *            the key to look up
+     *
+     * @return the value stored under the given <tt>key</tt> at the replica
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if none of the replicas replied in time
+     * @throws NotFoundException
+     *             if the requested key does not exist at the replicas
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     *
+     * @see #readStale(String, long, int)
+     */
+    public ErlangValue readStale(final String key) throws ConnectionException,
+            TimeoutException, NotFoundException, UnknownException {
+        return readStale(key, 0, 2000);
+    }
+
+    /**
+     * Reads the value of the given <tt>key</tt> with at least the given
+     * version from a single replica with a timeout of 2000ms per replica.
+     *
+     * @param key
+     *            the key to look up
+     * @param minVersion
+     *            the minimum version of the value (e.g. the last version
+     *            read by this client for monotonic reads)
+     *
+     * @return the value stored under the given <tt>key</tt>
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if none of the replicas replied in time
+     * @throws NotFoundException
+     *             if the requested key does not exist
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     *
+     * @see #readStale(String, long, int)
+     */
+    public ErlangValue readStale(final String key, final long minVersion)
+            throws ConnectionException, TimeoutException, NotFoundException,
+            UnknownException {
+        return readStale(key, minVersion, 2000);
+    }
+
+    /**
+     * Reads the value of the given <tt>key</tt> from a single, randomly
+     * chosen replica without a quorum. If the replica's version is lower
+     * than <tt>minVersion</tt> or it does not reply in time, the next
+     * replica is asked. If no replica stores a value with at least
+     * <tt>minVersion</tt>, the value is read with a quorum read
+     * ({@link TransactionSingleOp#read(String)}).
+     *
+     * WARNING: Without a (sufficient) <tt>minVersion</tt>, the returned value
+     * may be outdated.
+     *
+     * @param key
+     *            the key to look up
+     * @param minVersion
+     *            the minimum version of the value (<tt>0</tt> for no bound)
+     * @param timeout
+     *            the time (in milliseconds) to wait for each replica
+     *
+     * @return the value stored under the given <tt>key</tt>
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if none of the replicas replied in time
+     * @throws NotFoundException
+     *             if the requested key does not exist
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @since 3.18
+     *
+     * @see #getLastReadVersion()
+     */
+    public ErlangValue readStale(final String key, final long minVersion,
+            final int timeout) throws ConnectionException, TimeoutException,
+            NotFoundException, UnknownException {
+        lastReadVersion = -1;
+        final OtpErlangObject received_raw = connection.doRPC("api_rdht", "read_stale",
+                new OtpErlangObject[] { new OtpErlangString(key),
+                        new OtpErlangLong(minVersion), new OtpErlangInt(timeout) });
+        try {
+            final OtpErlangTuple received = (OtpErlangTuple) received_raw;
+            final OtpErlangAtom state = (OtpErlangAtom) received.elementAt(0);
+
+            /*
+             * possible return values:
+             *  - {ok, Value, Version::non_neg_integer()}
+             *  - {fail, not_found | timeout | outdated}
+             */
+            if (state.equals(CommonErlangObjects.okAtom) && (received.arity() == 3)) {
+                lastReadVersion = ((OtpErlangLong) received.elementAt(2)).longValue();
+                return new ErlangValue(received.elementAt(1));
+            } else if (state.equals(CommonErlangObjects.failAtom) && (received.arity() == 2)) {
+                final OtpErlangObject reason = received.elementAt(1);
+                if (reason.equals(CommonErlangObjects.notFoundAtom)) {
+                    throw new NotFoundException(received_raw);
+                } else if (reason.equals(CommonErlangObjects.timeoutAtom)) {
+                    throw new TimeoutException(received_raw);
+                } else if (reason.equals(outdatedAtom)) {
+                    return new TransactionSingleOp(connection).read(key);
+                }
+            }
+            throw new UnknownException(received_raw);
+        } catch (final ClassCastException e) {
+            // e.printStackTrace();
+            throw new UnknownException(e, received_raw);
+        }
+    }
+
+    /**
+     * Returns the version of the value returned by the last call to
+     * {@link #readStale(String)} or <tt>-1</tt> if it failed or fell back
+     * to a quorum read.
+     *
+     * @return the version of the last stale read
+     *
+     * @since 3.18
+     */
+    public long getLastReadVersion() {
+        return lastReadVersion;
+    }
+
     /**
      * Returns the result of the last call to {@link #delete(String)}.
      *
@@ -25,7 +25,7 @@ import java.util.List;
  *
  * @author Nico Kruber, kruber@zib.de
  *
- * @version 3.5
+ * @version 3.18
  * @since 3.5
  *
  * @see DefaultConnectionPolicy
@@ -38,8 +38,6 @@ public class RoundRobinConnectionPolicy extends DefaultConnectionPolicy {
      *
      * Provided for convenience.
      *
-     * Attention: This method also synchronises on the node.
-     *
      * @param remoteNode the (only) available remote node
      */
     public RoundRobinConnectionPolicy(final PeerNode remoteNode) {
@@ -64,10 +62,11 @@ public class RoundRobinConnectionPolicy extends DefaultConnectionPolicy {
     }
 
     /**
-     * Selects a good node in a round-robin fashion.
+     * Selects a good node in a round-robin fashion (the caller holds
+     * {@link #lock}).
      */
     @Override
-    protected synchronized PeerNode getGoodNode() {
+    protected PeerNode getGoodNode() {
         if (goodNodes.size() == 1) {
             return goodNodes.get(0);
         } else {
@@ -0,0 +1,195 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+import de.zib.scalaris.operations.AddOnNrOp;
+
+/**
+ * An integer counter whose value is distributed among several buckets (see
+ * {@link AbstractShardedValue}) so that concurrent increments do not
+ * conflict with each other.
+ *
+ * <p>
+ * Each increment adds to a random bucket, reads sum up all buckets which
+ * are gathered in a single request list.
+ * </p>
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * <code style="white-space:pre;">
+ *   ShardedCounter counter = new ShardedCounter(
+ *       ConnectionFactory.getInstance().createConnection(), "pages:count", 10);
+ *   counter.add(1);                   // {@link #add(long)}
+ *   BigInteger count = counter.get(); // {@link #get()}
+ * </code>
+ * </pre>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class ShardedCounter extends AbstractShardedValue {
+    private BigInteger toAdd = null;
+
+    /**
+     * Creates a new sharded counter.
+     *
+     * @param conn
+     *            connection to use for the operations
+     * @param key
+     *            the (base) key of the counter
+     * @param defaultBuckets
+     *            number of buckets to assume if no bucket count has been
+     *            stored yet
+     */
+    public ShardedCounter(final Connection conn, final String key,
+            final int defaultBuckets) {
+        super(conn, key, defaultBuckets, BucketSelection.RANDOM);
+    }
+
+    /**
+     * Adds the given value to the counter.
+     *
+     * @param value
+     *            the value to add (may be negative)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write the value
+     * @throws NotANumberException
+     *             if a bucket contains a value which is no number
+     * @throws AbortException
+     *             if the commit failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void add(final long value) throws ConnectionException,
+            TimeoutException, NotANumberException, AbortException,
+            UnknownException {
+        add(BigInteger.valueOf(value));
+    }
+
+    /**
+     * Adds the given value to the counter.
+     *
+     * @param value
+     *            the value to add (may be negative)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write the value
+     * @throws NotANumberException
+     *             if a bucket contains a value which is no number
+     * @throws AbortException
+     *             if the commit failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void add(final BigInteger value) throws ConnectionException,
+            TimeoutException, NotANumberException, AbortException,
+            UnknownException {
+        toAdd = value;
+        try {
+            modify();
+        } catch (final NotAListException e) {
+            // should not occur (we do not modify lists)
+            throw new UnknownException(e);
+        } finally {
+            toAdd = null;
+        }
+    }
+
+    /**
+     * Reads the counter, i.e. the sum of all buckets.
+     *
+     * @return the counter value (<tt>0</tt> if none of the buckets exists)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch the value
+     * @throws AbortException
+     *             if the read failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public BigInteger get() throws ConnectionException, TimeoutException,
+            AbortException, UnknownException {
+        return sum(readBuckets());
+    }
+
+    @Override
+    protected void addModifyRequests(final Transaction.RequestList req,
+            final int buckets) {
+        req.addOp(new AddOnNrOp(getBucketKey(selectBucket(null, buckets), buckets), toAdd));
+    }
+
+    @Override
+    protected void processModifyResults(final Transaction.ResultList results,
+            final int firstOp) throws TimeoutException, NotANumberException,
+            UnknownException {
+        results.processAddOnNrAt(firstOp);
+    }
+
+    @Override
+    protected List<OtpErlangObject> redistribute(
+            final List<ErlangValue> oldValues, final int newBuckets)
+            throws UnknownException {
+        final List<OtpErlangObject> result = new ArrayList<OtpErlangObject>(newBuckets);
+        result.add(new OtpErlangLong(sum(oldValues)));
+        for (int i = 1; i < newBuckets; ++i) {
+            result.add(emptyValue());
+        }
+        return result;
+    }
+
+    @Override
+    protected OtpErlangObject emptyValue() {
+        return new OtpErlangLong(0);
+    }
+
+    private static BigInteger sum(final List<ErlangValue> values)
+            throws UnknownException {
+        BigInteger sum = BigInteger.ZERO;
+        for (final ErlangValue bucket : values) {
+            if (bucket != null) {
+                try {
+                    sum = sum.add(bucket.bigIntValue());
+                } catch (final ClassCastException e) {
+                    throw new UnknownException(e, bucket.value());
+                }
+            }
+        }
+        return sum;
+    }
+}
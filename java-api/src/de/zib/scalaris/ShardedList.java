@@ -0,0 +1,340 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+import de.zib.scalaris.operations.AddDelOnListOp;
+
+/**
+ * A list whose elements are distributed among several buckets (see
+ * {@link AbstractShardedValue}) so that concurrent appends do not conflict
+ * with each other.
+ *
+ * <p>
+ * Appends and removals modify only the buckets the elements belong to,
+ * reads gather all buckets in a single request list. The order of the
+ * elements is thus not preserved if more than one bucket is used.
+ * </p>
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * <code style="white-space:pre;">
+ *   ShardedList&lt;String&gt; list = new ShardedList&lt;String&gt;(
+ *       ConnectionFactory.getInstance().createConnection(), "pages", 10,
+ *       BucketSelection.RANDOM, ShardedList.STRING_CONVERTER);
+ *   list.add("Main Page");      // {@link #add(Object)}
+ *   List&lt;String&gt; pages = list.get(); // {@link #get()}
+ *   list.reshard(20);           // {@link #reshard(int)}
+ * </code>
+ * </pre>
+ *
+ * @param <T>
+ *            the type of the list elements
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class ShardedList<T> extends AbstractShardedValue {
+    /**
+     * Converts list elements to {@link String} objects.
+     */
+    public static final ErlangValue.ListElementConverter<String> STRING_CONVERTER = new ErlangValue.ListElementConverter<String>() {
+        public String convert(final int i, final ErlangValue v) {
+            return v.stringValue();
+        }
+    };
+
+    /**
+     * Converts list elements to {@link Long} objects.
+     */
+    public static final ErlangValue.ListElementConverter<Long> LONG_CONVERTER = new ErlangValue.ListElementConverter<Long>() {
+        public Long convert(final int i, final ErlangValue v) {
+            return v.longValue();
+        }
+    };
+
+    /**
+     * Converts the elements read from Scalaris to <tt>T</tt>.
+     */
+    protected final ErlangValue.ListElementConverter<T> converter;
+
+    private List<T> toAdd = null;
+    private List<T> toRemove = null;
+    private int modifyOps = 0;
+
+    /**
+     * Creates a new sharded list.
+     *
+     * @param conn
+     *            connection to use for the operations
+     * @param key
+     *            the (base) key of the list
+     * @param defaultBuckets
+     *            number of buckets to assume if no bucket count has been
+     *            stored yet
+     * @param bucketSelection
+     *            strategy to select a bucket for a new element
+     * @param converter
+     *            converts the elements read from Scalaris to <tt>T</tt>
+     */
+    public ShardedList(final Connection conn, final String key,
+            final int defaultBuckets, final BucketSelection bucketSelection,
+            final ErlangValue.ListElementConverter<T> converter) {
+        super(conn, key, defaultBuckets, bucketSelection);
+        this.converter = converter;
+    }
+
+    /**
+     * Appends the given element to the list.
+     *
+     * @param value
+     *            the element to add
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write the value
+     * @throws NotAListException
+     *             if a bucket contains a value which is no list
+     * @throws AbortException
+     *             if the commit failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    @SuppressWarnings("unchecked")
+    public void add(final T value) throws ConnectionException,
+            TimeoutException, NotAListException, AbortException,
+            UnknownException {
+        addDel(Arrays.asList(value), new ArrayList<T>(0));
+    }
+
+    /**
+     * Appends the given elements to the list.
+     *
+     * @param values
+     *            the elements to add
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write the value
+     * @throws NotAListException
+     *             if a bucket contains a value which is no list
+     * @throws AbortException
+     *             if the commit failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void addAll(final List<T> values) throws ConnectionException,
+            TimeoutException, NotAListException, AbortException,
+            UnknownException {
+        addDel(values, new ArrayList<T>(0));
+    }
+
+    /**
+     * Removes the given elements from the list.
+     *
+     * With {@link AbstractShardedValue.BucketSelection#HASH}, only the
+     * elements' buckets are modified, otherwise all buckets are.
+     *
+     * @param values
+     *            the elements to remove
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write the value
+     * @throws NotAListException
+     *             if a bucket contains a value which is no list
+     * @throws AbortException
+     *             if the commit failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void removeAll(final List<T> values) throws ConnectionException,
+            TimeoutException, NotAListException, AbortException,
+            UnknownException {
+        addDel(new ArrayList<T>(0), values);
+    }
+
+    /**
+     * Adds and removes the given elements in a single transaction.
+     *
+     * @param toAdd
+     *            the elements to add
+     * @param toRemove
+     *            the elements to remove
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to write the value
+     * @throws NotAListException
+     *             if a bucket contains a value which is no list
+     * @throws AbortException
+     *             if the commit failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void addDel(final List<T> toAdd, final List<T> toRemove)
+            throws ConnectionException, TimeoutException, NotAListException,
+            AbortException, UnknownException {
+        this.toAdd = toAdd;
+        this.toRemove = toRemove;
+        try {
+            modify();
+        } catch (final NotANumberException e) {
+            // should not occur (we do not modify numbers)
+            throw new UnknownException(e);
+        } finally {
+            this.toAdd = null;
+            this.toRemove = null;
+        }
+    }
+
+    /**
+     * Reads the elements of all buckets.
+     *
+     * @return the list (empty if none of the buckets exists)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if a timeout occurred while trying to fetch the value
+     * @throws AbortException
+     *             if the read failed {@link #maxRetries} times due to
+     *             concurrent modifications
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public List<T> get() throws ConnectionException, TimeoutException,
+            AbortException, UnknownException {
+        final List<T> result = new ArrayList<T>();
+        for (final ErlangValue bucket : readBuckets()) {
+            if (bucket != null) {
+                try {
+                    result.addAll(bucket.listValue(converter));
+                } catch (final ClassCastException e) {
+                    throw new UnknownException(e, bucket.value());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected void addModifyRequests(final Transaction.RequestList req,
+            final int buckets) {
+        final List<List<T>> add = newBucketLists(buckets);
+        final List<List<T>> remove = newBucketLists(buckets);
+        for (final T value : toAdd) {
+            add.get(selectBucket(value, buckets)).add(value);
+        }
+        for (final T value : toRemove) {
+            if (bucketSelection == BucketSelection.HASH) {
+                remove.get(selectBucket(value, buckets)).add(value);
+            } else {
+                for (final List<T> bucket : remove) {
+                    bucket.add(value);
+                }
+            }
+        }
+        modifyOps = 0;
+        for (int i = 0; i < buckets; ++i) {
+            if (!add.get(i).isEmpty() || !remove.get(i).isEmpty()) {
+                req.addOp(new AddDelOnListOp(getBucketKey(i, buckets), add.get(i), remove.get(i)));
+                ++modifyOps;
+            }
+        }
+    }
+
+    @Override
+    protected void processModifyResults(final Transaction.ResultList results,
+            final int firstOp) throws TimeoutException, NotAListException,
+            UnknownException {
+        for (int i = firstOp; i < firstOp + modifyOps; ++i) {
+            results.processAddDelOnListAt(i);
+        }
+    }
+
+    @Override
+    protected List<OtpErlangObject> redistribute(
+            final List<ErlangValue> oldValues, final int newBuckets)
+            throws UnknownException {
+        final List<List<OtpErlangObject>> newLists = new ArrayList<List<OtpErlangObject>>(newBuckets);
+        for (int i = 0; i < newBuckets; ++i) {
+            newLists.add(new ArrayList<OtpErlangObject>());
+        }
+        for (final ErlangValue bucket : oldValues) {
+            if (bucket == null) {
+                continue;
+            }
+            try {
+                final List<ErlangValue> elements = bucket.listValue();
+                for (int i = 0; i < elements.size(); ++i) {
+                    final ErlangValue element = elements.get(i);
+                    final int newBucket;
+                    if (bucketSelection == BucketSelection.HASH) {
+                        newBucket = selectBucket(converter.convert(i, element), newBuckets);
+                    } else {
+                        newBucket = selectBucket(null, newBuckets);
+                    }
+                    newLists.get(newBucket).add(element.value());
+                }
+            } catch (final ClassCastException e) {
+                throw new UnknownException(e, bucket.value());
+            }
+        }
+        final List<OtpErlangObject> result = new ArrayList<OtpErlangObject>(newBuckets);
+        for (final List<OtpErlangObject> list : newLists) {
+            result.add(new OtpErlangList(list.toArray(new OtpErlangObject[list.size()])));
+        }
+        return result;
+    }
+
+    @Override
+    protected OtpErlangObject emptyValue() {
+        return new OtpErlangList();
+    }
+
+    private List<List<T>> newBucketLists(final int buckets) {
+        final List<List<T>> lists = new ArrayList<List<T>>(buckets);
+        for (int i = 0; i < buckets; ++i) {
+            lists.add(new ArrayList<T>());
+        }
+        return lists;
+    }
+}
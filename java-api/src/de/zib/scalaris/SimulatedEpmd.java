@@ -0,0 +1,239 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A minimal Erlang port mapper (EPMD) serving the node registrations and
+ * look-ups of JInterface nodes inside this JVM so that a
+ * {@link SimulatedNode} can be used without an Erlang installation.
+ *
+ * Only the requests used by JInterface are supported (<tt>ALIVE2</tt>,
+ * <tt>PORT_PLEASE2</tt> and <tt>NAMES</tt>). A registration is removed when
+ * the registering connection is closed. The simulated port mapper only
+ * listens on the loopback interface.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+class SimulatedEpmd {
+    private static final int ALIVE2_REQ = 120;
+    private static final int ALIVE2_RESP = 121;
+    private static final int PORT_PLEASE2_REQ = 122;
+    private static final int PORT2_RESP = 119;
+    private static final int NAMES_REQ = 110;
+
+    private static SimulatedEpmd instance = null;
+
+    /**
+     * A registered node.
+     */
+    private static final class Registration {
+        final int port;
+        final int nodeType;
+        final int protocol;
+        final int highestVersion;
+        final int lowestVersion;
+
+        Registration(final int port, final int nodeType, final int protocol,
+                final int highestVersion, final int lowestVersion) {
+            this.port = port;
+            this.nodeType = nodeType;
+            this.protocol = protocol;
+            this.highestVersion = highestVersion;
+            this.lowestVersion = lowestVersion;
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final ConcurrentMap<String, Registration> nodes = new ConcurrentHashMap<String, Registration>();
+    private int creation = 1;
+
+    private SimulatedEpmd(final int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        final Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                acceptLoop();
+            }
+        }, "scalaris-sim-epmd");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Gets the port JInterface uses to contact the port mapper.
+     *
+     * @return the value of <tt>ERL_EPMD_PORT</tt> or <tt>4369</tt>
+     */
+    static int getEpmdPort() {
+        final String port = System.getenv("ERL_EPMD_PORT");
+        if (port != null) {
+            try {
+                return Integer.parseInt(port);
+            } catch (final NumberFormatException e) {
+                // use the default port
+            }
+        }
+        return 4369;
+    }
+
+    /**
+     * Makes sure a port mapper is reachable, i.e. starts a simulated one in
+     * this JVM if no (real) EPMD is running.
+     *
+     * @throws IOException
+     *             if the port mapper's port is not accessible
+     */
+    static synchronized void ensureRunning() throws IOException {
+        if (instance != null) {
+            return;
+        }
+        final int port = getEpmdPort();
+        try {
+            new Socket(InetAddress.getLoopbackAddress(), port).close();
+            // some port mapper is running
+            return;
+        } catch (final IOException e) {
+            instance = new SimulatedEpmd(port);
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                final Thread handler = new Thread(new Runnable() {
+                    public void run() {
+                        handle(socket);
+                    }
+                }, "scalaris-sim-epmd-conn");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (final IOException e) {
+                // socket closed or temporary error
+            }
+        }
+    }
+
+    private static String readName(final DataInputStream in, final int length)
+            throws IOException {
+        final byte[] name = new byte[length];
+        in.readFully(name);
+        return new String(name, "ISO-8859-1");
+    }
+
+    private void handle(final Socket socket) {
+        String registered = null;
+        Registration registration = null;
+        try {
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            // JInterface expects each response in a single packet
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            final int length = in.readUnsignedShort();
+            final int request = in.readUnsignedByte();
+            switch (request) {
+                case ALIVE2_REQ: {
+                    final int port = in.readUnsignedShort();
+                    final int nodeType = in.readUnsignedByte();
+                    final int protocol = in.readUnsignedByte();
+                    final int highestVersion = in.readUnsignedShort();
+                    final int lowestVersion = in.readUnsignedShort();
+                    final String name = readName(in, in.readUnsignedShort());
+                    in.skipBytes(in.readUnsignedShort()); // extra
+                    // newer registrations replace older ones (e.g. after a
+                    // restart whose old connection was not closed yet)
+                    registration = new Registration(port, nodeType, protocol,
+                            highestVersion, lowestVersion);
+                    nodes.put(name, registration);
+                    registered = name;
+                    final int nodeCreation;
+                    synchronized (this) {
+                        nodeCreation = creation;
+                        creation = (creation % 3) + 1;
+                    }
+                    out.writeByte(ALIVE2_RESP);
+                    out.writeByte(0);
+                    out.writeShort(nodeCreation);
+                    out.flush();
+                    // the registration lasts as long as the connection
+                    final InputStream is = socket.getInputStream();
+                    while (is.read() >= 0) {
+                        // ignore
+                    }
+                    break;
+                }
+                case PORT_PLEASE2_REQ: {
+                    final String name = readName(in, length - 1);
+                    final Registration reg = nodes.get(name);
+                    out.writeByte(PORT2_RESP);
+                    if (reg == null) {
+                        out.writeByte(1);
+                    } else {
+                        out.writeByte(0);
+                        out.writeShort(reg.port);
+                        out.writeByte(reg.nodeType);
+                        out.writeByte(reg.protocol);
+                        out.writeShort(reg.highestVersion);
+                        out.writeShort(reg.lowestVersion);
+                        final byte[] nameBytes = name.getBytes("ISO-8859-1");
+                        out.writeShort(nameBytes.length);
+                        out.write(nameBytes);
+                        out.writeShort(0);
+                    }
+                    out.flush();
+                    break;
+                }
+                case NAMES_REQ: {
+                    out.writeInt(serverSocket.getLocalPort());
+                    for (final Entry<String, Registration> node : nodes.entrySet()) {
+                        out.write(("name " + node.getKey() + " at port "
+                                + node.getValue().port + "\n").getBytes("ISO-8859-1"));
+                    }
+                    out.flush();
+                    break;
+                }
+                default:
+                    break;
+            }
+        } catch (final IOException e) {
+            // connection closed
+        } finally {
+            if (registered != null) {
+                nodes.remove(registered, registration);
+            }
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                // ignore
+            }
+        }
+    }
+}
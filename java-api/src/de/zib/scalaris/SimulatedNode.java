@@ -0,0 +1,1232 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangBoolean;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangException;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * An in-process stand-in for a Scalaris node which serves the RPCs of this
+ * API from an in-memory map. It allows measuring the client's own overhead,
+ * connection pooling and fail-over without a running Scalaris ring.
+ *
+ * <p>
+ * The node registers itself as <tt>&lt;name&gt;@&lt;localhost&gt;</tt> and
+ * answers the calls of {@link Connection#doRPC(String, String, OtpErlangObject[])}
+ * to:
+ * <ul>
+ * <li><tt>api_tx</tt> / <tt>api_txc</tt>: <tt>req_list/1,2</tt> and
+ * <tt>req_list_commit_each/1</tt> (optimistic transactions validated against
+ * per-key versions on commit),</li>
+ * <li><tt>api_pubsub</tt>: subscriptions are stored like any other value,
+ * notifications are only delivered to <tt>erlang://</tt> URLs (see
+ * {@link PubSubMailbox}),</li>
+ * <li><tt>api_rdht</tt>: <tt>delete/1,2</tt> (with {@link #REPLICAS}
+ * replicas per key) and <tt>read_stale/2,3</tt> (replicas are never
+ * outdated),</li>
+ * <li><tt>api_vm</tt>: a simulated list of DHT nodes.</li>
+ * </ul>
+ * If no port mapper (EPMD) is running, a minimal one is started inside this
+ * JVM.
+ * </p>
+ *
+ * Latency, aborted commits, timed out operations and crashes can be injected
+ * with a configurable probability; use {@link #setSeed(long)} for
+ * reproducible runs.
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * <code style="white-space:pre;">
+ *   SimulatedNode sim = new SimulatedNode("sim1");
+ *   sim.setLatency(200);                    // 200us per call
+ *   sim.start();
+ *   ConnectionFactory cf = new ConnectionFactory();
+ *   cf.setNode(sim.getNodeName());
+ *   TransactionSingleOp tx = new TransactionSingleOp(cf.createConnection());
+ *   tx.write("key", "value");
+ *   ...
+ *   sim.stop();
+ * </code>
+ * </pre>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class SimulatedNode {
+    /**
+     * The version string reported by <tt>api_vm:get_version/0</tt>.
+     */
+    public static final String VERSION = "simulated";
+    /**
+     * Number of replicas reported by deletes.
+     */
+    public static final int REPLICAS = 4;
+
+    private static final OtpErlangAtom rexAtom = new OtpErlangAtom("rex");
+    private static final OtpErlangAtom callAtom = new OtpErlangAtom("call");
+    private static final OtpErlangAtom badrpcAtom = new OtpErlangAtom("badrpc");
+    private static final OtpErlangAtom exitAtom = new OtpErlangAtom("EXIT");
+    private static final OtpErlangAtom undefAtom = new OtpErlangAtom("undef");
+    private static final OtpErlangAtom badargAtom = new OtpErlangAtom("badarg");
+    private static final OtpErlangAtom tlogAtom = new OtpErlangAtom("sim_tlog");
+    private static final OtpErlangAtom notifyAtom = new OtpErlangAtom("notify");
+    private static final OtpErlangAtom notANumberAtom = new OtpErlangAtom("not_a_number");
+    private static final OtpErlangAtom notAListAtom = new OtpErlangAtom("not_a_list");
+    private static final OtpErlangAtom keyChangedAtom = new OtpErlangAtom("key_changed");
+    private static final OtpErlangAtom outdatedAtom = new OtpErlangAtom("outdated");
+    private static final OtpErlangTuple failTimeout = new OtpErlangTuple(new OtpErlangObject[] {
+            CommonErlangObjects.failAtom, CommonErlangObjects.timeoutAtom });
+    private static final OtpErlangTuple failNotFound = new OtpErlangTuple(new OtpErlangObject[] {
+            CommonErlangObjects.failAtom, CommonErlangObjects.notFoundAtom });
+    private static final OtpErlangTuple failNotANumber = new OtpErlangTuple(new OtpErlangObject[] {
+            CommonErlangObjects.failAtom, notANumberAtom });
+    private static final OtpErlangTuple failNotAList = new OtpErlangTuple(new OtpErlangObject[] {
+            CommonErlangObjects.failAtom, notAListAtom });
+
+    /**
+     * A stored value and its version (incremented with each committed
+     * write).
+     */
+    private static final class Item {
+        final long version;
+        final OtpErlangObject value;
+
+        Item(final long version, final OtpErlangObject value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Transaction log entry of a single key.
+     */
+    private static final class TLogEntry {
+        final OtpErlangString key;
+        /**
+         * version of the item read at first access (<tt>-1</tt> if it did not
+         * exist)
+         */
+        final long version;
+        /**
+         * the current value in the transaction (<tt>null</tt> if it does not
+         * exist)
+         */
+        OtpErlangObject value;
+        boolean dirty = false;
+        boolean failed = false;
+
+        TLogEntry(final OtpErlangString key, final long version,
+                final OtpErlangObject value) {
+            this.key = key;
+            this.version = version;
+            this.value = value;
+        }
+
+        /**
+         * Converts the entry to <tt>{sim_tlog, Key, Version, {Value} | {},
+         * Dirty, Failed}</tt>.
+         */
+        OtpErlangTuple toErlang() {
+            return new OtpErlangTuple(new OtpErlangObject[] {
+                    tlogAtom, key, new OtpErlangLong(version),
+                    value == null ? new OtpErlangTuple(new OtpErlangObject[0])
+                            : new OtpErlangTuple(value),
+                    new OtpErlangBoolean(dirty), new OtpErlangBoolean(failed) });
+        }
+
+        static TLogEntry fromErlang(final OtpErlangObject object)
+                throws OtpErlangException, ClassCastException {
+            final OtpErlangTuple tuple = (OtpErlangTuple) object;
+            if (tuple.arity() != 6 || !tuple.elementAt(0).equals(tlogAtom)) {
+                throw new ClassCastException("invalid tlog entry: " + object);
+            }
+            final OtpErlangTuple value = (OtpErlangTuple) tuple.elementAt(3);
+            final TLogEntry entry = new TLogEntry(
+                    ErlangValue.otpObjectToOtpString(tuple.elementAt(1)),
+                    ((OtpErlangLong) tuple.elementAt(2)).longValue(),
+                    value.arity() == 0 ? null : value.elementAt(0));
+            entry.dirty = ((OtpErlangAtom) tuple.elementAt(4)).booleanValue();
+            entry.failed = ((OtpErlangAtom) tuple.elementAt(5)).booleanValue();
+            return entry;
+        }
+    }
+
+    private final String name;
+    private final String cookie;
+    private final long startTime = System.currentTimeMillis();
+    private final HashMap<String, Item> store = new HashMap<String, Item>();
+    private final List<String> dhtNodes = new ArrayList<String>();
+    private int nextDhtNode = 1;
+    private final Random random = new Random();
+    private final AtomicLong calls = new AtomicLong(0);
+    private final AtomicLong aborts = new AtomicLong(0);
+    private final AtomicLong crashes = new AtomicLong(0);
+
+    private volatile long latencyNanos = 0;
+    private volatile long latencyJitterNanos = 0;
+    private volatile double abortRate = 0.0;
+    private volatile double timeoutRate = 0.0;
+    private volatile double failureRate = 0.0;
+
+    private OtpNode node = null;
+    private volatile OtpMbox mbox = null;
+    private ExecutorService workers = null;
+
+    /**
+     * Creates a simulated node using the cookie of the global connection
+     * factory. The node needs to be {@link #start()}ed.
+     *
+     * @param name
+     *            the name of the node (without the host)
+     */
+    public SimulatedNode(final String name) {
+        this(name, ConnectionFactory.getInstance().getCookie());
+    }
+
+    /**
+     * Creates a simulated node. The node needs to be {@link #start()}ed.
+     *
+     * @param name
+     *            the name of the node (without the host)
+     * @param cookie
+     *            the cookie clients need to use
+     */
+    public SimulatedNode(final String name, final String cookie) {
+        this.name = name;
+        this.cookie = cookie;
+        setNumberOfNodes(1);
+    }
+
+    /**
+     * Gets the name clients need to connect to, e.g. with
+     * {@link ConnectionFactory#setNode(String)}.
+     *
+     * @return <tt>&lt;name&gt;@&lt;localhost&gt;</tt>
+     */
+    public String getNodeName() {
+        return name + "@" + ConnectionFactory.getLocalhostName();
+    }
+
+    /**
+     * Starts the node (if not started yet). Data stored before a
+     * {@link #stop()} is still available.
+     *
+     * @throws IOException
+     *             if the node or the port mapper cannot be started
+     */
+    public synchronized void start() throws IOException {
+        if (node != null) {
+            return;
+        }
+        SimulatedEpmd.ensureRunning();
+        // a previous instance may still be registered at the port mapper
+        IOException error = null;
+        for (int i = 0; i < 50; ++i) {
+            try {
+                node = new OtpNode(getNodeName(), cookie);
+                break;
+            } catch (final IOException e) {
+                error = e;
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException e1) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (node == null) {
+            throw error;
+        }
+        final OtpMbox rex = node.createMbox("rex");
+        final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private int counter = 0;
+            public synchronized Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "scalaris-sim-" + name + "-" + (++counter));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mbox = rex;
+        workers = executor;
+        final Thread receiver = new Thread(new Runnable() {
+            public void run() {
+                receiveLoop(rex, executor);
+            }
+        }, "scalaris-sim-" + name);
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Stops the node, i.e. closes all client connections. The stored data is
+     * kept for a later {@link #start()}.
+     */
+    public synchronized void stop() {
+        if (node == null) {
+            return;
+        }
+        mbox = null;
+        workers.shutdownNow();
+        node.close();
+        node = null;
+        workers = null;
+    }
+
+    /**
+     * Stops and starts the node again, e.g. to test the fail-over of a
+     * {@link ConnectionPolicy}.
+     *
+     * @throws IOException
+     *             if the node cannot be started
+     */
+    public synchronized void restart() throws IOException {
+        stop();
+        start();
+    }
+
+    /**
+     * @return whether the node is started
+     */
+    public synchronized boolean isRunning() {
+        return node != null;
+    }
+
+    /**
+     * Removes all stored data.
+     */
+    public void clear() {
+        synchronized (store) {
+            store.clear();
+        }
+    }
+
+    /**
+     * Sets the latency added to each call.
+     *
+     * @param micros
+     *            latency in microseconds
+     */
+    public void setLatency(final long micros) {
+        this.latencyNanos = micros * 1000L;
+    }
+
+    /**
+     * @return the latency added to each call (in microseconds)
+     */
+    public long getLatency() {
+        return latencyNanos / 1000L;
+    }
+
+    /**
+     * Sets the maximum random latency added to each call on top of
+     * {@link #getLatency()} (uniformly distributed).
+     *
+     * @param micros
+     *            maximum jitter in microseconds
+     */
+    public void setLatencyJitter(final long micros) {
+        this.latencyJitterNanos = micros * 1000L;
+    }
+
+    /**
+     * @return the maximum random latency added to each call (in
+     *         microseconds)
+     */
+    public long getLatencyJitter() {
+        return latencyJitterNanos / 1000L;
+    }
+
+    /**
+     * Sets the probability of a commit being aborted (in addition to aborts
+     * caused by concurrent modifications).
+     *
+     * @param abortRate
+     *            probability between <tt>0</tt> and <tt>1</tt>
+     */
+    public void setAbortRate(final double abortRate) {
+        this.abortRate = abortRate;
+    }
+
+    /**
+     * @return the probability of a commit being aborted
+     */
+    public double getAbortRate() {
+        return abortRate;
+    }
+
+    /**
+     * Sets the probability of a single operation (other than a commit)
+     * returning <tt>{fail, timeout}</tt>. A transaction containing such an
+     * operation cannot be committed.
+     *
+     * @param timeoutRate
+     *            probability between <tt>0</tt> and <tt>1</tt>
+     */
+    public void setTimeoutRate(final double timeoutRate) {
+        this.timeoutRate = timeoutRate;
+    }
+
+    /**
+     * @return the probability of an operation timing out
+     */
+    public double getTimeoutRate() {
+        return timeoutRate;
+    }
+
+    /**
+     * Sets the probability of a call crashing the node: the call is not
+     * answered and the node is restarted, closing all connections.
+     *
+     * @param failureRate
+     *            probability between <tt>0</tt> and <tt>1</tt>
+     */
+    public void setFailureRate(final double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * @return the probability of a call crashing the node
+     */
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    /**
+     * Seeds the random number generator used for injecting latency jitter
+     * and failures.
+     *
+     * @param seed
+     *            the seed
+     */
+    public void setSeed(final long seed) {
+        synchronized (random) {
+            random.setSeed(seed);
+        }
+    }
+
+    /**
+     * Sets the number of (simulated) DHT nodes reported by <tt>api_vm</tt>.
+     *
+     * @param number
+     *            the number of nodes
+     */
+    public void setNumberOfNodes(final int number) {
+        synchronized (dhtNodes) {
+            while (dhtNodes.size() > number) {
+                dhtNodes.remove(dhtNodes.size() - 1);
+            }
+            while (dhtNodes.size() < number) {
+                dhtNodes.add("dht_node_" + (nextDhtNode++));
+            }
+        }
+    }
+
+    /**
+     * @return the number of received calls
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return the number of aborted commits (injected or caused by
+     *         conflicts)
+     */
+    public long getAborts() {
+        return aborts.get();
+    }
+
+    /**
+     * @return the number of injected crashes
+     */
+    public long getCrashes() {
+        return crashes.get();
+    }
+
+    private double nextDouble() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    private void receiveLoop(final OtpMbox rex, final ExecutorService executor) {
+        while (mbox == rex) {
+            final OtpErlangObject msg;
+            try {
+                msg = rex.receive(100);
+            } catch (final OtpErlangExit e) {
+                return;
+            } catch (final OtpErlangDecodeException e) {
+                continue;
+            }
+            if (msg == null) {
+                continue;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        handleCall(rex, msg);
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Handles a <tt>{Pid, {call, Module, Function, Args, GroupLeader}}</tt>
+     * message and replies with <tt>{rex, Result}</tt>.
+     */
+    private void handleCall(final OtpMbox rex, final OtpErlangObject msg) {
+        final OtpErlangPid from;
+        final String module;
+        final String function;
+        final OtpErlangList args;
+        try {
+            final OtpErlangTuple msgTuple = (OtpErlangTuple) msg;
+            from = (OtpErlangPid) msgTuple.elementAt(0);
+            final OtpErlangTuple call = (OtpErlangTuple) msgTuple.elementAt(1);
+            if (call.arity() != 5 || !call.elementAt(0).equals(callAtom)) {
+                return;
+            }
+            module = ((OtpErlangAtom) call.elementAt(1)).atomValue();
+            function = ((OtpErlangAtom) call.elementAt(2)).atomValue();
+            args = ErlangValue.otpObjectToOtpList(call.elementAt(3));
+        } catch (final ClassCastException e) {
+            return;
+        }
+        calls.incrementAndGet();
+        if (failureRate > 0 && nextDouble() < failureRate) {
+            crashes.incrementAndGet();
+            restartAsync(0);
+            return;
+        }
+        long delay = latencyNanos;
+        if (latencyJitterNanos > 0) {
+            delay += (long) (nextDouble() * latencyJitterNanos);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay / 1000000L, (int) (delay % 1000000L));
+            } catch (final InterruptedException e) {
+                // node stopped
+                return;
+            }
+        }
+        OtpErlangObject result;
+        try {
+            result = call(module, function, args.elements());
+        } catch (final OtpErlangException e) {
+            result = badrpc(badargAtom);
+        } catch (final ClassCastException e) {
+            result = badrpc(badargAtom);
+        } catch (final IllegalArgumentException e) {
+            result = badrpc(badargAtom);
+        }
+        if (result == null) {
+            result = badrpc(new OtpErlangTuple(new OtpErlangObject[] {
+                    undefAtom, new OtpErlangList(new OtpErlangTuple(new OtpErlangObject[] {
+                            new OtpErlangAtom(module), new OtpErlangAtom(function),
+                            args, new OtpErlangList() })) }));
+        }
+        rex.send(from, new OtpErlangTuple(new OtpErlangObject[] { rexAtom, result }));
+    }
+
+    private static OtpErlangTuple badrpc(final OtpErlangObject reason) {
+        return new OtpErlangTuple(new OtpErlangObject[] { badrpcAtom,
+                new OtpErlangTuple(new OtpErlangObject[] { exitAtom, reason }) });
+    }
+
+    /**
+     * Restarts (or only stops) the node from a separate thread so that the
+     * calling worker thread may be interrupted.
+     */
+    private void restartAsync(final long delayMillis) {
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(delayMillis);
+                    restart();
+                } catch (final InterruptedException e) {
+                    // ignore
+                } catch (final IOException e) {
+                    // node stays stopped
+                }
+            }
+        }, "scalaris-sim-" + name + "-restart");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Executes the given RPC.
+     *
+     * @return the result or <tt>null</tt> if the function is not defined
+     */
+    private OtpErlangObject call(final String module, final String function,
+            final OtpErlangObject[] args) throws OtpErlangException {
+        if (module.equals("api_tx") || module.equals("api_txc")) {
+            final boolean compressed = module.equals("api_txc");
+            if (function.equals("req_list") && args.length == 1) {
+                return reqList(new OtpErlangList(), args[0], compressed);
+            } else if (function.equals("req_list") && args.length == 2) {
+                return reqList(args[0], args[1], compressed);
+            } else if (function.equals("req_list_commit_each") && args.length == 1) {
+                return reqListCommitEach(args[0], compressed);
+            }
+        } else if (module.equals("api_pubsub")) {
+            if (function.equals("publish") && args.length == 2) {
+                return publish(ErlangValue.otpObjectToOtpString(args[0]),
+                        new OtpErlangObject[] { args[1] });
+            } else if (function.equals("publish_list") && args.length == 2) {
+                return publish(ErlangValue.otpObjectToOtpString(args[0]),
+                        ErlangValue.otpObjectToOtpList(args[1]).elements());
+            } else if (function.equals("subscribe") && args.length == 2) {
+                return subscribe(ErlangValue.otpObjectToOtpString(args[0]),
+                        ErlangValue.otpObjectToOtpString(args[1]));
+            } else if (function.equals("unsubscribe") && args.length == 2) {
+                return unsubscribe(ErlangValue.otpObjectToOtpString(args[0]),
+                        ErlangValue.otpObjectToOtpString(args[1]));
+            } else if (function.equals("get_subscribers") && args.length == 1) {
+                return new OtpErlangList(getSubscribers(
+                        ErlangValue.otpObjectToOtpString(args[0])));
+            }
+        } else if (module.equals("api_rdht")) {
+            if (function.equals("delete") && (args.length == 1 || args.length == 2)) {
+                return delete(ErlangValue.otpObjectToOtpString(args[0]));
+            } else if (function.equals("read_stale") && (args.length == 2 || args.length == 3)) {
+                return readStale(ErlangValue.otpObjectToOtpString(args[0]),
+                        args.length == 3 ? ((OtpErlangLong) args[1]).longValue() : 0);
+            }
+        } else if (module.equals("api_vm")) {
+            return callVm(function, args);
+        }
+        return null;
+    }
+
+    /*
+     * values
+     */
+
+    /**
+     * Converts a value to the form Erlang would use after transferring it,
+     * i.e. strings of Latin-1 characters and lists of small integers are
+     * both {@link OtpErlangString}s (except the empty list).
+     */
+    private static OtpErlangObject canonical(final OtpErlangObject value) {
+        if (value instanceof OtpErlangString) {
+            final String s = ((OtpErlangString) value).stringValue();
+            if (s.isEmpty()) {
+                return new OtpErlangList();
+            }
+            for (int i = 0; i < s.length(); ++i) {
+                if (s.charAt(i) > 255) {
+                    return canonical(new OtpErlangList(s));
+                }
+            }
+            return value;
+        } else if (value instanceof OtpErlangList) {
+            final OtpErlangList list = (OtpErlangList) value;
+            if (list.arity() == 0 || list.getLastTail() != null) {
+                return value;
+            }
+            boolean isString = list.arity() < 65536;
+            final OtpErlangObject[] elements = new OtpErlangObject[list.arity()];
+            for (int i = 0; i < elements.length; ++i) {
+                elements[i] = canonical(list.elementAt(i));
+                if (isString && !isLatin1Char(elements[i])) {
+                    isString = false;
+                }
+            }
+            if (isString) {
+                final char[] chars = new char[elements.length];
+                for (int i = 0; i < elements.length; ++i) {
+                    chars[i] = (char) ((OtpErlangLong) elements[i]).longValue();
+                }
+                return new OtpErlangString(new String(chars));
+            }
+            return new OtpErlangList(elements);
+        } else if (value instanceof OtpErlangTuple) {
+            final OtpErlangTuple tuple = (OtpErlangTuple) value;
+            final OtpErlangObject[] elements = new OtpErlangObject[tuple.arity()];
+            for (int i = 0; i < elements.length; ++i) {
+                elements[i] = canonical(tuple.elementAt(i));
+            }
+            return new OtpErlangTuple(elements);
+        }
+        return value;
+    }
+
+    private static boolean isLatin1Char(final OtpErlangObject value) {
+        if (value instanceof OtpErlangLong) {
+            final OtpErlangLong l = (OtpErlangLong) value;
+            return l.bitLength() < 16 && l.longValue() >= 0 && l.longValue() <= 255;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the elements of a list value.
+     *
+     * @return the elements or <tt>null</tt> if the value is no (proper) list
+     */
+    private static OtpErlangObject[] listElements(final OtpErlangObject value) {
+        if (value instanceof OtpErlangString) {
+            final String s = ((OtpErlangString) value).stringValue();
+            final OtpErlangObject[] elements = new OtpErlangObject[s.length()];
+            for (int i = 0; i < elements.length; ++i) {
+                elements[i] = new OtpErlangLong(s.charAt(i));
+            }
+            return elements;
+        } else if (value instanceof OtpErlangList
+                && ((OtpErlangList) value).getLastTail() == null) {
+            return ((OtpErlangList) value).elements();
+        }
+        return null;
+    }
+
+    /**
+     * Decodes a value sent to <tt>api_txc</tt> and converts it to its
+     * canonical form.
+     */
+    private static OtpErlangObject decodeValue(final OtpErlangObject value,
+            final boolean compressed) throws OtpErlangDecodeException {
+        if (compressed && value instanceof OtpErlangBinary) {
+            final byte[] bytes = ((OtpErlangBinary) value).binaryValue();
+            return canonical(new OtpInputStream(bytes).read_any());
+        }
+        return canonical(value);
+    }
+
+    /**
+     * Encodes a value returned by <tt>api_txc</tt> (like
+     * {@link CommonErlangObjects#encode(OtpErlangObject)} but without
+     * recording client metrics).
+     */
+    private static OtpErlangObject encodeValue(final OtpErlangObject value,
+            final boolean compressed) {
+        if (!compressed || value instanceof OtpErlangAtom
+                || value instanceof OtpErlangLong || value instanceof OtpErlangDouble) {
+            return value;
+        }
+        final OtpOutputStream oos = new OtpOutputStream();
+        oos.write1(OtpExternal.versionTag);
+        if (value instanceof OtpErlangBinary) {
+            oos.write_any(value);
+        } else {
+            oos.write_compressed(value);
+        }
+        return new OtpErlangBinary(oos.toByteArray());
+    }
+
+    private static OtpErlangObject addNumbers(final OtpErlangObject a,
+            final OtpErlangObject b) {
+        if (a instanceof OtpErlangLong && b instanceof OtpErlangLong) {
+            return new OtpErlangLong(((OtpErlangLong) a).bigIntegerValue().add(
+                    ((OtpErlangLong) b).bigIntegerValue()));
+        }
+        return new OtpErlangDouble(toDouble(a) + toDouble(b));
+    }
+
+    private static double toDouble(final OtpErlangObject number) {
+        if (number instanceof OtpErlangLong) {
+            return ((OtpErlangLong) number).bigIntegerValue().doubleValue();
+        }
+        return ((OtpErlangDouble) number).doubleValue();
+    }
+
+    private static boolean isNumber(final OtpErlangObject value) {
+        return value instanceof OtpErlangLong || value instanceof OtpErlangDouble;
+    }
+
+    private static boolean isZero(final OtpErlangObject number) {
+        return toDouble(number) == 0.0;
+    }
+
+    /*
+     * transactions
+     */
+
+    /**
+     * Gets the tlog entry of a key, reading the current value from the
+     * store on the first access.
+     */
+    private TLogEntry entry(final LinkedHashMap<String, TLogEntry> tlog,
+            final OtpErlangObject keyObject) throws ClassCastException {
+        final OtpErlangString key = ErlangValue.otpObjectToOtpString(keyObject);
+        TLogEntry entry = tlog.get(key.stringValue());
+        if (entry == null) {
+            final Item item;
+            synchronized (store) {
+                item = store.get(key.stringValue());
+            }
+            if (item == null) {
+                entry = new TLogEntry(key, -1, null);
+            } else {
+                entry = new TLogEntry(key, item.version, item.value);
+            }
+            tlog.put(key.stringValue(), entry);
+        }
+        return entry;
+    }
+
+    private static LinkedHashMap<String, TLogEntry> parseTLog(final OtpErlangObject tlogObject)
+            throws OtpErlangException {
+        final LinkedHashMap<String, TLogEntry> tlog = new LinkedHashMap<String, TLogEntry>();
+        for (final OtpErlangObject entryObject : ErlangValue.otpObjectToOtpList(tlogObject)) {
+            final TLogEntry entry = TLogEntry.fromErlang(entryObject);
+            tlog.put(entry.key.stringValue(), entry);
+        }
+        return tlog;
+    }
+
+    private static OtpErlangList tlogToErlang(final LinkedHashMap<String, TLogEntry> tlog) {
+        final OtpErlangObject[] entries = new OtpErlangObject[tlog.size()];
+        int i = 0;
+        for (final TLogEntry entry : tlog.values()) {
+            entries[i++] = entry.toErlang();
+        }
+        return new OtpErlangList(entries);
+    }
+
+    /**
+     * <tt>api_tx:req_list(TLog, Reqs)</tt>.
+     */
+    private OtpErlangObject reqList(final OtpErlangObject tlogObject,
+            final OtpErlangObject reqs, final boolean compressed)
+            throws OtpErlangException {
+        final LinkedHashMap<String, TLogEntry> tlog = parseTLog(tlogObject);
+        final OtpErlangList reqList = ErlangValue.otpObjectToOtpList(reqs);
+        final OtpErlangObject[] results = new OtpErlangObject[reqList.arity()];
+        for (int i = 0; i < results.length; ++i) {
+            results[i] = execute(tlog, (OtpErlangTuple) reqList.elementAt(i), compressed);
+        }
+        return new OtpErlangTuple(new OtpErlangObject[] {
+                tlogToErlang(tlog), new OtpErlangList(results) });
+    }
+
+    /**
+     * <tt>api_tx:req_list_commit_each(Reqs)</tt>: each request is executed
+     * in its own transaction.
+     */
+    private OtpErlangObject reqListCommitEach(final OtpErlangObject reqs,
+            final boolean compressed) throws OtpErlangException {
+        final OtpErlangList reqList = ErlangValue.otpObjectToOtpList(reqs);
+        final OtpErlangObject[] results = new OtpErlangObject[reqList.arity()];
+        for (int i = 0; i < results.length; ++i) {
+            final OtpErlangTuple req = (OtpErlangTuple) reqList.elementAt(i);
+            final LinkedHashMap<String, TLogEntry> tlog = new LinkedHashMap<String, TLogEntry>();
+            results[i] = execute(tlog, req, compressed);
+            final OtpErlangTuple result = (OtpErlangTuple) results[i];
+            if (result.elementAt(0).equals(CommonErlangObjects.okAtom)
+                    && !req.elementAt(0).equals(CommonErlangObjects.readAtom)) {
+                final OtpErlangTuple commitResult = commit(tlog);
+                if (!commitResult.equals(CommonErlangObjects.okTupleAtom)) {
+                    results[i] = commitResult;
+                }
+            }
+        }
+        return new OtpErlangList(results);
+    }
+
+    /**
+     * Executes a single request of a transaction.
+     */
+    private OtpErlangTuple execute(final LinkedHashMap<String, TLogEntry> tlog,
+            final OtpErlangTuple req, final boolean compressed)
+            throws OtpErlangException {
+        if (req.equals(CommonErlangObjects.commitTupleAtom)) {
+            final OtpErlangTuple result = commit(tlog);
+            tlog.clear();
+            return result;
+        }
+        final OtpErlangAtom op = (OtpErlangAtom) req.elementAt(0);
+        final TLogEntry entry = entry(tlog, req.elementAt(1));
+        if (timeoutRate > 0 && nextDouble() < timeoutRate) {
+            entry.failed = true;
+            return failTimeout;
+        }
+        if (op.equals(CommonErlangObjects.readAtom)) {
+            if (entry.value == null) {
+                return failNotFound;
+            }
+            return new OtpErlangTuple(new OtpErlangObject[] {
+                    CommonErlangObjects.okAtom, encodeValue(entry.value, compressed) });
+        } else if (op.equals(CommonErlangObjects.writeAtom)) {
+            entry.value = decodeValue(req.elementAt(2), compressed);
+            entry.dirty = true;
+            return CommonErlangObjects.okTupleAtom;
+        } else if (op.equals(CommonErlangObjects.addOnNrAtom)) {
+            final OtpErlangObject x = decodeValue(req.elementAt(2), compressed);
+            if (!isNumber(x) || (entry.value != null && !isNumber(entry.value))) {
+                entry.failed = true;
+                return failNotANumber;
+            }
+            if (entry.value == null) {
+                entry.value = x;
+                entry.dirty = true;
+            } else if (!isZero(x)) {
+                entry.value = addNumbers(entry.value, x);
+                entry.dirty = true;
+            }
+            return CommonErlangObjects.okTupleAtom;
+        } else if (op.equals(CommonErlangObjects.addDelOnListAtom)) {
+            final OtpErlangObject[] toAdd = listElements(decodeValue(req.elementAt(2), compressed));
+            final OtpErlangObject[] toDel = listElements(decodeValue(req.elementAt(3), compressed));
+            final OtpErlangObject[] old = entry.value == null ? new OtpErlangObject[0]
+                    : listElements(entry.value);
+            if (toAdd == null || toDel == null || old == null) {
+                entry.failed = true;
+                return failNotAList;
+            }
+            if (entry.value == null || toAdd.length > 0 || toDel.length > 0) {
+                final ArrayList<OtpErlangObject> newList = new ArrayList<OtpErlangObject>(
+                        toAdd.length + old.length);
+                for (final OtpErlangObject element : toAdd) {
+                    newList.add(element);
+                }
+                for (final OtpErlangObject element : old) {
+                    newList.add(element);
+                }
+                for (final OtpErlangObject element : toDel) {
+                    newList.remove(element);
+                }
+                entry.value = canonical(new OtpErlangList(
+                        newList.toArray(new OtpErlangObject[newList.size()])));
+                entry.dirty = true;
+            }
+            return CommonErlangObjects.okTupleAtom;
+        } else if (op.equals(CommonErlangObjects.testAndSetAtom)) {
+            final OtpErlangObject oldValue = decodeValue(req.elementAt(2), compressed);
+            final OtpErlangObject newValue = decodeValue(req.elementAt(3), compressed);
+            if (entry.value == null) {
+                return failNotFound;
+            } else if (entry.value.equals(oldValue)) {
+                entry.value = newValue;
+                entry.dirty = true;
+                return CommonErlangObjects.okTupleAtom;
+            }
+            entry.failed = true;
+            return new OtpErlangTuple(new OtpErlangObject[] {
+                    CommonErlangObjects.failAtom,
+                    new OtpErlangTuple(new OtpErlangObject[] {
+                            keyChangedAtom, encodeValue(entry.value, compressed) }) });
+        }
+        throw new IllegalArgumentException("unknown operation: " + op);
+    }
+
+    /**
+     * Validates the versions of all keys in the tlog and, if unchanged,
+     * writes the modified values.
+     *
+     * @return <tt>{ok}</tt> or <tt>{fail, abort, Keys}</tt>
+     */
+    private OtpErlangTuple commit(final LinkedHashMap<String, TLogEntry> tlog) {
+        final ArrayList<OtpErlangObject> failedKeys = new ArrayList<OtpErlangObject>();
+        final boolean injectAbort = !tlog.isEmpty() && abortRate > 0
+                && nextDouble() < abortRate;
+        synchronized (store) {
+            for (final TLogEntry entry : tlog.values()) {
+                final Item item = store.get(entry.key.stringValue());
+                final long version = item == null ? -1 : item.version;
+                if (injectAbort || entry.failed || version != entry.version) {
+                    failedKeys.add(entry.key);
+                }
+            }
+            if (failedKeys.isEmpty()) {
+                for (final TLogEntry entry : tlog.values()) {
+                    if (entry.dirty) {
+                        store.put(entry.key.stringValue(),
+                                new Item(entry.version + 1, entry.value));
+                    }
+                }
+                return CommonErlangObjects.okTupleAtom;
+            }
+        }
+        aborts.incrementAndGet();
+        return new OtpErlangTuple(new OtpErlangObject[] {
+                CommonErlangObjects.failAtom, CommonErlangObjects.abortAtom,
+                new OtpErlangList(failedKeys.toArray(new OtpErlangObject[failedKeys.size()])) });
+    }
+
+    /**
+     * Deletes a key from the store as if it had {@link #REPLICAS} replicas.
+     *
+     * @return <tt>{ok, Ok, [ok | undef]}</tt> or
+     *         <tt>{fail, timeout, 0, []}</tt>
+     */
+    private OtpErlangTuple delete(final OtpErlangString key) {
+        if (timeoutRate > 0 && nextDouble() < timeoutRate) {
+            return new OtpErlangTuple(new OtpErlangObject[] {
+                    CommonErlangObjects.failAtom, CommonErlangObjects.timeoutAtom,
+                    new OtpErlangLong(0), new OtpErlangList() });
+        }
+        final boolean existed;
+        synchronized (store) {
+            existed = store.remove(key.stringValue()) != null;
+        }
+        final OtpErlangObject[] results = new OtpErlangObject[REPLICAS];
+        Arrays.fill(results, existed ? CommonErlangObjects.okAtom : undefAtom);
+        return new OtpErlangTuple(new OtpErlangObject[] {
+                CommonErlangObjects.okAtom, new OtpErlangLong(existed ? REPLICAS : 0),
+                new OtpErlangList(results) });
+    }
+
+    /**
+     * Reads a key as if all replicas were up-to-date.
+     *
+     * @return <tt>{ok, Value, Version}</tt> or
+     *         <tt>{fail, not_found | timeout | outdated}</tt>
+     */
+    private OtpErlangTuple readStale(final OtpErlangString key, final long minVersion) {
+        if (timeoutRate > 0 && nextDouble() < timeoutRate) {
+            return failTimeout;
+        }
+        final Item item;
+        synchronized (store) {
+            item = store.get(key.stringValue());
+        }
+        if (item == null) {
+            return failNotFound;
+        } else if (item.version < minVersion) {
+            return new OtpErlangTuple(new OtpErlangObject[] {
+                    CommonErlangObjects.failAtom, outdatedAtom });
+        }
+        return new OtpErlangTuple(new OtpErlangObject[] {
+                CommonErlangObjects.okAtom, item.value, new OtpErlangLong(item.version) });
+    }
+
+    /*
+     * pub/sub
+     */
+
+    private OtpErlangObject[] getSubscribers(final OtpErlangString topic) {
+        final Item item;
+        synchronized (store) {
+            item = store.get(topic.stringValue());
+        }
+        if (item == null) {
+            return new OtpErlangObject[0];
+        }
+        final OtpErlangObject[] subscribers = listElements(item.value);
+        return subscribers == null ? new OtpErlangObject[0] : subscribers;
+    }
+
+    private OtpErlangObject subscribe(final OtpErlangString topic,
+            final OtpErlangString url) {
+        synchronized (store) {
+            final Item item = store.get(topic.stringValue());
+            final ArrayList<OtpErlangObject> subscribers = new ArrayList<OtpErlangObject>();
+            subscribers.add(canonical(url));
+            if (item != null) {
+                final OtpErlangObject[] old = listElements(item.value);
+                if (old == null) {
+                    return new OtpErlangTuple(new OtpErlangObject[] {
+                            CommonErlangObjects.failAtom, CommonErlangObjects.abortAtom,
+                            new OtpErlangList(topic) });
+                }
+                for (final OtpErlangObject subscriber : old) {
+                    subscribers.add(subscriber);
+                }
+            }
+            store.put(topic.stringValue(), new Item(item == null ? 0 : item.version + 1,
+                    new OtpErlangList(subscribers.toArray(new OtpErlangObject[subscribers.size()]))));
+        }
+        return CommonErlangObjects.okTupleAtom;
+    }
+
+    private OtpErlangObject unsubscribe(final OtpErlangString topic,
+            final OtpErlangString url) {
+        synchronized (store) {
+            final Item item = store.get(topic.stringValue());
+            final OtpErlangObject[] old = item == null ? null : listElements(item.value);
+            if (old != null) {
+                final ArrayList<OtpErlangObject> subscribers = new ArrayList<OtpErlangObject>(old.length);
+                for (final OtpErlangObject subscriber : old) {
+                    subscribers.add(subscriber);
+                }
+                if (subscribers.remove(canonical(url))) {
+                    store.put(topic.stringValue(), new Item(item.version + 1,
+                            canonical(new OtpErlangList(subscribers.toArray(
+                                    new OtpErlangObject[subscribers.size()])))));
+                    return CommonErlangObjects.okTupleAtom;
+                }
+            }
+        }
+        return failNotFound;
+    }
+
+    /**
+     * Sends <tt>{notify, Topic, Content}</tt> to all subscribers with an
+     * <tt>erlang://</tt> URL; other subscribers are ignored.
+     */
+    private OtpErlangObject publish(final OtpErlangString topic,
+            final OtpErlangObject[] contents) {
+        final OtpMbox rex = mbox;
+        for (final OtpErlangObject content : contents) {
+            for (final OtpErlangObject subscriber : getSubscribers(topic)) {
+                if (!(subscriber instanceof OtpErlangString)) {
+                    continue;
+                }
+                final String url = ((OtpErlangString) subscriber).stringValue();
+                if (rex == null || !url.startsWith(PubSubMailbox.URL_PREFIX)) {
+                    continue;
+                }
+                final String address = url.substring(PubSubMailbox.URL_PREFIX.length());
+                final int separator = address.indexOf('/');
+                if (separator < 0) {
+                    continue;
+                }
+                rex.send(address.substring(separator + 1), address.substring(0, separator),
+                        new OtpErlangTuple(new OtpErlangObject[] { notifyAtom, topic, content }));
+            }
+        }
+        return CommonErlangObjects.okTupleAtom;
+    }
+
+    /*
+     * VM management
+     */
+
+    private static OtpErlangList toStringList(final List<String> strings) {
+        final OtpErlangObject[] result = new OtpErlangObject[strings.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = new OtpErlangString(strings.get(i));
+        }
+        return new OtpErlangList(result);
+    }
+
+    private static OtpErlangTuple tuple2(final String key, final OtpErlangObject value) {
+        return new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom(key), value });
+    }
+
+    private OtpErlangObject callVm(final String function, final OtpErlangObject[] args)
+            throws OtpErlangException {
+        if (function.equals("get_version") && args.length == 0) {
+            return new OtpErlangString(VERSION);
+        } else if (function.equals("get_info") && args.length == 0) {
+            final OtpNode current;
+            synchronized (this) {
+                current = node;
+            }
+            return new OtpErlangList(new OtpErlangObject[] {
+                    tuple2("scalaris_version", new OtpErlangString(VERSION)),
+                    tuple2("erlang_version", new OtpErlangString(
+                            "Java " + System.getProperty("java.version"))),
+                    tuple2("mem_total", new OtpErlangLong(Runtime.getRuntime().totalMemory())),
+                    tuple2("uptime", new OtpErlangLong(System.currentTimeMillis() - startTime)),
+                    tuple2("erlang_node", new OtpErlangAtom(getNodeName())),
+                    tuple2("ip", new OtpErlangTuple(new OtpErlangObject[] {
+                            new OtpErlangLong(127), new OtpErlangLong(0),
+                            new OtpErlangLong(0), new OtpErlangLong(1) })),
+                    tuple2("port", new OtpErlangLong(current == null ? 0 : current.port())),
+                    tuple2("yaws_port", new OtpErlangLong(0)) });
+        } else if (function.equals("get_other_vms") && args.length == 1) {
+            return new OtpErlangList();
+        } else if (function.equals("shutdown_vm") || function.equals("kill_vm")) {
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        // let the reply be sent first
+                        Thread.sleep(100);
+                    } catch (final InterruptedException e) {
+                        // stop now
+                    }
+                    stop();
+                }
+            }, "scalaris-sim-" + name + "-stop");
+            thread.setDaemon(true);
+            thread.start();
+            return CommonErlangObjects.okAtom;
+        }
+        synchronized (dhtNodes) {
+            if (function.equals("number_of_nodes") && args.length == 0) {
+                return new OtpErlangLong(dhtNodes.size());
+            } else if (function.equals("get_nodes") && args.length == 0) {
+                return toStringList(dhtNodes);
+            } else if (function.equals("add_nodes") && args.length == 1) {
+                final int number = ((OtpErlangLong) args[0]).intValue();
+                final List<String> added = new ArrayList<String>(number);
+                for (int i = 0; i < number; ++i) {
+                    final String dhtNode = "dht_node_" + (nextDhtNode++);
+                    dhtNodes.add(dhtNode);
+                    added.add(dhtNode);
+                }
+                return new OtpErlangTuple(new OtpErlangObject[] {
+                        toStringList(added), new OtpErlangList() });
+            } else if ((function.equals("shutdown_node") || function.equals("kill_node"))
+                    && args.length == 1) {
+                if (dhtNodes.remove(new ErlangValue(args[0]).stringValue())) {
+                    return CommonErlangObjects.okAtom;
+                }
+                return CommonErlangObjects.notFoundAtom;
+            } else if ((function.equals("shutdown_nodes") || function.equals("kill_nodes"))
+                    && args.length == 1) {
+                final int number = ((OtpErlangLong) args[0]).intValue();
+                final List<String> removed = new ArrayList<String>(number);
+                while (removed.size() < number && !dhtNodes.isEmpty()) {
+                    removed.add(dhtNodes.remove(dhtNodes.size() - 1));
+                }
+                return toStringList(removed);
+            } else if ((function.equals("shutdown_nodes_by_name") || function
+                    .equals("kill_nodes_by_name")) && args.length == 1) {
+                final List<String> removed = new ArrayList<String>();
+                final List<String> notFound = new ArrayList<String>();
+                for (final String dhtNode : new ErlangValue(args[0]).stringListValue()) {
+                    if (dhtNodes.remove(dhtNode)) {
+                        removed.add(dhtNode);
+                    } else {
+                        notFound.add(dhtNode);
+                    }
+                }
+                return new OtpErlangTuple(new OtpErlangObject[] {
+                        toStringList(removed), toStringList(notFound) });
+            }
+        }
+        return null;
+    }
+}
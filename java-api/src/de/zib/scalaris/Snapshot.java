@@ -0,0 +1,434 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.zib.scalaris.operations.ReadOp;
+
+/**
+ * A snapshot of key/value pairs in a file, e.g. to back up or clone (a part
+ * of) a Scalaris data set.
+ *
+ * <p>
+ * The file is written sequentially and contains a header, the records and
+ * an index of the record offsets followed by a fixed-size trailer:
+ * </p>
+ * <pre>
+ * header:  "SCSNAP01"
+ * record:  key length (int), key (UTF-8), value length (int), value
+ * index:   offset of each record (long)
+ * trailer: index offset (long), number of records (long), "SCSNAPIX"
+ * </pre>
+ * Values are stored in the external term format of the compressed API
+ * (see {@link AbstractTransaction#setCompressed(boolean)}) so that they are
+ * neither decoded during the export nor re-encoded during the restore.
+ *
+ * <p>
+ * Scalaris only stores the hashed keys, i.e. the keys to export need to be
+ * known (see {@link #export(Connection, Iterator, File)}). A restore maps
+ * the file into memory and writes the records with a {@link BulkWriter}
+ * (see {@link #restore(BulkWriter, int)}).
+ * </p>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class Snapshot {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] MAGIC = {'S', 'C', 'S', 'N', 'A', 'P', '0', '1'};
+    private static final byte[] INDEX_MAGIC = {'S', 'C', 'S', 'N', 'A', 'P', 'I', 'X'};
+    private static final int TRAILER_SIZE = 8 + 8 + 8;
+    /**
+     * Maximum size of a memory-mapped region during a restore.
+     */
+    private static final long MAX_MAP_SIZE = 1L << 30;
+    /**
+     * Number of keys read with a single request during an export.
+     */
+    private static final int EXPORT_BATCH_SIZE = 100;
+    /**
+     * Number of times keys are read again after a timeout during an export.
+     */
+    private static final int EXPORT_RETRIES = 3;
+
+    /**
+     * Writes a snapshot file.
+     */
+    public static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        private long position = 0;
+        private long[] offsets = new long[1024];
+        private int count = 0;
+
+        /**
+         * Creates a new (empty) snapshot file.
+         *
+         * @param file
+         *            the file to write (overwritten if it exists)
+         *
+         * @throws IOException
+         *             if the file cannot be written
+         */
+        public Writer(final File file) throws IOException {
+            channel = new FileOutputStream(file).getChannel();
+            buffer.put(MAGIC);
+            position = MAGIC.length;
+        }
+
+        private void ensureSpace(final int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flushBuffer();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void putBytes(final byte[] bytes) throws IOException {
+            if (bytes.length <= buffer.remaining()) {
+                buffer.put(bytes);
+            } else {
+                flushBuffer();
+                if (bytes.length <= buffer.remaining()) {
+                    buffer.put(bytes);
+                } else {
+                    final ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+                    while (wrapped.hasRemaining()) {
+                        channel.write(wrapped);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Appends a key/value pair.
+         *
+         * @param key
+         *            the key
+         * @param encodedValue
+         *            the value in the external term format (including the
+         *            version tag)
+         *
+         * @throws IOException
+         *             if writing fails
+         */
+        public void append(final String key, final byte[] encodedValue) throws IOException {
+            final byte[] keyBytes = key.getBytes(UTF8);
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[count++] = position;
+            ensureSpace(4);
+            buffer.putInt(keyBytes.length);
+            putBytes(keyBytes);
+            ensureSpace(4);
+            buffer.putInt(encodedValue.length);
+            putBytes(encodedValue);
+            position += 8 + keyBytes.length + encodedValue.length;
+        }
+
+        /**
+         * Appends a key/value pair.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         *
+         * @throws IOException
+         *             if writing fails
+         */
+        public void append(final String key, final ErlangValue value) throws IOException {
+            append(key, value.encodedValue());
+        }
+
+        /**
+         * @return the number of appended records
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Writes the index and closes the file.
+         *
+         * @throws IOException
+         *             if writing fails
+         */
+        public void close() throws IOException {
+            try {
+                for (int i = 0; i < count; ++i) {
+                    ensureSpace(8);
+                    buffer.putLong(offsets[i]);
+                }
+                ensureSpace(TRAILER_SIZE);
+                buffer.putLong(position);
+                buffer.putLong(count);
+                buffer.put(INDEX_MAGIC);
+                flushBuffer();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private final File file;
+    private final long[] offsets;
+    private final long indexOffset;
+
+    private Snapshot(final File file, final long[] offsets, final long indexOffset) {
+        this.file = file;
+        this.offsets = offsets;
+        this.indexOffset = indexOffset;
+    }
+
+    /**
+     * Opens a snapshot file and reads its index.
+     *
+     * @param file
+     *            the snapshot file
+     *
+     * @return the snapshot
+     *
+     * @throws IOException
+     *             if the file cannot be read or is no (complete) snapshot
+     */
+    public static Snapshot open(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final long length = raf.length();
+            if (length < MAGIC.length + TRAILER_SIZE) {
+                throw new IOException("not a snapshot file: " + file);
+            }
+            final byte[] magic = new byte[MAGIC.length];
+            raf.readFully(magic);
+            raf.seek(length - TRAILER_SIZE);
+            final long indexOffset = raf.readLong();
+            final long count = raf.readLong();
+            final byte[] indexMagic = new byte[INDEX_MAGIC.length];
+            raf.readFully(indexMagic);
+            if (!Arrays.equals(MAGIC, magic) || !Arrays.equals(INDEX_MAGIC, indexMagic)
+                    || indexOffset + (count * 8) != length - TRAILER_SIZE
+                    || count > Integer.MAX_VALUE) {
+                throw new IOException("not a (complete) snapshot file: " + file);
+            }
+            final long[] offsets = new long[(int) count];
+            final ByteBuffer index = raf.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, indexOffset, count * 8);
+            index.asLongBuffer().get(offsets);
+            return new Snapshot(file, offsets, indexOffset);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return the snapshot file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of records in the snapshot
+     */
+    public long size() {
+        return offsets.length;
+    }
+
+    /**
+     * Exports the values of the given keys to a snapshot file. Keys are read
+     * in batches using the compressed API; keys which do not exist are
+     * skipped.
+     *
+     * @param connection
+     *            the connection to read the values with
+     * @param keys
+     *            the keys to export
+     * @param file
+     *            the file to write (overwritten if it exists)
+     *
+     * @return the number of exported key/value pairs
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws TimeoutException
+     *             if reading a value timed out repeatedly
+     * @throws UnknownException
+     *             if any other error occurs
+     * @throws IOException
+     *             if writing the file fails
+     */
+    public static long export(final Connection connection, final Iterator<String> keys,
+            final File file) throws ConnectionException, TimeoutException,
+            UnknownException, IOException {
+        final TransactionSingleOp tx = new TransactionSingleOp(connection);
+        tx.setCompressed(true);
+        final Writer writer = new Writer(file);
+        try {
+            final List<String> batch = new ArrayList<String>(EXPORT_BATCH_SIZE);
+            while (keys.hasNext()) {
+                batch.add(keys.next());
+                if (batch.size() == EXPORT_BATCH_SIZE || !keys.hasNext()) {
+                    exportBatch(tx, batch, writer);
+                    batch.clear();
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        return writer.getCount();
+    }
+
+    private static void exportBatch(final TransactionSingleOp tx, final List<String> keys,
+            final Writer writer) throws ConnectionException, TimeoutException,
+            UnknownException, IOException {
+        List<String> pending = keys;
+        for (int attempt = 0; !pending.isEmpty(); ++attempt) {
+            final TransactionSingleOp.RequestList req = new TransactionSingleOp.RequestList();
+            for (final String key : pending) {
+                req.addOp(new ReadOp(key));
+            }
+            final TransactionSingleOp.ResultList results = tx.req_list(req);
+            final List<String> timedOut = new ArrayList<String>();
+            TimeoutException lastTimeout = null;
+            for (int i = 0; i < pending.size(); ++i) {
+                try {
+                    writer.append(pending.get(i), results.processReadAt(i));
+                } catch (final NotFoundException e) {
+                    // skip
+                } catch (final TimeoutException e) {
+                    timedOut.add(pending.get(i));
+                    lastTimeout = e;
+                }
+            }
+            if (!timedOut.isEmpty() && attempt >= EXPORT_RETRIES) {
+                throw lastTimeout;
+            }
+            pending = timedOut;
+        }
+    }
+
+    /**
+     * Writes all records of the snapshot with the given writer and waits
+     * until they have been written. The file is mapped into memory in
+     * (at most) 1 GiB parts which are read in parallel.
+     *
+     * @param writer
+     *            the writer to use
+     * @param threads
+     *            the number of threads reading the file
+     *
+     * @return the number of records handed to the writer
+     *
+     * @throws IOException
+     *             if reading the file fails
+     * @throws InterruptedException
+     *             if interrupted while waiting for the writer
+     */
+    public long restore(final BulkWriter writer, final int threads)
+            throws IOException, InterruptedException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        final FileChannel channel = raf.getChannel();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            final List<Future<Long>> parts = new ArrayList<Future<Long>>();
+            final int recordsPerPart = Math.max(1,
+                    (offsets.length + threads - 1) / Math.max(1, threads));
+            int first = 0;
+            while (first < offsets.length) {
+                // records [first, last) - at least one, at most MAX_MAP_SIZE bytes
+                final int limit = Math.min(offsets.length, first + recordsPerPart);
+                int last = first + 1;
+                while (last < limit && endOf(last + 1) - offsets[first] <= MAX_MAP_SIZE) {
+                    ++last;
+                }
+                final long start = offsets[first];
+                final long end = endOf(last);
+                final int records = last - first;
+                parts.add(executor.submit(new Callable<Long>() {
+                    public Long call() throws IOException, InterruptedException {
+                        return restorePart(channel.map(FileChannel.MapMode.READ_ONLY,
+                                start, end - start), records, writer);
+                    }
+                }));
+                first = last;
+            }
+            long restored = 0;
+            for (final Future<Long> part : parts) {
+                try {
+                    restored += part.get();
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    } else if (e.getCause() instanceof InterruptedException) {
+                        throw (InterruptedException) e.getCause();
+                    }
+                    throw new UnknownException(e.getCause());
+                }
+            }
+            writer.flush();
+            return restored;
+        } finally {
+            executor.shutdownNow();
+            raf.close();
+        }
+    }
+
+    /**
+     * Gets the end offset of the record before the given one.
+     */
+    private long endOf(final int record) {
+        return record < offsets.length ? offsets[record] : indexOffset;
+    }
+
+    private static long restorePart(final MappedByteBuffer buffer, final int records,
+            final BulkWriter writer) throws InterruptedException {
+        for (int i = 0; i < records; ++i) {
+            final byte[] key = new byte[buffer.getInt()];
+            buffer.get(key);
+            final byte[] value = new byte[buffer.getInt()];
+            buffer.get(value);
+            writer.writeEncoded(new String(key, UTF8), value);
+        }
+        return records;
+    }
+}
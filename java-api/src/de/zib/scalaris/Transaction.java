@@ -235,8 +235,7 @@ public class Transaction extends
         @Override
         public ErlangValue processReadAt(final int pos) throws TimeoutException,
                 NotFoundException, UnknownException {
-            return new ErlangValue(
-                    CommonErlangObjects.processResult_read(results.elementAt(pos), compressed));
+            return CommonErlangObjects.processResult_readValue(results.elementAt(pos), compressed);
         }
 
         /**
@@ -531,6 +530,7 @@ public class Transaction extends
         }
         OtpErlangObject received_raw = null;
         final OtpErlangList erlangReqList = req.getErlangReqList(compressed);
+        ClientMetrics.getInstance().recordTxOperations(req.size());
         if (transLog.isEmpty()) {
             received_raw = connection.doRPC(module(), "req_list",
                     new OtpErlangObject[] { erlangReqList });
@@ -549,7 +549,13 @@ public class Transaction extends
                 final ResultList result = new ResultList((OtpErlangList) received.elementAt(1), compressed);
                 if (req.isCommit()) {
                     if (result.size() >= 1) {
-                        result.processCommitAt(result.size() - 1);
+                        try {
+                            result.processCommitAt(result.size() - 1);
+                        } catch (final AbortException e) {
+                            ClientMetrics.getInstance().recordTxAbort();
+                            throw e;
+                        }
+                        ClientMetrics.getInstance().recordTxCommit();
                         // transaction was successful: reset transaction log
                         transLog.reset();
                     } else {
@@ -233,8 +233,7 @@ public class TransactionSingleOp extends
         @Override
         public ErlangValue processReadAt(final int pos) throws TimeoutException,
                 NotFoundException, UnknownException {
-            return new ErlangValue(
-                    CommonErlangObjects.processResult_read(results.elementAt(pos), compressed));
+            return CommonErlangObjects.processResult_readValue(results.elementAt(pos), compressed);
         }
 
         /**
@@ -363,6 +362,7 @@ public class TransactionSingleOp extends
         if (req.isEmpty()) {
             return new ResultList(new OtpErlangList(), compressed);
         }
+        ClientMetrics.getInstance().recordTxOperations(req.size());
         final OtpErlangObject received_raw = connection.doRPC(module(), "req_list_commit_each",
                     new OtpErlangObject[] { req.getErlangReqList(compressed) });
         try {
@@ -0,0 +1,77 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.io.IOException;
+
+import com.ericsson.otp.erlang.OtpAuthException;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+/**
+ * Carries the RPCs of a {@link Connection} to a Scalaris node.
+ *
+ * RPCs are named after the Erlang functions of the Scalaris API, e.g.
+ * <tt>api_tx:req_list/1</tt>, and their results have the form these
+ * functions return. Multiple RPCs may be sent before receiving their
+ * results (pipelining).
+ *
+ * @version 3.18
+ * @since 3.18
+ *
+ * @see TransportFactory
+ */
+public interface Transport {
+    /**
+     * Sends the given RPC and returns immediately.
+     *
+     * @param mod
+     *            the module of the function to call
+     * @param fun
+     *            the function to call
+     * @param args
+     *            the function's arguments
+     *
+     * @throws IOException
+     *             if the transport is broken
+     */
+    public abstract void sendRPC(String mod, String fun, OtpErlangList args)
+            throws IOException;
+
+    /**
+     * Receives the result of an RPC previously sent with
+     * {@link #sendRPC(String, String, OtpErlangList)}, waiting if necessary.
+     *
+     * @return the result of the call
+     *
+     * @throws IOException
+     *             if the transport is broken
+     * @throws OtpErlangExit
+     *             if an exit signal is received from a process on the peer
+     *             node
+     * @throws OtpAuthException
+     *             if the remote node sends a message containing an invalid
+     *             cookie
+     */
+    public abstract OtpErlangObject receiveRPC() throws IOException,
+            OtpErlangExit, OtpAuthException;
+
+    /**
+     * Closes the transport. Results of outstanding RPCs are lost.
+     */
+    public abstract void close();
+}
@@ -0,0 +1,50 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.io.IOException;
+
+import com.ericsson.otp.erlang.OtpAuthException;
+import com.ericsson.otp.erlang.OtpSelf;
+
+/**
+ * Creates the {@link Transport} a {@link Connection} uses to reach a
+ * Scalaris node.
+ *
+ * @version 3.18
+ * @since 3.18
+ *
+ * @see ConnectionFactory#setTransportFactory(TransportFactory)
+ */
+public interface TransportFactory {
+    /**
+     * Connects to the given node.
+     *
+     * @param self
+     *            the local node
+     * @param remote
+     *            the node to connect to
+     *
+     * @return the connected transport
+     *
+     * @throws IOException
+     *             if it was not possible to connect to the remote node
+     * @throws OtpAuthException
+     *             if the connection was refused by the remote node
+     */
+    public abstract Transport connect(OtpSelf self, PeerNode remote)
+            throws IOException, OtpAuthException;
+}
@@ -0,0 +1,428 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.Random;
+
+/**
+ * Describes a workload for the {@link LoadGenerator}: the mix of operations,
+ * the records they work on and how they are scheduled.
+ *
+ * Operations work on three separate sets of {@link #getRecords()} keys:
+ * values (read, write, test-and-set), counters (add on nr) and lists
+ * (append).
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * <code style="white-space:pre;">
+ *   Workload workload = Workload.ycsb("a");   // {@link #ycsb(String)}
+ *   workload.setTargetRate(1000);            // 1000 ops/s, open loop
+ *   workload.setDurationMillis(60000);
+ *   LoadResult result = new LoadGenerator(workload).run();
+ *   System.out.println(result.toJson());
+ * </code>
+ * </pre>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class Workload {
+    /**
+     * The operations of a workload.
+     */
+    public static enum Op {
+        /**
+         * Reads a value.
+         */
+        READ("read"),
+        /**
+         * Writes a value.
+         */
+        WRITE("write"),
+        /**
+         * Increments a counter.
+         */
+        ADD_ON_NR("add_on_nr"),
+        /**
+         * Reads a value and replaces it with test-and-set (read-modify-write).
+         */
+        TEST_AND_SET("test_and_set"),
+        /**
+         * Appends an element to a list.
+         */
+        APPEND("append");
+
+        private final String name;
+
+        private Op(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private String name = "custom";
+    private final double[] proportions = new double[Op.values().length];
+    private long records = 1000;
+    private KeyDistribution keyDistribution = null;
+    private int valueSize = 1000;
+    private int threads = 10;
+    private double targetRate = 0.0;
+    private long warmupMillis = 5000;
+    private long durationMillis = 30000;
+    private boolean preload = true;
+    private String keyPrefix = "workload_" + System.currentTimeMillis() + "_";
+
+    /**
+     * Creates a workload consisting of reads only.
+     */
+    public Workload() {
+        proportions[Op.READ.ordinal()] = 1.0;
+    }
+
+    /**
+     * Creates one of the YCSB core workloads or a workload covering all
+     * operations:
+     * <ul>
+     * <li><tt>a</tt> - update heavy: 50% reads, 50% writes</li>
+     * <li><tt>b</tt> - read mostly: 95% reads, 5% writes</li>
+     * <li><tt>c</tt> - read only: 100% reads</li>
+     * <li><tt>d</tt> - read latest: 95% reads, 5% appends</li>
+     * <li><tt>f</tt> - read-modify-write: 50% reads, 50% test-and-set</li>
+     * <li><tt>mixed</tt> - 50% reads, 20% writes, 10% add on nr, 10%
+     * test-and-set, 10% appends</li>
+     * </ul>
+     * All use a Zipfian key distribution. YCSB workload E (scans) is not
+     * available as Scalaris does not support range queries; in workload D,
+     * inserts are modelled as list appends.
+     *
+     * @param name
+     *            the name of the workload (case-insensitive, an optional
+     *            <tt>ycsb-</tt> prefix is ignored)
+     *
+     * @return the workload
+     *
+     * @throws IllegalArgumentException
+     *             if the workload is unknown
+     */
+    public static Workload ycsb(final String name) throws IllegalArgumentException {
+        String shortName = name.toLowerCase();
+        if (shortName.startsWith("ycsb-")) {
+            shortName = shortName.substring(5);
+        }
+        final Workload w = new Workload();
+        w.name = shortName;
+        if (shortName.equals("a")) {
+            w.setProportions(0.5, 0.5, 0.0, 0.0, 0.0);
+        } else if (shortName.equals("b")) {
+            w.setProportions(0.95, 0.05, 0.0, 0.0, 0.0);
+        } else if (shortName.equals("c")) {
+            w.setProportions(1.0, 0.0, 0.0, 0.0, 0.0);
+        } else if (shortName.equals("d")) {
+            w.setProportions(0.95, 0.0, 0.0, 0.0, 0.05);
+        } else if (shortName.equals("f")) {
+            w.setProportions(0.5, 0.0, 0.0, 0.5, 0.0);
+        } else if (shortName.equals("mixed")) {
+            w.setProportions(0.5, 0.2, 0.1, 0.1, 0.1);
+        } else {
+            throw new IllegalArgumentException("unknown workload: " + name);
+        }
+        return w;
+    }
+
+    /**
+     * Sets the relative frequencies of the operations (they do not need to
+     * add up to 1).
+     *
+     * @param read
+     *            proportion of {@link Op#READ}
+     * @param write
+     *            proportion of {@link Op#WRITE}
+     * @param addOnNr
+     *            proportion of {@link Op#ADD_ON_NR}
+     * @param testAndSet
+     *            proportion of {@link Op#TEST_AND_SET}
+     * @param append
+     *            proportion of {@link Op#APPEND}
+     */
+    public void setProportions(final double read, final double write,
+            final double addOnNr, final double testAndSet, final double append) {
+        final double sum = read + write + addOnNr + testAndSet + append;
+        if (read < 0 || write < 0 || addOnNr < 0 || testAndSet < 0 || append < 0 || sum <= 0) {
+            throw new IllegalArgumentException("invalid proportions");
+        }
+        proportions[Op.READ.ordinal()] = read / sum;
+        proportions[Op.WRITE.ordinal()] = write / sum;
+        proportions[Op.ADD_ON_NR.ordinal()] = addOnNr / sum;
+        proportions[Op.TEST_AND_SET.ordinal()] = testAndSet / sum;
+        proportions[Op.APPEND.ordinal()] = append / sum;
+    }
+
+    /**
+     * Gets the (normalised) proportion of the given operation.
+     *
+     * @param op
+     *            the operation
+     *
+     * @return the share of <tt>op</tt> in all operations
+     */
+    public double getProportion(final Op op) {
+        return proportions[op.ordinal()];
+    }
+
+    /**
+     * Chooses the next operation according to the proportions.
+     *
+     * @param random
+     *            the random number generator of the calling thread
+     *
+     * @return the operation to execute
+     */
+    public Op nextOp(final Random random) {
+        double r = random.nextDouble();
+        final Op[] ops = Op.values();
+        for (int i = 0; i < ops.length; ++i) {
+            r -= proportions[i];
+            if (r < 0) {
+                return ops[i];
+            }
+        }
+        // rounding errors - use the last operation with a non-zero share
+        for (int i = ops.length - 1; i >= 0; --i) {
+            if (proportions[i] > 0) {
+                return ops[i];
+            }
+        }
+        return Op.READ;
+    }
+
+    /**
+     * @return the name of the workload
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name
+     *            the name of the workload (used in the output only)
+     */
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the number of records of each kind
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Sets the number of records of each kind. Resets the key distribution
+     * to the default Zipfian distribution.
+     *
+     * @param records
+     *            the number of records
+     */
+    public void setRecords(final long records) {
+        this.records = records;
+        this.keyDistribution = null;
+    }
+
+    /**
+     * Gets the distribution the records of each operation are chosen with
+     * (default: {@link KeyDistribution#zipfian(long)}).
+     *
+     * @return the key distribution
+     */
+    public KeyDistribution getKeyDistribution() {
+        if (keyDistribution == null) {
+            keyDistribution = KeyDistribution.zipfian(records);
+        }
+        return keyDistribution;
+    }
+
+    /**
+     * Sets the key distribution (and the number of records to the number of
+     * records of the distribution).
+     *
+     * @param keyDistribution
+     *            the key distribution
+     */
+    public void setKeyDistribution(final KeyDistribution keyDistribution) {
+        this.records = keyDistribution.getRecords();
+        this.keyDistribution = keyDistribution;
+    }
+
+    /**
+     * @return the size of written values (in characters)
+     */
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    /**
+     * @param valueSize
+     *            the size of written values (in characters)
+     */
+    public void setValueSize(final int valueSize) {
+        this.valueSize = valueSize;
+    }
+
+    /**
+     * @return the number of threads (and connections) executing operations
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads
+     *            the number of threads (and connections) executing
+     *            operations
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return the number of operations per second to start (<tt>0</tt> if
+     *         running in a closed loop)
+     */
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * Sets the number of operations per second to start. With a positive
+     * rate, operations are started at fixed intervals independent of the
+     * completion of earlier operations (open loop) and latencies are measured
+     * from the intended start time, i.e. they include any time an operation
+     * had to wait for a free thread. With a rate of <tt>0</tt> (default), each
+     * thread starts its next operation as soon as the previous one finished
+     * (closed loop).
+     *
+     * @param targetRate
+     *            operations per second (over all threads) or <tt>0</tt>
+     */
+    public void setTargetRate(final double targetRate) {
+        this.targetRate = targetRate;
+    }
+
+    /**
+     * @return the time to run operations before recording results (in
+     *         milliseconds)
+     */
+    public long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    /**
+     * @param warmupMillis
+     *            the time to run operations before recording results (in
+     *            milliseconds)
+     */
+    public void setWarmupMillis(final long warmupMillis) {
+        this.warmupMillis = warmupMillis;
+    }
+
+    /**
+     * @return the time to record results (in milliseconds)
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @param durationMillis
+     *            the time to record results (in milliseconds)
+     */
+    public void setDurationMillis(final long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @return whether to write all value records before running
+     */
+    public boolean isPreload() {
+        return preload;
+    }
+
+    /**
+     * @param preload
+     *            whether to write all value records before running (otherwise
+     *            reads and test-and-set operations of missing records are
+     *            counted as misses)
+     */
+    public void setPreload(final boolean preload) {
+        this.preload = preload;
+    }
+
+    /**
+     * @return the prefix of all keys
+     */
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * @param keyPrefix
+     *            the prefix of all keys (default: unique per instance)
+     */
+    public void setKeyPrefix(final String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    /**
+     * Gets the key of a value record.
+     *
+     * @param record
+     *            the record number
+     *
+     * @return the key
+     */
+    String valueKey(final long record) {
+        return keyPrefix + "v" + record;
+    }
+
+    /**
+     * Gets the key of a counter record.
+     *
+     * @param record
+     *            the record number
+     *
+     * @return the key
+     */
+    String counterKey(final long record) {
+        return keyPrefix + "c" + record;
+    }
+
+    /**
+     * Gets the key of a list record.
+     *
+     * @param record
+     *            the record number
+     *
+     * @return the key
+     */
+    String listKey(final long record) {
+        return keyPrefix + "l" + record;
+    }
+}
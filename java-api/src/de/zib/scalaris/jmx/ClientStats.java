@@ -0,0 +1,190 @@
+package de.zib.scalaris.jmx;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.zib.scalaris.ClientMetrics;
+import de.zib.scalaris.LatencyHistogram;
+
+/**
+ * Provides methods to monitor the Scalaris client API of this JVM via JMX.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class ClientStats implements ClientStatsMBean {
+    protected final ClientMetrics metrics;
+
+    /**
+     * Creates an MBean exporting the process-wide client statistics.
+     */
+    public ClientStats() {
+        this(ClientMetrics.getInstance());
+    }
+
+    /**
+     * Creates an MBean exporting the given client statistics.
+     *
+     * @param metrics
+     *            the statistics to export
+     */
+    public ClientStats(final ClientMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Selects a value of a latency histogram.
+     */
+    private static interface HistogramValue<T> {
+        T get(LatencyHistogram hist);
+    }
+
+    private <T> Map<String, T> perRpc(final HistogramValue<T> value) {
+        final Map<String, LatencyHistogram> latencies = metrics.getRpcLatencies();
+        final Map<String, T> result = new LinkedHashMap<String, T>(latencies.size());
+        for (final Entry<String, LatencyHistogram> rpc : latencies.entrySet()) {
+            result.put(rpc.getKey(), value.get(rpc.getValue()));
+        }
+        return result;
+    }
+
+    static double toMicros(final double nanos) {
+        return nanos / 1000.0;
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getRpcCount()
+     */
+    public long getRpcCount() {
+        return metrics.getRpcCount();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getRpcCounts()
+     */
+    public Map<String, Long> getRpcCounts() {
+        return perRpc(new HistogramValue<Long>() {
+            public Long get(final LatencyHistogram hist) {
+                return hist.getCount();
+            }
+        });
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getRpcLatencyAvg()
+     */
+    public Map<String, Double> getRpcLatencyAvg() {
+        return perRpc(new HistogramValue<Double>() {
+            public Double get(final LatencyHistogram hist) {
+                return toMicros(hist.getMean());
+            }
+        });
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getRpcLatency50th()
+     */
+    public Map<String, Double> getRpcLatency50th() {
+        return perRpc(new HistogramValue<Double>() {
+            public Double get(final LatencyHistogram hist) {
+                return toMicros(hist.getValueAtPercentile(50.0));
+            }
+        });
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getRpcLatency99th()
+     */
+    public Map<String, Double> getRpcLatency99th() {
+        return perRpc(new HistogramValue<Double>() {
+            public Double get(final LatencyHistogram hist) {
+                return toMicros(hist.getValueAtPercentile(99.0));
+            }
+        });
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getRpcLatencyMax()
+     */
+    public Map<String, Double> getRpcLatencyMax() {
+        return perRpc(new HistogramValue<Double>() {
+            public Double get(final LatencyHistogram hist) {
+                return toMicros(hist.getMax());
+            }
+        });
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getRpcFailures()
+     */
+    public long getRpcFailures() {
+        return metrics.getRpcFailures();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getRetries()
+     */
+    public long getRetries() {
+        return metrics.getRetries();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getReconnects()
+     */
+    public long getReconnects() {
+        return metrics.getReconnects();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getFailovers()
+     */
+    public long getFailovers() {
+        return metrics.getFailovers();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getPoolWaitAvg()
+     */
+    public double getPoolWaitAvg() {
+        return toMicros(metrics.getPoolWait().getMean());
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getPoolWait99th()
+     */
+    public double getPoolWait99th() {
+        return toMicros(metrics.getPoolWait().getValueAtPercentile(99.0));
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getBytesEncoded()
+     */
+    public long getBytesEncoded() {
+        return metrics.getBytesEncoded();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getBytesDecoded()
+     */
+    public long getBytesDecoded() {
+        return metrics.getBytesDecoded();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getTxOperations()
+     */
+    public long getTxOperations() {
+        return metrics.getTxOperations();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getTxCommits()
+     */
+    public long getTxCommits() {
+        return metrics.getTxCommits();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getTxAborts()
+     */
+    public long getTxAborts() {
+        return metrics.getTxAborts();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#getText()
+     */
+    public String getText() {
+        return metrics.toText();
+    }
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.ClientStatsMBean#reset()
+     */
+    public void reset() {
+        metrics.reset();
+    }
+}
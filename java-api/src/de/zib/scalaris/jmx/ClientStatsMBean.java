@@ -0,0 +1,147 @@
+package de.zib.scalaris.jmx;
+
+import java.util.Map;
+
+/**
+ * Provides methods to monitor the Scalaris client API of this JVM via JMX.
+ *
+ * All latencies are given in microseconds.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public interface ClientStatsMBean {
+    /**
+     * Gets the total number of successful RPCs.
+     *
+     * @return number of RPCs
+     */
+    public abstract long getRpcCount();
+
+    /**
+     * Gets the number of successful calls per RPC.
+     *
+     * @return map of <tt>module:function</tt> to the number of calls
+     */
+    public abstract Map<String, Long> getRpcCounts();
+
+    /**
+     * Gets the average latency per RPC.
+     *
+     * @return map of <tt>module:function</tt> to the average latency
+     */
+    public abstract Map<String, Double> getRpcLatencyAvg();
+
+    /**
+     * Gets the median latency per RPC.
+     *
+     * @return map of <tt>module:function</tt> to the 50th percentile
+     */
+    public abstract Map<String, Double> getRpcLatency50th();
+
+    /**
+     * Gets the 99th percentile of the latency per RPC.
+     *
+     * @return map of <tt>module:function</tt> to the 99th percentile
+     */
+    public abstract Map<String, Double> getRpcLatency99th();
+
+    /**
+     * Gets the maximum latency per RPC.
+     *
+     * @return map of <tt>module:function</tt> to the maximum latency
+     */
+    public abstract Map<String, Double> getRpcLatencyMax();
+
+    /**
+     * Gets the number of RPCs which failed with a connection error.
+     *
+     * @return number of failed RPCs
+     */
+    public abstract long getRpcFailures();
+
+    /**
+     * Gets the number of RPC retries after communication failures.
+     *
+     * @return number of retries
+     */
+    public abstract long getRetries();
+
+    /**
+     * Gets the number of reconnects.
+     *
+     * @return number of reconnects
+     */
+    public abstract long getReconnects();
+
+    /**
+     * Gets the number of fail-overs to another node.
+     *
+     * @return number of fail-overs
+     */
+    public abstract long getFailovers();
+
+    /**
+     * Gets the average time spent waiting for a pooled connection.
+     *
+     * @return average wait time
+     */
+    public abstract double getPoolWaitAvg();
+
+    /**
+     * Gets the 99th percentile of the time spent waiting for a pooled
+     * connection.
+     *
+     * @return 99th percentile of the wait time
+     */
+    public abstract double getPoolWait99th();
+
+    /**
+     * Gets the number of bytes of encoded values.
+     *
+     * @return number of bytes
+     */
+    public abstract long getBytesEncoded();
+
+    /**
+     * Gets the number of bytes of decoded values.
+     *
+     * @return number of bytes
+     */
+    public abstract long getBytesDecoded();
+
+    /**
+     * Gets the number of operations sent in request lists.
+     *
+     * @return number of operations
+     */
+    public abstract long getTxOperations();
+
+    /**
+     * Gets the number of successful transaction commits.
+     *
+     * @return number of commits
+     */
+    public abstract long getTxCommits();
+
+    /**
+     * Gets the number of aborted transaction commits.
+     *
+     * @return number of aborts
+     */
+    public abstract long getTxAborts();
+
+    /**
+     * Gets all statistics in a line-based text format.
+     *
+     * @return statistics as text
+     *
+     * @see de.zib.scalaris.ClientMetrics#toText()
+     */
+    public abstract String getText();
+
+    /**
+     * Resets all statistics.
+     */
+    public abstract void reset();
+}
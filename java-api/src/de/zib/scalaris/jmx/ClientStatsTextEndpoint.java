@@ -0,0 +1,91 @@
+package de.zib.scalaris.jmx;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.zib.scalaris.ClientMetrics;
+
+/**
+ * Serves the client statistics (see {@link ClientMetrics#toText()}) as plain
+ * text via HTTP so that they can be pulled by a scraper.
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * <code style="white-space:pre;">
+ *   ClientStatsTextEndpoint endpoint = new ClientStatsTextEndpoint(
+ *       ClientMetrics.getInstance(), new InetSocketAddress(9100));
+ *   endpoint.start();
+ *   // curl http://localhost:9100/metrics
+ *   endpoint.stop();
+ * </code>
+ * </pre>
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class ClientStatsTextEndpoint {
+    /**
+     * The path the statistics are served at.
+     */
+    public static final String PATH = "/metrics";
+
+    private final HttpServer server;
+
+    /**
+     * Creates a new (not yet started) endpoint.
+     *
+     * @param metrics
+     *            the statistics to serve
+     * @param address
+     *            the address to listen on
+     *
+     * @throws IOException
+     *             if the server socket cannot be created
+     */
+    public ClientStatsTextEndpoint(final ClientMetrics metrics,
+            final InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext(PATH, new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                final byte[] body = metrics.toText().getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type",
+                        "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream os = exchange.getResponseBody();
+                try {
+                    os.write(body);
+                } finally {
+                    os.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts serving requests in a background thread.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the endpoint.
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Gets the address the endpoint listens on.
+     *
+     * @return the (bound) socket address
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+}
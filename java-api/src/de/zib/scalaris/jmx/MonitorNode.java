@@ -1,21 +1,26 @@
 package de.zib.scalaris.jmx;
 
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 
 import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.Monitor.GetNodeInfoResult;
+import de.zib.scalaris.Monitor.GetNodePerformanceResult;
 import de.zib.scalaris.UnknownException;
 
 /**
  * Provides methods to monitor a specific Scalaris (Erlang) VM via JMX.
  *
+ * Values are fetched periodically in the background (see
+ * {@link PollingMonitor}), attribute reads do not contact Scalaris.
+ *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.15
+ * @version 3.18
  * @since 3.15
  */
-public class MonitorNode implements MonitorNodeMBean {
-    protected final de.zib.scalaris.Monitor monitor;
+public class MonitorNode extends PollingMonitor implements MonitorNodeMBean {
+    private volatile GetNodeInfoResult nodeInfo = null;
+    private final TimeSeries latencyAvg;
+    private final TimeSeries latencyStddev;
 
     /**
      * Creates a connection to the erlang VM of the given Scalaris node. Uses
@@ -28,59 +33,90 @@ public class MonitorNode implements MonitorNodeMBean {
      *             cloneable
      */
     public MonitorNode(final String node) throws ConnectionException {
-        this.monitor = new de.zib.scalaris.Monitor(node);
+        this(node, DEFAULT_REFRESH_INTERVAL, DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * Creates a connection to the erlang VM of the given Scalaris node. Uses
+     * the connection policy of the global connection factory.
+     *
+     * @param node
+     *            Scalaris node to connect with
+     * @param refreshInterval
+     *            interval between two refreshes (in milliseconds)
+     * @param historySize
+     *            number of values to keep in each time series
+     * @throws ConnectionException
+     *             if the connection fails or the connection policy is not
+     *             cloneable
+     *
+     * @since 3.18
+     */
+    public MonitorNode(final String node, final long refreshInterval,
+            final int historySize) throws ConnectionException {
+        super(node, refreshInterval);
+        latencyAvg = new TimeSeries(historySize);
+        latencyStddev = new TimeSeries(historySize);
+        start();
+    }
+
+    @Override
+    protected void refresh() throws ConnectionException, UnknownException {
+        final GetNodeInfoResult info = monitor.getNodeInfo();
+        final GetNodePerformanceResult perf = monitor.getNodePerformance();
+        nodeInfo = info;
+        latencyAvg.merge(perf.latencyAvg);
+        latencyStddev.merge(perf.latencyStddev);
     }
 
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getScalarisVersion()
      */
     public String getScalarisVersion() throws ConnectionException, UnknownException {
-        return monitor.getNodeInfo().scalarisVersion;
+        checkSnapshot();
+        return nodeInfo.scalarisVersion;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getErlangVersion()
      */
     public String getErlangVersion() throws ConnectionException, UnknownException {
-        return monitor.getNodeInfo().erlangVersion;
+        checkSnapshot();
+        return nodeInfo.erlangVersion;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getDhtNodes()
      */
     public int getDhtNodes() throws ConnectionException, UnknownException {
-        return monitor.getNodeInfo().dhtNodes;
+        checkSnapshot();
+        return nodeInfo.dhtNodes;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getLatencyAvg()
      */
     public Map<Long, Double> getLatencyAvg() throws ConnectionException, UnknownException {
-        return monitor.getNodePerformance().latencyAvg;
+        checkSnapshot();
+        return latencyAvg.toMap();
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getLatencyStddev()
      */
     public Map<Long, Double> getLatencyStddev() throws ConnectionException, UnknownException {
-        return monitor.getNodePerformance().latencyStddev;
+        checkSnapshot();
+        return latencyStddev.toMap();
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getCurLatencyAvg()
      */
     public double getCurLatencyAvg() throws ConnectionException, UnknownException {
-        return getCurrentPerfValue(monitor.getNodePerformance().latencyAvg);
+        checkSnapshot();
+        return latencyAvg.latest();
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getCurLatencyStddev()
      */
     public double getCurLatencyStddev() throws ConnectionException, UnknownException {
-        return getCurrentPerfValue(monitor.getNodePerformance().latencyStddev);
-    }
-
-    static Double getCurrentPerfValue(final Map<Long, Double> map) {
-        final Set<Entry<Long, Double>> entrySet = map.entrySet();
-        if (entrySet.isEmpty()) {
-            return null;
-        } else {
-            return entrySet.iterator().next().getValue();
-        }
+        checkSnapshot();
+        return latencyStddev.latest();
     }
 
 }
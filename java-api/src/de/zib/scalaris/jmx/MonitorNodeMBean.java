@@ -10,7 +10,7 @@ import de.zib.scalaris.UnknownException;
  * Provides methods to monitor a specific Scalaris (Erlang) VM via JMX.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.15
+ * @version 3.18
  * @since 3.15
  */
 public interface MonitorNodeMBean {
@@ -120,4 +120,14 @@ public interface MonitorNodeMBean {
      */
     public abstract double getCurLatencyStddev() throws ConnectionException, UnknownException;
 
-}
\ No newline at end of file
+    /**
+     * Gets the time the monitoring values were last fetched from the
+     * VM (all other attributes are served from this snapshot).
+     *
+     * @return milliseconds since the epoch (<tt>0</tt> if no values have been
+     *         fetched yet)
+     *
+     * @since 3.18
+     */
+    public abstract long getLastRefresh();
+}
@@ -3,17 +3,24 @@ package de.zib.scalaris.jmx;
 import java.util.Map;
 
 import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.Monitor.GetServiceInfoResult;
+import de.zib.scalaris.Monitor.GetServicePerformanceResult;
 import de.zib.scalaris.UnknownException;
 
 /**
- * Provides methods to monitor a specific Scalaris (Erlang) VM via JMX.
+ * Provides methods to monitor a whole Scalaris ring via JMX.
+ *
+ * Values are fetched periodically in the background (see
+ * {@link PollingMonitor}), attribute reads do not contact Scalaris.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.15
+ * @version 3.18
  * @since 3.15
  */
-public class MonitorService implements MonitorServiceMBean {
-    protected final de.zib.scalaris.Monitor monitor;
+public class MonitorService extends PollingMonitor implements MonitorServiceMBean {
+    private volatile GetServiceInfoResult serviceInfo = null;
+    private final TimeSeries latencyAvg;
+    private final TimeSeries latencyStddev;
 
     /**
      * Creates a connection to the erlang VM of the given Scalaris node. Uses
@@ -26,43 +33,83 @@ public class MonitorService implements MonitorServiceMBean {
      *             cloneable
      */
     public MonitorService(final String node) throws ConnectionException {
-        this.monitor = new de.zib.scalaris.Monitor(node);
+        this(node, DEFAULT_REFRESH_INTERVAL, DEFAULT_HISTORY_SIZE);
     }
+
+    /**
+     * Creates a connection to the erlang VM of the given Scalaris node. Uses
+     * the connection policy of the global connection factory.
+     *
+     * @param node
+     *            Scalaris node to connect with
+     * @param refreshInterval
+     *            interval between two refreshes (in milliseconds)
+     * @param historySize
+     *            number of values to keep in each time series
+     * @throws ConnectionException
+     *             if the connection fails or the connection policy is not
+     *             cloneable
+     *
+     * @since 3.18
+     */
+    public MonitorService(final String node, final long refreshInterval,
+            final int historySize) throws ConnectionException {
+        super(node, refreshInterval);
+        latencyAvg = new TimeSeries(historySize);
+        latencyStddev = new TimeSeries(historySize);
+        start();
+    }
+
+    @Override
+    protected void refresh() throws ConnectionException, UnknownException {
+        final GetServiceInfoResult info = monitor.getServiceInfo();
+        final GetServicePerformanceResult perf = monitor.getServicePerformance();
+        serviceInfo = info;
+        latencyAvg.merge(perf.latencyAvg);
+        latencyStddev.merge(perf.latencyStddev);
+    }
+
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getTotalLoad()
      */
     public Long getTotalLoad() throws ConnectionException, UnknownException {
-        return monitor.getServiceInfo().totalLoad;
+        checkSnapshot();
+        return serviceInfo.totalLoad;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getNodes()
      */
     public Long getNodes() throws ConnectionException, UnknownException {
-        return monitor.getServiceInfo().nodes;
+        checkSnapshot();
+        return serviceInfo.nodes;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getLatencyAvg()
      */
     public Map<Long, Double> getLatencyAvg() throws ConnectionException, UnknownException {
-        return monitor.getServicePerformance().latencyAvg;
+        checkSnapshot();
+        return latencyAvg.toMap();
     }
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getLatencyStddev()
      */
     public Map<Long, Double> getLatencyStddev() throws ConnectionException, UnknownException {
-        return monitor.getServicePerformance().latencyStddev;
+        checkSnapshot();
+        return latencyStddev.toMap();
     }
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getCurLatencyAvg()
      */
     public double getCurLatencyAvg() throws ConnectionException, UnknownException {
-        return MonitorNode.getCurrentPerfValue(monitor.getServicePerformance().latencyAvg);
+        checkSnapshot();
+        return latencyAvg.latest();
     }
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getCurLatencyStddev()
      */
     public double getCurLatencyStddev() throws ConnectionException, UnknownException {
-        return MonitorNode.getCurrentPerfValue(monitor.getServicePerformance().latencyStddev);
+        checkSnapshot();
+        return latencyStddev.latest();
     }
 
 }
@@ -9,7 +9,7 @@ import de.zib.scalaris.UnknownException;
  * Provides methods to monitor a whole Scalaris ring via JMX.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.15
+ * @version 3.18
  * @since 3.15
  */
 public interface MonitorServiceMBean {
@@ -103,4 +103,14 @@ public interface MonitorServiceMBean {
      */
     public abstract double getCurLatencyStddev() throws ConnectionException, UnknownException;
 
-}
\ No newline at end of file
+    /**
+     * Gets the time the monitoring values were last fetched from the
+     * Scalaris ring (all other attributes are served from this snapshot).
+     *
+     * @return milliseconds since the epoch (<tt>0</tt> if no values have been
+     *         fetched yet)
+     *
+     * @since 3.18
+     */
+    public abstract long getLastRefresh();
+}
@@ -0,0 +1,153 @@
+package de.zib.scalaris.jmx;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.UnknownException;
+
+/**
+ * Base class for monitor MBeans which fetch their values from Scalaris
+ * periodically in a background thread and serve attribute reads from the
+ * latest snapshot, i.e. without any network call.
+ *
+ * Subclasses set up their snapshot and then call {@link #start()}.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public abstract class PollingMonitor {
+    /**
+     * Default interval between two refreshes (in milliseconds).
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL = 10000;
+    /**
+     * Default number of values kept in each time series.
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 360;
+
+    protected final de.zib.scalaris.Monitor monitor;
+    private final long refreshInterval;
+    private ScheduledExecutorService scheduler = null;
+    /**
+     * Whether at least one refresh succeeded.
+     */
+    private volatile boolean hasSnapshot = false;
+    /**
+     * Time of the last successful refresh (in milliseconds since the epoch).
+     */
+    private volatile long lastRefresh = 0;
+    private volatile ConnectionException lastConnectionException = null;
+    private volatile UnknownException lastUnknownException = null;
+
+    /**
+     * Creates a connection to the erlang VM of the given Scalaris node. Uses
+     * the connection policy of the global connection factory.
+     *
+     * @param node
+     *            Scalaris node to connect with
+     * @param refreshInterval
+     *            interval between two refreshes (in milliseconds)
+     *
+     * @throws ConnectionException
+     *             if the connection fails or the connection policy is not
+     *             cloneable
+     */
+    protected PollingMonitor(final String node, final long refreshInterval)
+            throws ConnectionException {
+        this.monitor = new de.zib.scalaris.Monitor(node);
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Fetches all values from Scalaris and updates the snapshot.
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    protected abstract void refresh() throws ConnectionException, UnknownException;
+
+    /**
+     * Refreshes the snapshot once and then starts the background refreshes.
+     */
+    protected synchronized void start() {
+        tryRefresh();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "scalaris-jmx-monitor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                tryRefresh();
+            }
+        }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void tryRefresh() {
+        try {
+            refresh();
+            lastConnectionException = null;
+            lastUnknownException = null;
+            lastRefresh = System.currentTimeMillis();
+            hasSnapshot = true;
+        } catch (final ConnectionException e) {
+            lastConnectionException = e;
+        } catch (final UnknownException e) {
+            lastUnknownException = e;
+        }
+    }
+
+    /**
+     * Makes sure there is a snapshot to serve values from.
+     *
+     * @throws ConnectionException
+     *             if no refresh succeeded yet and the last one failed with a
+     *             connection error
+     * @throws UnknownException
+     *             if no refresh succeeded yet and the last one failed with
+     *             any other error
+     */
+    protected void checkSnapshot() throws ConnectionException, UnknownException {
+        if (!hasSnapshot) {
+            final ConnectionException ce = lastConnectionException;
+            if (ce != null) {
+                throw ce;
+            }
+            final UnknownException ue = lastUnknownException;
+            if (ue != null) {
+                throw ue;
+            }
+            throw new UnknownException("no monitoring values available yet");
+        }
+    }
+
+    /**
+     * Gets the time of the last successful refresh.
+     *
+     * @return milliseconds since the epoch (<tt>0</tt> if no refresh
+     *         succeeded yet)
+     */
+    public long getLastRefresh() {
+        return lastRefresh;
+    }
+
+    /**
+     * Stops the background refreshes and closes the connection.
+     */
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        monitor.closeConnection();
+    }
+}
@@ -0,0 +1,100 @@
+package de.zib.scalaris.jmx;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * A (thread-safe) time series of <tt>double</tt> values with a fixed capacity,
+ * stored in a ring buffer of primitive arrays. If full, adding a value
+ * replaces the oldest one.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+class TimeSeries {
+    private final long[] times;
+    private final double[] values;
+    /**
+     * Position of the oldest value.
+     */
+    private int start = 0;
+    /**
+     * Number of stored values.
+     */
+    private int size = 0;
+
+    /**
+     * Creates an empty time series.
+     *
+     * @param capacity
+     *            the maximum number of values to keep
+     */
+    TimeSeries(final int capacity) {
+        times = new long[capacity];
+        values = new double[capacity];
+    }
+
+    /**
+     * Appends a value. The timestamp must be larger than the timestamp of
+     * the latest value in the series.
+     *
+     * @param time
+     *            the timestamp of the value
+     * @param value
+     *            the value
+     */
+    synchronized void add(final long time, final double value) {
+        final int pos = (start + size) % times.length;
+        times[pos] = time;
+        values[pos] = value;
+        if (size < times.length) {
+            ++size;
+        } else {
+            start = (start + 1) % times.length;
+        }
+    }
+
+    /**
+     * Appends all values of the given series which are newer than the latest
+     * value in this series.
+     *
+     * @param series
+     *            a map of timestamps to values (any order)
+     */
+    synchronized void merge(final Map<Long, Double> series) {
+        final Map<Long, Double> sorted = new TreeMap<Long, Double>(series);
+        for (final Entry<Long, Double> entry : sorted.entrySet()) {
+            if ((size == 0) || (entry.getKey() > times[(start + size - 1) % times.length])) {
+                add(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Gets the latest value.
+     *
+     * @return the latest value or {@link Double#NaN} if the series is empty
+     */
+    synchronized double latest() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        return values[(start + size - 1) % times.length];
+    }
+
+    /**
+     * Copies the series into a map with the latest value first.
+     *
+     * @return a map of timestamps to values
+     */
+    synchronized Map<Long, Double> toMap() {
+        final Map<Long, Double> result = new LinkedHashMap<Long, Double>(size);
+        for (int i = size - 1; i >= 0; --i) {
+            final int pos = (start + i) % times.length;
+            result.put(times[pos], values[pos]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the {@link BulkWriter} class (using a
+ * {@link SimulatedNode}).
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class BulkWriterTest {
+    private SimulatedNode sim;
+    private ConnectionPool pool;
+
+    /**
+     * Starts a simulated node.
+     *
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        sim = new SimulatedNode("bulk_test");
+        sim.setSeed(1);
+        sim.start();
+        final ConnectionFactory cf = new ConnectionFactory();
+        cf.setNode(sim.getNodeName());
+        cf.setClientName("bulk_test_client");
+        pool = new ConnectionPool(cf, 4);
+    }
+
+    /**
+     * Stops the simulated node.
+     */
+    @After
+    public void tearDown() {
+        pool.closeAll();
+        sim.stop();
+    }
+
+    /**
+     * Test method for {@link BulkWriter#write(String, Object)}: batches by
+     * size and bytes, all values arrive.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWrite() throws Exception {
+        final AtomicInteger reports = new AtomicInteger(0);
+        final BulkWriter writer = new BulkWriter(pool, 4);
+        writer.setMaxBatchSize(10);
+        writer.setMaxBatchBytes(500);
+        writer.setProgressListener(new BulkWriter.ProgressListener() {
+            public void onProgress(final BulkWriter w) {
+                reports.incrementAndGet();
+            }
+        }, 60000);
+        for (int i = 0; i < 500; ++i) {
+            writer.write("key" + i, i % 2 == 0 ? "value" + i : "long_value_" + i + "_0123456789");
+        }
+        writer.close();
+        assertEquals(500, writer.getSubmitted());
+        assertEquals(500, writer.getWritten());
+        assertEquals(0, writer.getFailed());
+        assertEquals(0, writer.getOutstanding());
+        assertTrue(writer.getBatches() >= 50);
+        assertEquals(1, reports.get());
+
+        final Connection conn = pool.getConnection();
+        try {
+            final TransactionSingleOp tx = new TransactionSingleOp(conn);
+            assertEquals("value0", tx.read("key0").stringValue());
+            assertEquals("long_value_499_0123456789", tx.read("key499").stringValue());
+        } finally {
+            pool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Test method for {@link BulkWriter#write(String, Object)} without
+     * compression and with the setting changed while values are pending.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteCompressedSetting() throws Exception {
+        final BulkWriter writer = new BulkWriter(pool, 2);
+        writer.setMaxBatchSize(1000);
+        writer.setCompressed(false);
+        for (int i = 0; i < 100; ++i) {
+            writer.write("plain" + i, i % 2 == 0 ? "value" + i : i);
+        }
+        writer.setCompressed(true);
+        writer.write("switched", "value");
+        writer.close();
+        assertEquals(101, writer.getWritten());
+        assertTrue(writer.getBytesWritten() > 0);
+
+        final Connection conn = pool.getConnection();
+        try {
+            final TransactionSingleOp tx = new TransactionSingleOp(conn);
+            assertEquals("value0", tx.read("plain0").stringValue());
+            assertEquals(99, tx.read("plain99").intValue());
+            assertEquals("value", tx.read("switched").stringValue());
+        } finally {
+            pool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Test method for the retries of a {@link BulkWriter}: only failed
+     * writes are sent again.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRetry() throws Exception {
+        sim.setTimeoutRate(0.2);
+        final BulkWriter writer = new BulkWriter(pool, 2);
+        writer.setRetryDelay(1);
+        writer.setMaxRetries(20);
+        for (int i = 0; i < 200; ++i) {
+            writer.write("retry" + i, i);
+        }
+        writer.close();
+        assertEquals(200, writer.getWritten());
+        assertEquals(0, writer.getFailed());
+        assertTrue(writer.getRetries() > 0);
+        // retried writes only: less than 2 * 200 operations in total
+        assertTrue(writer.getRetries() < 200);
+
+        sim.setTimeoutRate(1.0);
+        final BulkWriter failing = new BulkWriter(pool, 2);
+        failing.setRetryDelay(1);
+        failing.setMaxRetries(1);
+        failing.write("failing", 1);
+        failing.close();
+        assertEquals(1, failing.getFailed());
+        assertEquals(1, failing.getRetries());
+        assertEquals("failing", failing.getFailedKeys().get(0));
+    }
+
+    /**
+     * Test method for a {@link BulkWriter} with more pipelines than pool
+     * connections: waiting for a connection is no failed attempt.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExhaustedPool() throws Exception {
+        final BulkWriter writer = new BulkWriter(pool, 16);
+        writer.setMaxBatchSize(1);
+        writer.setMaxRetries(0);
+        for (int i = 0; i < 200; ++i) {
+            writer.write("pool" + i, i);
+        }
+        writer.close();
+        assertEquals(200, writer.getWritten());
+        assertEquals(0, writer.getFailed());
+        assertEquals(0, writer.getRetries());
+    }
+}
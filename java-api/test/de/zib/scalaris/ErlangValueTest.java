@@ -523,6 +523,103 @@ public class ErlangValueTest {
         assertTrue(eValOtp.equals(eVal));
     }
 
+    /**
+     * Test method for {@link de.zib.scalaris.ErlangValue#longArrayValue()}
+     * including values encoded by the compressed API.
+     *
+     * @throws Exception if a test with a random array of longs failed
+     */
+    @Test
+    public final void testLongArrayValue() throws Exception {
+        final Random random = new Random();
+        for (int i = 0; i < 1000; ++i) {
+            final long[] value = new long[random.nextInt(1000)];
+            for (int j = 0; j < value.length; ++j) {
+                value[j] = random.nextBoolean() ? random.nextLong() : random.nextInt(256);
+            }
+            final ErlangValue eVal = new ErlangValue(value);
+            final OtpErlangLong[] valueOtp = new OtpErlangLong[value.length];
+            for (int j = 0; j < value.length; ++j) {
+                valueOtp[j] = new OtpErlangLong(value[j]);
+            }
+            final ErlangValue eValOtp = new ErlangValue(new OtpErlangList(valueOtp));
+            final ErlangValue eValEnc = ErlangValue.fromCompressed(CommonErlangObjects.encode(eVal.value()));
+            final ErlangValue eValOtpEnc = ErlangValue.fromCompressed(CommonErlangObjects.encode(eValOtp.value()));
+
+            assertArrayEquals(value, eVal.longArrayValue());
+            assertArrayEquals(value, eValOtp.longArrayValue());
+            assertArrayEquals(value, eValEnc.longArrayValue());
+            assertArrayEquals(value, eValOtpEnc.longArrayValue());
+            assertEquals(eValOtp.longListValue(), eValEnc.longListValue());
+            assertTrue(eVal.equals(eValOtp));
+            assertTrue(eValOtp.equals(eVal));
+            assertTrue(eValEnc.equals(eValOtp));
+        }
+        // lists of small integers may be encoded as strings:
+        final ErlangValue eValStr = ErlangValue.fromCompressed(CommonErlangObjects.encode(new OtpErlangString("abc")));
+        assertArrayEquals(new long[] {'a', 'b', 'c'}, eValStr.longArrayValue());
+    }
+
+    /**
+     * Test method for {@link de.zib.scalaris.ErlangValue#doubleArrayValue()}
+     * including values encoded by the compressed API.
+     *
+     * @throws Exception if a test with a random array of doubles failed
+     */
+    @Test
+    public final void testDoubleArrayValue() throws Exception {
+        final Random random = new Random();
+        for (int i = 0; i < 1000; ++i) {
+            final double[] value = new double[random.nextInt(1000)];
+            for (int j = 0; j < value.length; ++j) {
+                value[j] = random.nextDouble();
+            }
+            final ErlangValue eVal = new ErlangValue(value);
+            final OtpErlangDouble[] valueOtp = new OtpErlangDouble[value.length];
+            for (int j = 0; j < value.length; ++j) {
+                valueOtp[j] = new OtpErlangDouble(value[j]);
+            }
+            final ErlangValue eValOtp = new ErlangValue(new OtpErlangList(valueOtp));
+            final ErlangValue eValEnc = ErlangValue.fromCompressed(CommonErlangObjects.encode(eVal.value()));
+
+            assertArrayEquals(value, eVal.doubleArrayValue(), 0.0);
+            assertArrayEquals(value, eValOtp.doubleArrayValue(), 0.0);
+            assertArrayEquals(value, eValEnc.doubleArrayValue(), 0.0);
+            assertTrue(eVal.equals(eValOtp));
+            assertTrue(eValEnc.equals(eValOtp));
+        }
+    }
+
+    /**
+     * Test method for {@link de.zib.scalaris.ErlangValue#binaryArrayValue()}
+     * including values encoded by the compressed API.
+     *
+     * @throws Exception if a test with a random array of binaries failed
+     */
+    @Test
+    public final void testBinaryArrayValue() throws Exception {
+        final Random random = new Random();
+        for (int i = 0; i < 1000; ++i) {
+            final byte[][] value = new byte[random.nextInt(100)][];
+            for (int j = 0; j < value.length; ++j) {
+                value[j] = getRandomBytes(random, random.nextInt(100));
+            }
+            final ErlangValue eVal = new ErlangValue(value);
+            final OtpErlangBinary[] valueOtp = new OtpErlangBinary[value.length];
+            for (int j = 0; j < value.length; ++j) {
+                valueOtp[j] = new OtpErlangBinary(value[j]);
+            }
+            final ErlangValue eValOtp = new ErlangValue(new OtpErlangList(valueOtp));
+            final ErlangValue eValEnc = ErlangValue.fromCompressed(CommonErlangObjects.encode(eVal.value()));
+
+            assertArrayEquals(value, eVal.binaryArrayValue());
+            assertArrayEquals(value, eValOtp.binaryArrayValue());
+            assertArrayEquals(value, eValEnc.binaryArrayValue());
+            assertTrue(eVal.equals(eValOtp));
+            assertTrue(eValEnc.equals(eValOtp));
+        }
+    }
+
     /**
      * Test method for {@link de.zib.scalaris.ErlangValue#stringListValue()}.
      *
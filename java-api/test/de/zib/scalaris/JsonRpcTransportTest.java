@@ -0,0 +1,375 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test cases for the {@link JsonRpcTransport} class using a web server
+ * imitating (a subset of) the JSON-RPC interface of Scalaris (not requiring
+ * a running Scalaris ring).
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class JsonRpcTransportTest {
+    private static HttpServer server;
+    private static ConnectionFactory cf;
+    /**
+     * Key-value store of the imitated JSON-RPC interface, values are stored
+     * as <tt>{"type": ..., "value": ...}</tt> objects.
+     */
+    private static final Map<String, Object> store = Collections
+            .synchronizedMap(new HashMap<String, Object>());
+    private static final Set<InetSocketAddress> clients = Collections
+            .synchronizedSet(new HashSet<InetSocketAddress>());
+
+    /**
+     * Starts a web server imitating the JSON-RPC interface.
+     *
+     * @throws Exception
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(JsonRpcTransport.DEFAULT_PATH, new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                clients.add(exchange.getRemoteAddress());
+                final Map<?, ?> request = (Map<?, ?>) JsonRpcCodec
+                        .parseJson(urlDecode(readAll(exchange.getRequestBody())));
+                final Map<String, Object> response = new LinkedHashMap<String, Object>();
+                response.put("result", call((String) request.get("method"),
+                        (List<?>) request.get("params")));
+                response.put("id", request.get("id"));
+                final StringBuilder sb = new StringBuilder();
+                JsonRpcCodec.writeJson(response, sb);
+                final byte[] bytes = sb.toString().getBytes("ISO-8859-1");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, bytes.length);
+                final OutputStream os = exchange.getResponseBody();
+                os.write(bytes);
+                os.close();
+            }
+        });
+        server.start();
+        cf = new ConnectionFactory();
+        cf.setNode("jsonrpc_test@127.0.0.1");
+        cf.setClientName("jsonrpc_test_client");
+        cf.setTransportFactory(new JsonRpcTransport.Factory(server.getAddress().getPort()));
+    }
+
+    /**
+     * Stops the web server.
+     */
+    @AfterClass
+    public static void tearDownAfterClass() {
+        server.stop(0);
+    }
+
+    private static String readAll(final InputStream is) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) >= 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toString("ISO-8859-1");
+    }
+
+    /**
+     * URL-decodes the request body like yaws does.
+     */
+    private static String urlDecode(final String s) {
+        final StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); ++i) {
+            final char c = s.charAt(i);
+            if (c == '?') {
+                sb.append(s.substring(i));
+                break;
+            } else if (c == '%' && i + 2 < s.length()) {
+                sb.append((char) Integer.parseInt(s.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, Object> result(final String status, final String reason) {
+        final Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("status", status);
+        if (reason != null) {
+            result.put("reason", reason);
+        }
+        return result;
+    }
+
+    /**
+     * Executes a call of the JSON-RPC interface. Transaction logs are lists
+     * of <tt>{Op, Key, JSONValue}</tt> tuples.
+     */
+    private static Object call(final String method, final List<?> params) {
+        if (method.equals("get_subscribers")) {
+            return Arrays.asList("http://" + params.get(0));
+        } else if (!method.equals("req_list") && !method.equals("req_list_commit_each")) {
+            return Collections.singletonMap("failure", "unknownreq");
+        }
+        final Map<String, OtpErlangTuple> tlog = new LinkedHashMap<String, OtpErlangTuple>();
+        if (params.size() == 2) {
+            try {
+                for (final OtpErlangObject entry : (OtpErlangList) JsonRpcCodec
+                        .jsonToTlog((String) params.get(0))) {
+                    tlog.put(((OtpErlangString) ((OtpErlangTuple) entry).elementAt(1))
+                            .stringValue(), (OtpErlangTuple) entry);
+                }
+            } catch (final OtpErlangDecodeException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        final boolean commitEach = method.equals("req_list_commit_each");
+        final List<Object> results = new ArrayList<Object>();
+        for (final Object reqObj : (List<?>) params.get(params.size() - 1)) {
+            final Map.Entry<?, ?> req = ((Map<?, ?>) reqObj).entrySet().iterator().next();
+            final String op = (String) req.getKey();
+            if (op.equals("read")) {
+                final String key = (String) req.getValue();
+                final OtpErlangTuple entry = tlog.get(key);
+                final Object value = entry != null ? JsonRpcCodec
+                        .parseJson(((OtpErlangString) entry.elementAt(2)).stringValue())
+                        : store.get(key);
+                if (value == null) {
+                    results.add(result("fail", "not_found"));
+                } else {
+                    final Map<String, Object> result = result("ok", null);
+                    result.put("value", value);
+                    results.add(result);
+                }
+                if (entry == null && !commitEach) {
+                    tlog.put(key, new OtpErlangTuple(new OtpErlangObject[] {
+                            new OtpErlangAtom("read"), new OtpErlangString(key),
+                            new OtpErlangString("null") }));
+                }
+            } else if (op.equals("write")) {
+                final Map.Entry<?, ?> kv = ((Map<?, ?>) req.getValue()).entrySet().iterator().next();
+                if (commitEach) {
+                    store.put((String) kv.getKey(), kv.getValue());
+                } else {
+                    final StringBuilder value = new StringBuilder();
+                    JsonRpcCodec.writeJson(kv.getValue(), value);
+                    tlog.put((String) kv.getKey(), new OtpErlangTuple(new OtpErlangObject[] {
+                            new OtpErlangAtom("write"), new OtpErlangString((String) kv.getKey()),
+                            new OtpErlangString(value.toString()) }));
+                }
+                results.add(result("ok", null));
+            } else if (op.equals("commit")) {
+                for (final OtpErlangTuple entry : tlog.values()) {
+                    if (((OtpErlangAtom) entry.elementAt(0)).atomValue().equals("write")) {
+                        store.put(((OtpErlangString) entry.elementAt(1)).stringValue(),
+                                JsonRpcCodec.parseJson(((OtpErlangString) entry.elementAt(2)).stringValue()));
+                    }
+                }
+                tlog.clear();
+                results.add(result("ok", null));
+            } else {
+                results.add(result("fail", "unsupported"));
+            }
+        }
+        if (commitEach) {
+            return results;
+        }
+        final Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("tlog", JsonRpcCodec.tlogToJson(new OtpErlangList(
+                tlog.values().toArray(new OtpErlangTuple[0]))));
+        result.put("results", results);
+        return result;
+    }
+
+    /**
+     * Test method for the JSON conversion and base64 encoding of
+     * {@link JsonRpcCodec}.
+     */
+    @Test
+    public void testCodec() {
+        final String json = "{\"a\":[1,-2.5,true,false,null,\"x\\\"\\u00e4\\u20ac\"],\"b\":{},\"c\":123456789012345678901234567890}";
+        final StringBuilder sb = new StringBuilder();
+        JsonRpcCodec.writeJson(JsonRpcCodec.parseJson(json), sb);
+        assertEquals(json, sb.toString());
+        try {
+            JsonRpcCodec.parseJson("{\"a\":1");
+            fail("expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+
+        for (int length = 0; length < 8; ++length) {
+            final byte[] data = new byte[length];
+            for (int i = 0; i < length; ++i) {
+                data[i] = (byte) (250 + i * 3);
+            }
+            assertArrayEquals(data, JsonRpcCodec.base64Decode(JsonRpcCodec.base64Encode(data)));
+        }
+        assertEquals("Zm9vYmE=", JsonRpcCodec.base64Encode("fooba".getBytes()));
+    }
+
+    /**
+     * Test method for the operations of {@link TransactionSingleOp} with and
+     * without compression.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTransactionSingleOp() throws Exception {
+        for (final boolean compressed : new boolean[] {false, true}) {
+            final TransactionSingleOp tx = new TransactionSingleOp(cf.createConnection());
+            tx.setCompressed(compressed);
+            final String prefix = "SingleOp_" + compressed + "_?%+ \u00e4\u20ac_";
+            try {
+                try {
+                    tx.read(prefix + "missing");
+                    fail("expected NotFoundException");
+                } catch (final NotFoundException e) {
+                    // expected
+                }
+
+                tx.write(prefix + "string", "value?%+\"\\ \u00e4\u20ac");
+                assertEquals("value?%+\"\\ \u00e4\u20ac", tx.read(prefix + "string").stringValue());
+                tx.write(prefix + "long", 1L << 40);
+                assertEquals(1L << 40, tx.read(prefix + "long").longValue());
+                tx.write(prefix + "double", 2.5);
+                assertEquals(2.5, tx.read(prefix + "double").doubleValue(), 0.0);
+                tx.write(prefix + "list", Arrays.asList("a", "b"));
+                assertEquals(Arrays.asList("a", "b"), tx.read(prefix + "list").stringListValue());
+                final byte[] binary = new byte[] {0, 1, -1, 42};
+                tx.write(prefix + "binary", binary);
+                assertArrayEquals(binary, tx.read(prefix + "binary").binaryValue());
+                final Map<String, Object> json = new LinkedHashMap<String, Object>();
+                json.put("a", "b");
+                json.put("list", Arrays.asList(1, 2));
+                tx.write(prefix + "json", json);
+                final Map<String, Object> jsonRead = tx.read(prefix + "json").jsonValue();
+                assertEquals("b", jsonRead.get("a"));
+                assertEquals(Arrays.asList(1, 2), jsonRead.get("list"));
+            } finally {
+                tx.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * Test method for {@link Transaction} which sends the transaction log
+     * back and forth.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTransaction() throws Exception {
+        final Transaction t1 = new Transaction(cf.createConnection());
+        final TransactionSingleOp t2 = new TransactionSingleOp(cf.createConnection());
+        try {
+            t1.write("Tx_key1", "v1");
+            t1.write("Tx_key2", "v2");
+            assertEquals("v1", t1.read("Tx_key1").stringValue());
+            try {
+                t2.read("Tx_key1");
+                fail("expected NotFoundException");
+            } catch (final NotFoundException e) {
+                // expected
+            }
+            t1.commit();
+            assertEquals("v1", t2.read("Tx_key1").stringValue());
+            assertEquals("v2", t2.read("Tx_key2").stringValue());
+        } finally {
+            t1.closeConnection();
+            t2.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for pipelined RPCs via
+     * {@link Connection#sendRPC(String, String, OtpErlangObject[])} and
+     * unsupported RPCs.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPipelining() throws Exception {
+        final Connection conn = cf.createConnection();
+        final TransactionSingleOp tx = new TransactionSingleOp(conn);
+        try {
+            tx.read("Pipelining_warm_up");
+            fail("expected NotFoundException");
+        } catch (final NotFoundException e) {
+            // expected
+        }
+        try {
+            clients.clear();
+            for (int i = 0; i < 20; ++i) {
+                conn.sendRPC("api_pubsub", "get_subscribers",
+                        new OtpErlangObject[] { new OtpErlangString("topic" + i) });
+                if (i == 10) {
+                    conn.sendRPC("api_vm", "get_version", new OtpErlangObject[] {});
+                }
+            }
+            for (int i = 0; i < 20; ++i) {
+                assertEquals(new ErlangValue(Arrays.asList("http://topic" + i)),
+                        new ErlangValue(conn.receiveRPC()));
+                if (i == 10) {
+                    final OtpErlangTuple badrpc = (OtpErlangTuple) conn.receiveRPC();
+                    assertEquals(new OtpErlangAtom("badrpc"), badrpc.elementAt(0));
+                }
+            }
+            assertTrue(conn.getTransport() instanceof JsonRpcTransport);
+            assertEquals(null, conn.getConnection());
+            // all requests used the same (persistent) connection
+            assertEquals(1, clients.size());
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link KeyDistribution} and the operation mix of
+ * {@link Workload}.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class KeyDistributionTest {
+    private static final int SAMPLES = 200000;
+
+    /**
+     * Test method for {@link KeyDistribution#uniform(long)}.
+     */
+    @Test
+    public final void testUniform() {
+        final KeyDistribution dist = KeyDistribution.uniform(100);
+        final Random random = new Random(1);
+        final int[] counts = new int[100];
+        for (int i = 0; i < SAMPLES; ++i) {
+            final long record = dist.next(random);
+            assertTrue(record >= 0 && record < 100);
+            ++counts[(int) record];
+        }
+        for (final int count : counts) {
+            // expected: 2000 per record
+            assertTrue(count > 1500 && count < 2500);
+        }
+    }
+
+    /**
+     * Test method for {@link KeyDistribution#zipfian(long)}: record 0 is the
+     * most popular one and popularity decreases with the rank.
+     */
+    @Test
+    public final void testZipfian() {
+        final long records = 1000;
+        final KeyDistribution dist = KeyDistribution.zipfian(records);
+        final Random random = new Random(1);
+        final int[] counts = new int[(int) records];
+        for (int i = 0; i < SAMPLES; ++i) {
+            final long record = dist.next(random);
+            assertTrue(record >= 0 && record < records);
+            ++counts[(int) record];
+        }
+        // p(0) = 1 / zeta(1000, 0.99) ~ 0.13
+        final double p0 = 1.0 / KeyDistribution.Zipfian.zeta(records, KeyDistribution.ZIPFIAN_CONSTANT);
+        assertEquals(p0, ((double) counts[0]) / SAMPLES, 0.01);
+        assertTrue(counts[0] > counts[1]);
+        assertTrue(counts[1] > counts[10]);
+        assertTrue(counts[10] > counts[500]);
+    }
+
+    /**
+     * Test method for {@link Workload#nextOp(Random)}.
+     */
+    @Test
+    public final void testWorkloadMix() {
+        final Workload workload = Workload.ycsb("mixed");
+        final Random random = new Random(1);
+        final int[] counts = new int[Workload.Op.values().length];
+        for (int i = 0; i < SAMPLES; ++i) {
+            ++counts[workload.nextOp(random).ordinal()];
+        }
+        for (final Workload.Op op : Workload.Op.values()) {
+            assertEquals(workload.getProportion(op),
+                    ((double) counts[op.ordinal()]) / SAMPLES, 0.01);
+        }
+        assertEquals(0.0, Workload.ycsb("ycsb-c").getProportion(Workload.Op.WRITE), 0.0);
+    }
+}
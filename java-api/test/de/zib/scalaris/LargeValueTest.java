@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the {@link LargeValue} class.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class LargeValueTest {
+    private final static long testTime = System.currentTimeMillis();
+
+    static {
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        ((DefaultConnectionPolicy) ConnectionFactory.getInstance().getConnectionPolicy()).setMaxRetries(0);
+    }
+
+    private static byte[] getRandomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Test method for {@link LargeValue#read(String)} on a non-existing key.
+     *
+     * @throws Exception
+     */
+    @Test(expected=NotFoundException.class)
+    public void testRead_NotFound() throws Exception {
+        final String key = "_LargeValue_Read_NotFound";
+        final LargeValue lv = new LargeValue(ConnectionFactory.getInstance(), 2);
+        try {
+            lv.read(testTime + key);
+        } finally {
+            lv.close();
+        }
+    }
+
+    /**
+     * Test method for {@link LargeValue#write(String, byte[])} and
+     * {@link LargeValue#read(String)} with values of different sizes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteRead() throws Exception {
+        final String key = "_LargeValue_WriteRead";
+        final LargeValue lv = new LargeValue(ConnectionFactory.getInstance(), 3, 1000);
+        try {
+            final int[] sizes = {0, 1, 999, 1000, 1001, 25000};
+            for (int i = 0; i < sizes.length; ++i) {
+                final byte[] value = getRandomBytes(sizes[i]);
+                lv.write(testTime + key + i, value);
+                assertArrayEquals(value, lv.read(testTime + key + i));
+                final LargeValue.Manifest manifest = lv.readManifest(testTime + key + i);
+                assertEquals(sizes[i], manifest.getSize());
+                assertEquals((sizes[i] + 999) / 1000, manifest.getChunks());
+            }
+        } finally {
+            lv.close();
+        }
+    }
+
+    /**
+     * Test method for {@link LargeValue#openStream(String)} after overwriting
+     * a value.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOpenStream() throws Exception {
+        final String key = "_LargeValue_OpenStream";
+        final LargeValue lv = new LargeValue(ConnectionFactory.getInstance(), 2, 512);
+        try {
+            lv.write(testTime + key, getRandomBytes(10000));
+            final byte[] value = getRandomBytes(7777);
+            lv.write(testTime + key, value);
+
+            final InputStream in = lv.openStream(testTime + key);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[300];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            in.close();
+            assertArrayEquals(value, out.toByteArray());
+        } finally {
+            lv.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Checks that every value lies within the bounds of its bucket.
+     */
+    @Test
+    public final void testBuckets() {
+        final Random random = new Random();
+        for (int i = 0; i < 100000; ++i) {
+            final long value = random.nextLong() >>> (1 + random.nextInt(63));
+            final int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+            if (index > 0) {
+                assertTrue(value > LatencyHistogram.bucketUpperBound(index - 1));
+            }
+        }
+        for (long value = 0; value < 10 * LatencyHistogram.SUB_BUCKETS; ++value) {
+            final int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(
+                LatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+    }
+
+    /**
+     * Test method for {@link LatencyHistogram#getValueAtPercentile(double)}.
+     */
+    @Test
+    public final void testPercentiles() {
+        final LatencyHistogram hist = new LatencyHistogram();
+        assertEquals(0, hist.getValueAtPercentile(99.0));
+        for (long value = 1; value <= 10000; ++value) {
+            hist.record(value);
+        }
+        assertEquals(10000, hist.getCount());
+        assertEquals(10000, hist.getMax());
+        assertEquals(5000.5, hist.getMean(), 0.0);
+        final long p50 = hist.getValueAtPercentile(50.0);
+        final long p99 = hist.getValueAtPercentile(99.0);
+        // relative error of the buckets is at most 1/SUB_BUCKETS:
+        assertTrue(p50 >= 5000 && p50 <= 5000 * (1.0 + 1.0 / LatencyHistogram.SUB_BUCKETS));
+        assertTrue(p99 >= 9900 && p99 <= 9900 * (1.0 + 1.0 / LatencyHistogram.SUB_BUCKETS));
+        assertEquals(10000, hist.getValueAtPercentile(100.0));
+
+        hist.reset();
+        assertEquals(0, hist.getCount());
+        assertEquals(0, hist.getValueAtPercentile(50.0));
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.zib.scalaris.Workload.Op;
+
+/**
+ * Unit tests for {@link LoadResult} and the scheduling of operations in
+ * {@link LoadGenerator}.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class LoadResultTest {
+    private static final long SECOND = 1000000000L;
+
+    /**
+     * Test method for {@link LoadResult#record(Op, boolean, long, long)} and
+     * {@link LoadResult#recordError(Op)}: counts, misses and errors are kept
+     * per operation.
+     */
+    @Test
+    public final void testAggregation() {
+        final LoadResult result = new LoadResult(Workload.ycsb("a"), 2 * SECOND, -1);
+        for (int i = 1; i <= 100; ++i) {
+            result.record(Op.READ, i % 10 == 0, i * 1000L, i * 500L);
+        }
+        for (int i = 1; i <= 50; ++i) {
+            result.record(Op.WRITE, false, 2000L, 1000L);
+        }
+        result.recordError(Op.WRITE);
+        result.recordError(Op.WRITE);
+
+        assertEquals(100, result.getCount(Op.READ));
+        assertEquals(10, result.getMisses(Op.READ));
+        assertEquals(0, result.getErrors(Op.READ));
+        assertEquals(50, result.getCount(Op.WRITE));
+        assertEquals(0, result.getMisses(Op.WRITE));
+        // errors are not counted as finished operations
+        assertEquals(2, result.getErrors(Op.WRITE));
+        assertEquals(0, result.getCount(Op.APPEND));
+        assertEquals(150, result.getTotalCount());
+
+        assertEquals(100, result.getResponseTimes(Op.READ).getCount());
+        assertEquals(100, result.getServiceTimes(Op.READ).getCount());
+        // response times include the time before the actual start
+        assertTrue(result.getResponseTimes(Op.READ).getMean()
+                > result.getServiceTimes(Op.READ).getMean());
+        assertEquals(50500.0, result.getResponseTimes(Op.READ).getMean(), 1000.0);
+    }
+
+    /**
+     * Test method for {@link LoadResult#getThroughput(Op)} and
+     * {@link LoadResult#getTotalThroughput()}: rates refer to the
+     * measurement period.
+     */
+    @Test
+    public final void testThroughput() {
+        final LoadResult result = new LoadResult(Workload.ycsb("a"), 2 * SECOND, 300);
+        for (int i = 0; i < 200; ++i) {
+            result.record(Op.READ, false, 1000L, 1000L);
+        }
+        for (int i = 0; i < 100; ++i) {
+            result.record(Op.WRITE, false, 1000L, 1000L);
+        }
+        assertEquals(2 * SECOND, result.getDurationNanos());
+        assertEquals(300, result.getScheduled());
+        assertEquals(100.0, result.getThroughput(Op.READ), 1e-9);
+        assertEquals(50.0, result.getThroughput(Op.WRITE), 1e-9);
+        assertEquals(150.0, result.getTotalThroughput(), 1e-9);
+    }
+
+    /**
+     * Test method for {@link LoadResult#toCsv()} and
+     * {@link LoadResult#toJson()}: only operations of the workload are
+     * reported.
+     */
+    @Test
+    public final void testOutput() {
+        final LoadResult result = new LoadResult(Workload.ycsb("a"), SECOND, -1);
+        result.record(Op.READ, true, 1000L, 1000L);
+        result.record(Op.WRITE, false, 1000L, 1000L);
+
+        final String[] lines = result.toCsv().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("workload,operation,count,misses,errors,throughput"));
+        assertTrue(lines[1].startsWith("a,read,1,1,0,1.0,"));
+        assertTrue(lines[2].startsWith("a,write,1,0,0,1.0,"));
+
+        final String json = result.toJson();
+        assertTrue(json.startsWith("{\"workload\":\"a\""));
+        assertTrue(json.contains("\"scheduled\":-1"));
+        assertTrue(json.contains("\"count\":2"));
+        assertTrue(json.contains("\"read\":{\"count\":1,\"misses\":1,\"errors\":0"));
+        assertFalse(json.contains("\"append\""));
+    }
+
+    /**
+     * Test method for {@link LoadGenerator#intervalNanos(double)}.
+     */
+    @Test
+    public final void testInterval() {
+        // closed loop
+        assertEquals(0, LoadGenerator.intervalNanos(0.0));
+        assertEquals(0, LoadGenerator.intervalNanos(-1.0));
+        assertEquals(SECOND, LoadGenerator.intervalNanos(1.0));
+        assertEquals(1000000L, LoadGenerator.intervalNanos(1000.0));
+        assertEquals(400000000L, LoadGenerator.intervalNanos(2.5));
+        // rates above 1e9 ops/s are capped
+        assertEquals(1, LoadGenerator.intervalNanos(1e12));
+    }
+
+    /**
+     * Test method for {@link LoadGenerator#scheduledOps(long, long)}.
+     */
+    @Test
+    public final void testScheduled() {
+        // closed loop
+        assertEquals(-1, LoadGenerator.scheduledOps(30 * SECOND, 0));
+        assertEquals(30000, LoadGenerator.scheduledOps(30 * SECOND,
+                LoadGenerator.intervalNanos(1000.0)));
+        // an operation is scheduled at the start of each (partial) interval
+        assertEquals(3, LoadGenerator.scheduledOps(SECOND,
+                LoadGenerator.intervalNanos(2.5)));
+        assertEquals(0, LoadGenerator.scheduledOps(0, SECOND));
+    }
+}
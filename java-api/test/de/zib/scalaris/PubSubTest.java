@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 import java.util.Map.Entry;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
@@ -198,6 +199,122 @@ public class PubSubTest {
         }
     }
 
+    /**
+     * Test method for {@link PubSub#subscribe(String, PubSubMailbox)} and
+     * {@link PubSubMailbox#poll(long, TimeUnit)}: subscribes a mailbox,
+     * publishes some messages and checks that all of them arrive in order.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSubscribeMailbox() throws Exception {
+        final String topic = testTime + "_SubscribeMailbox";
+        final PubSub conn = new PubSub();
+        final PubSubMailbox mailbox = new PubSubMailbox(testData.length);
+
+        try {
+            conn.subscribe(topic, mailbox);
+            assertTrue(conn.getSubscribers(topic).stringListValue().contains(mailbox.getUrl()));
+            for (final String data : testData) {
+                conn.publish(topic, data);
+            }
+            for (final String data : testData) {
+                final PubSubMailbox.Notification n = mailbox.poll(notifications_timeout, TimeUnit.SECONDS);
+                assertTrue(n != null);
+                assertEquals(topic, n.getTopic());
+                assertEquals(data, n.getContent());
+            }
+            assertEquals(0, mailbox.getDropped());
+            conn.unsubscribe(topic, mailbox);
+        } finally {
+            mailbox.close();
+            conn.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link PubSubMailbox#PubSubMailbox(ConnectionFactory, int, boolean, PubSubMailbox.Listener)}
+     * with a listener throwing an exception: checks that the following
+     * notifications are still delivered.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMailboxListenerException() throws Exception {
+        final String topic = testTime + "_MailboxListenerException";
+        final PubSub conn = new PubSub();
+        final LinkedBlockingQueue<String> received = new LinkedBlockingQueue<String>();
+        final PubSubMailbox mailbox = new PubSubMailbox(
+                ConnectionFactory.getInstance(), testData.length, true,
+                new PubSubMailbox.Listener() {
+                    public void onNotification(final PubSubMailbox.Notification notification) {
+                        received.add(notification.getContent());
+                        throw new RuntimeException("listener failure (expected)");
+                    }
+                });
+
+        try {
+            conn.subscribe(topic, mailbox);
+            for (final String data : testData) {
+                conn.publish(topic, data);
+            }
+            for (final String data : testData) {
+                assertEquals(data, received.poll(notifications_timeout, TimeUnit.SECONDS));
+            }
+            conn.unsubscribe(topic, mailbox);
+        } finally {
+            mailbox.close();
+            conn.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link PubSub#publishBatch(String, List)} and
+     * {@link PubSub#publishAsync(String, String)} with binary payloads:
+     * checks that batched messages arrive in order and that all pipelined
+     * messages arrive.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPublishBatchAndAsync() throws Exception {
+        final String topic = testTime + "_PublishBatchAndAsync";
+        final PubSub conn = new PubSub();
+        final PubSubMailbox mailbox = new PubSubMailbox(2 * testData.length);
+
+        try {
+            conn.setBinaryPayloads(true);
+            conn.setMaxInFlight(4);
+            conn.subscribe(topic, mailbox);
+            conn.publishBatch(topic, Arrays.asList(testData));
+            for (final String data : testData) {
+                final PubSubMailbox.Notification n = mailbox.poll(notifications_timeout, TimeUnit.SECONDS);
+                assertTrue(n != null);
+                assertEquals(topic, n.getTopic());
+                assertEquals(data, n.getContent());
+            }
+
+            for (final String data : testData) {
+                conn.publishAsync(topic, data);
+                assertTrue(conn.getInFlight() <= 4);
+            }
+            conn.flush();
+            assertEquals(0, conn.getInFlight());
+            final List<String> received = new ArrayList<String>(testData.length);
+            for (int i = 0; i < testData.length; ++i) {
+                final PubSubMailbox.Notification n = mailbox.poll(notifications_timeout, TimeUnit.SECONDS);
+                assertTrue(n != null);
+                received.add(n.getContent());
+            }
+            assertTrue(received.containsAll(Arrays.asList(testData)));
+            conn.unsubscribe(topic, mailbox);
+        } finally {
+            mailbox.close();
+            conn.closeConnection();
+        }
+    }
+
     // getSubscribers() test methods for not existing topics begin
 
     /**
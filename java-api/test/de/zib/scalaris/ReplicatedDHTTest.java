@@ -18,6 +18,8 @@ package de.zib.scalaris;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.TreeSet;
+
 import org.junit.Test;
 
 /**
@@ -268,4 +270,95 @@ public class ReplicatedDHTTest {
             c.close();
         }
     }
+
+    /**
+     * Test method for {@link ReplicatedDHT#deleteAll(java.util.Collection)}
+     * and {@link ReplicatedDHT#deleteRange(java.util.SortedSet, String, String)}.
+     * Inserts some values, deletes them in bulk over multiple connections and
+     * deletes them again.
+     *
+     * @throws UnknownException
+     * @throws TimeoutException
+     * @throws ConnectionException
+     * @throws AbortException
+     */
+    @Test
+    public void testDeleteAll() throws ConnectionException,
+            TimeoutException, UnknownException, AbortException {
+        final String key = "_DeleteAll";
+        final Connection c = ConnectionFactory.getInstance().createConnection("test");
+        final ReplicatedDHT rdht = new ReplicatedDHT(c);
+        final TransactionSingleOp sc = new TransactionSingleOp(c);
+
+        try {
+            final TreeSet<String> keys = new TreeSet<String>();
+            for (int i = 0; i < testData.length; ++i) {
+                sc.write(testTime + key + i, testData[i]);
+                keys.add(testTime + key + i);
+            }
+
+            rdht.setConnections(3);
+            rdht.setMaxInFlight(4);
+            DeleteResult result = rdht.deleteAll(keys);
+            assertEquals(4 * testData.length, result.ok);
+            assertEquals(0, result.locks_set);
+            assertEquals(0, result.undef);
+            assertEquals(0, result.failed);
+            for (final String k : keys) {
+                checkKeyDoesNotExist(k);
+            }
+
+            // try again (should be successful with 0 deletes)
+            result = rdht.deleteRange(keys, keys.first(), keys.last());
+            assertEquals(0, result.ok);
+            assertEquals(4 * (testData.length - 1), result.undef);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Test method for {@link ReplicatedDHT#readStale(String)} and
+     * {@link ReplicatedDHT#readStale(String, long)}.
+     *
+     * @throws UnknownException
+     * @throws TimeoutException
+     * @throws ConnectionException
+     * @throws AbortException
+     * @throws NotFoundException
+     */
+    @Test
+    public void testReadStale() throws ConnectionException,
+            TimeoutException, UnknownException, AbortException, NotFoundException {
+        final String key = "_ReadStale";
+        final Connection c = ConnectionFactory.getInstance().createConnection("test");
+        final ReplicatedDHT rdht = new ReplicatedDHT(c);
+        final TransactionSingleOp sc = new TransactionSingleOp(c);
+
+        try {
+            try {
+                rdht.readStale(testTime + key);
+                assertTrue(false);
+            } catch (final NotFoundException e) {
+                // expected
+            }
+            for (int i = 0; i < testData.length; ++i) {
+                sc.write(testTime + key, testData[i]);
+            }
+            // a write returns after a majority of the replicas was written
+            final ErlangValue value = rdht.readStale(testTime + key);
+            final long version = rdht.getLastReadVersion();
+            assertTrue(version >= 0 && version < testData.length);
+            assertEquals(testData[(int) version], value.stringValue());
+
+            assertEquals(testData[testData.length - 1],
+                    rdht.readStale(testTime + key, testData.length - 1).stringValue());
+            // no replica has this version: quorum read
+            assertEquals(testData[testData.length - 1],
+                    rdht.readStale(testTime + key, testData.length).stringValue());
+            assertEquals(-1, rdht.getLastReadVersion());
+        } finally {
+            c.close();
+        }
+    }
 }
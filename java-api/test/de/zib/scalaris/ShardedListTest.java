@@ -0,0 +1,160 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.zib.scalaris.AbstractShardedValue.BucketSelection;
+
+/**
+ * Unit test for the {@link ShardedList} and {@link ShardedCounter} classes.
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class ShardedListTest {
+    private final static long testTime = System.currentTimeMillis();
+
+    private final static String[] testData = {
+        "ahz2ieSh", "wooPhu8u", "quai9ooK", "Oquae4ee", "Airier1a", "Boh3ohv5", "ahD3Saog", "EM5ooc4i",
+        "Epahrai8", "laVahta7", "phoo6Ahj", "Igh9eepa", "aCh4Lah6", "ooT0ath5", "uuzau4Ie", "Iup6mae6"};
+
+    static {
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        ((DefaultConnectionPolicy) ConnectionFactory.getInstance().getConnectionPolicy()).setMaxRetries(0);
+    }
+
+    private static List<String> sorted(final List<String> list) {
+        final List<String> result = new ArrayList<String>(list);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Test method for {@link ShardedList#get()} on a non-existing list.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGet_NotFound() throws Exception {
+        final String key = "_ShardedList_Get_NotFound";
+        final ShardedList<String> list = new ShardedList<String>(
+                ConnectionFactory.getInstance().createConnection(),
+                testTime + key, 4, BucketSelection.RANDOM,
+                ShardedList.STRING_CONVERTER);
+        try {
+            assertEquals(0, list.get().size());
+        } finally {
+            list.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link ShardedList#add(Object)},
+     * {@link ShardedList#removeAll(List)} and {@link ShardedList#get()}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAddRemove() throws Exception {
+        final String key = "_ShardedList_AddRemove";
+        final ShardedList<String> list = new ShardedList<String>(
+                ConnectionFactory.getInstance().createConnection(),
+                testTime + key, 4, BucketSelection.HASH,
+                ShardedList.STRING_CONVERTER);
+        try {
+            for (final String value : testData) {
+                list.add(value);
+            }
+            assertEquals(sorted(Arrays.asList(testData)), sorted(list.get()));
+
+            list.removeAll(Arrays.asList(testData[0], testData[1]));
+            assertEquals(sorted(Arrays.asList(testData).subList(2, testData.length)),
+                    sorted(list.get()));
+        } finally {
+            list.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link ShardedList#reshard(int)} with a second client
+     * still using the old bucket count.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReshard() throws Exception {
+        final String key = "_ShardedList_Reshard";
+        final ShardedList<String> list1 = new ShardedList<String>(
+                ConnectionFactory.getInstance().createConnection(),
+                testTime + key, 4, BucketSelection.RANDOM,
+                ShardedList.STRING_CONVERTER);
+        final ShardedList<String> list2 = new ShardedList<String>(
+                ConnectionFactory.getInstance().createConnection(),
+                testTime + key, 4, BucketSelection.RANDOM,
+                ShardedList.STRING_CONVERTER);
+        try {
+            list1.addAll(Arrays.asList(testData).subList(0, 8));
+            list1.reshard(7);
+            assertEquals(7, list1.getBuckets());
+            // list2 still assumes 4 buckets:
+            list2.addAll(Arrays.asList(testData).subList(8, testData.length));
+            assertEquals(7, list2.getBuckets());
+            assertEquals(sorted(Arrays.asList(testData)), sorted(list1.get()));
+
+            list2.reshard(1);
+            assertEquals(sorted(Arrays.asList(testData)), sorted(list1.get()));
+            assertEquals(1, list1.getBuckets());
+        } finally {
+            list1.closeConnection();
+            list2.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link ShardedCounter#add(long)},
+     * {@link ShardedCounter#get()} and {@link ShardedCounter#reshard(int)}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCounter() throws Exception {
+        final String key = "_ShardedCounter";
+        final ShardedCounter counter = new ShardedCounter(
+                ConnectionFactory.getInstance().createConnection(),
+                testTime + key, 4);
+        try {
+            assertEquals(BigInteger.ZERO, counter.get());
+            for (int i = 1; i <= 10; ++i) {
+                counter.add(i);
+            }
+            assertEquals(BigInteger.valueOf(55), counter.get());
+            counter.reshard(2);
+            counter.add(-5);
+            assertEquals(BigInteger.valueOf(50), counter.get());
+        } finally {
+            counter.closeConnection();
+        }
+    }
+}
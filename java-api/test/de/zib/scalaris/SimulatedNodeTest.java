@@ -0,0 +1,393 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test cases for the {@link SimulatedNode} class (not requiring a running
+ * Scalaris ring).
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class SimulatedNodeTest {
+    private static SimulatedNode sim;
+    private static ConnectionFactory cf;
+
+    /**
+     * Starts a simulated node.
+     *
+     * @throws Exception
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        sim = new SimulatedNode("sim_test");
+        sim.start();
+        cf = new ConnectionFactory();
+        cf.setNode(sim.getNodeName());
+        cf.setClientName("sim_test_client");
+    }
+
+    /**
+     * Stops the simulated node.
+     */
+    @AfterClass
+    public static void tearDownAfterClass() {
+        sim.stop();
+    }
+
+    /**
+     * Test method for the operations of {@link TransactionSingleOp} with and
+     * without compression.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTransactionSingleOp() throws Exception {
+        for (final boolean compressed : new boolean[] {false, true}) {
+            final TransactionSingleOp tx = new TransactionSingleOp(cf.createConnection());
+            tx.setCompressed(compressed);
+            final String prefix = "SingleOp_" + compressed + "_";
+            try {
+                try {
+                    tx.read(prefix + "missing");
+                    fail("expected NotFoundException");
+                } catch (final NotFoundException e) {
+                    // expected
+                }
+
+                tx.write(prefix + "string", "value");
+                assertEquals("value", tx.read(prefix + "string").stringValue());
+                tx.write(prefix + "string", "");
+                assertEquals("", tx.read(prefix + "string").stringValue());
+
+                tx.addOnNr(prefix + "number", 5L);
+                tx.addOnNr(prefix + "number", 3L);
+                assertEquals(8L, tx.read(prefix + "number").longValue());
+                try {
+                    tx.addOnNr(prefix + "string", 1L);
+                    fail("expected NotANumberException");
+                } catch (final NotANumberException e) {
+                    // expected
+                }
+
+                tx.testAndSet(prefix + "string", "", "new");
+                try {
+                    tx.testAndSet(prefix + "string", "old", "newer");
+                    fail("expected KeyChangedException");
+                } catch (final KeyChangedException e) {
+                    assertEquals("new", e.getOldValue().stringValue());
+                }
+
+                tx.addDelOnList(prefix + "list", Arrays.asList("a", "b", "c"),
+                        new ArrayList<String>());
+                tx.addDelOnList(prefix + "list", Arrays.asList("d"), Arrays.asList("b"));
+                assertEquals(Arrays.asList("d", "a", "c"),
+                        tx.read(prefix + "list").stringListValue());
+            } finally {
+                tx.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * Test method for {@link Transaction#commit()}: conflicting transactions
+     * and injected aborts.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTransactionCommit() throws Exception {
+        final Transaction t1 = new Transaction(cf.createConnection());
+        final Transaction t2 = new Transaction(cf.createConnection());
+        try {
+            t1.write("Commit_key", "v1");
+            t1.commit();
+
+            assertEquals("v1", t1.read("Commit_key").stringValue());
+            assertEquals("v1", t2.read("Commit_key").stringValue());
+            t1.write("Commit_key", "v2");
+            t2.write("Commit_key", "v3");
+            t1.commit();
+            try {
+                t2.commit();
+                fail("expected AbortException");
+            } catch (final AbortException e) {
+                assertEquals(Arrays.asList("Commit_key"), e.getFailedKeys());
+            }
+            t2.abort();
+            assertEquals("v2", t2.read("Commit_key").stringValue());
+            t2.commit();
+
+            sim.setAbortRate(1.0);
+            try {
+                t1.write("Commit_key", "v4");
+                t1.commit();
+                fail("expected AbortException");
+            } catch (final AbortException e) {
+                // expected
+            } finally {
+                sim.setAbortRate(0.0);
+            }
+            t1.abort();
+            assertEquals("v2", t1.read("Commit_key").stringValue());
+            t1.commit();
+        } finally {
+            t1.closeConnection();
+            t2.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link PubSub} with a {@link PubSubMailbox}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPubSub() throws Exception {
+        final PubSub conn = new PubSub(cf.createConnection());
+        final PubSubMailbox mailbox = new PubSubMailbox(cf, 10, false);
+        try {
+            conn.subscribe("PubSub_topic", mailbox);
+            assertEquals(Arrays.asList(mailbox.getUrl()),
+                    conn.getSubscribers("PubSub_topic").stringListValue());
+            conn.publish("PubSub_topic", "1");
+            conn.publishBatch("PubSub_topic", Arrays.asList("2", "3"));
+            for (final String data : new String[] {"1", "2", "3"}) {
+                final PubSubMailbox.Notification n = mailbox.poll(5, TimeUnit.SECONDS);
+                assertTrue(n != null);
+                assertEquals("PubSub_topic", n.getTopic());
+                assertEquals(data, n.getContent());
+            }
+            conn.unsubscribe("PubSub_topic", mailbox);
+            assertEquals(0, conn.getSubscribers("PubSub_topic").stringListValue().size());
+            try {
+                conn.unsubscribe("PubSub_topic", mailbox);
+                fail("expected NotFoundException");
+            } catch (final NotFoundException e) {
+                // expected
+            }
+        } finally {
+            mailbox.close();
+            conn.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for the (bulk) deletes of {@link ReplicatedDHT}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReplicatedDHT() throws Exception {
+        final Connection conn = cf.createConnection();
+        final TransactionSingleOp tx = new TransactionSingleOp(conn);
+        final ReplicatedDHT rdht = new ReplicatedDHT(conn);
+        try {
+            tx.write("Delete_key", "v");
+            assertEquals(SimulatedNode.REPLICAS, rdht.delete("Delete_key"));
+            assertEquals(SimulatedNode.REPLICAS, rdht.getLastDeleteResult().ok);
+            assertEquals(0, rdht.delete("Delete_key"));
+            assertEquals(SimulatedNode.REPLICAS, rdht.getLastDeleteResult().undef);
+
+            final TreeSet<String> keys = new TreeSet<String>();
+            for (int i = 0; i < 100; ++i) {
+                keys.add("DeleteAll_" + i);
+                if (i % 2 == 0) {
+                    tx.write("DeleteAll_" + i, i);
+                }
+            }
+            rdht.setConnections(3);
+            rdht.setMaxInFlight(5);
+            DeleteResult result = rdht.deleteAll(keys);
+            assertEquals(50 * SimulatedNode.REPLICAS, result.ok);
+            assertEquals(50 * SimulatedNode.REPLICAS, result.undef);
+            assertEquals(0, result.failed);
+
+            tx.write("DeleteAll_10", 10);
+            tx.write("DeleteAll_20", 20);
+            result = rdht.deleteRange(keys, "DeleteAll_10", "DeleteAll_20");
+            assertEquals(SimulatedNode.REPLICAS, result.ok);
+            assertEquals(20, tx.read("DeleteAll_20").intValue());
+
+            sim.setTimeoutRate(1.0);
+            try {
+                assertEquals(keys.size(), rdht.deleteAll(keys).failed);
+            } finally {
+                sim.setTimeoutRate(0.0);
+            }
+        } finally {
+            tx.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link ReplicatedDHT#readStale(String, long)}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReadStale() throws Exception {
+        final Connection conn = cf.createConnection();
+        final TransactionSingleOp tx = new TransactionSingleOp(conn);
+        final ReplicatedDHT rdht = new ReplicatedDHT(conn);
+        try {
+            try {
+                rdht.readStale("Stale_key");
+                fail("expected NotFoundException");
+            } catch (final NotFoundException e) {
+                // expected
+            }
+            tx.write("Stale_key", "v1");
+            tx.write("Stale_key", "v2");
+            assertEquals("v2", rdht.readStale("Stale_key").stringValue());
+            assertEquals(1, rdht.getLastReadVersion());
+            assertEquals("v2", rdht.readStale("Stale_key", 1).stringValue());
+            assertEquals(1, rdht.getLastReadVersion());
+            // no replica is recent enough: quorum read
+            assertEquals("v2", rdht.readStale("Stale_key", 2).stringValue());
+            assertEquals(-1, rdht.getLastReadVersion());
+        } finally {
+            tx.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link ConnectionPool#getConnection(long)} waiting for
+     * released connections.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConnectionPool() throws Exception {
+        final ConnectionPool pool = new ConnectionPool(cf, 1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Connection conn = pool.getConnection(0);
+            assertNull(pool.getConnection());
+            final long start = System.nanoTime();
+            assertNull(pool.getConnection(100));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+
+            final Future<Connection> waiting = executor.submit(new Callable<Connection>() {
+                public Connection call() throws Exception {
+                    return pool.getConnection(10000);
+                }
+            });
+            Thread.sleep(50);
+            pool.releaseConnection(conn);
+            assertTrue(conn == waiting.get(10, TimeUnit.SECONDS));
+            pool.releaseConnection(conn);
+
+            // a failed connect must not use up the pool's capacity
+            final ConnectionPool failing = new ConnectionPool(new ConnectionFactory(), 1);
+            failing.getConnectionFactory().setNode("sim_missing@127.0.0.1");
+            failing.getConnectionFactory().setClientName("sim_test_client");
+            for (int i = 0; i < 2; ++i) {
+                try {
+                    failing.getConnection(100);
+                    fail("expected ConnectionException");
+                } catch (final ConnectionException e) {
+                    // expected
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            pool.closeAll();
+        }
+    }
+
+    /**
+     * Test method for {@link ScalarisVM}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testScalarisVM() throws Exception {
+        final ScalarisVM vm = new ScalarisVM(sim.getNodeName());
+        try {
+            assertEquals(SimulatedNode.VERSION, vm.getVersion());
+            assertEquals(sim.getNodeName(), vm.getInfo().erlangNode);
+            final int nodes = vm.getNumberOfNodes();
+            final List<String> added = vm.addNodes(2).successful;
+            assertEquals(2, added.size());
+            assertEquals(nodes + 2, vm.getNumberOfNodes());
+            assertTrue(vm.shutdownNode(added.get(0)));
+            assertEquals(false, vm.shutdownNode(added.get(0)));
+            assertEquals(Arrays.asList(added.get(1)), vm.killNodes(1));
+            assertEquals(nodes, vm.getNodes().size());
+        } finally {
+            vm.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for the fail-over of a {@link DefaultConnectionPolicy}
+     * between two simulated nodes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFailover() throws Exception {
+        final SimulatedNode sim2 = new SimulatedNode("sim_test2");
+        sim2.start();
+        try {
+            final ConnectionFactory cf2 = new ConnectionFactory();
+            cf2.setNode(sim.getNodeName());
+            cf2.addNode(sim2.getNodeName());
+            cf2.setClientName("sim_test_client");
+            final DefaultConnectionPolicy policy = new DefaultConnectionPolicy(cf2.getNodes());
+            policy.setMaxRetries(3);
+            cf2.setConnectionPolicy(policy);
+            final Connection conn = cf2.createConnection();
+            final TransactionSingleOp tx = new TransactionSingleOp(conn);
+            try {
+                tx.write("Failover_key", "v1");
+                final SimulatedNode current = conn.getRemote().getNode().node()
+                        .equals(sim.getNodeName()) ? sim : sim2;
+                final SimulatedNode other = current == sim ? sim2 : sim;
+                current.stop();
+                final long calls = other.getCalls();
+                tx.write("Failover_key", "v2");
+                assertEquals(calls + 1, other.getCalls());
+                current.start();
+            } finally {
+                tx.closeConnection();
+            }
+        } finally {
+            sim2.stop();
+            sim.start();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2012 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the {@link Snapshot} class (using a {@link SimulatedNode}).
+ *
+ * @version 3.18
+ * @since 3.18
+ */
+public class SnapshotTest {
+    private SimulatedNode sim;
+    private ConnectionFactory cf;
+    private File file;
+
+    /**
+     * Starts a simulated node.
+     *
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        sim = new SimulatedNode("snapshot_test");
+        sim.start();
+        cf = new ConnectionFactory();
+        cf.setNode(sim.getNodeName());
+        cf.setClientName("snapshot_test_client");
+        file = File.createTempFile("scalaris", ".snapshot");
+    }
+
+    /**
+     * Stops the simulated node.
+     */
+    @After
+    public void tearDown() {
+        sim.stop();
+        file.delete();
+    }
+
+    /**
+     * Test method for {@link Snapshot#export(Connection, java.util.Iterator, File)}
+     * and {@link Snapshot#restore(BulkWriter, int)}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExportRestore() throws Exception {
+        final TransactionSingleOp tx = new TransactionSingleOp(cf.createConnection());
+        try {
+            tx.write("string", "value");
+            tx.write("number", 42L);
+            tx.write("list", Arrays.asList("a", "b"));
+            tx.write("binary", new ErlangValue(new byte[] {0, 1, 2}));
+
+            final long exported = Snapshot.export(tx.connection, Arrays.asList(
+                    "string", "number", "missing", "list", "binary").iterator(), file);
+            assertEquals(4, exported);
+            final Snapshot snapshot = Snapshot.open(file);
+            assertEquals(4, snapshot.size());
+
+            sim.clear();
+            final ConnectionPool pool = new ConnectionPool(cf, 2);
+            try {
+                final BulkWriter writer = new BulkWriter(pool, 2);
+                assertEquals(4, snapshot.restore(writer, 2));
+                writer.close();
+                assertEquals(4, writer.getWritten());
+            } finally {
+                pool.closeAll();
+            }
+            assertEquals("value", tx.read("string").stringValue());
+            assertEquals(42L, tx.read("number").longValue());
+            assertEquals(Arrays.asList("a", "b"), tx.read("list").stringListValue());
+            assertTrue(Arrays.equals(new byte[] {0, 1, 2}, tx.read("binary").binaryValue()));
+            try {
+                tx.read("missing");
+                fail("expected NotFoundException");
+            } catch (final NotFoundException e) {
+                // expected
+            }
+        } finally {
+            tx.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link Snapshot#open(File)} with incomplete files.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOpenCorrupt() throws Exception {
+        final Snapshot.Writer writer = new Snapshot.Writer(file);
+        writer.append("key", new ErlangValue("value"));
+        writer.close();
+        assertEquals(1, Snapshot.open(file).size());
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        try {
+            Snapshot.open(file);
+            fail("expected IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+}
@@ -20,15 +20,24 @@
 -author('schuett@zib.de').
 -vsn('$Id$').
 
--export([publish/2, subscribe/2, unsubscribe/2, get_subscribers/1]).
+-export([publish/2, publish_list/2, subscribe/2, unsubscribe/2, get_subscribers/1]).
 
 %% @doc Publishes an event under a given topic.
--spec publish(string(), string()) -> {ok}.
+-spec publish(string(), string() | binary()) -> {ok}.
 publish(Topic, Content) ->
     Subscribers = get_subscribers(Topic),
     _ = [ pubsub_publish:publish(X, Topic, Content) || X <- Subscribers ],
     {ok}.
 
+%% @doc Publishes a list of events under a given topic (in the given order).
+%%      The subscribers are only read once for all events.
+-spec publish_list(string(), [string() | binary()]) -> {ok}.
+publish_list(Topic, Contents) ->
+    Subscribers = get_subscribers(Topic),
+    _ = [ pubsub_publish:publish(X, Topic, Content)
+            || Content <- Contents, X <- Subscribers ],
+    {ok}.
+
 %% @doc Subscribes a URL for a topic.
 -spec subscribe(string(), string()) -> api_tx:commit_result().
 subscribe(Topic, URL) ->
@@ -22,6 +22,7 @@
 
 -export([get_replica_keys/1]).
 -export([delete/1, delete/2]).
+-export([read_stale/2, read_stale/3]).
 
 -include("scalaris.hrl").
 -include("client_types.hrl").
@@ -32,6 +33,10 @@
       | {fail, timeout, ResultsOk::non_neg_integer(),
          ResultList::[ok | locks_set | undef]}).
 
+-type(read_stale_result() ::
+        {ok, Value::client_value(), Version::non_neg_integer()}
+      | {fail, not_found | timeout | outdated}).
+
 -spec delete(Key::client_key()) -> delete_result().
 delete(Key) -> delete(Key, 2000).
 
@@ -82,3 +87,61 @@ delete_collect_results([_|_] = ReplicaKeys, ClientsId, Results) ->
 
 -spec get_replica_keys(client_key()) -> [?RT:key()].
 get_replica_keys(Key) -> ?RT:get_replica_keys(?RT:hash_key(Key)).
+
+-spec read_stale(Key::client_key(), Timeout::pos_integer()) -> read_stale_result().
+read_stale(Key, Timeout) -> read_stale(Key, 0, Timeout).
+
+%% @doc Reads the value of the given key from a single, randomly chosen
+%%      replica, i.e. without a quorum. The value may thus be outdated.
+%%      If the replica's version is lower than MinVersion (or the replica
+%%      does not respond in time), the next replica is asked. Returns
+%%      {fail, outdated} if no replica has at least MinVersion and
+%%      {fail, not_found} if no replica stores the key.
+%%      WARNING: this function is not compatible with the api_tx
+%%      functions' consistency guarantees.
+-spec read_stale(client_key(), MinVersion::non_neg_integer(),
+                 Timeout::pos_integer()) -> read_stale_result().
+read_stale(Key, MinVersion, Timeout) ->
+    ReplicaKeys = ?RT:get_replica_keys(?RT:hash_key(Key)),
+    %% start with a random replica to spread the load
+    {Front, Back} = lists:split(randoms:rand_uniform(0, length(ReplicaKeys)),
+                                ReplicaKeys),
+    read_stale_replicas(Back ++ Front, MinVersion, Timeout, {fail, not_found}).
+
+-spec read_stale_replicas(ReplicaKeys::[?RT:key()], MinVersion::non_neg_integer(),
+                          Timeout::pos_integer(), Result::read_stale_result())
+                         -> read_stale_result().
+read_stale_replicas([], _MinVersion, _Timeout, Result) ->
+    Result;
+read_stale_replicas([Replica | Rest], MinVersion, Timeout, Result) ->
+    ReqId = {rdht_req_id, uid:get_pids_uid()},
+    api_dht_raw:unreliable_get_key(comm:this(), ReqId, Replica),
+    msg_delay:send_local_as_client(Timeout div 1000, self(), {timeout, ReqId}),
+    case read_stale_collect_result(ReqId) of
+        {ok, _Value, -1} ->
+            read_stale_replicas(Rest, MinVersion, Timeout, Result);
+        {ok, Value, Version} when Version >= MinVersion ->
+            {ok, rdht_tx:decode_value(Value), Version};
+        {ok, _Value, _Version} ->
+            read_stale_replicas(Rest, MinVersion, Timeout, {fail, outdated});
+        timeout ->
+            NewResult = ?IIF(Result =:= {fail, outdated}, Result, {fail, timeout}),
+            read_stale_replicas(Rest, MinVersion, Timeout, NewResult)
+    end.
+
+%% @doc collect the response for a single get_key request
+-spec read_stale_collect_result(ReqId::{rdht_req_id, pos_integer()})
+        -> {ok, Value::?DB:value(), Version::?DB:version() | -1} | timeout.
+read_stale_collect_result(ReqId) ->
+    receive
+        ?SCALARIS_RECV({?get_key_with_id_reply, ReqId, _Key, Result}, %% ->
+            Result);
+        ?SCALARIS_RECV({timeout, ReqId}, %% ->
+            timeout);
+        ?SCALARIS_RECV({?get_key_with_id_reply, _, _, _}, %% ->
+            %% probably an outdated message: drop it.
+            read_stale_collect_result(ReqId));
+        ?SCALARIS_RECV({timeout, _}, %% ->
+            %% probably an outdated message: drop it.
+            read_stale_collect_result(ReqId))
+    end.
@@ -27,12 +27,43 @@
 %%====================================================================
 
 %% @doc publishs an event to a given url.
+%%      URLs of the form "erlang://Node/pubsub" denote the mailbox of a Java
+%%      PubSubMailbox which receives {notify, Topic, Content} messages
+%%      directly, all other URLs are notified via JSON-RPC.
+%%      Mailbox nodes are only notified if this node already knows them
+%%      (i.e. the node name is an existing atom, e.g. since the mailbox
+%%      connected to this node) so that subscriptions cannot create atoms or
+%%      connect this node to arbitrary other nodes.
 %% @todo use pool:pspawn
--spec publish(URL::string(), Topic::string(), Content::string()) -> ok.
+-spec publish(URL::string(), Topic::string(), Content::string() | binary()) -> ok.
+publish("erlang://" ++ Address, Topic, Content) ->
+    case mailbox(Address) of
+        {ok, Mailbox} ->
+            % sending may need to set up a connection -> do not block
+            spawn(erlang, send, [Mailbox, {notify, Topic, Content}]),
+            ok;
+        {error, Reason} ->
+            log:log(info, "[ pubsub ] not notifying mailbox ~p: ~p",
+                    ["erlang://" ++ Address, Reason]),
+            ok
+    end;
 publish(URL, Topic, Content) ->
     spawn(pubsub_publish, publish_internal, [URL, Topic, Content]),
     ok.
 
--spec publish_internal(URL::string(), Topic::string(), Content::string()) -> {ok, {response, Result::[term()]}} | {error, Reason::term()}.
+-spec publish_internal(URL::string(), Topic::string(), Content::string() | binary()) -> {ok, {response, Result::[term()]}} | {error, Reason::term()}.
 publish_internal(URL, Topic, Content) ->
     jsonrpc:call(URL, [], {call, "notify", [Topic, Content]}).
+
+%% @doc Gets the registered mailbox of a known node from the address of an
+%%      "erlang://Node/pubsub" URL.
+-spec mailbox(Address::string()) -> {ok, {pubsub, node()}} | {error, invalid_url | unknown_node}.
+mailbox(Address) ->
+    case string:tokens(Address, "/") of
+        [NodeStr, "pubsub"] ->
+            try {ok, {pubsub, erlang:list_to_existing_atom(NodeStr)}}
+            catch error:badarg -> {error, unknown_node}
+            end;
+        _ ->
+            {error, invalid_url}
+    end.